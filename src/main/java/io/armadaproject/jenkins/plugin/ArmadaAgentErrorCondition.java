@@ -0,0 +1,63 @@
+package io.armadaproject.jenkins.plugin;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import java.io.IOException;
+import javax.annotation.CheckForNull;
+import org.jenkinsci.Symbol;
+import org.jenkinsci.plugins.workflow.actions.ErrorAction;
+import org.jenkinsci.plugins.workflow.actions.TimingAction;
+import org.jenkinsci.plugins.workflow.actions.WorkspaceAction;
+import org.jenkinsci.plugins.workflow.flow.ErrorCondition;
+import org.jenkinsci.plugins.workflow.flow.FlowExecution;
+import org.jenkinsci.plugins.workflow.graph.BlockStartNode;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * Retry condition matching the errors of a {@code node} block whose Armada agent was preempted
+ * while the block ran. The processes of the block go away with the preempted pod, so even though
+ * {@link ArmadaPreemptionHandler} relaunches the agent, the block fails and only running it again
+ * recovers the build. Usage:
+ * {@code retry(count: 2, conditions: [armadaAgent()]) { node('armada') { ... } }}, or
+ * {@code options { retry(count: 2, conditions: [armadaAgent()]) }} in a declarative stage.
+ */
+public class ArmadaAgentErrorCondition extends ErrorCondition {
+
+  @DataBoundConstructor
+  public ArmadaAgentErrorCondition() {
+  }
+
+  @Override
+  public boolean test(Throwable t, @CheckForNull StepContext context)
+      throws IOException, InterruptedException {
+    if (t == null || context == null) {
+      return false;
+    }
+    FlowNode origin = ErrorAction.findOrigin(t, context.get(FlowExecution.class));
+    if (origin == null) {
+      return false;
+    }
+    // The innermost node block holds the name of the agent the error happened on
+    for (BlockStartNode block : origin.iterateEnclosingBlocks()) {
+      WorkspaceAction workspace = block.getPersistentAction(WorkspaceAction.class);
+      if (workspace != null) {
+        return ArmadaPreemptionHandler.wasPreemptedSince(workspace.getNode(),
+            TimingAction.getStartTime(block));
+      }
+    }
+    return false;
+  }
+
+  @Extension
+  @Symbol("armadaAgent")
+  public static class DescriptorImpl extends ErrorConditionDescriptor {
+
+    @Override
+    @NonNull
+    public String getDisplayName() {
+      return "Armada agent preempted";
+    }
+  }
+}
@@ -0,0 +1,291 @@
+package io.armadaproject.jenkins.plugin;
+
+import hudson.model.Run;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.RunAction2;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Timings of the Armada agents used by a build, answering why a build waited before its steps
+ * started. Shown as a summary on the build page and exported through the remote API.
+ */
+@ExportedBean
+public class ArmadaBuildTimingAction implements RunAction2 {
+
+  private static final Logger LOGGER = Logger.getLogger(ArmadaBuildTimingAction.class.getName());
+
+  private final List<AgentTiming> agents = new ArrayList<>();
+  private transient Run<?, ?> run;
+  private transient long lastSavedAt;
+
+  @Override
+  public String getIconFileName() {
+    // Rendered as a summary on the build page
+    return null;
+  }
+
+  @Override
+  public String getDisplayName() {
+    return "Armada Timings";
+  }
+
+  @Override
+  public String getUrlName() {
+    return "armada-timings";
+  }
+
+  @Override
+  public void onAttached(Run<?, ?> r) {
+    this.run = r;
+  }
+
+  @Override
+  public void onLoad(Run<?, ?> r) {
+    this.run = r;
+  }
+
+  public Run<?, ?> getRun() {
+    return run;
+  }
+
+  @Exported(inline = true)
+  public synchronized List<AgentTiming> getAgents() {
+    return new ArrayList<>(agents);
+  }
+
+  void addAgent(AgentTiming timing) {
+    synchronized (this) {
+      agents.removeIf(agent -> agent.getNodeName().equals(timing.getNodeName()));
+      agents.add(timing);
+    }
+    save(true);
+  }
+
+  void addExecOverhead(String nodeName, long millis) {
+    synchronized (this) {
+      AgentTiming timing = null;
+      for (AgentTiming agent : agents) {
+        if (agent.getNodeName().equals(nodeName)) {
+          timing = agent;
+          break;
+        }
+      }
+      if (timing == null) {
+        return;
+      }
+      timing.addExec(millis);
+    }
+    save(false);
+  }
+
+  /**
+   * Saves the run so that the timings survive a restart. Exec overhead is added on every exec, so
+   * those saves are throttled; the run is saved anyway when it completes.
+   *
+   * @param force true to save even if the run was saved recently
+   */
+  private void save(boolean force) {
+    Run<?, ?> r = run;
+    if (r == null || !claimSave(force, System.currentTimeMillis())) {
+      return;
+    }
+    try {
+      r.save();
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Failed to save Armada timings of " + r, e);
+    }
+  }
+
+  /**
+   * @return true if the run should be saved now, in which case the save is accounted for
+   */
+  synchronized boolean claimSave(boolean force, long now) {
+    if (!force && lastSavedAt > 0
+        && now - lastSavedAt < ArmadaPluginConfig.BUILD_TIMING_SAVE_INTERVAL_MS) {
+      return false;
+    }
+    lastSavedAt = now;
+    return true;
+  }
+
+  /**
+   * @return the action of the run, attaching a new one if the run does not have it yet
+   */
+  static ArmadaBuildTimingAction forRun(Run<?, ?> run) {
+    synchronized (run) {
+      ArmadaBuildTimingAction action = run.getAction(ArmadaBuildTimingAction.class);
+      if (action == null) {
+        action = new ArmadaBuildTimingAction();
+        run.addAction(action);
+      }
+      return action;
+    }
+  }
+
+  /**
+   * Records the launch timings of a connected agent on the build it was provisioned for.
+   *
+   * @param node     the connected agent
+   * @param computer the agent's computer
+   */
+  static void recordAgent(ArmadaSlave node, ArmadaComputer computer) {
+    ArmadaJobTemplate template = node.getTemplate();
+    LaunchTimeline timeline = node.getLaunchTimeline();
+    if (template == null || template.getRunId() == null || timeline == null) {
+      return;
+    }
+    Run<?, ?> run = resolveRun(template.getRunId());
+    if (run == null) {
+      return;
+    }
+    forRun(run).addAgent(new AgentTiming(node.getNodeName(), computer.getArmadaJobId(),
+        computer.getArmadaClusterId(), computer.getArmadaPodName(),
+        sum(timeline.getDuration(LaunchPhase.QUEUED), timeline.getDuration(LaunchPhase.LEASED)),
+        sum(timeline.getDuration(LaunchPhase.PENDING)),
+        sum(timeline.getDuration(LaunchPhase.RUNNING)),
+        sum(timeline.getDuration(LaunchPhase.AGENT_CONNECTED))));
+  }
+
+  private static Run<?, ?> resolveRun(String runId) {
+    // Launches run on background threads, which must not be limited by the build's permissions
+    try (ACLContext ignored = ACL.as2(ACL.SYSTEM2)) {
+      return Run.fromExternalizableId(runId);
+    } catch (IllegalArgumentException e) {
+      LOGGER.fine("Could not resolve run " + runId + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * @return the sum of the durations, or -1 if none of them is known
+   */
+  static long sum(Long... durations) {
+    long total = -1;
+    for (Long duration : durations) {
+      if (duration != null) {
+        total = Math.max(total, 0) + duration;
+      }
+    }
+    return total;
+  }
+
+  /**
+   * @return the duration in seconds for display, or "-" if it is unknown
+   */
+  public static String format(long millis) {
+    return millis < 0 ? "-" : String.format(Locale.ROOT, "%.1f s", millis / 1000.0);
+  }
+
+  /**
+   * Timings of a single agent. The durations are derived from the Armada job events: queueing
+   * lasts until the job is leased to a cluster, scheduling until its pod is created, and image
+   * pull until the pod runs, which also covers container start up. Unknown durations are -1.
+   */
+  @ExportedBean(defaultVisibility = 2)
+  public static class AgentTiming implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String nodeName;
+    private final String jobId;
+    private final String clusterId;
+    private final String podName;
+    private final long queueingMillis;
+    private final long schedulingMillis;
+    private final long imagePullMillis;
+    private final long connectMillis;
+    private int execCount;
+    private long execOverheadMillis;
+
+    AgentTiming(String nodeName, String jobId, String clusterId, String podName,
+        long queueingMillis, long schedulingMillis, long imagePullMillis, long connectMillis) {
+      this.nodeName = nodeName;
+      this.jobId = jobId;
+      this.clusterId = clusterId;
+      this.podName = podName;
+      this.queueingMillis = queueingMillis;
+      this.schedulingMillis = schedulingMillis;
+      this.imagePullMillis = imagePullMillis;
+      this.connectMillis = connectMillis;
+    }
+
+    synchronized void addExec(long millis) {
+      execCount++;
+      execOverheadMillis += millis;
+    }
+
+    @Exported
+    public String getNodeName() {
+      return nodeName;
+    }
+
+    @Exported
+    public String getJobId() {
+      return jobId;
+    }
+
+    @Exported
+    public String getClusterId() {
+      return clusterId;
+    }
+
+    @Exported
+    public String getPodName() {
+      return podName;
+    }
+
+    @Exported
+    public long getQueueingMillis() {
+      return queueingMillis;
+    }
+
+    @Exported
+    public long getSchedulingMillis() {
+      return schedulingMillis;
+    }
+
+    @Exported
+    public long getImagePullMillis() {
+      return imagePullMillis;
+    }
+
+    @Exported
+    public long getConnectMillis() {
+      return connectMillis;
+    }
+
+    @Exported
+    public synchronized int getExecCount() {
+      return execCount;
+    }
+
+    /**
+     * @return the total time spent setting up exec connections into the pod
+     */
+    @Exported
+    public synchronized long getExecOverheadMillis() {
+      return execOverheadMillis;
+    }
+
+    /**
+     * @return the time from submission until the agent connected, or -1 if unknown
+     */
+    public long getTotalMillis() {
+      return sum(known(queueingMillis), known(schedulingMillis), known(imagePullMillis),
+          known(connectMillis));
+    }
+
+    private static Long known(long millis) {
+      return millis < 0 ? null : millis;
+    }
+  }
+}
@@ -0,0 +1,232 @@
+package io.armadaproject.jenkins.plugin;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Circuit breaker shared by all exec connections to the Kubernetes API server of one cluster. After
+ * {@link ArmadaPluginConfig#EXEC_CIRCUIT_FAILURE_THRESHOLD} consecutive failed connections the
+ * circuit opens and connections fail fast instead of piling onto a degraded API server. Once a
+ * jittered backoff elapses, a single trial connection is let through: the circuit closes if it
+ * succeeds and opens again with a longer backoff if it fails. While the circuit is not closed, only
+ * the outcome of the trial counts, not those of connections attempted before it opened.
+ */
+class ArmadaCircuitBreaker {
+
+  private static final Logger LOGGER = Logger.getLogger(ArmadaCircuitBreaker.class.getName());
+  private static final ConcurrentMap<String, ArmadaCircuitBreaker> BREAKERS =
+      new ConcurrentHashMap<>();
+  private static final long BASE_BACKOFF_MILLIS = 1_000;
+
+  /**
+   * State of a circuit, with its value in the published gauge.
+   */
+  enum State {
+    CLOSED(0), OPEN(1), HALF_OPEN(2);
+
+    private final long gaugeValue;
+
+    State(long gaugeValue) {
+      this.gaugeValue = gaugeValue;
+    }
+
+    long getGaugeValue() {
+      return gaugeValue;
+    }
+  }
+
+  private final String cloudName;
+  private final String clusterId;
+  private final int failureThreshold;
+  private final long maxBackoffMillis;
+  private final LongSupplier clock;
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private int opens;
+  private long openUntil;
+  private boolean trialInFlight;
+
+  ArmadaCircuitBreaker(String cloudName, String clusterId, int failureThreshold,
+      long maxBackoffMillis, LongSupplier clock) {
+    this.cloudName = cloudName;
+    this.clusterId = clusterId;
+    this.failureThreshold = Math.max(failureThreshold, 1);
+    this.maxBackoffMillis = maxBackoffMillis;
+    this.clock = clock;
+  }
+
+  /**
+   * @return the breaker of the given cluster of a cloud, created on first use
+   */
+  static ArmadaCircuitBreaker forCluster(String cloudName, String clusterId) {
+    String cluster = Objects.toString(clusterId, "");
+    return BREAKERS.computeIfAbsent(cloudName + '\0' + cluster,
+        key -> new ArmadaCircuitBreaker(cloudName, cluster,
+            ArmadaPluginConfig.EXEC_CIRCUIT_FAILURE_THRESHOLD,
+            TimeUnit.SECONDS.toMillis(ArmadaPluginConfig.WEBSOCKET_CONNECTION_MAX_RETRY_BACKOFF),
+            () -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime())));
+  }
+
+  /**
+   * @return the state of every breaker of a cloud, by cluster ID
+   */
+  static SortedMap<String, State> getStates(String cloudName) {
+    SortedMap<String, State> states = new TreeMap<>();
+    for (ArmadaCircuitBreaker breaker : BREAKERS.values()) {
+      if (breaker.cloudName.equals(cloudName)) {
+        states.put(breaker.clusterId, breaker.getState());
+      }
+    }
+    return states;
+  }
+
+  /**
+   * Returns a delay growing exponentially with the attempt, capped, and drawn between half and
+   * all of it so that callers failing together do not retry together.
+   *
+   * @param attempt    the attempt number, starting at 1
+   * @param maxMillis  the cap of the delay
+   * @return the delay in milliseconds
+   */
+  static long jitteredBackoffMillis(int attempt, long maxMillis) {
+    long backoff = BASE_BACKOFF_MILLIS << Math.min(Math.max(attempt - 1, 0), 20);
+    backoff = Math.min(backoff, maxMillis);
+    long half = backoff / 2;
+    return half + ThreadLocalRandom.current().nextLong(backoff - half + 1);
+  }
+
+  /**
+   * Asks for permission to connect. Every granted attempt must be followed by
+   * {@link Attempt#record(boolean)} or {@link Attempt#release()}.
+   *
+   * @return the attempt if the connection may be made, null if it must fail fast
+   */
+  synchronized Attempt tryAcquire() {
+    switch (state) {
+      case CLOSED:
+        return new Attempt(false);
+      case OPEN:
+        if (clock.getAsLong() - openUntil < 0) {
+          return reject();
+        }
+        state = State.HALF_OPEN;
+        trialInFlight = true;
+        LOGGER.log(Level.FINE, "Probing exec connections to cluster {0} of cloud {1}",
+            new Object[]{clusterId, cloudName});
+        return new Attempt(true);
+      default:
+        if (trialInFlight) {
+          return reject();
+        }
+        trialInFlight = true;
+        return new Attempt(true);
+    }
+  }
+
+  private synchronized void record(Attempt attempt, boolean success) {
+    if (attempt.trial) {
+      trialInFlight = false;
+    } else if (state != State.CLOSED) {
+      // Started before the circuit opened, the trial decides
+      return;
+    }
+    if (success) {
+      if (state != State.CLOSED) {
+        LOGGER.log(Level.INFO, "Exec connections to cluster {0} of cloud {1} recovered",
+            new Object[]{clusterId, cloudName});
+      }
+      state = State.CLOSED;
+      consecutiveFailures = 0;
+      opens = 0;
+      return;
+    }
+    consecutiveFailures++;
+    if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+      open();
+    }
+  }
+
+  private synchronized void release(Attempt attempt) {
+    if (attempt.trial) {
+      trialInFlight = false;
+    }
+  }
+
+  /**
+   * @return the milliseconds left until the next trial connection, 0 if not open
+   */
+  synchronized long getRemainingOpenMillis() {
+    return state == State.OPEN ? Math.max(openUntil - clock.getAsLong(), 0) : 0;
+  }
+
+  synchronized State getState() {
+    return state;
+  }
+
+  private void open() {
+    opens++;
+    long backoff = jitteredBackoffMillis(opens, maxBackoffMillis);
+    openUntil = clock.getAsLong() + backoff;
+    state = State.OPEN;
+    ArmadaMetrics.get().counter(ArmadaMetrics.EXEC_CIRCUIT_OPENED, tags()).increment();
+    LOGGER.log(Level.WARNING, "Exec connections to cluster {0} of cloud {1} failed {2} times,"
+        + " failing fast for {3} ms", new Object[]{clusterId, cloudName, consecutiveFailures,
+        backoff});
+  }
+
+  private Attempt reject() {
+    ArmadaMetrics.get().counter(ArmadaMetrics.EXEC_CIRCUIT_REJECTIONS, tags()).increment();
+    return null;
+  }
+
+  private Map<String, String> tags() {
+    Map<String, String> tags = ArmadaMetrics.cloudTags(cloudName);
+    tags.put(ArmadaMetrics.TAG_CLUSTER, clusterId);
+    return tags;
+  }
+
+  /**
+   * Connection attempt permitted by {@link #tryAcquire()}.
+   */
+  final class Attempt {
+
+    private final boolean trial;
+
+    private Attempt(boolean trial) {
+      this.trial = trial;
+    }
+
+    /**
+     * @return true if this is the trial connection of a circuit that is not closed
+     */
+    boolean isTrial() {
+      return trial;
+    }
+
+    /**
+     * Records the outcome of the connection.
+     *
+     * @param success whether the API server could be reached
+     */
+    void record(boolean success) {
+      ArmadaCircuitBreaker.this.record(this, success);
+    }
+
+    /**
+     * Gives back an attempt whose connection was abandoned before its outcome was known.
+     */
+    void release() {
+      ArmadaCircuitBreaker.this.release(this);
+    }
+  }
+}
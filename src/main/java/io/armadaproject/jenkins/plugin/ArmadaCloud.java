@@ -1,8 +1,6 @@
 package io.armadaproject.jenkins.plugin;
 
-import api.EventOuterClass.EventMessage;
 import api.EventOuterClass.EventStreamMessage;
-import api.EventOuterClass.JobRunningEvent;
 import api.EventOuterClass.JobSetRequest;
 import api.Health.HealthCheckResponse.ServingStatus;
 import com.cloudbees.plugins.credentials.CredentialsMatchers;
@@ -10,6 +8,7 @@ import com.cloudbees.plugins.credentials.CredentialsProvider;
 import com.cloudbees.plugins.credentials.common.StandardCredentials;
 import hudson.Extension;
 import hudson.Util;
+import hudson.model.Computer;
 import hudson.model.Descriptor;
 import hudson.model.Node;
 import hudson.security.ACL;
@@ -23,10 +22,12 @@ import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClientBuilder;
 import io.grpc.stub.StreamObserver;
 import java.io.IOException;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.FutureTask;
@@ -46,8 +47,10 @@ public class ArmadaCloud extends Cloud {
   private static final Logger LOGGER = Logger.getLogger(ArmadaCloud.class.getName());
 
   private transient Map<String, ArmadaJobTemplate> dynamicTemplates = new ConcurrentHashMap<>();
-  private transient ArmadaEventManager<JobRunningEvent> armadaEventManager;
+  private transient ArmadaEventManager armadaEventManager;
+  private transient ArmadaLaunchPoller launchPoller;
   private transient ConcurrentHashMap<String, Thread> jobSetIdThreads;
+  private transient Set<String> watchedJobSets;
 
   private String armadaUrl;
   private String armadaPort;
@@ -57,10 +60,18 @@ public class ArmadaCloud extends Cloud {
   private String armadaLookoutUrl;
   private String armadaLookoutPort;
   private String armadaJobSetPrefix;
-  private String armadaJobSetId;
+  /**
+   * @deprecated the job set ID is per launch, see {@link #generateJobSetId(ArmadaJobTemplate)};
+   * only read from old configurations, then dropped in {@link #readResolve()}
+   */
+  @Deprecated
+  private transient String armadaJobSetId;
+  private String armadaJobSetStrategy;
+  private int armadaJobSetShards = ArmadaPluginConfig.DEFAULT_JOB_SET_SHARDS;
   private String armadaClusterConfigPath;
   private String jenkinsUrl;
   private boolean trustCerts = false;
+  private boolean prometheusUnauthenticated = false;
 
   @DataBoundConstructor
   public ArmadaCloud(String name) {
@@ -115,11 +126,19 @@ public class ArmadaCloud extends Cloud {
       dynamicTemplates = new ConcurrentHashMap<>();
     }
     if (armadaEventManager == null) {
-      armadaEventManager = new ArmadaEventManager<>();
+      armadaEventManager = new ArmadaEventManager();
     }
     if (jobSetIdThreads == null) {
       jobSetIdThreads = new ConcurrentHashMap<>();
     }
+    if (armadaJobSetShards < 1) {
+      armadaJobSetShards = ArmadaPluginConfig.DEFAULT_JOB_SET_SHARDS;
+    }
+    if (armadaJobSetId != null) {
+      // Last job set ID written by a launch, superseded by the job set strategy
+      LOGGER.fine("Dropping job set ID " + armadaJobSetId + " of cloud " + name);
+      armadaJobSetId = null;
+    }
     return this;
   }
 
@@ -195,13 +214,55 @@ public class ArmadaCloud extends Cloud {
     this.armadaJobSetPrefix = armadaJobSetPrefix;
   }
 
-  public String getArmadaJobSetId() {
-    return armadaJobSetId;
+  public String getArmadaJobSetStrategy() {
+    return resolveJobSetStrategy().name();
+  }
+
+  @DataBoundSetter
+  public void setArmadaJobSetStrategy(String armadaJobSetStrategy) {
+    this.armadaJobSetStrategy = armadaJobSetStrategy;
+  }
+
+  /**
+   * @return true if the Prometheus scrape endpoint of this cloud may be read without
+   * authentication, in which case the tags naming jobs and pods are left out
+   */
+  public boolean isPrometheusUnauthenticated() {
+    return prometheusUnauthenticated;
   }
 
   @DataBoundSetter
-  public void setArmadaJobSetId(String armadaJobSetId) {
-    this.armadaJobSetId = armadaJobSetId;
+  public void setPrometheusUnauthenticated(boolean prometheusUnauthenticated) {
+    this.prometheusUnauthenticated = prometheusUnauthenticated;
+  }
+
+  public int getArmadaJobSetShards() {
+    return armadaJobSetShards;
+  }
+
+  @DataBoundSetter
+  public void setArmadaJobSetShards(int armadaJobSetShards) {
+    this.armadaJobSetShards = armadaJobSetShards;
+  }
+
+  /**
+   * @return the configured job set strategy, {@link ArmadaJobSetStrategy#DAILY} if none is set
+   */
+  public ArmadaJobSetStrategy resolveJobSetStrategy() {
+    return ArmadaJobSetStrategy.fromName(armadaJobSetStrategy);
+  }
+
+  /**
+   * Computes the job set ID for launching an agent from the given template. The result belongs to
+   * that launch only and is not stored on the cloud.
+   *
+   * @param template the template of the agent being launched
+   * @return the job set ID
+   */
+  public String generateJobSetId(ArmadaJobTemplate template) {
+    String prefix = armadaJobSetPrefix != null && !armadaJobSetPrefix.trim().isEmpty()
+        ? armadaJobSetPrefix.trim() : getDisplayName();
+    return resolveJobSetStrategy().jobSetId(prefix, template, armadaJobSetShards, Instant.now());
   }
 
   public String getArmadaClusterConfigPath() {
@@ -303,6 +364,20 @@ public class ArmadaCloud extends Cloud {
 
   @Override
   public Collection<PlannedNode> provision(CloudState state, int excessWorkload) {
+    ArmadaJfrEvents.ProvisionEvent event = new ArmadaJfrEvents.ProvisionEvent();
+    event.begin();
+    Collection<PlannedNode> result = provisionNodes(state, excessWorkload);
+    if (event.shouldCommit()) {
+      event.cloud = name;
+      event.label = state.getLabel() != null ? state.getLabel().toString() : null;
+      event.excessWorkload = excessWorkload;
+      event.plannedNodes = result.size();
+      event.commit();
+    }
+    return result;
+  }
+
+  private Collection<PlannedNode> provisionNodes(CloudState state, int excessWorkload) {
     // Validate configuration before attempting to provision
     validateConfiguration();
 
@@ -386,6 +461,7 @@ public class ArmadaCloud extends Cloud {
 
         // Add the slave to Jenkins
         Jenkins.get().addNode(slave);
+        slave.markLaunchPhase(LaunchPhase.PROVISION);
 
         LOGGER.log(Level.FINE, "Successfully created Armada slave " + nodeIndex + "/" + totalNodes +
             " for label: " + template.getLabel());
@@ -414,13 +490,24 @@ public class ArmadaCloud extends Cloud {
   /**
    * Gets the event manager, creating it lazily if needed.
    */
-  public ArmadaEventManager<JobRunningEvent> getArmadaEventManager() {
+  public ArmadaEventManager getArmadaEventManager() {
     if (armadaEventManager == null) {
-      armadaEventManager = new ArmadaEventManager<>();
+      armadaEventManager = new ArmadaEventManager();
     }
     return armadaEventManager;
   }
 
+  /**
+   * Gets the poller shared by the launches of this cloud, creating it lazily if needed.
+   */
+  synchronized ArmadaLaunchPoller getLaunchPoller() {
+    if (launchPoller == null) {
+      launchPoller = new ArmadaLaunchPoller(this, ArmadaLauncher.LAUNCH_EXECUTOR,
+          Computer.threadPoolForRemoting);
+    }
+    return launchPoller;
+  }
+
   /**
    * Gets the job set threads map, creating it lazily if needed.
    */
@@ -431,6 +518,58 @@ public class ArmadaCloud extends Cloud {
     return jobSetIdThreads;
   }
 
+  private Set<String> getWatchedJobSets() {
+    if (watchedJobSets == null) {
+      watchedJobSets = ConcurrentHashMap.newKeySet();
+    }
+    return watchedJobSets;
+  }
+
+  /**
+   * @return the number of dynamic templates currently registered
+   */
+  public int getDynamicTemplateCount() {
+    return dynamicTemplates.size();
+  }
+
+  /**
+   * Makes sure exactly one watcher streams events for the specified job set ID, starting it if
+   * needed or if the previous one has ended.
+   *
+   * @param jobSetId the job set ID to watch
+   * @return the thread watching the events
+   */
+  public Thread ensureWatchingArmadaEvents(String jobSetId) {
+    return getJobSetIdThreads().compute(jobSetId,
+        (id, existing) -> existing != null && existing.isAlive()
+            ? existing : startWatchingArmadaEvents(id));
+  }
+
+  /**
+   * Stops the watcher of a job set once no agent of this cloud uses it anymore. Short-lived job
+   * sets (per build, per hour) would otherwise leave one streaming thread behind each.
+   *
+   * @param jobSetId   the job set ID
+   * @param releasedBy the computer that no longer needs the job set
+   */
+  public void releaseJobSet(String jobSetId, ArmadaComputer releasedBy) {
+    if (jobSetId == null || jobSetId.isEmpty()) {
+      return;
+    }
+    for (hudson.model.Computer computer : Jenkins.get().getComputers()) {
+      if (computer != releasedBy && computer instanceof ArmadaComputer armadaComputer
+          && jobSetId.equals(armadaComputer.getArmadaJobSetId())) {
+        return;
+      }
+    }
+    getWatchedJobSets().remove(jobSetId);
+    Thread watcher = getJobSetIdThreads().remove(jobSetId);
+    if (watcher != null) {
+      LOGGER.log(Level.FINE, "Stopping event watcher for unused jobSetId: " + jobSetId);
+      watcher.interrupt();
+    }
+  }
+
   /**
    * Starts watching Armada events for the specified job set ID. Creates a background thread that
    * streams events from Armada and publishes them to subscribers.
@@ -438,7 +577,12 @@ public class ArmadaCloud extends Cloud {
    * @param jobSetId the job set ID to watch
    * @return the thread watching the events
    */
-  public Thread startWatchingArmadaEvents(String jobSetId) {
+  private Thread startWatchingArmadaEvents(String jobSetId) {
+    if (!getWatchedJobSets().add(jobSetId)) {
+      // The previous stream of this job set ended while it was still in use
+      ArmadaMetrics.get().counter(ArmadaMetrics.EVENT_STREAM_RECONNECTS,
+          ArmadaMetrics.cloudTags(name)).increment();
+    }
     Runnable job = () -> {
       try (ArmadaClient armadaClient = createArmadaClient()) {
         JobSetRequest jobSetRequest = JobSetRequest.newBuilder()
@@ -456,13 +600,17 @@ public class ArmadaCloud extends Cloud {
               return;
             }
 
-            EventMessage message = value.getMessage();
-            if (!message.hasRunning()) {
+            ArmadaEvent event = ArmadaEvent.from(value.getMessage());
+            if (event == null) {
               return;
             }
 
-            JobRunningEvent jobRunningEvent = message.getRunning();
-            getArmadaEventManager().publish(jobSetId, jobRunningEvent);
+            if (event.getCreated() != null) {
+              ArmadaMetrics.get().histogram(ArmadaMetrics.EVENT_STREAM_LAG,
+                      ArmadaMetrics.cloudTags(name))
+                  .record(System.currentTimeMillis() - event.getCreated().toEpochMilli());
+            }
+            getArmadaEventManager().publish(jobSetId, event);
           }
 
           @Override
@@ -478,14 +626,19 @@ public class ArmadaCloud extends Cloud {
 
         armadaClient.streamEvents(jobSetRequest, streamObserver);
       } catch (Exception e) {
+        if (Thread.currentThread().isInterrupted()) {
+          LOGGER.log(Level.FINE, "Stopped watching events for jobSetId: " + jobSetId);
+          return;
+        }
         LOGGER.log(Level.SEVERE,
             "Failed to connect to Armada. Could not start watching events.", e);
+      } finally {
+        getJobSetIdThreads().remove(jobSetId, Thread.currentThread());
       }
     };
     Thread watcher = new Thread(job);
     watcher.setName("armada-event-watcher-" + jobSetId);
     watcher.setDaemon(true);
-    getJobSetIdThreads().put(jobSetId, watcher);
     watcher.start();
     return watcher;
   }
@@ -539,6 +692,31 @@ public class ArmadaCloud extends Cloud {
     }
   }
 
+  /**
+   * Resolves the Kubernetes server URL for the given cluster ID from the cluster config file.
+   *
+   * @param clusterId the Armada cluster ID, as reported in job events
+   * @return the Kubernetes API server URL
+   * @throws IOException if the config cannot be read or has no URL for the cluster
+   */
+  public String resolveClusterUrl(String clusterId) throws IOException {
+    try {
+      String serverUrl = ClusterConfigParser.parse(armadaClusterConfigPath).get(clusterId);
+
+      if (serverUrl == null || serverUrl.isEmpty()) {
+        throw new IOException(String.format("Cluster configuration error at '%s': No server URL found for cluster: %s",
+            armadaClusterConfigPath, clusterId));
+      }
+
+      return serverUrl;
+    } catch (IOException e) {
+      throw e; // Re-throw IOException as-is
+    } catch (Exception ex) {
+      throw new IOException(String.format("Cluster configuration error at '%s': Failed to parse cluster config file",
+          armadaClusterConfigPath), ex);
+    }
+  }
+
   /**
    * Connects to a Kubernetes cluster using the provided server URL.
    * <p>
@@ -678,6 +856,25 @@ public class ArmadaCloud extends Cloud {
           () -> ValidationHelper.validatePort(value, false, "Armada Lookout Port"));
     }
 
+    public hudson.util.ListBoxModel doFillArmadaJobSetStrategyItems() {
+      hudson.util.ListBoxModel result = new hudson.util.ListBoxModel();
+      for (ArmadaJobSetStrategy strategy : ArmadaJobSetStrategy.values()) {
+        result.add(strategy.getDisplayName(), strategy.name());
+      }
+      return result;
+    }
+
+    public FormValidation doCheckArmadaJobSetShards(@QueryParameter String value) {
+      try {
+        if (Integer.parseInt(value) < 1) {
+          return FormValidation.error("Job Set Shards must be at least 1");
+        }
+        return FormValidation.ok();
+      } catch (NumberFormatException e) {
+        return FormValidation.error("Job Set Shards is not a valid number: " + value);
+      }
+    }
+
     public FormValidation doCheckArmadaClusterConfigPath(@QueryParameter String value) {
       return validateField(() -> ValidationHelper.validateRequired(value, "Cluster Config Path"));
     }
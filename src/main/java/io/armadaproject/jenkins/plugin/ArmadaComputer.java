@@ -13,6 +13,13 @@ public class ArmadaComputer extends AbstractCloudComputer<ArmadaSlave> {
   private boolean launching;
   private String armadaJobId = "";
   private String armadaJobSetId = "";
+  private long armadaJobSubmittedAt;
+  private long armadaJobQueuedAt;
+  private String armadaClusterId;
+  private String armadaPodName;
+  private int resubmissions;
+  private long wastedQueueMillis;
+  private transient ArmadaPreemptionHandler preemptionHandler;
 
   public ArmadaComputer(@Nonnull ArmadaSlave slave) {
     super(slave);
@@ -66,6 +73,117 @@ public class ArmadaComputer extends AbstractCloudComputer<ArmadaSlave> {
     this.armadaJobSetId = armadaJobSetId;
   }
 
+  /**
+   * @return the time in milliseconds at which the current Armada job was submitted, or 0 if it
+   * was not submitted by this computer
+   */
+  public long getArmadaJobSubmittedAt() {
+    return armadaJobSubmittedAt;
+  }
+
+  public void setArmadaJobSubmittedAt(long armadaJobSubmittedAt) {
+    this.armadaJobSubmittedAt = armadaJobSubmittedAt;
+  }
+
+  /**
+   * @return the time in milliseconds at which the last queued or leased event of the current Armada
+   * job was received, or 0 if none was
+   */
+  public long getArmadaJobQueuedAt() {
+    return armadaJobQueuedAt;
+  }
+
+  public void setArmadaJobQueuedAt(long armadaJobQueuedAt) {
+    this.armadaJobQueuedAt = armadaJobQueuedAt;
+  }
+
+  /**
+   * @return the ID of the cluster the current Armada job was leased to, or null if not yet known
+   */
+  public String getArmadaClusterId() {
+    return armadaClusterId;
+  }
+
+  public void setArmadaClusterId(String armadaClusterId) {
+    this.armadaClusterId = armadaClusterId;
+  }
+
+  /**
+   * @return the name of the pod running the current Armada job, or null if not yet known
+   */
+  public String getArmadaPodName() {
+    return armadaPodName;
+  }
+
+  public void setArmadaPodName(String armadaPodName) {
+    this.armadaPodName = armadaPodName;
+  }
+
+  /**
+   * @return how many times a replacement job was submitted after the previous one was preempted
+   */
+  public int getResubmissions() {
+    return resubmissions;
+  }
+
+  /**
+   * @return the total time in milliseconds spent by preempted jobs between their last queued or
+   * leased event (their submission if neither was received) and preemption
+   */
+  public long getWastedQueueMillis() {
+    return wastedQueueMillis;
+  }
+
+  /**
+   * Records that the current Armada job was preempted and, if the retry budget allows it, clears
+   * the job ID so that the next launch submits a replacement job.
+   *
+   * @param now the time of the preemption in milliseconds
+   * @return true if a replacement job may be submitted, false if the budget is exhausted
+   */
+  public synchronized boolean recordPreemption(long now) {
+    long queuedAt = armadaJobQueuedAt > 0 ? armadaJobQueuedAt : armadaJobSubmittedAt;
+    if (queuedAt > 0) {
+      wastedQueueMillis += Math.max(now - queuedAt, 0);
+    }
+    if (resubmissions >= ArmadaPluginConfig.MAX_RESUBMISSIONS) {
+      return false;
+    }
+    resubmissions++;
+    armadaJobId = "";
+    armadaJobSubmittedAt = 0;
+    armadaJobQueuedAt = 0;
+    armadaClusterId = null;
+    armadaPodName = null;
+    return true;
+  }
+
+  /**
+   * Records that the agent reached the milestone of a launch phase.
+   */
+  void markLaunchPhase(LaunchPhase phase) {
+    ArmadaSlave node = getNode();
+    if (node != null) {
+      node.markLaunchPhase(phase);
+    }
+  }
+
+  /**
+   * Watches the current Armada job of this connected computer for preemption, replacing any
+   * previous watch.
+   */
+  void watchForPreemption(ArmadaCloud cloud) {
+    stopWatchingForPreemption();
+    preemptionHandler = ArmadaPreemptionHandler.watch(cloud, this);
+  }
+
+  void stopWatchingForPreemption() {
+    if (preemptionHandler != null) {
+      preemptionHandler.unsubscribe();
+      preemptionHandler = null;
+    }
+  }
+
   @Override
   public void setAcceptingTasks(boolean acceptingTasks) {
     super.setAcceptingTasks(acceptingTasks);
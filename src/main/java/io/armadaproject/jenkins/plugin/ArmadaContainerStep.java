@@ -10,14 +10,21 @@ import org.jenkinsci.plugins.workflow.steps.StepContext;
 import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
 import org.jenkinsci.plugins.workflow.steps.StepExecution;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 /**
  * Pipeline step to run commands inside a specific container of an Armada pod. Usage:
  * armadaContainer('containerName') { sh 'command' }
+ * <p>
+ * With {@code armadaContainer(name: 'containerName', durable: true)}, commands that are not durable
+ * tasks run detached from the exec websocket and survive it dropping, see
+ * {@link ArmadaDurableExec}. Steps such as {@code sh} are durable tasks already and are unaffected.
+ * A controller restart is not survived in durable mode.
  */
 public class ArmadaContainerStep extends Step {
 
   private final String name;
+  private boolean durable;
 
   @DataBoundConstructor
   public ArmadaContainerStep(String name) {
@@ -28,9 +35,18 @@ public class ArmadaContainerStep extends Step {
     return name;
   }
 
+  public boolean isDurable() {
+    return durable;
+  }
+
+  @DataBoundSetter
+  public void setDurable(boolean durable) {
+    this.durable = durable;
+  }
+
   @Override
   public StepExecution start(StepContext context) throws Exception {
-    return new ArmadaContainerStepExecution(context, name);
+    return new ArmadaContainerStepExecution(context, name, durable);
   }
 
   @Extension
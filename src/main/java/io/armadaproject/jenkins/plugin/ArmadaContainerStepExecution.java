@@ -5,6 +5,7 @@ import hudson.model.Computer;
 import hudson.model.Node;
 import hudson.model.TaskListener;
 import java.io.IOException;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jenkinsci.plugins.workflow.steps.BodyExecutionCallback;
 import org.jenkinsci.plugins.workflow.steps.BodyInvoker;
@@ -21,10 +22,17 @@ public class ArmadaContainerStepExecution extends StepExecution {
       Logger.getLogger(ArmadaContainerStepExecution.class.getName());
 
   private final String containerName;
+  private final boolean durable;
 
   public ArmadaContainerStepExecution(StepContext context, String containerName) {
+    this(context, containerName, false);
+  }
+
+  public ArmadaContainerStepExecution(StepContext context, String containerName,
+      boolean durable) {
     super(context);
     this.containerName = containerName;
+    this.durable = durable;
   }
 
   @Override
@@ -63,17 +71,16 @@ public class ArmadaContainerStepExecution extends StepExecution {
     LauncherDecorator existingDecorator = getContext().get(LauncherDecorator.class);
 
     // Create body invoker with ArmadaExecDecorator
+    ArmadaExecDecorator decorator = new ArmadaExecDecorator(containerName);
+    decorator.setNodeContext(nodeContext);
+    decorator.setDurable(durable);
     BodyInvoker invoker = getContext().newBodyInvoker();
-    invoker = ArmadaExecDecorator.decorate(
-        invoker,
-        containerName,
-        nodeContext,
-        existingDecorator
-    );
+    invoker = ArmadaExecDecorator.decorate(invoker, decorator, existingDecorator);
 
     invoker.withCallback(new BodyExecutionCallback() {
       @Override
       public void onSuccess(StepContext context, Object result) {
+        closeDecorator(decorator);
         try {
           TaskListener listener = context.get(TaskListener.class);
           if (listener != null) {
@@ -90,6 +97,7 @@ public class ArmadaContainerStepExecution extends StepExecution {
 
       @Override
       public void onFailure(StepContext context, Throwable t) {
+        closeDecorator(decorator);
         try {
           TaskListener listener = context.get(TaskListener.class);
           if (listener != null) {
@@ -108,4 +116,18 @@ public class ArmadaContainerStepExecution extends StepExecution {
 
     return false; // Async execution
   }
+
+  /**
+   * Closes the decorator in the background, as removing its state from the container runs an
+   * exec.
+   */
+  private static void closeDecorator(ArmadaExecDecorator decorator) {
+    Computer.threadPoolForRemoting.submit(() -> {
+      try {
+        decorator.close();
+      } catch (IOException e) {
+        LOGGER.log(Level.FINE, "Failed to close decorator", e);
+      }
+    });
+  }
 }
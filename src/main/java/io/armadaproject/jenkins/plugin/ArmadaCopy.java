@@ -0,0 +1,507 @@
+package io.armadaproject.jenkins.plugin;
+
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.Proc;
+import hudson.model.Computer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+
+/**
+ * Copies files between the workspace and a container as gzipped tar archives streamed over an
+ * exec, without holding an archive in memory.
+ * <p>
+ * An upload is written to stdin in chunks, each preceded by its length on a line and a 0 length
+ * ending the archive, since an exec websocket cannot close stdin on its own. The container reads
+ * each chunk with a single {@code dd} block of its length and {@code iflag=fullblock}, which never
+ * reads past the chunk, so the lengths that follow are left for the shell. Utilities reading ahead,
+ * like the {@code head} of busybox, would consume them. Where {@code dd} lacks
+ * {@code iflag=fullblock}, chunks are read one byte at a time instead. A download is read
+ * from stdout through a bounded queue of chunks, so a slow workspace holds back the websocket
+ * instead of growing the heap. Either way the container prints the SHA-256 of the archive on
+ * stderr after {@link #CHECKSUM_MARKER}, checked against the bytes sent or received.
+ */
+class ArmadaCopy {
+
+  private static final Logger LOGGER = Logger.getLogger(ArmadaCopy.class.getName());
+  static final String CHECKSUM_MARKER = "armada-copy-sha256 ";
+  private static final Pattern CHECKSUM = Pattern.compile(
+      Pattern.quote(CHECKSUM_MARKER) + "([0-9a-f]{64})");
+
+  /**
+   * Starts a command in a container, connecting its standard streams directly.
+   */
+  interface Exec {
+
+    /**
+     * @param command the command and its arguments
+     * @param stdout  where to write the output of the command
+     * @param stderr  where to write the errors of the command
+     * @return the running command, whose stdin is the input of the command
+     */
+    Proc start(String[] command, OutputStream stdout, OutputStream stderr) throws IOException;
+  }
+
+  private ArmadaCopy() {
+  }
+
+  /**
+   * Returns the script extracting a chunked archive read from stdin into a directory of the
+   * container.
+   *
+   * @param workingDirectory the directory relative paths are resolved from
+   * @param directory        the directory to extract into, created if missing
+   */
+  static String uploadScript(String workingDirectory, String directory) {
+    String newline = ArmadaPluginConfig.UNIX_NEWLINE;
+    return "cd " + quote(workingDirectory) + " || exit 1" + newline
+        + "d=" + quote(directory) + newline
+        + "mkdir -p \"$d\" || exit 1" + newline
+        + checksumStart()
+        // A block may be read from a pipe in parts, which only iflag=fullblock waits for
+        + "if dd if=/dev/null of=/dev/null iflag=fullblock 2>/dev/null; then" + newline
+        + "  chunk() { dd bs=\"$1\" count=1 iflag=fullblock 2>/dev/null; }" + newline
+        + "else" + newline
+        + "  chunk() { dd bs=1 count=\"$1\" 2>/dev/null; }" + newline
+        + "fi" + newline
+        + "while read n && [ \"$n\" -gt 0 ]; do chunk \"$n\"; done"
+        + " | tee \"$p\""
+        // tar may stop before the end of the gzip stream, which must still reach the checksum
+        + " | { tar xzf - -C \"$d\"; s=$?; cat > /dev/null; exit $s; }" + newline
+        + "s=$?" + newline
+        + checksumEnd();
+  }
+
+  /**
+   * Returns the script writing a file or directory of the container to stdout as an archive
+   * holding it under its own name.
+   *
+   * @param workingDirectory the directory relative paths are resolved from
+   * @param path             the file or directory to archive
+   */
+  static String downloadScript(String workingDirectory, String path) {
+    String newline = ArmadaPluginConfig.UNIX_NEWLINE;
+    String trimmed = path.length() > 1 && path.endsWith("/")
+        ? path.substring(0, path.length() - 1) : path;
+    int slash = trimmed.lastIndexOf('/');
+    String parent = slash < 0 ? "." : slash == 0 ? "/" : trimmed.substring(0, slash);
+    String name = slash < 0 ? trimmed : trimmed.substring(slash + 1);
+    return "cd " + quote(workingDirectory) + " || exit 1" + newline
+        + checksumStart()
+        + "{ tar czf - -C " + quote(parent) + " " + quote(name) + "; echo $? > \"$p.tar\"; }"
+        + " | tee \"$p\"" + newline
+        + "s=$(cat \"$p.tar\" 2>/dev/null); rm -f \"$p.tar\"" + newline
+        + checksumEnd();
+  }
+
+  /**
+   * Starts hashing what is written to the fifo {@code $p} in the background.
+   */
+  private static String checksumStart() {
+    String newline = ArmadaPluginConfig.UNIX_NEWLINE;
+    return "p=${TMPDIR:-/tmp}/.armada-copy-$$" + newline
+        + "mkfifo \"$p\" || exit 1" + newline
+        + "sha256sum < \"$p\" > \"$p.sum\" &" + newline;
+  }
+
+  /**
+   * Waits for the hash, prints it on stderr and exits with the status {@code $s} of the transfer.
+   */
+  private static String checksumEnd() {
+    String newline = ArmadaPluginConfig.UNIX_NEWLINE;
+    return "wait" + newline
+        + "echo \"" + CHECKSUM_MARKER + "$(cut -d ' ' -f 1 \"$p.sum\" 2>/dev/null)\" >&2" + newline
+        + "rm -f \"$p\" \"$p.sum\"" + newline
+        + "exit \"${s:-1}\"" + newline;
+  }
+
+  /**
+   * Returns a file of the workspace, refusing paths that resolve outside of it.
+   *
+   * @param workspace the workspace
+   * @param path      the path relative to the workspace
+   */
+  static FilePath child(FilePath workspace, String path) throws AbortException {
+    if (path.startsWith("/") || path.startsWith("\\") || path.matches("[A-Za-z]:.*")) {
+      throw new AbortException(String.format("Path '%s' is not relative to the workspace", path));
+    }
+    int depth = 0;
+    for (String segment : path.split("[/\\\\]")) {
+      if (segment.equals("..")) {
+        depth--;
+      } else if (!segment.isEmpty() && !segment.equals(".")) {
+        depth++;
+      }
+      if (depth < 0) {
+        throw new AbortException(String.format("Path '%s' is outside of the workspace", path));
+      }
+    }
+    return workspace.child(path);
+  }
+
+  /**
+   * Copies a file or directory of the workspace into a directory of a container.
+   *
+   * @param exec             starts commands in the container
+   * @param source           the file or directory to copy
+   * @param workingDirectory the directory relative container paths are resolved from
+   * @param directory        the container directory to copy into
+   * @return the size and checksum of the archive sent
+   */
+  static Result upload(Exec exec, FilePath source, String workingDirectory, String directory)
+      throws IOException, InterruptedException {
+    if (!source.exists()) {
+      throw new IOException(String.format("Nothing to copy at '%s'", source.getRemote()));
+    }
+    FilePath parent = source.getParent();
+    String glob = source.isDirectory() ? source.getName() + "/**" : source.getName();
+    long start = System.nanoTime();
+    ArmadaExecDecorator.TailOutputStream stderr =
+        new ArmadaExecDecorator.TailOutputStream(ArmadaPluginConfig.EXEC_DIAGNOSTICS_BUFFER_SIZE);
+    Proc proc = exec.start(new String[]{ArmadaPluginConfig.DEFAULT_SHELL, "-c",
+        uploadScript(workingDirectory, directory)}, OutputStream.nullOutputStream(), stderr);
+    MessageDigest digest = sha256();
+    CountingOutputStream counted;
+    try {
+      ChunkedOutputStream chunked = new ChunkedOutputStream(proc.getStdin(),
+          ArmadaPluginConfig.COPY_CHUNK_SIZE);
+      counted = new CountingOutputStream(chunked);
+      try (GZIPOutputStream gzip = new GZIPOutputStream(new DigestOutputStream(counted, digest),
+          ArmadaPluginConfig.COPY_CHUNK_SIZE)) {
+        (parent != null ? parent : source).tar(gzip, glob);
+      }
+    } catch (IOException e) {
+      proc.kill();
+      throw new IOException(String.format("Failed to copy '%s' to container: %s",
+          source.getRemote(), stderr.toString().trim()), e);
+    } catch (RuntimeException | InterruptedException e) {
+      proc.kill();
+      throw e;
+    }
+    int exitCode = proc.join();
+    return verify("to", directory, exitCode, stderr, digest, counted.getByteCount(), start);
+  }
+
+  /**
+   * Copies a file or directory of a container into a directory of the workspace.
+   *
+   * @param exec             starts commands in the container
+   * @param path             the container file or directory to copy
+   * @param workingDirectory the directory relative container paths are resolved from
+   * @param target           the workspace directory to copy into
+   * @return the size and checksum of the archive received
+   */
+  static Result download(Exec exec, String path, String workingDirectory, FilePath target)
+      throws IOException, InterruptedException {
+    long start = System.nanoTime();
+    ArmadaExecDecorator.TailOutputStream stderr =
+        new ArmadaExecDecorator.TailOutputStream(ArmadaPluginConfig.EXEC_DIAGNOSTICS_BUFFER_SIZE);
+    ChunkPipe pipe = new ChunkPipe(ArmadaPluginConfig.COPY_CHUNK_SIZE,
+        ArmadaPluginConfig.COPY_BUFFERED_CHUNKS);
+    Proc proc = exec.start(new String[]{ArmadaPluginConfig.DEFAULT_SHELL, "-c",
+        downloadScript(workingDirectory, path)}, pipe.output, stderr);
+    // The end of the archive is only known once the exec is over
+    Future<Integer> exit = Computer.threadPoolForRemoting.submit(() -> {
+      try {
+        return proc.join();
+      } finally {
+        pipe.output.close();
+      }
+    });
+    MessageDigest digest = sha256();
+    CountingInputStream counted = new CountingInputStream(pipe.input);
+    try (DigestInputStream in = new DigestInputStream(counted, digest)) {
+      target.mkdirs();
+      target.untarFrom(CloseShieldInputStream.wrap(in), FilePath.TarCompression.GZIP);
+      // Whatever follows the end of the tar entries is part of the checksum
+      in.transferTo(OutputStream.nullOutputStream());
+    } catch (IOException e) {
+      abort(pipe, proc, exit);
+      throw new IOException(String.format("Failed to copy '%s' from container: %s", path,
+          stderr.toString().trim()), e);
+    } catch (RuntimeException | InterruptedException e) {
+      abort(pipe, proc, exit);
+      throw e;
+    }
+    int exitCode;
+    try {
+      exitCode = exit.get();
+    } catch (ExecutionException e) {
+      throw new IOException(String.format("Failed to copy '%s' from container", path),
+          e.getCause());
+    }
+    return verify("from", path, exitCode, stderr, digest, counted.getByteCount(), start);
+  }
+
+  private static void abort(ChunkPipe pipe, Proc proc, Future<Integer> exit)
+      throws IOException, InterruptedException {
+    pipe.discard();
+    exit.cancel(true);
+    proc.kill();
+  }
+
+  private static Result verify(String direction, String path, int exitCode,
+      ArmadaExecDecorator.TailOutputStream stderr, MessageDigest digest, long bytes, long start)
+      throws IOException {
+    String errors = stderr.toString();
+    if (exitCode != 0) {
+      throw new IOException(String.format("Copying '%s' %s container failed with exit code %d: %s",
+          path, direction, exitCode, errors.trim()));
+    }
+    String expected = parseChecksum(errors);
+    String actual = HexFormat.of().formatHex(digest.digest());
+    if (expected == null) {
+      throw new IOException(String.format(
+          "Could not verify the copy of '%s' %s container, is sha256sum installed? %s", path,
+          direction, errors.trim()));
+    }
+    if (!expected.equals(actual)) {
+      throw new IOException(String.format(
+          "Checksum mismatch copying '%s' %s container: expected %s but was %s", path, direction,
+          expected, actual));
+    }
+    long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    LOGGER.log(Level.FINE, "Copied {0} bytes {1} container in {2} ms",
+        new Object[]{bytes, direction, millis});
+    return new Result(bytes, millis, actual);
+  }
+
+  /**
+   * @return the checksum printed by a copy script, or null if there is none
+   */
+  static String parseChecksum(String stderr) {
+    Matcher matcher = CHECKSUM.matcher(stderr);
+    String checksum = null;
+    while (matcher.find()) {
+      checksum = matcher.group(1);
+    }
+    return checksum;
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String quote(String value) {
+    return "'" + value.replace("'", "'\\''") + "'";
+  }
+
+  /**
+   * Size, duration and checksum of a copied archive.
+   */
+  static final class Result {
+
+    final long bytes;
+    final long millis;
+    final String sha256;
+
+    Result(long bytes, long millis, String sha256) {
+      this.bytes = bytes;
+      this.millis = millis;
+      this.sha256 = sha256;
+    }
+
+    /**
+     * @return the bytes copied per second
+     */
+    long getBytesPerSecond() {
+      return bytes * 1000 / Math.max(millis, 1);
+    }
+  }
+
+  /**
+   * OutputStream writing what it is given in chunks of at most a given size, each preceded by its
+   * length on a line and flushed, and a 0 length once closed. The underlying stream is left open.
+   */
+  static class ChunkedOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int count;
+    private boolean closed;
+
+    ChunkedOutputStream(OutputStream out, int chunkSize) {
+      this.out = out;
+      this.buffer = new byte[Math.max(chunkSize, 1)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (count == buffer.length) {
+        writeChunk();
+      }
+      buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      Objects.checkFromIndexSize(off, len, b.length);
+      while (len > 0) {
+        if (count == buffer.length) {
+          writeChunk();
+        }
+        int n = Math.min(len, buffer.length - count);
+        System.arraycopy(b, off, buffer, count, n);
+        count += n;
+        off += n;
+        len -= n;
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      writeChunk();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!closed) {
+        closed = true;
+        writeChunk();
+        out.write(("0" + ArmadaPluginConfig.UNIX_NEWLINE).getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+      }
+    }
+
+    private void writeChunk() throws IOException {
+      if (count > 0) {
+        out.write((count + ArmadaPluginConfig.UNIX_NEWLINE).getBytes(StandardCharsets.US_ASCII));
+        out.write(buffer, 0, count);
+        out.flush();
+        count = 0;
+      }
+    }
+  }
+
+  /**
+   * Pipe between the thread receiving the output of an exec and the thread reading it, holding at
+   * most a given number of chunks. Writes block while the pipe is full.
+   */
+  static class ChunkPipe {
+
+    private static final byte[] END = new byte[0];
+
+    private final BlockingQueue<byte[]> chunks;
+    private final int chunkSize;
+    private volatile boolean discarded;
+    final OutputStream output = new Output();
+    final InputStream input = new Input();
+
+    ChunkPipe(int chunkSize, int capacity) {
+      this.chunkSize = Math.max(chunkSize, 1);
+      this.chunks = new ArrayBlockingQueue<>(Math.max(capacity, 1));
+    }
+
+    /**
+     * Stops keeping what is written, once the reader gave up.
+     */
+    void discard() {
+      discarded = true;
+      chunks.clear();
+    }
+
+    private void put(byte[] chunk) throws InterruptedIOException {
+      try {
+        while (!discarded) {
+          if (chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+            return;
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while copying from container");
+      }
+    }
+
+    private final class Output extends OutputStream {
+
+      private boolean closed;
+
+      @Override
+      public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        for (int end = off + len; off < end; off += chunkSize) {
+          put(Arrays.copyOfRange(b, off, Math.min(off + chunkSize, end)));
+        }
+      }
+
+      @Override
+      public synchronized void close() throws IOException {
+        if (!closed) {
+          closed = true;
+          put(END);
+        }
+      }
+    }
+
+    private final class Input extends InputStream {
+
+      private byte[] chunk = new byte[0];
+      private int position;
+      private boolean ended;
+
+      @Override
+      public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) {
+          return 0;
+        }
+        while (position == chunk.length) {
+          if (ended) {
+            return -1;
+          }
+          try {
+            chunk = chunks.take();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while copying from container");
+          }
+          position = 0;
+          ended = chunk == END;
+        }
+        int n = Math.min(len, chunk.length - position);
+        System.arraycopy(chunk, position, b, off, n);
+        position += n;
+        return n;
+      }
+    }
+  }
+}
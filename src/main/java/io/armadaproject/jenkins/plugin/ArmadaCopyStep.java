@@ -0,0 +1,86 @@
+package io.armadaproject.jenkins.plugin;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import java.util.Set;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * Pipeline step copying a file or directory between the workspace and a container of an Armada
+ * pod, as a gzipped tar archive streamed over an exec. Usage:
+ * {@code armadaCopy(container: 'maven', from: 'target/surefire-reports', to: 'reports')} copies
+ * from the container into a workspace directory, and with {@code upload: true} from the workspace
+ * into a container directory. Relative container paths are resolved from the workspace. The step
+ * returns the SHA-256 of the archive, verified on both ends, see {@link ArmadaCopy}.
+ */
+public class ArmadaCopyStep extends Step {
+
+  private final String container;
+  private final String from;
+  private final String to;
+  private boolean upload;
+
+  @DataBoundConstructor
+  public ArmadaCopyStep(String container, String from, String to) {
+    this.container = container;
+    this.from = from;
+    this.to = to;
+  }
+
+  public String getContainer() {
+    return container;
+  }
+
+  public String getFrom() {
+    return from;
+  }
+
+  public String getTo() {
+    return to;
+  }
+
+  public boolean isUpload() {
+    return upload;
+  }
+
+  /**
+   * Sets whether to copy from the workspace into the container, instead of the other way around.
+   */
+  @DataBoundSetter
+  public void setUpload(boolean upload) {
+    this.upload = upload;
+  }
+
+  @Override
+  public StepExecution start(StepContext context) throws Exception {
+    return new ArmadaCopyStepExecution(context, container, from, to, upload);
+  }
+
+  @Extension
+  public static class DescriptorImpl extends StepDescriptor {
+
+    @Override
+    public String getFunctionName() {
+      return "armadaCopy";
+    }
+
+    @Override
+    @NonNull
+    public String getDisplayName() {
+      return "Copy files between the workspace and an Armada container";
+    }
+
+    @Override
+    public Set<? extends Class<?>> getRequiredContext() {
+      return Set.of(TaskListener.class, Node.class, FilePath.class);
+    }
+  }
+}
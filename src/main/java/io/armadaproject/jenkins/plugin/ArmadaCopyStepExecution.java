@@ -0,0 +1,76 @@
+package io.armadaproject.jenkins.plugin;
+
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.Functions;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import java.util.Map;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.SynchronousNonBlockingStepExecution;
+
+/**
+ * Execution for ArmadaCopyStep. Streams the archive over an exec of the container, see
+ * {@link ArmadaCopy}.
+ */
+public class ArmadaCopyStepExecution extends SynchronousNonBlockingStepExecution<String> {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String containerName;
+  private final String from;
+  private final String to;
+  private final boolean upload;
+
+  ArmadaCopyStepExecution(StepContext context, String containerName, String from, String to,
+      boolean upload) {
+    super(context);
+    this.containerName = containerName;
+    this.from = from;
+    this.to = to;
+    this.upload = upload;
+  }
+
+  @Override
+  protected String run() throws Exception {
+    TaskListener listener = getContext().get(TaskListener.class);
+    Node node = getContext().get(Node.class);
+    if (!(node instanceof ArmadaSlave)) {
+      throw new AbortException(String.format("Not running on an Armada agent: %s",
+          node != null ? node.getNodeName() : null));
+    }
+    if (containerName == null || from == null || to == null) {
+      throw new AbortException("armadaCopy requires a container, a 'from' and a 'to' path");
+    }
+    FilePath workspace = getContext().get(FilePath.class);
+    String direction = upload ? "upload" : "download";
+    listener.getLogger().println(upload
+        ? "Copying " + from + " into " + to + " of container " + containerName
+        : "Copying " + from + " of container " + containerName + " into " + to);
+
+    try (ArmadaNodeContext nodeContext = new ArmadaNodeContext(getContext())) {
+      ArmadaExecDecorator decorator = new ArmadaExecDecorator(containerName);
+      decorator.setNodeContext(nodeContext);
+      ArmadaCopy.Result result;
+      try {
+        result = upload
+            ? ArmadaCopy.upload(decorator::execCommand, ArmadaCopy.child(workspace, from),
+                workspace.getRemote(), to)
+            : ArmadaCopy.download(decorator::execCommand, from, workspace.getRemote(),
+                ArmadaCopy.child(workspace, to));
+      } finally {
+        decorator.close();
+      }
+
+      Map<String, String> tags = ArmadaMetrics.cloudTags(nodeContext.getCloudName());
+      tags.put(ArmadaMetrics.TAG_DIRECTION, direction);
+      ArmadaMetrics.get().counter(ArmadaMetrics.COPY_BYTES, tags).add(result.bytes);
+      ArmadaMetrics.get().histogram(ArmadaMetrics.COPY_DURATION, tags).record(result.millis);
+      listener.getLogger().println("Copied " + Functions.humanReadableByteSize(result.bytes)
+          + " compressed in " + result.millis + " ms ("
+          + Functions.humanReadableByteSize(result.getBytesPerSecond()) + "/s), sha256 "
+          + result.sha256);
+      return result.sha256;
+    }
+  }
+}
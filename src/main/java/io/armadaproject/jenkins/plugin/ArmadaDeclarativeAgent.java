@@ -18,6 +18,7 @@ public class ArmadaDeclarativeAgent extends DeclarativeAgent<ArmadaDeclarativeAg
 
   private String yaml;
   private String cloud;
+  private int maxConcurrentExecs;
 
   @DataBoundConstructor
   public ArmadaDeclarativeAgent() {
@@ -41,6 +42,15 @@ public class ArmadaDeclarativeAgent extends DeclarativeAgent<ArmadaDeclarativeAg
     this.cloud = Util.fixEmpty(cloud);
   }
 
+  public int getMaxConcurrentExecs() {
+    return maxConcurrentExecs;
+  }
+
+  @DataBoundSetter
+  public void setMaxConcurrentExecs(int maxConcurrentExecs) {
+    this.maxConcurrentExecs = Math.max(maxConcurrentExecs, 0);
+  }
+
   @Extension
   @Symbol("armada")
   public static class DescriptorImpl extends DeclarativeAgentDescriptor<ArmadaDeclarativeAgent> {
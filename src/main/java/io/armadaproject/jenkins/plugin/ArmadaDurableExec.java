@@ -0,0 +1,116 @@
+package io.armadaproject.jenkins.plugin;
+
+import java.util.UUID;
+
+/**
+ * Shell scripts of a command run in durable mode. Instead of running in the exec shell, the command
+ * is started in the background with its output redirected to a log file, and writes its PID and
+ * exit code next to it, in a control directory on the workspace volume. The process does not
+ * depend on the websocket that started it, so the controller follows the log with separate execs
+ * and can re-attach from the last byte it received whenever a websocket drops.
+ * <p>
+ * A follow exec streams the log on stdout and exits with the exit code of the command once it is
+ * written. If the process is gone without an exit code, for example because the container
+ * restarted, it prints {@link #PROCESS_LOST_MARKER} on stderr instead.
+ * <p>
+ * Durable mode only applies to launches that are not durable tasks, see
+ * {@link ArmadaExecDecorator#isDurableLaunch}, and only covers the websocket dropping: re-attaching
+ * after a controller restart is not supported, as the control directory is not persisted with the
+ * build.
+ */
+class ArmadaDurableExec {
+
+  static final String PROCESS_LOST_MARKER = "armada: durable process lost";
+
+  private final String id = UUID.randomUUID().toString().replace("-", "");
+  private volatile String directory;
+
+  /**
+   * Sets where the workspace volume is mounted in the container. The control directory is only
+   * known once the pod has been looked up, and is the same if the command is launched again in the
+   * same pod.
+   */
+  void setWorkspaceRoot(String workspaceRoot) {
+    String root = workspaceRoot.endsWith("/") ? workspaceRoot : workspaceRoot + "/";
+    directory = root + ArmadaPluginConfig.DURABLE_EXEC_DIRECTORY + "/" + id;
+  }
+
+  /**
+   * @return the control directory holding the PID, exit code and log files
+   */
+  String getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Returns the lines starting a command line in the background. The shell running them returns
+   * as soon as the command is started.
+   *
+   * @param commandLine the command and its quoted arguments, on a single line
+   * @return the script starting the command
+   */
+  String launchScript(String commandLine) {
+    String dir = quote(directory);
+    String newline = ArmadaPluginConfig.UNIX_NEWLINE;
+    return "mkdir -p " + dir + " || exit 1" + newline
+        // SIGHUP is ignored so that the command survives the exec session ending
+        + "( trap '' HUP; " + commandLine.trim() + " < /dev/null > " + dir + "/log 2>&1 &"
+        + newline
+        + "echo $! > " + dir + "/pid; wait $!; echo $? > " + dir + "/exit.tmp; mv -f " + dir
+        + "/exit.tmp " + dir + "/exit ) > /dev/null 2>&1 &" + newline;
+  }
+
+  /**
+   * Returns the script streaming the log from the given offset until the command exits. The shell
+   * running it exits with the exit code of the command.
+   *
+   * @param offset the number of log bytes already received
+   * @return the script following the command
+   */
+  String followScript(long offset) {
+    String newline = ArmadaPluginConfig.UNIX_NEWLINE;
+    return "d=" + quote(directory) + "; n=" + offset + newline
+        + "while :; do" + newline
+        + "  if [ -f \"$d/exit\" ]; then" + newline
+        + "    tail -c +$((n + 1)) \"$d/log\" 2>/dev/null; exit \"$(cat \"$d/exit\")\"" + newline
+        + "  fi" + newline
+        + "  if [ -f \"$d/log\" ]; then" + newline
+        + "    s=$(($(wc -c < \"$d/log\")))" + newline
+        + "    if [ \"$s\" -gt \"$n\" ]; then" + newline
+        + "      tail -c +$((n + 1)) \"$d/log\" | head -c $((s - n)); n=$s" + newline
+        + "    fi" + newline
+        + "  fi" + newline
+        // The exit file is written right after the process ends, so look again before giving up
+        + "  if ! { [ -f \"$d/pid\" ] && kill -0 \"$(cat \"$d/pid\")\" 2>/dev/null; }"
+        + " && [ ! -f \"$d/exit\" ]; then" + newline
+        + "    sleep 1; [ -f \"$d/exit\" ] || { echo '" + PROCESS_LOST_MARKER + "' >&2; exit 1; }"
+        + newline
+        + "  else" + newline
+        + "    sleep " + ArmadaPluginConfig.DURABLE_EXEC_POLL_INTERVAL + newline
+        + "  fi" + newline
+        + "done" + newline;
+  }
+
+  /**
+   * @return the script stopping the command along with the processes it started
+   */
+  String killScript() {
+    String newline = ArmadaPluginConfig.UNIX_NEWLINE;
+    return ArmadaExecDecorator.TREE_FUNCTION + newline
+        + "[ -f " + quote(directory) + "/pid ] && kill $(tree \"$(cat " + quote(directory)
+        + "/pid)\") 2>/dev/null" + newline
+        + ArmadaPluginConfig.EXIT + newline;
+  }
+
+  /**
+   * @return the script removing the control directory
+   */
+  String cleanupScript() {
+    return "rm -rf " + quote(directory) + ArmadaPluginConfig.UNIX_NEWLINE + ArmadaPluginConfig.EXIT
+        + ArmadaPluginConfig.UNIX_NEWLINE;
+  }
+
+  private static String quote(String value) {
+    return "'" + value.replace("'", "'\\''") + "'";
+  }
+}
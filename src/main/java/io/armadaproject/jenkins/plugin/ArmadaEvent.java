@@ -0,0 +1,211 @@
+package io.armadaproject.jenkins.plugin;
+
+import api.EventOuterClass.ContainerStatus;
+import api.EventOuterClass.EventMessage;
+import api.EventOuterClass.JobCancelledEvent;
+import api.EventOuterClass.JobFailedEvent;
+import api.EventOuterClass.JobLeasedEvent;
+import api.EventOuterClass.JobPendingEvent;
+import api.EventOuterClass.JobPreemptedEvent;
+import api.EventOuterClass.JobQueuedEvent;
+import api.EventOuterClass.JobRunningEvent;
+import api.EventOuterClass.JobSucceededEvent;
+import com.google.protobuf.Timestamp;
+import java.time.Instant;
+import javax.annotation.CheckForNull;
+
+/**
+ * Typed view over an Armada {@link EventMessage}. Covers the job lifecycle events the plugin cares
+ * about so that a single event stream per job set can serve the launcher, node contexts and any
+ * other subscriber without each of them unpacking the protobuf oneof.
+ */
+public final class ArmadaEvent {
+
+  /**
+   * Lifecycle event types carried by the event stream, in the order a job normally goes through
+   * them.
+   */
+  public enum Type {
+    QUEUED,
+    LEASED,
+    PENDING,
+    RUNNING,
+    FAILED,
+    PREEMPTED,
+    CANCELLED,
+    SUCCEEDED;
+
+    /**
+     * @return true if no further lifecycle events are expected for the job after this one
+     */
+    public boolean isTerminal() {
+      return this == FAILED || this == PREEMPTED || this == CANCELLED || this == SUCCEEDED;
+    }
+  }
+
+  private final Type type;
+  private final String jobId;
+  private final String jobSetId;
+  private final Instant created;
+  private final String clusterId;
+  private final String podName;
+  private final String podNamespace;
+  private final String reason;
+  private final EventMessage message;
+
+  private ArmadaEvent(Type type, String jobId, String jobSetId, Instant created, String clusterId,
+      String podName, String podNamespace, String reason, EventMessage message) {
+    this.type = type;
+    this.jobId = jobId;
+    this.jobSetId = jobSetId;
+    this.created = created;
+    this.clusterId = clusterId;
+    this.podName = podName;
+    this.podNamespace = podNamespace;
+    this.reason = reason;
+    this.message = message;
+  }
+
+  /**
+   * Converts an Armada event message into a typed event.
+   *
+   * @param message the message received from the event stream
+   * @return the typed event, or null if the message carries an event type the plugin ignores
+   */
+  @CheckForNull
+  public static ArmadaEvent from(EventMessage message) {
+    if (message.hasQueued()) {
+      JobQueuedEvent event = message.getQueued();
+      return new ArmadaEvent(Type.QUEUED, event.getJobId(), event.getJobSetId(),
+          toInstant(event.getCreated()), null, null, null, null, message);
+    }
+    if (message.hasLeased()) {
+      JobLeasedEvent event = message.getLeased();
+      return new ArmadaEvent(Type.LEASED, event.getJobId(), event.getJobSetId(),
+          toInstant(event.getCreated()), event.getClusterId(), null, null, null, message);
+    }
+    if (message.hasPending()) {
+      JobPendingEvent event = message.getPending();
+      return new ArmadaEvent(Type.PENDING, event.getJobId(), event.getJobSetId(),
+          toInstant(event.getCreated()), event.getClusterId(), event.getPodName(),
+          event.getPodNamespace(), null, message);
+    }
+    if (message.hasRunning()) {
+      JobRunningEvent event = message.getRunning();
+      return new ArmadaEvent(Type.RUNNING, event.getJobId(), event.getJobSetId(),
+          toInstant(event.getCreated()), event.getClusterId(), event.getPodName(),
+          event.getPodNamespace(), null, message);
+    }
+    if (message.hasFailed()) {
+      JobFailedEvent event = message.getFailed();
+      return new ArmadaEvent(Type.FAILED, event.getJobId(), event.getJobSetId(),
+          toInstant(event.getCreated()), event.getClusterId(), event.getPodName(),
+          event.getPodNamespace(), describeFailure(event), message);
+    }
+    if (message.hasPreempted()) {
+      JobPreemptedEvent event = message.getPreempted();
+      return new ArmadaEvent(Type.PREEMPTED, event.getJobId(), event.getJobSetId(),
+          toInstant(event.getCreated()), event.getClusterId(), null, null,
+          "Job was preempted", message);
+    }
+    if (message.hasCancelled()) {
+      JobCancelledEvent event = message.getCancelled();
+      return new ArmadaEvent(Type.CANCELLED, event.getJobId(), event.getJobSetId(),
+          toInstant(event.getCreated()), null, null, null,
+          event.getReason().isEmpty() ? "Job was cancelled" : event.getReason(), message);
+    }
+    if (message.hasSucceeded()) {
+      JobSucceededEvent event = message.getSucceeded();
+      return new ArmadaEvent(Type.SUCCEEDED, event.getJobId(), event.getJobSetId(),
+          toInstant(event.getCreated()), event.getClusterId(), event.getPodName(),
+          event.getPodNamespace(), null, message);
+    }
+    return null;
+  }
+
+  /**
+   * Builds a single line failure description from the failure reason and the container statuses
+   * reported with it.
+   */
+  private static String describeFailure(JobFailedEvent event) {
+    StringBuilder description = new StringBuilder(
+        event.getReason().isEmpty() ? "Job failed" : event.getReason());
+    for (ContainerStatus status : event.getContainerStatusesList()) {
+      if (status.getReason().isEmpty() && status.getMessage().isEmpty()) {
+        continue;
+      }
+      description.append("; container ").append(status.getName()).append(": ")
+          .append(status.getReason().isEmpty() ? status.getMessage() : status.getReason());
+    }
+    return description.toString();
+  }
+
+  @CheckForNull
+  private static Instant toInstant(Timestamp timestamp) {
+    if (timestamp == null || (timestamp.getSeconds() == 0 && timestamp.getNanos() == 0)) {
+      return null;
+    }
+    return Instant.ofEpochSecond(timestamp.getSeconds(), timestamp.getNanos());
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public String getJobId() {
+    return jobId;
+  }
+
+  public String getJobSetId() {
+    return jobSetId;
+  }
+
+  /**
+   * @return the time Armada created the event, or null if the event carries no timestamp
+   */
+  @CheckForNull
+  public Instant getCreated() {
+    return created;
+  }
+
+  /**
+   * @return the cluster the job was leased to, or null for events emitted before leasing
+   */
+  @CheckForNull
+  public String getClusterId() {
+    return clusterId;
+  }
+
+  @CheckForNull
+  public String getPodName() {
+    return podName;
+  }
+
+  @CheckForNull
+  public String getPodNamespace() {
+    return podNamespace;
+  }
+
+  /**
+   * @return a human readable reason for terminal events, or null for progress events
+   */
+  @CheckForNull
+  public String getReason() {
+    return reason;
+  }
+
+  /**
+   * @return the raw message this event was created from
+   */
+  public EventMessage getMessage() {
+    return message;
+  }
+
+  @Override
+  public String toString() {
+    return type + "[jobId=" + jobId + ", jobSetId=" + jobSetId
+        + (clusterId != null ? ", clusterId=" + clusterId : "")
+        + (podName != null ? ", pod=" + podNamespace + "/" + podName : "")
+        + (reason != null ? ", reason=" + reason : "") + "]";
+  }
+}
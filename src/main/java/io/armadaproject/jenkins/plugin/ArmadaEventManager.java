@@ -1,28 +1,118 @@
 package io.armadaproject.jenkins.plugin;
 
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
+import javax.annotation.CheckForNull;
 
 /**
  * Event manager for subscribing to and publishing Armada job events. Uses a pub/sub pattern where
- * subscribers can register for events on specific job set IDs.
- *
- * @param <T> the type of event to manage (e.g., JobRunningEvent)
+ * subscribers can register for events on specific job set IDs, optionally restricted to a set of
+ * {@link ArmadaEvent.Type event types}. Subscribers interested in a single job subscribe to it
+ * alone, so that publishing an event only goes through the subscribers of its job and of its whole
+ * job set, however many agents wait on other jobs of the same job set.
+ * <p>
+ * The latest event of each type is retained for the jobs registered with {@link #trackJob(String)},
+ * so that subscribers attaching after the fact (e.g. a container step started long after the agent
+ * came online) can find out about a job without replaying the whole job set stream. The events of
+ * other jobs are retained too, for the {@link ArmadaPluginConfig#EVENT_RETAINED_JOBS} jobs seen
+ * last, since a job set stream shared with other jobs may have gone past the events of a job
+ * nobody tracked yet, such as the job of an agent reconnecting after a controller restart.
+ * Retention ends with the first terminal event of the job or when {@link #forgetJob(String)} is
+ * called, whichever comes first; events arriving afterwards are not retained again.
  */
-public class ArmadaEventManager<T> {
+public class ArmadaEventManager {
 
-  private final ConcurrentHashMap<String, CopyOnWriteArrayList<Consumer<T>>> subscribers =
+  private final ConcurrentHashMap<SubscriptionKey, CopyOnWriteArrayList<Subscription>> subscribers =
       new ConcurrentHashMap<>();
+  /**
+   * Stands for a forgotten job among the recent events, whose later events are not retained.
+   */
+  private static final Map<ArmadaEvent.Type, ArmadaEvent> FORGOTTEN = Collections.emptyMap();
+
+  private final ConcurrentHashMap<String, Map<ArmadaEvent.Type, ArmadaEvent>> latestEvents =
+      new ConcurrentHashMap<>();
+  /**
+   * Latest events of the jobs that are not tracked, the least recently published evicted first.
+   */
+  private final Map<String, Map<ArmadaEvent.Type, ArmadaEvent>> recentEvents;
+
+  public ArmadaEventManager() {
+    this(ArmadaPluginConfig.EVENT_RETAINED_JOBS);
+  }
+
+  /**
+   * @param retainedJobs how many jobs that are not tracked have their latest events retained
+   */
+  ArmadaEventManager(int retainedJobs) {
+    recentEvents = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(
+          Map.Entry<String, Map<ArmadaEvent.Type, ArmadaEvent>> eldest) {
+        return size() > retainedJobs;
+      }
+    });
+  }
+
+  private static Map<ArmadaEvent.Type, ArmadaEvent> newEvents() {
+    return Collections.synchronizedMap(new EnumMap<>(ArmadaEvent.Type.class));
+  }
 
   /**
-   * Subscribe to events for a specific job set ID.
+   * Subscribe to all events for a specific job set ID.
    *
    * @param jobSetId   the job set ID to subscribe to
    * @param subscriber the consumer that will be called when an event is published
    */
-  public void subscribe(String jobSetId, Consumer<T> subscriber) {
-    subscribers.computeIfAbsent(jobSetId, k -> new CopyOnWriteArrayList<>()).add(subscriber);
+  public void subscribe(String jobSetId, Consumer<ArmadaEvent> subscriber) {
+    subscribe(jobSetId, EnumSet.allOf(ArmadaEvent.Type.class), subscriber);
+  }
+
+  /**
+   * Subscribe to events of the given types for a specific job set ID.
+   *
+   * @param jobSetId   the job set ID to subscribe to
+   * @param types      the event types the subscriber is interested in
+   * @param subscriber the consumer that will be called when a matching event is published
+   */
+  public void subscribe(String jobSetId, Set<ArmadaEvent.Type> types,
+      Consumer<ArmadaEvent> subscriber) {
+    subscribe(new SubscriptionKey(jobSetId, null), types, subscriber);
+  }
+
+  /**
+   * Subscribe to events of the given types for a single job of a job set.
+   *
+   * @param jobSetId   the job set ID of the job
+   * @param jobId      the job ID to subscribe to
+   * @param types      the event types the subscriber is interested in
+   * @param subscriber the consumer that will be called when a matching event of the job is
+   *                   published
+   */
+  public void subscribe(String jobSetId, String jobId, Set<ArmadaEvent.Type> types,
+      Consumer<ArmadaEvent> subscriber) {
+    subscribe(new SubscriptionKey(jobSetId, Objects.requireNonNull(jobId)), types, subscriber);
+  }
+
+  private void subscribe(SubscriptionKey key, Set<ArmadaEvent.Type> types,
+      Consumer<ArmadaEvent> subscriber) {
+    Subscription subscription = new Subscription(
+        types.isEmpty() ? EnumSet.noneOf(ArmadaEvent.Type.class) : EnumSet.copyOf(types),
+        subscriber);
+    // Atomic with unsubscribe, which drops the list of a key once it is empty
+    subscribers.compute(key, (k, subscriptionList) -> {
+      CopyOnWriteArrayList<Subscription> list =
+          subscriptionList != null ? subscriptionList : new CopyOnWriteArrayList<>();
+      list.add(subscription);
+      return list;
+    });
   }
 
   /**
@@ -31,29 +121,179 @@ public class ArmadaEventManager<T> {
    * @param jobSetId   the job set ID to unsubscribe from
    * @param subscriber the consumer to remove
    */
-  public void unsubscribe(String jobSetId, Consumer<T> subscriber) {
-    CopyOnWriteArrayList<Consumer<T>> consumerList = subscribers.get(jobSetId);
-    if (consumerList != null) {
-      consumerList.remove(subscriber);
-      if (consumerList.isEmpty()) {
-        subscribers.remove(jobSetId);
-      }
-    }
+  public void unsubscribe(String jobSetId, Consumer<ArmadaEvent> subscriber) {
+    unsubscribe(new SubscriptionKey(jobSetId, null), subscriber);
   }
 
   /**
-   * Publish an event to all subscribers for a specific job set ID.
+   * Unsubscribe from events for a single job of a job set.
+   *
+   * @param jobSetId   the job set ID of the job
+   * @param jobId      the job ID to unsubscribe from
+   * @param subscriber the consumer to remove
+   */
+  public void unsubscribe(String jobSetId, String jobId, Consumer<ArmadaEvent> subscriber) {
+    unsubscribe(new SubscriptionKey(jobSetId, Objects.requireNonNull(jobId)), subscriber);
+  }
+
+  private void unsubscribe(SubscriptionKey key, Consumer<ArmadaEvent> subscriber) {
+    subscribers.computeIfPresent(key, (k, subscriptionList) -> {
+      subscriptionList.removeIf(subscription -> subscription.consumer == subscriber);
+      return subscriptionList.isEmpty() ? null : subscriptionList;
+    });
+  }
+
+  /**
+   * Publish an event to all subscribers for a specific job set ID, or for the job of the event, that
+   * accept its type.
    *
    * @param jobSetId the job set ID to publish to
    * @param event    the event to publish
    */
-  public void publish(String jobSetId, T event) {
-    CopyOnWriteArrayList<Consumer<T>> consumerList = subscribers.get(jobSetId);
-    if (consumerList != null) {
-      for (Consumer<T> subscriber : consumerList) {
-        subscriber.accept(event);
+  public void publish(String jobSetId, ArmadaEvent event) {
+    ArmadaJfrEvents.EventPublishEvent publishEvent = new ArmadaJfrEvents.EventPublishEvent();
+    publishEvent.begin();
+    retain(event);
+
+    int notified = notify(new SubscriptionKey(jobSetId, null), event);
+    if (event.getJobId() != null) {
+      notified += notify(new SubscriptionKey(jobSetId, event.getJobId()), event);
+    }
+
+    if (event.getType().isTerminal()) {
+      // Subscribers saw it above; nothing asks about a finished job after the fact
+      latestEvents.remove(event.getJobId());
+      recentEvents.remove(event.getJobId());
+    }
+
+    if (publishEvent.shouldCommit()) {
+      publishEvent.jobSetId = jobSetId;
+      publishEvent.jobId = event.getJobId();
+      publishEvent.eventType = event.getType().name();
+      publishEvent.clusterId = event.getClusterId();
+      publishEvent.podName = event.getPodName();
+      publishEvent.subscribers = notified;
+      publishEvent.commit();
+    }
+  }
+
+  private int notify(SubscriptionKey key, ArmadaEvent event) {
+    int notified = 0;
+    CopyOnWriteArrayList<Subscription> subscriptionList = subscribers.get(key);
+    if (subscriptionList != null) {
+      for (Subscription subscription : subscriptionList) {
+        if (subscription.types.contains(event.getType())) {
+          subscription.consumer.accept(event);
+          notified++;
+        }
       }
     }
+    return notified;
+  }
+
+  private void retain(ArmadaEvent event) {
+    String jobId = event.getJobId();
+    Map<ArmadaEvent.Type, ArmadaEvent> tracked = latestEvents.computeIfPresent(jobId,
+        (k, events) -> {
+          events.put(event.getType(), event);
+          return events;
+        });
+    if (tracked == null && jobId != null && !event.getType().isTerminal()) {
+      synchronized (recentEvents) {
+        Map<ArmadaEvent.Type, ArmadaEvent> events = recentEvents.get(jobId);
+        if (events == null) {
+          events = newEvents();
+          recentEvents.put(jobId, events);
+        }
+        if (events != FORGOTTEN) {
+          events.put(event.getType(), event);
+        }
+      }
+    }
+  }
+
+  /**
+   * Starts retaining the latest events of a job, typically once it is submitted, keeping those
+   * already retained for it. Does nothing if the job is already tracked.
+   *
+   * @param jobId the job ID
+   */
+  public void trackJob(String jobId) {
+    latestEvents.computeIfAbsent(jobId, k -> {
+      Map<ArmadaEvent.Type, ArmadaEvent> recent = recentEvents.remove(k);
+      return recent != null && recent != FORGOTTEN ? recent : newEvents();
+    });
+  }
+
+  /**
+   * Returns the latest event of the given type seen for a tracked job.
+   *
+   * @param jobId the job ID
+   * @param type  the event type
+   * @return the latest matching event, or null if none was published yet or it is not retained
+   */
+  @CheckForNull
+  public ArmadaEvent getLatestEvent(String jobId, ArmadaEvent.Type type) {
+    Map<ArmadaEvent.Type, ArmadaEvent> events = latestEvents.get(jobId);
+    if (events == null) {
+      events = recentEvents.get(jobId);
+    }
+    return events != null ? events.get(type) : null;
+  }
+
+  /**
+   * Drops the retained events of a job and stops tracking it, so that events published later (such
+   * as the cancellation of its agent's job) are not retained. Should be called once nothing will ask
+   * about the job anymore, typically when its agent is terminated.
+   *
+   * @param jobId the job ID
+   */
+  public void forgetJob(String jobId) {
+    latestEvents.remove(jobId);
+    recentEvents.put(jobId, FORGOTTEN);
+  }
+
+  /**
+   * Subscriber together with the event types it accepts.
+   */
+  private static class Subscription {
+
+    final Set<ArmadaEvent.Type> types;
+    final Consumer<ArmadaEvent> consumer;
+
+    Subscription(Set<ArmadaEvent.Type> types, Consumer<ArmadaEvent> consumer) {
+      this.types = types;
+      this.consumer = consumer;
+    }
   }
 
+  /**
+   * Job set, and job if the subscribers are only interested in one, of a list of subscribers.
+   */
+  private static final class SubscriptionKey {
+
+    final String jobSetId;
+    final String jobId;
+
+    SubscriptionKey(String jobSetId, String jobId) {
+      this.jobSetId = jobSetId;
+      this.jobId = jobId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof SubscriptionKey other)) {
+        return false;
+      }
+      return jobSetId.equals(other.jobSetId) && Objects.equals(jobId, other.jobId);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * jobSetId.hashCode() + Objects.hashCode(jobId);
+    }
+  }
 }
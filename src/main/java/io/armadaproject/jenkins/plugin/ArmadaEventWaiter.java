@@ -2,8 +2,8 @@ package io.armadaproject.jenkins.plugin;
 
 import static org.awaitility.Awaitility.await;
 
-import api.EventOuterClass.JobRunningEvent;
 import java.io.IOException;
+import java.util.EnumSet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
@@ -24,45 +24,52 @@ public class ArmadaEventWaiter {
   }
 
   /**
-   * Waits for a JobRunningEvent for the specified job.
+   * Waits for a running event for the specified job.
    *
    * @param jobId    the job ID to wait for
    * @param jobSetId the job set ID containing the job
-   * @return the JobRunningEvent when the job starts running
+   * @return the running event when the job starts running
    * @throws IOException if timeout occurs or event is not received
    */
-  public JobRunningEvent waitForJobRunning(String jobId, String jobSetId) throws IOException {
-    ArmadaEventManager<JobRunningEvent> eventManager = cloud.getArmadaEventManager();
-    AtomicReference<JobRunningEvent> matchedEvent = new AtomicReference<>();
+  public ArmadaEvent waitForJobRunning(String jobId, String jobSetId) throws IOException {
+    ArmadaEventManager eventManager = cloud.getArmadaEventManager();
+    AtomicReference<ArmadaEvent> matchedEvent = new AtomicReference<>();
 
-    Consumer<JobRunningEvent> consumer = event -> {
+    Consumer<ArmadaEvent> consumer = event -> {
       if (event.getJobId().equals(jobId)) {
-        LOGGER.fine("Received JobRunningEvent for job: " + jobId);
+        LOGGER.fine("Received running event for job: " + jobId);
         matchedEvent.set(event);
       }
     };
 
-    eventManager.subscribe(jobSetId, consumer);
+    // Keeps the events of the job retained however many other jobs the job set stream goes through
+    eventManager.trackJob(jobId);
+    eventManager.subscribe(jobSetId, jobId, EnumSet.of(ArmadaEvent.Type.RUNNING), consumer);
+
+    // The job may have started running before we subscribed
+    ArmadaEvent alreadyRunning = eventManager.getLatestEvent(jobId, ArmadaEvent.Type.RUNNING);
+    if (alreadyRunning != null) {
+      matchedEvent.compareAndSet(null, alreadyRunning);
+    }
 
     // Start watching events if not already started
-    cloud.getJobSetIdThreads().putIfAbsent(jobSetId,
-        cloud.startWatchingArmadaEvents(jobSetId));
+    cloud.ensureWatchingArmadaEvents(jobSetId);
 
     try {
-      LOGGER.fine("Waiting for JobRunningEvent for job: " + jobId + " in job set: " + jobSetId);
+      LOGGER.fine("Waiting for running event for job: " + jobId + " in job set: " + jobSetId);
 
       await()
           .atMost(ArmadaPluginConfig.EVENT_WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
           .pollInterval(ArmadaPluginConfig.POLL_INTERVAL_SECONDS, TimeUnit.SECONDS)
           .until(() -> matchedEvent.get() != null);
 
-      JobRunningEvent event = matchedEvent.get();
+      ArmadaEvent event = matchedEvent.get();
       if (event == null) {
         throw new IOException(String.format("Timeout waiting for job %s to reach running state after %d %s",
             jobId, ArmadaPluginConfig.EVENT_WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS.toString().toLowerCase()));
       }
 
-      LOGGER.fine("Successfully received JobRunningEvent for job: " + jobId);
+      LOGGER.fine("Successfully received running event for job: " + jobId);
       return event;
 
     } catch (IOException e) {
@@ -71,7 +78,7 @@ public class ArmadaEventWaiter {
       throw new IOException(String.format("Timeout waiting for job %s to reach running state after %d %s",
           jobId, ArmadaPluginConfig.EVENT_WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS.toString().toLowerCase()), e);
     } finally {
-      eventManager.unsubscribe(jobSetId, consumer);
+      eventManager.unsubscribe(jobSetId, jobId, consumer);
     }
   }
 }
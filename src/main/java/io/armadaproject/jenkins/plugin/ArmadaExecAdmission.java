@@ -0,0 +1,202 @@
+package io.armadaproject.jenkins.plugin;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Limits the exec sessions open at once against a pod and against the API server of a cluster, so
+ * that a wide {@code parallel} block in one container does not exhaust the exec streams of the
+ * kubelet or trip the rate limits of the API server. Sessions beyond a limit wait in a fair queue,
+ * in the order they asked for a session.
+ * <p>
+ * A pod permit is acquired before a cluster permit, always in that order, so that the branches of
+ * one pod queue for their pod first instead of taking the cluster slots of other pods.
+ * <p>
+ * A session holds its permits until it is closed, so the limits bound the commands running at
+ * once, not only the connections being opened. Both limits are opt-in: a limit of 0 or less lets
+ * every session through.
+ */
+class ArmadaExecAdmission {
+
+  private static final Logger LOGGER = Logger.getLogger(ArmadaExecAdmission.class.getName());
+  private static final ArmadaExecAdmission INSTANCE = new ArmadaExecAdmission();
+
+  private final ConcurrentMap<String, Limit> limits = new ConcurrentHashMap<>();
+
+  ArmadaExecAdmission() {
+  }
+
+  static ArmadaExecAdmission get() {
+    return INSTANCE;
+  }
+
+  /**
+   * Waits until an exec session may be opened against a pod.
+   *
+   * @param cloudName    the cloud of the pod
+   * @param clusterId    the cluster running the pod
+   * @param podKey       identifies the pod, such as its namespace and name
+   * @param podLimit     the sessions allowed at once against the pod, 0 or less for no limit
+   * @param clusterLimit the sessions allowed at once against the cluster, 0 or less for no limit
+   * @param timeoutNanos how long to wait for the session
+   * @return the permit to close once the session is closed
+   * @throws IOException if the session could not be admitted in time
+   */
+  Permit acquire(String cloudName, String clusterId, String podKey, int podLimit,
+      int clusterLimit, long timeoutNanos) throws IOException {
+    long start = System.nanoTime();
+    String podEntry = "pod\0" + cloudName + '\0' + podKey;
+    String clusterEntry = "cluster\0" + cloudName + '\0' + Objects.toString(clusterId, "");
+    Limit pod = podLimit > 0 ? join(podEntry, podLimit) : null;
+    Limit cluster = null;
+    boolean podAcquired = false;
+    try {
+      if (pod != null) {
+        podAcquired = pod.tryAcquire(timeoutNanos);
+        if (!podAcquired) {
+          throw timeout(cloudName, "pod " + podKey, podLimit);
+        }
+      }
+      if (clusterLimit > 0) {
+        cluster = join(clusterEntry, clusterLimit);
+        if (!cluster.tryAcquire(timeoutNanos - (System.nanoTime() - start))) {
+          throw timeout(cloudName, "cluster " + clusterId, clusterLimit);
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      if (podAcquired) {
+        pod.semaphore.release();
+      }
+      if (pod != null) {
+        leave(podEntry, pod);
+      }
+      if (cluster != null) {
+        leave(clusterEntry, cluster);
+      }
+      throw e;
+    }
+    long waitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    ArmadaMetrics.get().histogram(ArmadaMetrics.EXEC_ADMISSION_WAIT,
+        ArmadaMetrics.cloudTags(cloudName)).record(waitMillis);
+    if (waitMillis > 0) {
+      LOGGER.log(Level.FINE, "Exec session against pod {0} admitted after {1} ms",
+          new Object[]{podKey, waitMillis});
+    }
+    return new Permit(podEntry, pod, clusterEntry, cluster);
+  }
+
+  /**
+   * @return the number of sessions waiting for a permit of the given cloud
+   */
+  int getQueueLength(String cloudName) {
+    int queued = 0;
+    String podPrefix = "pod\0" + cloudName + '\0';
+    String clusterPrefix = "cluster\0" + cloudName + '\0';
+    for (Map.Entry<String, Limit> entry : limits.entrySet()) {
+      // A session waits for its pod, then for its cluster, so it is in one queue at a time
+      if (entry.getKey().startsWith(podPrefix) || entry.getKey().startsWith(clusterPrefix)) {
+        queued += entry.getValue().semaphore.getQueueLength();
+      }
+    }
+    return queued;
+  }
+
+  /**
+   * @return the number of pods and clusters with sessions open or waiting
+   */
+  int size() {
+    return limits.size();
+  }
+
+  private Limit join(String key, int permits) {
+    return limits.compute(key, (k, limit) -> {
+      Limit joined = limit != null ? limit : new Limit(permits);
+      joined.users++;
+      return joined;
+    });
+  }
+
+  private void leave(String key, Limit limit) {
+    limits.computeIfPresent(key, (k, current) -> {
+      if (current != limit) {
+        return current;
+      }
+      current.users--;
+      return current.users == 0 ? null : current;
+    });
+  }
+
+  private static IOException timeout(String cloudName, String target, int limit) {
+    ArmadaMetrics.get().counter(ArmadaMetrics.EXEC_ADMISSION_TIMEOUTS,
+        ArmadaMetrics.cloudTags(cloudName)).increment();
+    return new IOException(String.format(
+        "Timed out waiting for one of the %d exec sessions allowed at once against %s", limit,
+        target));
+  }
+
+  /**
+   * Semaphore of a pod or cluster, with the number of sessions holding or waiting for it. Only
+   * accessed under the lock of its map entry.
+   */
+  private static final class Limit {
+
+    final Semaphore semaphore;
+    int users;
+
+    Limit(int permits) {
+      semaphore = new Semaphore(permits, true);
+    }
+
+    boolean tryAcquire(long timeoutNanos) throws InterruptedIOException {
+      try {
+        return semaphore.tryAcquire(Math.max(timeoutNanos, 0), TimeUnit.NANOSECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for an exec session");
+      }
+    }
+  }
+
+  /**
+   * Admission of one exec session, released when closed.
+   */
+  final class Permit implements Closeable {
+
+    private final String podKey;
+    private final Limit pod;
+    private final String clusterKey;
+    private final Limit cluster;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private Permit(String podKey, Limit pod, String clusterKey, Limit cluster) {
+      this.podKey = podKey;
+      this.pod = pod;
+      this.clusterKey = clusterKey;
+      this.cluster = cluster;
+    }
+
+    @Override
+    public void close() {
+      if (closed.compareAndSet(false, true)) {
+        if (cluster != null) {
+          cluster.semaphore.release();
+          leave(clusterKey, cluster);
+        }
+        if (pod != null) {
+          pod.semaphore.release();
+          leave(podKey, pod);
+        }
+      }
+    }
+  }
+}
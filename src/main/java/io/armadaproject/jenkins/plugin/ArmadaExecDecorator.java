@@ -9,7 +9,9 @@ import hudson.LauncherDecorator;
 import hudson.Proc;
 import hudson.model.Computer;
 import hudson.model.Node;
+import io.fabric8.kubernetes.api.model.Container;
 import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.VolumeMount;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClientException;
 import io.fabric8.kubernetes.client.dsl.ExecListener;
@@ -24,21 +26,26 @@ import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.Serial;
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import javax.annotation.Nonnull;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.commons.io.output.TeeOutputStream;
 import org.jenkinsci.plugins.workflow.steps.BodyInvoker;
 import org.jenkinsci.plugins.workflow.steps.EnvironmentExpander;
@@ -57,9 +64,24 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
   @Serial
   private static final long serialVersionUID = 1L;
   private static final Logger LOGGER = Logger.getLogger(ArmadaExecDecorator.class.getName());
+  static final String KILLED_BY_PID_MARKER = "armada: killed recorded processes";
+  /**
+   * Printed on stderr by a kill script run over the control session once it is done, followed by
+   * the ID of the kill.
+   */
+  static final String KILL_REPLY_MARKER = "armada: done ";
+  /**
+   * Shell function printing a process and its descendants, the descendants first.
+   */
+  static final String TREE_FUNCTION = "tree() { for c in $(cat /proc/$1/task/*/children"
+      + " 2>/dev/null); do tree $c; done; echo $1; }";
+  private static final Pattern COOKIE = Pattern.compile("[A-Za-z0-9_-]+");
+  private static final Pattern ENV_VAR_NAME =
+      Pattern.compile(ArmadaPluginConfig.ENV_VAR_NAME_REGEX);
 
   @SuppressFBWarnings(value = "SE_TRANSIENT_FIELD_NOT_RESTORED", justification = "reinitialized in readObject()")
   private transient List<Closeable> closables;
+  private transient ControlSession controlSession;
 
   private String containerName;
   private EnvironmentExpander environmentExpander;
@@ -67,6 +89,7 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
   private EnvVars rcEnvVars;
   private String shell;
   private ArmadaNodeContext nodeContext;
+  private boolean durable;
 
   public ArmadaExecDecorator() {
   }
@@ -79,37 +102,182 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
     return windows ? ArmadaPluginConfig.WINDOWS_NEWLINE : ArmadaPluginConfig.UNIX_NEWLINE;
   }
 
+  /**
+   * Appends the command and the final exit to the shell script, and echoes the command with its
+   * masked parts hidden. A durable command is started in the background instead, and the PID of a
+   * command launched for a step is recorded with the step cookie.
+   */
   private static void doExec(
-      PrintStream in, boolean windows, PrintStream out, boolean[] masks, String... statements) {
+      StringBuilder script, boolean windows, PrintStream out, boolean[] masks,
+      ArmadaDurableExec durableExec, String cookie, String... statements) {
     long start = System.nanoTime();
-    ByteArrayOutputStream loggingOutput = new ByteArrayOutputStream();
-    TeeOutputStream teeOutput = new TeeOutputStream(out, loggingOutput);
-    MaskOutputStream maskedOutput = new MaskOutputStream(teeOutput, masks);
-    PrintStream tee;
-    try {
-      String encoding = StandardCharsets.UTF_8.name();
-      tee = new PrintStream(new TeeOutputStream(in, maskedOutput), false, encoding);
-      PrintStream unmasked = new PrintStream(teeOutput, false, encoding);
-      unmasked.print("Executing command: ");
-      for (String statement : statements) {
-        if (windows) {
-          tee.append(statement).append(" ");
-        } else {
-          tee.append("\"").append(statement).append("\" ");
-        }
+    int commandStart = script.length();
+    for (String statement : statements) {
+      if (windows) {
+        script.append(statement).append(' ');
+      } else {
+        script.append('"').append(statement).append("\" ");
       }
-      tee.print(newLine(windows));
+    }
+    script.append(newLine(windows));
+
+    // The echoed command is only captured when it is going to be logged
+    ByteArrayOutputStream loggingOutput =
+        LOGGER.isLoggable(Level.FINEST) ? new ByteArrayOutputStream() : null;
+    OutputStream teeOutput = loggingOutput != null ? new TeeOutputStream(out, loggingOutput) : out;
+    try {
+      teeOutput.write("Executing command: ".getBytes(StandardCharsets.UTF_8));
+      new MaskOutputStream(teeOutput, masks)
+          .write(script.substring(commandStart).getBytes(StandardCharsets.UTF_8));
+      teeOutput.flush();
+    } catch (IOException e) {
+      LOGGER.log(Level.FINE, "Failed to echo command", e);
+    }
+    if (loggingOutput != null) {
       LOGGER.log(
           Level.FINEST,
-          loggingOutput.toString(encoding) + "[" + TimeUnit.NANOSECONDS.toMicros(
+          loggingOutput.toString(StandardCharsets.UTF_8) + "[" + TimeUnit.NANOSECONDS.toMicros(
               System.nanoTime() - start)
               + " μs." + "]");
-      tee.print(ArmadaPluginConfig.EXIT);
-      tee.print(newLine(windows));
-      tee.flush();
-    } catch (UnsupportedEncodingException e) {
-      LOGGER.log(Level.SEVERE, "Failed to execute command because of unsupported encoding", e);
     }
+    if (durableExec != null) {
+      String commandLine = script.substring(commandStart);
+      script.setLength(commandStart);
+      script.append(durableExec.launchScript(commandLine));
+    } else if (!windows && cookie != null) {
+      String commandLine = script.substring(commandStart);
+      script.setLength(commandStart);
+      script.append(recordPidScript(commandLine, cookie));
+    }
+    script.append(ArmadaPluginConfig.EXIT).append(newLine(windows));
+  }
+
+  /**
+   * Writes a shell script to stdin as a single payload. A script that does not fit in the stdin
+   * pipe is written in flushed chunks of {@link ArmadaPluginConfig#STDIN_BUFFER_SIZE}, each write
+   * blocking until the pipe has been drained enough to take it.
+   */
+  static void writeScript(OutputStream stdin, byte[] script) throws IOException {
+    int chunkSize = Math.max(ArmadaPluginConfig.STDIN_BUFFER_SIZE, 1);
+    for (int off = 0; off < script.length; off += chunkSize) {
+      stdin.write(script, off, Math.min(chunkSize, script.length - off));
+      stdin.flush();
+    }
+  }
+
+  /**
+   * Returns the line running a command so that its process group is recorded for
+   * {@link #killScript(String)}. The command runs in the foreground, through a shell that starts a
+   * new session with {@code setsid} when the container has it, writes its own PID, which is then
+   * also the ID of the process group, and replaces itself with the command. Whatever the command
+   * starts in the background stays in that group, even once the command returned, like the
+   * wrapper of a durable task does. The whole wrapper is on the line of the command, so the shell
+   * has read it before the command starts and a command reading stdin cannot consume it. The PID
+   * file is kept as long as the group has processes, and the shell exits with the exit code of
+   * the command.
+   *
+   * @param commandLine the command and its quoted arguments, on a single line
+   * @param cookie      the cookie of the step the command is launched for
+   */
+  static String recordPidScript(String commandLine, String cookie) {
+    String pidFile = quote(pidFilePrefix(cookie)) + "$$";
+    return "$(command -v setsid) " + ArmadaPluginConfig.DEFAULT_SHELL
+        + " -c 'echo $$ > \"$0\"; exec \"$@\"' " + pidFile + " " + commandLine.trim()
+        + "; s=$?; kill -0 -\"$(cat " + pidFile + ")\" 2>/dev/null || rm -f " + pidFile
+        + "; exit $s" + ArmadaPluginConfig.UNIX_NEWLINE;
+  }
+
+  /**
+   * Returns the script killing the processes of a step in a new exec session, see
+   * {@link #killCommands(String)}.
+   */
+  static String killScript(String cookie) {
+    return killCommands(cookie) + ArmadaPluginConfig.EXIT + ArmadaPluginConfig.UNIX_NEWLINE;
+  }
+
+  /**
+   * Returns the script killing the processes of a step over a shell kept open, which runs the
+   * kill in a subshell and then prints {@link #KILL_REPLY_MARKER} and the given ID on stderr.
+   */
+  static String sessionKillScript(String cookie, String id) {
+    String newline = ArmadaPluginConfig.UNIX_NEWLINE;
+    return "(" + newline + killCommands(cookie) + ")" + newline
+        + "echo '" + KILL_REPLY_MARKER + id + "' >&2" + newline;
+  }
+
+  /**
+   * Returns the commands killing the processes of a step. The process groups recorded by
+   * {@link #recordPidScript(String, String)} are signalled directly, printing
+   * {@link #KILLED_BY_PID_MARKER} on stderr, and the process tree of the recorded PID is killed
+   * instead where the container has no {@code setsid}. Only when none of them is still running is
+   * every process of the container scanned for the step cookie.
+   */
+  private static String killCommands(String cookie) {
+    String match = quote(ArmadaPluginConfig.COOKIE_VAR + "=" + cookie);
+    String newline = ArmadaPluginConfig.UNIX_NEWLINE;
+    StringBuilder script = new StringBuilder();
+    if (getValidCookie(cookie) != null) {
+      script.append("k=").append(newline)
+          .append(TREE_FUNCTION).append(newline)
+          .append("for f in ").append(quote(pidFilePrefix(cookie))).append("*; do")
+          .append(newline)
+          // A running leader whose PID was reused since the file was written is left alone
+          .append("  p=$(cat \"$f\" 2>/dev/null) && { [ ! -d \"/proc/$p\" ] || grep -qs ")
+          .append(match).append(" \"/proc/$p/environ\"; }")
+          .append(" && { kill -TERM -\"$p\" || kill $(tree \"$p\"); } 2>/dev/null && k=1")
+          .append(newline)
+          .append("  rm -f \"$f\"").append(newline)
+          .append("done").append(newline)
+          .append("[ -z \"$k\" ] || { echo '").append(KILLED_BY_PID_MARKER)
+          .append("' >&2; exit 0; }").append(newline);
+    }
+    script.append("kill $(grep -l ").append(match).append(" /proc/*/environ | cut -d / -f 3)")
+        .append(newline);
+    return script.toString();
+  }
+
+  /**
+   * @return the cookie of the step set in the given {@code KEY=VALUE} entries, null if there is
+   * none or it cannot be used in a file name
+   */
+  /**
+   * Returns whether a launch runs in durable mode, see {@link ArmadaDurableExec}. The shell
+   * scripts of durable tasks, which carry the step cookie, already run detached in the wrapper of
+   * the durable-task plugin, which writes their log and exit code to the workspace and is found
+   * again after a controller restart, so they are launched the usual way instead of being wrapped
+   * a second time.
+   *
+   * @param durable whether the container step asked for durable mode
+   * @param unix    whether the container runs a Unix shell
+   * @param envVars the environment of the launch
+   */
+  static boolean isDurableLaunch(boolean durable, boolean unix, String[] envVars) {
+    return durable && unix && getCookie(envVars) == null;
+  }
+
+  static String getCookie(String[] envVars) {
+    if (envVars == null) {
+      return null;
+    }
+    String prefix = ArmadaPluginConfig.COOKIE_VAR + "=";
+    for (String keyValue : envVars) {
+      if (keyValue.startsWith(prefix)) {
+        return getValidCookie(keyValue.substring(prefix.length()));
+      }
+    }
+    return null;
+  }
+
+  private static String getValidCookie(String cookie) {
+    return cookie != null && COOKIE.matcher(cookie).matches() ? cookie : null;
+  }
+
+  private static String pidFilePrefix(String cookie) {
+    return ArmadaPluginConfig.EXEC_PID_DIRECTORY + "/.armada-pid-" + cookie + "-";
+  }
+
+  private static String quote(String value) {
+    return "'" + value.replace("'", "'\\''") + "'";
   }
 
   static String[] getCommands(Launcher.ProcStarter starter, boolean unix) {
@@ -133,6 +301,28 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
     }
   }
 
+  /**
+   * Returns the {@code KEY=VALUE} entries whose value differs from the agent environment. Values
+   * are compared in place, without splitting the entries.
+   */
+  static String[] changedEnvVars(String[] envVars, Map<String, String> environment) {
+    List<String> changed = new ArrayList<>(envVars.length);
+    for (String keyValue : envVars) {
+      int separator = keyValue.indexOf('=');
+      if (separator < 0) {
+        changed.add(keyValue);
+        continue;
+      }
+      String value = environment.get(keyValue.substring(0, separator));
+      int valueLength = keyValue.length() - separator - 1;
+      if (value == null || value.length() != valueLength
+          || !keyValue.regionMatches(separator + 1, value, 0, valueLength)) {
+        changed.add(keyValue);
+      }
+    }
+    return changed.toArray(new String[0]);
+  }
+
   private static String[] fixDoubleDollar(String[] envVars) {
     if (envVars == null) {
       return null;
@@ -155,8 +345,38 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
    */
   public static BodyInvoker decorate(BodyInvoker invoker, String containerName,
       ArmadaNodeContext nodeContext, LauncherDecorator existingDecorator) {
+    return decorate(invoker, containerName, nodeContext, existingDecorator, false);
+  }
+
+  /**
+   * Creates a decorator and merges it with existing decorators.
+   *
+   * @param invoker           the body invoker to decorate
+   * @param containerName     the name of the container to execute commands in
+   * @param nodeContext       the node context for event subscription and pod discovery
+   * @param existingDecorator any existing launcher decorator
+   * @param durable           whether commands run detached from the exec websocket
+   * @return the decorated body invoker
+   */
+  public static BodyInvoker decorate(BodyInvoker invoker, String containerName,
+      ArmadaNodeContext nodeContext, LauncherDecorator existingDecorator, boolean durable) {
     ArmadaExecDecorator decorator = new ArmadaExecDecorator(containerName);
     decorator.setNodeContext(nodeContext);
+    decorator.setDurable(durable);
+    return decorate(invoker, decorator, existingDecorator);
+  }
+
+  /**
+   * Merges a decorator with existing decorators. The caller closes the decorator once the body is
+   * done.
+   *
+   * @param invoker           the body invoker to decorate
+   * @param decorator         the decorator running the commands of the body
+   * @param existingDecorator any existing launcher decorator
+   * @return the decorated body invoker
+   */
+  public static BodyInvoker decorate(BodyInvoker invoker, ArmadaExecDecorator decorator,
+      LauncherDecorator existingDecorator) {
     return invoker.withContext(
         BodyInvoker.mergeLauncherDecorators(existingDecorator, decorator));
   }
@@ -216,6 +436,14 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
     this.nodeContext = nodeContext;
   }
 
+  public boolean isDurable() {
+    return durable;
+  }
+
+  public void setDurable(boolean durable) {
+    this.durable = durable;
+  }
+
   @Override
   @Nonnull
   public Launcher decorate(@Nonnull Launcher launcher, @Nonnull Node node) {
@@ -236,16 +464,10 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
           final Computer computer = node.toComputer();
           if (computer != null) {
             try {
+              // Cached by the computer for the lifetime of its channel
               EnvVars environment = computer.getEnvironment();
               if (environment != null) {
-                List<String> resultEnvVar = new ArrayList<>();
-                for (String keyValue : envVars) {
-                  String[] split = keyValue.split("=", 2);
-                  if (!split[1].equals(environment.get(split[0]))) {
-                    resultEnvVar.add(keyValue);
-                  }
-                }
-                envVars = resultEnvVar.toArray(new String[0]);
+                envVars = changedEnvVars(envVars, environment);
               }
             } catch (InterruptedException e) {
               throw new IOException("Unable to retrieve environment variables", e);
@@ -253,13 +475,24 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
           }
         }
 
-        return doLaunch(
+        ArmadaDurableExec durableExec =
+            isDurableLaunch(durable, launcher.isUnix(), envVars) ? new ArmadaDurableExec() : null;
+        if (durableExec == null && launcher.isUnix() && getCookie(envVars) != null) {
+          openControlSession();
+        }
+        Proc proc = doLaunch(
             starter.quiet(),
             fixDoubleDollar(envVars),
             starter.stdout(),
             pwd,
             starter.masks(),
+            durableExec,
             getCommands(starter, launcher.isUnix()));
+        if (durableExec != null) {
+          return new ArmadaDurableProc(proc, durableExec, starter.stdout(),
+              getListener().getLogger());
+        }
+        return proc;
       }
 
       @Override
@@ -268,19 +501,22 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
 
         String cookie = modelEnvVars.get(ArmadaPluginConfig.COOKIE_VAR);
 
-        int exitCode = doLaunch(
-            true,
-            null,
-            null,
-            null,
-            null,
-            ArmadaPluginConfig.DEFAULT_SHELL,
-            "-c",
-            "kill \\`grep -l '" + ArmadaPluginConfig.COOKIE_VAR + "=" + cookie
-                + "' /proc/*/environ | cut -d / -f 3 \\`")
-            .join();
+        long start = System.nanoTime();
+        Boolean killedByPid = killOverControlSession(cookie);
+        String outcome = "over the open session";
+        if (killedByPid == null) {
+          MarkerOutputStream marker = new MarkerOutputStream(KILLED_BY_PID_MARKER);
+          int exitCode = execScript(killScript(cookie), null, marker, false).join();
+          killedByPid = marker.isFound();
+          outcome = "with exit code " + exitCode;
+        }
+        long killMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Map<String, String> tags = ArmadaMetrics.cloudTags(nodeContext.getCloudName());
+        tags.put(ArmadaMetrics.TAG_METHOD, killedByPid ? "pid" : "scan");
+        ArmadaMetrics.get().histogram(ArmadaMetrics.EXEC_KILL_DURATION, tags).record(killMillis);
 
-        getListener().getLogger().println("kill finished with exit code " + exitCode);
+        getListener().getLogger().println(
+            "kill finished " + outcome + " [" + killMillis + " ms]");
       }
     };
   }
@@ -291,14 +527,64 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
       OutputStream outputForCaller,
       FilePath pwd,
       boolean[] masks,
+      ArmadaDurableExec durableExec,
       String... commands) throws IOException {
     long startMethod = System.nanoTime();
+    ArmadaSpan span = ArmadaTracer.get().startSpan("armada.exec", nodeContext.getRunId())
+        .setAttribute("armada.container", containerName);
+    try {
+      ArmadaProc proc = launchInContainer(quiet, cmdEnvs, outputForCaller, pwd, masks,
+          durableExec, startMethod, span, commands);
+      proc.setSpan(span);
+      return proc;
+    } catch (IOException | RuntimeException e) {
+      span.recordError(e);
+      span.end();
+      throw e;
+    }
+  }
 
+  private ArmadaProc launchInContainer(
+      boolean quiet,
+      String[] cmdEnvs,
+      OutputStream outputForCaller,
+      FilePath pwd,
+      boolean[] masks,
+      ArmadaDurableExec durableExec,
+      long startMethod,
+      ArmadaSpan span,
+      String... commands) throws IOException {
     // Connect to Kubernetes and verify pod exists
+    ArmadaJfrEvents.ExecStageEvent connectEvent = new ArmadaJfrEvents.ExecStageEvent();
+    connectEvent.begin();
     ConnectionInfo connectionInfo = establishConnection();
+    span.setAttribute("k8s.pod.name", connectionInfo.podName);
+    ArmadaExecAdmission.Permit permit = admit(connectionInfo);
+    try {
+      ArmadaProc proc = startInContainer(quiet, cmdEnvs, outputForCaller, pwd, masks,
+          durableExec, startMethod, span, connectionInfo, connectEvent, commands);
+      proc.setPermit(permit);
+      return proc;
+    } catch (IOException | RuntimeException e) {
+      permit.close();
+      throw e;
+    }
+  }
 
+  private ArmadaProc startInContainer(
+      boolean quiet,
+      String[] cmdEnvs,
+      OutputStream outputForCaller,
+      FilePath pwd,
+      boolean[] masks,
+      ArmadaDurableExec durableExec,
+      long startMethod,
+      ArmadaSpan span,
+      ConnectionInfo connectionInfo,
+      ArmadaJfrEvents.ExecStageEvent connectEvent,
+      String... commands) throws IOException {
     // Setup output streams for logging
-    StreamContext streamContext = setupOutputStreams(quiet, outputForCaller);
+    StreamContext streamContext = setupOutputStreams(outputForCaller, null);
 
     // Log execution message
     String[] sh =
@@ -308,34 +594,223 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
     LOGGER.log(Level.FINEST, msg);
     streamContext.printStream.println(msg);
 
-    if (closables == null) {
-      closables = new ArrayList<>();
-    }
-
     // Establish websocket connection with retry logic
-    ExecWatchWrapper watchWrapper = establishWebSocketConnection(
-        connectionInfo.client,
-        connectionInfo.pod,
-        connectionInfo.namespace,
-        streamContext.stream,
-        streamContext.printStream,
-        sh);
+    ExecWatchWrapper watchWrapper;
+    try (ArmadaSpan websocketSpan = ArmadaTracer.get().startSpan("armada.exec.websocket", span)) {
+      watchWrapper = establishWebSocketConnection(
+          connectionInfo.client,
+          connectionInfo.pod,
+          connectionInfo.namespace,
+          streamContext,
+          websocketSpan,
+          sh);
+    }
+    commitExecStage(connectEvent, ArmadaJfrEvents.ExecStageEvent.CONNECT,
+        connectionInfo.podName);
+    nodeContext.markFirstExec();
+    long setupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startMethod);
+    ArmadaMetrics.get().histogram(ArmadaMetrics.EXEC_SETUP_DURATION,
+            ArmadaMetrics.cloudTags(nodeContext.getCloudName()))
+        .record(setupMillis);
+    nodeContext.recordExecOverhead(setupMillis);
 
     // Configure shell and execute commands
+    if (durableExec != null) {
+      durableExec.setWorkspaceRoot(getWorkspaceRoot(connectionInfo.pod));
+    }
     ArmadaProc proc = configureAndExecuteCommands(
         watchWrapper,
         pwd,
         cmdEnvs,
         masks,
+        durableExec,
         commands,
         streamContext,
         connectionInfo.podName,
         startMethod);
 
-    closables.add(proc);
+    addClosable(proc);
     return proc;
   }
 
+  /**
+   * Runs a script in the container, without setting up its environment.
+   *
+   * @param script       the script to write to the shell
+   * @param output       where to write the output of the script, may be null
+   * @param stderrMarker notified of the errors of the script, may be null
+   * @param admitted     whether the script waits for the concurrency limits of the pod, false for
+   *                     scripts that must not queue behind the sessions they act on
+   * @return the running script
+   */
+  private ArmadaProc execScript(String script, OutputStream output,
+      MarkerOutputStream stderrMarker, boolean admitted) throws IOException {
+    return execScript(script, output, null, stderrMarker, admitted);
+  }
+
+  /**
+   * Runs a script in the container, without setting up its environment, with its errors kept
+   * apart from its output if an error stream is given.
+   */
+  private ArmadaProc execScript(String script, OutputStream output, OutputStream error,
+      MarkerOutputStream stderrMarker, boolean admitted) throws IOException {
+    String[] sh =
+        shell != null ? new String[]{shell} : new String[]{ArmadaPluginConfig.DEFAULT_SHELL};
+    return exec(sh, script, setupOutputStreams(output, error, stderrMarker), admitted);
+  }
+
+  /**
+   * Runs a command in the container with its stdin and stdout connected directly, rather than
+   * through a shell reading a script, to transfer data such as the archives of
+   * {@link ArmadaCopy}.
+   *
+   * @param command the command and its arguments
+   * @param stdout  where to write the output of the command
+   * @param stderr  where to write the errors of the command
+   * @return the running command
+   */
+  Proc execCommand(String[] command, OutputStream stdout, OutputStream stderr)
+      throws IOException {
+    return exec(command, null, setupOutputStreams(stdout, stderr, null), true);
+  }
+
+  private ArmadaProc exec(String[] command, String script, StreamContext streamContext,
+      boolean admitted) throws IOException {
+    ArmadaSpan span = ArmadaTracer.get().startSpan("armada.exec", nodeContext.getRunId())
+        .setAttribute("armada.container", containerName);
+    ArmadaExecAdmission.Permit permit = null;
+    try {
+      ConnectionInfo connectionInfo = establishConnection();
+      span.setAttribute("k8s.pod.name", connectionInfo.podName);
+      if (admitted) {
+        permit = admit(connectionInfo);
+      }
+      ExecWatchWrapper watchWrapper;
+      try (ArmadaSpan websocketSpan = ArmadaTracer.get().startSpan("armada.exec.websocket", span)) {
+        watchWrapper = establishWebSocketConnection(connectionInfo.client, connectionInfo.pod,
+            connectionInfo.namespace, streamContext, websocketSpan, command);
+      }
+      ExecWatch watch = watchWrapper.getExecWatch();
+      try {
+        streamContext.toggleStdout.disable();
+        OutputStream stdin = watch.getInput();
+        if (script != null) {
+          writeScript(stdin, script.getBytes(StandardCharsets.UTF_8));
+        }
+        ArmadaProc proc = new ArmadaProc(watch, watchWrapper.getAlive(),
+            watchWrapper.getFinished(), stdin, streamContext.printStream);
+        proc.setIdentifiers(nodeContext.getNodeName(), nodeContext.getJobId(),
+            connectionInfo.podName, containerName);
+        proc.setSpan(span);
+        proc.setPermit(permit);
+        if (script != null) {
+          // Keepalive newlines would corrupt the data a command reads from stdin
+          proc.keepAlive(ArmadaKeepaliveService.forCloud(nodeContext.getCloudName()));
+        }
+        addClosable(proc);
+        return proc;
+      } catch (IOException | RuntimeException e) {
+        closeWatch(watch);
+        throw e;
+      }
+    } catch (IOException | RuntimeException e) {
+      if (permit != null) {
+        permit.close();
+      }
+      span.recordError(e);
+      span.end();
+      throw e;
+    }
+  }
+
+  /**
+   * Waits until an exec session may be opened against the pod, within the limits of the pod and of
+   * its cluster.
+   */
+  private ArmadaExecAdmission.Permit admit(ConnectionInfo connectionInfo) throws IOException {
+    return ArmadaExecAdmission.get().acquire(nodeContext.getCloudName(),
+        nodeContext.getClusterId(), connectionInfo.namespace + "/" + connectionInfo.podName,
+        nodeContext.getMaxConcurrentExecs(), ArmadaPluginConfig.EXEC_MAX_CONCURRENT_PER_CLUSTER,
+        TimeUnit.SECONDS.toNanos(ArmadaPluginConfig.EXEC_ADMISSION_TIMEOUT));
+  }
+
+  /**
+   * Returns where the workspace volume is mounted in the container, falling back to the default
+   * working directory.
+   */
+  private String getWorkspaceRoot(Pod pod) {
+    if (pod.getSpec() != null && pod.getSpec().getContainers() != null) {
+      for (Container container : pod.getSpec().getContainers()) {
+        if (containerName.equals(container.getName()) && container.getVolumeMounts() != null) {
+          for (VolumeMount mount : container.getVolumeMounts()) {
+            if (ArmadaPluginConfig.WORKSPACE_VOLUME_NAME.equals(mount.getName())) {
+              return mount.getMountPath();
+            }
+          }
+        }
+      }
+    }
+    return ArmadaPluginConfig.DEFAULT_WORKING_DIR;
+  }
+
+  /**
+   * Opens the control session of this decorator unless it is still open. Kills fall back to a new
+   * exec session when it cannot be opened.
+   */
+  private synchronized void openControlSession() {
+    if (controlSession != null && controlSession.isAlive()) {
+      return;
+    }
+    try {
+      controlSession = new ControlSession();
+    } catch (IOException | RuntimeException e) {
+      controlSession = null;
+      LOGGER.log(Level.FINE, "Failed to open control session in container " + containerName, e);
+    }
+  }
+
+  /**
+   * Kills the processes of a step over the control session, if it is open.
+   *
+   * @return whether recorded processes were killed, or null if the kill has to be run in a new
+   * exec session
+   */
+  private Boolean killOverControlSession(String cookie) throws InterruptedException {
+    ControlSession session;
+    synchronized (this) {
+      session = controlSession;
+    }
+    if (session == null || !session.isAlive()) {
+      return null;
+    }
+    Boolean killedByPid = null;
+    try {
+      killedByPid = session.kill(cookie);
+    } catch (IOException e) {
+      LOGGER.log(Level.FINE, "Failed to kill over control session", e);
+    }
+    if (killedByPid == null) {
+      synchronized (this) {
+        if (controlSession == session) {
+          controlSession = null;
+        }
+      }
+      session.close();
+    }
+    return killedByPid;
+  }
+
+  /**
+   * Registers a process to close with this decorator. Parallel steps in the same container share
+   * the decorator, so registration is synchronized.
+   */
+  private synchronized void addClosable(Closeable closable) {
+    if (closables == null) {
+      closables = new ArrayList<>();
+    }
+    closables.add(closable);
+  }
+
   /**
    * Establishes connection to Kubernetes cluster and verifies pod exists.
    */
@@ -354,38 +829,45 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
   }
 
   /**
-   * Sets up output streams for logging based on quiet mode and caller preferences.
+   * Sets up the output streams of an exec. Process output is handed to the caller's stream as the
+   * websocket delivers it, without intermediate copies. Diagnostics, and process output until the
+   * commands are sent, are kept in a fixed size buffer holding their tail for failure reports, so
+   * the memory held per exec is bounded whatever the command prints.
    */
-  private StreamContext setupOutputStreams(boolean quiet, OutputStream outputForCaller)
-      throws IOException {
-    ByteArrayOutputStream stdout = new ByteArrayOutputStream();
-    ToggleOutputStream toggleStdout = new ToggleOutputStream(stdout);
+  private StreamContext setupOutputStreams(OutputStream outputForCaller,
+      MarkerOutputStream stderrMarker) throws IOException {
+    return setupOutputStreams(outputForCaller, null, stderrMarker);
+  }
+
+  /**
+   * Sets up the output streams of an exec whose errors, if errorForCaller is given, are kept
+   * apart from its output.
+   */
+  private StreamContext setupOutputStreams(OutputStream outputForCaller,
+      OutputStream errorForCaller, MarkerOutputStream stderrMarker) throws IOException {
+    TailOutputStream diagnostics =
+        new TailOutputStream(ArmadaPluginConfig.EXEC_DIAGNOSTICS_BUFFER_SIZE);
+    ToggleOutputStream toggleStdout = new ToggleOutputStream(diagnostics);
 
     PrintStream printStream = new PrintStream(toggleStdout, true,
         StandardCharsets.UTF_8.toString());
     OutputStream stream = toggleStdout;
 
-    ByteArrayOutputStream dryRunCaller = null;
-    ToggleOutputStream toggleDryRunCaller = null;
-    ToggleOutputStream toggleOutputForCaller = null;
-
     // Send to proc caller as well if they sent one
     if (outputForCaller != null && !outputForCaller.equals(printStream)) {
-      boolean isUnix = true; // Armada runs on Unix
-      if (isUnix) {
-        stream = new TeeOutputStream(outputForCaller, stream);
-      } else {
-        // Prepare to capture output for later (Windows path)
-        dryRunCaller = new ByteArrayOutputStream();
-        toggleDryRunCaller = new ToggleOutputStream(dryRunCaller);
-        toggleOutputForCaller = new ToggleOutputStream(outputForCaller, true);
-        stream = new TeeOutputStream(toggleOutputForCaller, stream);
-        stream = new TeeOutputStream(toggleDryRunCaller, stream);
-      }
+      stream = new TeeOutputStream(outputForCaller, stream);
     }
 
-    return new StreamContext(stream, printStream, toggleStdout, toggleOutputForCaller,
-        toggleDryRunCaller);
+    // Shells report conditions the caller must act on, such as a missing saved environment, on
+    // stderr
+    OutputStream errorStream =
+        errorForCaller != null ? new TeeOutputStream(errorForCaller, toggleStdout) : stream;
+    if (stderrMarker != null) {
+      errorStream = new TeeOutputStream(errorStream, stderrMarker);
+    }
+
+    return new StreamContext(stream, errorStream, printStream, toggleStdout, diagnostics,
+        stderrMarker);
   }
 
   /**
@@ -395,35 +877,62 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
       KubernetesClient client,
       Pod pod,
       String namespace,
-      OutputStream stream,
-      PrintStream printStream,
+      StreamContext streamContext,
+      ArmadaSpan span,
       String[] sh) throws IOException {
 
+    PrintStream printStream = streamContext.printStream;
+    ArmadaCircuitBreaker circuitBreaker = ArmadaCircuitBreaker.forCluster(
+        nodeContext.getCloudName(), nodeContext.getClusterId());
     int attempts = 0;
     ExecWatchWrapper watchWrapper = null;
 
     while (watchWrapper == null && attempts < ArmadaPluginConfig.WEBSOCKET_CONNECTION_MAX_RETRY) {
       if (attempts > 0) {
+        ArmadaMetrics.get().counter(ArmadaMetrics.EXEC_WEBSOCKET_RETRIES,
+            ArmadaMetrics.cloudTags(nodeContext.getCloudName())).increment();
         performExponentialBackoff(attempts, printStream);
       }
+      ArmadaCircuitBreaker.Attempt attempt = circuitBreaker.tryAcquire();
+      if (attempt == null) {
+        IOException e = new IOException(String.format("Exec connections to cluster '%s' are failing, not connecting to pod '%s' for another %d ms",
+            nodeContext.getClusterId(), nodeContext.getPodName(),
+            circuitBreaker.getRemainingOpenMillis()));
+        span.recordError(e);
+        throw e;
+      }
 
+      // the API server answering, even with an error about the container, counts as healthy,
+      // while a connection that timed out does not
+      Boolean healthy = null;
       try {
-        watchWrapper = attemptWebSocketConnection(client, pod, namespace, stream, printStream, sh);
+        watchWrapper = attemptWebSocketConnection(client, pod, namespace, streamContext.stream,
+            streamContext.errorStream, printStream, sh);
+        healthy = watchWrapper != null;
       } catch (KubernetesClientException e) {
+        healthy = isContainerNotFound(e);
         handleWebSocketException(e, printStream);
       } catch (InterruptedException e) {
-        printStream.println(
-            "Failed to start websocket connection: "
-                + "Interrupted while waiting for websocket connection");
-        e.printStackTrace(printStream);
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for websocket connection");
       } finally {
+        if (healthy == null) {
+          attempt.release();
+        } else {
+          attempt.record(healthy);
+        }
         attempts++;
       }
     }
 
+    span.setAttribute("armada.exec.websocket_attempts", attempts);
     if (watchWrapper == null || watchWrapper.getExecWatch() == null) {
-      throw new IOException(String.format("Failed to establish WebSocket connection to container '%s' in pod '%s' after %d attempts",
+      IOException e = new IOException(String.format("Failed to establish WebSocket connection to container '%s' in pod '%s' after %d attempts",
           containerName, nodeContext.getPodName(), attempts));
+      LOGGER.log(Level.FINE, "Exec diagnostics of pod {0}:\n{1}",
+          new Object[]{nodeContext.getPodName(), streamContext.diagnostics});
+      span.recordError(e);
+      throw e;
     }
 
     return watchWrapper;
@@ -437,6 +946,7 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
       Pod pod,
       String namespace,
       OutputStream stream,
+      OutputStream errorStream,
       PrintStream printStream,
       String[] sh) throws InterruptedException {
 
@@ -451,7 +961,7 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
         .inContainer(containerName)
         .redirectingInput(ArmadaPluginConfig.STDIN_BUFFER_SIZE)
         .writingOutput(stream)
-        .writingError(stream)
+        .writingError(errorStream)
         .usingListener(createExecListener(alive, started, finished, startAlive, printStream))
         .exec(sh);
 
@@ -530,6 +1040,7 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
       FilePath pwd,
       String[] cmdEnvs,
       boolean[] masks,
+      ArmadaDurableExec durableExec,
       String[] commands,
       StreamContext streamContext,
       String podName,
@@ -544,37 +1055,47 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
       if (finished.await(ArmadaPluginConfig.COMMAND_FINISHED_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
         streamContext.printStream.println(
             "Process exited immediately after creation. See output above");
-        throw new AbortException(
-            "Process exited immediately after creation. Check logs above for more details.");
+        throw new AbortException(String.format(
+            "Process exited immediately after creation. Last output:%n%s",
+            streamContext.diagnostics));
       }
 
       streamContext.toggleStdout.disable();
       OutputStream stdin = watch.getInput();
-      PrintStream in = new PrintStream(stdin, true, StandardCharsets.UTF_8.name());
+      // The whole script is assembled first and sent at once, rather than line by line
+      int scriptSize = 1024;
+      for (String command : commands) {
+        scriptSize += command.length() + 3;
+      }
+      StringBuilder script = new StringBuilder(scriptSize);
 
       boolean isWindows = false; // Armada runs on Unix
+      ArmadaJfrEvents.ExecStageEvent environmentEvent = new ArmadaJfrEvents.ExecStageEvent();
+      environmentEvent.begin();
       try {
-        configureShellEnvironment(in, pwd, cmdEnvs, isWindows, streamContext);
+        configureShellEnvironment(script, pwd, cmdEnvs, isWindows);
       } catch (InterruptedException ie) {
         closeWatch(watch);
         throw new InterruptedIOException(ie.getMessage());
       }
+      commitExecStage(environmentEvent, ArmadaJfrEvents.ExecStageEvent.ENVIRONMENT, podName);
 
-      // Enable output for command execution
-      if (streamContext.toggleOutputForCaller != null) {
-        streamContext.toggleOutputForCaller.enable();
-      }
-      if (streamContext.toggleDryRunCaller != null) {
-        streamContext.toggleDryRunCaller.disable();
-      }
-
-      doExec(in, isWindows, streamContext.printStream, masks, commands);
+      ArmadaJfrEvents.ExecStageEvent commandEvent = new ArmadaJfrEvents.ExecStageEvent();
+      commandEvent.begin();
+      doExec(script, isWindows, streamContext.printStream, masks, durableExec,
+          getCookie(cmdEnvs), commands);
+      writeScript(stdin, script.toString().getBytes(StandardCharsets.UTF_8));
+      commitExecStage(commandEvent, ArmadaJfrEvents.ExecStageEvent.COMMAND, podName);
 
       LOGGER.log(Level.INFO,
           "Created process inside pod: [" + podName + "], container: [" + containerName + "]"
               + "[" + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startMethod) + " ms]");
 
-      return new ArmadaProc(watch, alive, finished, stdin, streamContext.printStream);
+      ArmadaProc proc = new ArmadaProc(watch, alive, finished, stdin, streamContext.printStream);
+      proc.setIdentifiers(nodeContext.getNodeName(), nodeContext.getJobId(), podName,
+          containerName);
+      proc.keepAlive(ArmadaKeepaliveService.forCloud(nodeContext.getCloudName()));
+      return proc;
 
     } catch (InterruptedException ie) {
       closeWatch(watch);
@@ -585,24 +1106,33 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
     }
   }
 
+  private void commitExecStage(ArmadaJfrEvents.ExecStageEvent event, String stage,
+      String podName) {
+    if (event.shouldCommit()) {
+      event.stage = stage;
+      event.nodeName = nodeContext.getNodeName();
+      event.jobId = nodeContext.getJobId();
+      event.podName = podName;
+      event.container = containerName;
+      event.commit();
+    }
+  }
+
   /**
    * Configures the shell environment with working directory and environment variables.
    */
   private void configureShellEnvironment(
-      PrintStream in,
+      StringBuilder script,
       FilePath pwd,
       String[] cmdEnvs,
-      boolean isWindows,
-      StreamContext streamContext) throws IOException, InterruptedException {
+      boolean isWindows) throws IOException, InterruptedException {
 
     if (isWindows) {
-      in.print("@echo off");
-      in.print(newLine(true));
+      script.append("@echo off").append(newLine(true));
     }
 
     if (pwd != null) {
-      in.print(String.format("cd \"%s\"", pwd.getRemote()));
-      in.print(newLine(isWindows));
+      script.append(String.format("cd \"%s\"", pwd.getRemote())).append(newLine(isWindows));
     }
 
     // Build environment variables
@@ -623,24 +1153,29 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
     }
 
     LOGGER.log(Level.FINEST, "Launching with env vars: {0}", envVars.toString());
-    setupEnvironmentVariable(envVars, in, isWindows);
+    setupEnvironmentVariable(envVars, script, isWindows);
   }
 
   /**
-   * Performs exponential backoff wait before retry attempt.
+   * Performs exponential backoff wait before retry attempt, on the calling thread.
+   * <p>
+   * The wait blocks on purpose: a launch must return a started process, and fabric8 opens an exec
+   * websocket synchronously. Scheduling the retry on {@code jenkins.util.Timer} would only move the
+   * wait to a future the caller joins, and the attempt would hold a timer thread on top of it. An
+   * aborted step interrupts the wait, which ends the retries.
    */
-  private void performExponentialBackoff(int attempts, PrintStream printStream) {
-    long backoffInSeconds = Math.min(
-        Integer.toUnsignedLong((int) Math.pow(2, attempts)),
-        ArmadaPluginConfig.WEBSOCKET_CONNECTION_MAX_RETRY_BACKOFF);
-    printStream.println("Retrying in " + backoffInSeconds + "s ...");
+  private void performExponentialBackoff(int attempts, PrintStream printStream)
+      throws InterruptedIOException {
+    long backoffMillis = ArmadaCircuitBreaker.jitteredBackoffMillis(attempts + 1,
+        TimeUnit.SECONDS.toMillis(ArmadaPluginConfig.WEBSOCKET_CONNECTION_MAX_RETRY_BACKOFF));
+    printStream.println("Retrying in " + backoffMillis + "ms ...");
     try {
-      Thread.sleep(backoffInSeconds * 1000);
+      Thread.sleep(backoffMillis);
     } catch (InterruptedException ex) {
-      printStream.println("Retry wait interrupted");
-    } finally {
-      printStream.println("Retrying...");
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Retry wait interrupted");
     }
+    printStream.println("Retrying...");
   }
 
   /**
@@ -649,34 +1184,41 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
   private void handleWebSocketException(KubernetesClientException e, PrintStream printStream)
       throws IOException {
     printStream.print("Failed to start websocket connection: ");
-    String message = e.getMessage();
-    if (message != null && message.startsWith("container " + containerName + " not found in pod")) {
+    if (isContainerNotFound(e)) {
       throw new IOException(String.format("Container '%s' not found in pod '%s'", containerName, nodeContext.getPodName()), e);
     }
     e.printStackTrace(printStream);
   }
 
-  private void setupEnvironmentVariable(EnvVars vars, PrintStream out, boolean windows)
-      throws IOException {
+  private boolean isContainerNotFound(KubernetesClientException e) {
+    String message = e.getMessage();
+    return message != null && message.startsWith("container " + containerName + " not found in pod");
+  }
+
+  private void setupEnvironmentVariable(EnvVars vars, StringBuilder script, boolean windows) {
     for (Map.Entry<String, String> entry : vars.entrySet()) {
-      if (entry.getKey().matches(ArmadaPluginConfig.ENV_VAR_NAME_REGEX)) {
-        out.print(String.format(
+      if (ENV_VAR_NAME.matcher(entry.getKey()).matches()) {
+        script.append(String.format(
             windows ? ArmadaPluginConfig.WINDOWS_ENV_SET_FORMAT
                 : ArmadaPluginConfig.UNIX_ENV_EXPORT_FORMAT,
             entry.getKey(),
             windows ? entry.getValue() : entry.getValue().replace("'", "'\\''")));
-        out.print(newLine(windows));
+        script.append(newLine(windows));
       }
     }
   }
 
   @Override
   public void close() throws IOException {
-    if (closables == null) {
-      return;
+    List<Closeable> toClose;
+    synchronized (this) {
+      if (closables == null) {
+        return;
+      }
+      toClose = new ArrayList<>(closables);
     }
 
-    for (Closeable closable : closables) {
+    for (Closeable closable : toClose) {
       try {
         closable.close();
       } catch (Exception e) {
@@ -709,31 +1251,42 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
   private static class StreamContext {
 
     final OutputStream stream;
+    final OutputStream errorStream;
     final PrintStream printStream;
     final ToggleOutputStream toggleStdout;
-    final ToggleOutputStream toggleOutputForCaller;
-    final ToggleOutputStream toggleDryRunCaller;
+    final TailOutputStream diagnostics;
+    final MarkerOutputStream stderrMarker;
 
-    StreamContext(OutputStream stream, PrintStream printStream, ToggleOutputStream toggleStdout,
-        ToggleOutputStream toggleOutputForCaller, ToggleOutputStream toggleDryRunCaller) {
+    StreamContext(OutputStream stream, OutputStream errorStream, PrintStream printStream,
+        ToggleOutputStream toggleStdout, TailOutputStream diagnostics,
+        MarkerOutputStream stderrMarker) {
       this.stream = stream;
+      this.errorStream = errorStream;
       this.printStream = printStream;
       this.toggleStdout = toggleStdout;
-      this.toggleOutputForCaller = toggleOutputForCaller;
-      this.toggleDryRunCaller = toggleDryRunCaller;
+      this.diagnostics = diagnostics;
+      this.stderrMarker = stderrMarker;
     }
   }
 
   /**
    * Process implementation that executes commands via Kubernetes exec API.
    */
-  private static class ArmadaProc extends Proc implements Closeable, Runnable {
+  private static class ArmadaProc extends Proc implements Closeable,
+      ArmadaKeepaliveService.Pingable {
 
     private final AtomicBoolean alive;
     private final CountDownLatch finished;
     private final ExecWatch watch;
     private final OutputStream stdin;
     private final PrintStream printStream;
+    private volatile ArmadaSpan span;
+    private volatile String nodeName;
+    private volatile String jobId;
+    private volatile String podName;
+    private volatile String container;
+    private volatile ArmadaKeepaliveService keepaliveService;
+    private volatile ArmadaExecAdmission.Permit permit;
 
     public ArmadaProc(
         ExecWatch watch,
@@ -746,8 +1299,14 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
       this.alive = alive;
       this.finished = finished;
       this.printStream = printStream;
-      jenkins.util.Timer.get()
-          .schedule(this, ArmadaPluginConfig.TIMER_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Keeps the websocket of this process alive with the given service until it is closed.
+     */
+    void keepAlive(ArmadaKeepaliveService keepaliveService) {
+      this.keepaliveService = keepaliveService;
+      keepaliveService.register(this);
     }
 
     @Override
@@ -758,10 +1317,8 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
     @Override
     public void kill() throws IOException, InterruptedException {
       try {
-        stdin.write(ArmadaPluginConfig.CTRL_C);
-        stdin.write(ArmadaPluginConfig.EXIT.getBytes(StandardCharsets.UTF_8));
-        stdin.write(ArmadaPluginConfig.NEWLINE.getBytes(StandardCharsets.UTF_8));
-        stdin.flush();
+        writeScript(stdin, (ArmadaPluginConfig.CTRL_C + ArmadaPluginConfig.EXIT
+            + ArmadaPluginConfig.NEWLINE).getBytes(StandardCharsets.UTF_8));
       } catch (IOException e) {
         LOGGER.log(Level.FINE, "Proc kill failed, ignoring", e);
       } finally {
@@ -771,6 +1328,9 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
 
     @Override
     public int join() throws IOException, InterruptedException {
+      ArmadaJfrEvents.ProcJoinEvent joinEvent = new ArmadaJfrEvents.ProcJoinEvent();
+      joinEvent.begin();
+      int result = -1;
       try {
         LOGGER.log(Level.FINEST, "Waiting for websocket to close on command finish ({0})",
             finished);
@@ -788,6 +1348,9 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
         }
 
         Integer exitCode = exitCodeFuture.get();
+        if (span != null && exitCode != null) {
+          span.setAttribute("process.exit_code", exitCode);
+        }
 
         if (exitCode == null) {
           LOGGER.log(
@@ -799,6 +1362,7 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
           }
           return -1;
         }
+        result = exitCode;
         return exitCode;
       } catch (ExecutionException e) {
         Throwable cause = e.getCause();
@@ -817,6 +1381,14 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
         }
         return -1;
       } finally {
+        if (joinEvent.shouldCommit()) {
+          joinEvent.nodeName = nodeName;
+          joinEvent.jobId = jobId;
+          joinEvent.podName = podName;
+          joinEvent.container = container;
+          joinEvent.exitCode = result;
+          joinEvent.commit();
+        }
         close();
       }
     }
@@ -836,33 +1408,282 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
       return stdin;
     }
 
+    /**
+     * Sets the span of this exec, ended once the process is closed.
+     */
+    void setSpan(ArmadaSpan span) {
+      this.span = span;
+    }
+
+    /**
+     * Sets the admission of this exec, released once the process is closed.
+     */
+    void setPermit(ArmadaExecAdmission.Permit permit) {
+      this.permit = permit;
+    }
+
+    /**
+     * Sets the identifiers of the agent and container running this process, for its flight
+     * recorder events.
+     */
+    void setIdentifiers(String nodeName, String jobId, String podName, String container) {
+      this.nodeName = nodeName;
+      this.jobId = jobId;
+      this.podName = podName;
+      this.container = container;
+    }
+
     @Override
     public void close() throws IOException {
+      ArmadaKeepaliveService service = keepaliveService;
+      if (service != null) {
+        service.unregister(this);
+      }
       try {
         watch.close();
       } catch (Exception e) {
         LOGGER.log(Level.INFO, "failed to close watch", e);
+      } finally {
+        ArmadaExecAdmission.Permit admission = permit;
+        if (admission != null) {
+          admission.close();
+        }
+        if (span != null) {
+          span.end();
+        }
       }
     }
 
     @Override
-    public void run() {
-      if (!isAlive()) {
-        LOGGER.fine("process is no longer alive");
-        return;
+    public void ping() throws IOException {
+      stdin.write(ArmadaPluginConfig.NEWLINE.getBytes(StandardCharsets.UTF_8));
+      stdin.flush();
+    }
+  }
+
+  /**
+   * Shell kept open in the container, with no command of its own, so that aborting a step signals
+   * its processes without waiting for a new exec session. Kills are run one at a time; the lines
+   * the kill scripts print on stderr with the {@code armada: } prefix are queued until the reply
+   * of the kill arrives.
+   */
+  private final class ControlSession implements Closeable {
+
+    private final BlockingQueue<String> replies = new LinkedBlockingQueue<>();
+    private final ArmadaProc proc;
+    private long kills;
+
+    ControlSession() throws IOException {
+      proc = execScript("", null, new ReplyOutputStream(replies), null, false);
+    }
+
+    boolean isAlive() {
+      return proc.isAlive();
+    }
+
+    /**
+     * @return whether recorded processes were killed, or null if the session did not reply within
+     * {@link ArmadaPluginConfig#EXEC_KILL_REPLY_TIMEOUT}
+     */
+    synchronized Boolean kill(String cookie) throws IOException, InterruptedException {
+      String id = Long.toString(++kills);
+      replies.clear();
+      writeScript(proc.getStdin(), sessionKillScript(cookie, id).getBytes(StandardCharsets.UTF_8));
+      long deadline = System.nanoTime()
+          + TimeUnit.SECONDS.toNanos(ArmadaPluginConfig.EXEC_KILL_REPLY_TIMEOUT);
+      boolean killedByPid = false;
+      while (true) {
+        String line = replies.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        if (line == null) {
+          return null;
+        }
+        if (line.equals(KILL_REPLY_MARKER + id)) {
+          return killedByPid;
+        }
+        killedByPid |= line.equals(KILLED_BY_PID_MARKER);
       }
+    }
+
+    @Override
+    public void close() {
       try {
-        stdin.write(ArmadaPluginConfig.NEWLINE.getBytes(StandardCharsets.UTF_8));
-        stdin.flush();
-        LOGGER.fine("sent a newline to keep socket alive");
-        jenkins.util.Timer.get()
-            .schedule(this, ArmadaPluginConfig.TIMER_INTERVAL_MINUTES, TimeUnit.MINUTES);
-      } catch (IOException x) {
-        LOGGER.log(Level.FINE, "socket keepalive failed", x);
+        proc.close();
+      } catch (IOException e) {
+        LOGGER.log(Level.FINE, "Failed to close control session", e);
+      }
+    }
+  }
+
+  /**
+   * OutputStream queueing the lines starting with {@code armada: }, up to a bounded length, and
+   * dropping everything else.
+   */
+  static class ReplyOutputStream extends OutputStream {
+
+    private static final byte[] PREFIX = "armada: ".getBytes(StandardCharsets.UTF_8);
+    private static final int MAX_LINE = 256;
+
+    private final BlockingQueue<String> replies;
+    private final byte[] line = new byte[MAX_LINE];
+    private int length;
+    private boolean overflow;
+
+    ReplyOutputStream(BlockingQueue<String> replies) {
+      this.replies = replies;
+    }
+
+    @Override
+    public synchronized void write(int b) {
+      if (b == '\n') {
+        if (!overflow && length >= PREFIX.length
+            && Arrays.equals(line, 0, PREFIX.length, PREFIX, 0, PREFIX.length)) {
+          replies.offer(new String(line, 0, length, StandardCharsets.UTF_8));
+        }
+        length = 0;
+        overflow = false;
+      } else if (length < line.length) {
+        line[length++] = (byte) b;
+      } else {
+        overflow = true;
+      }
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+      Objects.checkFromIndexSize(off, len, b.length);
+      for (int i = off; i < off + len; i++) {
+        write(b[i]);
       }
     }
   }
 
+  /**
+   * Process started in durable mode. The command runs detached from the exec that started it, and
+   * its log is followed by separate execs. When the websocket of a follow exec drops, a new one
+   * re-attaches from the last byte received, until
+   * {@link ArmadaPluginConfig#DURABLE_EXEC_REATTACH_TIMEOUT} elapses without reaching the
+   * container.
+   * <p>
+   * The process is only known to this controller's memory: after a controller restart nothing
+   * re-attaches to it, and its log and exit code stay in the control directory until the pod goes
+   * away.
+   */
+  private class ArmadaDurableProc extends Proc {
+
+    private final Proc launchProc;
+    private final ArmadaDurableExec durableExec;
+    private final CountingOutputStream output;
+    private final PrintStream logger;
+    private volatile ArmadaProc follower;
+    private volatile boolean finished;
+
+    ArmadaDurableProc(Proc launchProc, ArmadaDurableExec durableExec, OutputStream output,
+        PrintStream logger) {
+      this.launchProc = launchProc;
+      this.durableExec = durableExec;
+      this.output = new CountingOutputStream(
+          output != null ? output : OutputStream.nullOutputStream());
+      this.logger = logger;
+    }
+
+    @Override
+    public boolean isAlive() {
+      return !finished;
+    }
+
+    @Override
+    public void kill() throws IOException, InterruptedException {
+      try {
+        execScript(durableExec.killScript(), null, null, false).join();
+      } finally {
+        ArmadaProc current = follower;
+        if (current != null) {
+          current.close();
+        }
+      }
+    }
+
+    @Override
+    public int join() throws IOException, InterruptedException {
+      try {
+        int launched = launchProc.join();
+        if (launched != 0) {
+          return launched;
+        }
+        long lastAttached = System.nanoTime();
+        int attempts = 0;
+        while (true) {
+          MarkerOutputStream lost = new MarkerOutputStream(ArmadaDurableExec.PROCESS_LOST_MARKER);
+          try {
+            // Only the log is counted, the errors of the follow shell go to the build log
+            ArmadaProc proc = execScript(durableExec.followScript(output.getByteCount()), output,
+                logger, lost, true);
+            follower = proc;
+            int exitCode = proc.join();
+            if (lost.isFound()) {
+              logger.println("Process of container " + containerName
+                  + " ended without an exit code, the container may have restarted");
+              return -1;
+            }
+            if (exitCode >= 0) {
+              cleanup();
+              return exitCode;
+            }
+            // The websocket dropped while the container was reachable
+            lastAttached = System.nanoTime();
+            attempts = 0;
+          } catch (InterruptedIOException e) {
+            throw e;
+          } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to follow durable process in "
+                + durableExec.getDirectory(), e);
+          }
+          if (System.nanoTime() - lastAttached
+              > TimeUnit.SECONDS.toNanos(ArmadaPluginConfig.DURABLE_EXEC_REATTACH_TIMEOUT)) {
+            logger.println("Giving up re-attaching to the process of container " + containerName
+                + ", its log and exit code are kept in " + durableExec.getDirectory());
+            return -1;
+          }
+          attempts++;
+          long backoffMillis = ArmadaCircuitBreaker.jitteredBackoffMillis(attempts,
+              TimeUnit.SECONDS.toMillis(ArmadaPluginConfig.WEBSOCKET_CONNECTION_MAX_RETRY_BACKOFF));
+          logger.println("Connection to container " + containerName + " lost after "
+              + output.getByteCount() + " bytes of output, re-attaching in " + backoffMillis
+              + "ms ...");
+          Thread.sleep(backoffMillis);
+        }
+      } finally {
+        finished = true;
+      }
+    }
+
+    private void cleanup() {
+      try {
+        execScript(durableExec.cleanupScript(), null, null, true).join();
+      } catch (IOException | InterruptedException e) {
+        LOGGER.log(Level.FINE, "Failed to remove " + durableExec.getDirectory(), e);
+        if (e instanceof InterruptedException) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    @Override
+    public InputStream getStdout() {
+      return null;
+    }
+
+    @Override
+    public InputStream getStderr() {
+      return null;
+    }
+
+    @Override
+    public OutputStream getStdin() {
+      return null;
+    }
+  }
+
   /**
    * Wrapper of ExecWatch that also holds watch attributes for liveness and closure.
    */
@@ -894,9 +1715,9 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
   /**
    * OutputStream that can be toggled on/off.
    */
-  private static class ToggleOutputStream extends FilterOutputStream {
+  static class ToggleOutputStream extends FilterOutputStream {
 
-    private boolean disabled;
+    private volatile boolean disabled;
 
     public ToggleOutputStream(OutputStream out) {
       this(out, false);
@@ -937,13 +1758,126 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
     }
   }
 
+  /**
+   * OutputStream that retains only the last bytes written to it, in a buffer allocated once.
+   */
+  static class TailOutputStream extends OutputStream {
+
+    private final byte[] buffer;
+    private int position;
+    private long count;
+
+    TailOutputStream(int capacity) {
+      buffer = new byte[Math.max(capacity, 0)];
+    }
+
+    @Override
+    public synchronized void write(int b) {
+      count++;
+      if (buffer.length > 0) {
+        buffer[position] = (byte) b;
+        position = (position + 1) % buffer.length;
+      }
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+      Objects.checkFromIndexSize(off, len, b.length);
+      count += len;
+      if (buffer.length == 0) {
+        return;
+      }
+      if (len >= buffer.length) {
+        System.arraycopy(b, off + len - buffer.length, buffer, 0, buffer.length);
+        position = 0;
+        return;
+      }
+      int first = Math.min(len, buffer.length - position);
+      System.arraycopy(b, off, buffer, position, first);
+      System.arraycopy(b, off + first, buffer, 0, len - first);
+      position = (position + len) % buffer.length;
+    }
+
+    /**
+     * @return the total number of bytes written, retained or not
+     */
+    synchronized long getCount() {
+      return count;
+    }
+
+    /**
+     * @return the retained bytes, oldest first
+     */
+    synchronized byte[] toByteArray() {
+      int size = (int) Math.min(count, buffer.length);
+      byte[] tail = new byte[size];
+      if (size > 0) {
+        int start = (position - size + buffer.length) % buffer.length;
+        int first = Math.min(size, buffer.length - start);
+        System.arraycopy(buffer, start, tail, 0, first);
+        System.arraycopy(buffer, 0, tail, first, size - first);
+      }
+      return tail;
+    }
+
+    @Override
+    public String toString() {
+      return new String(toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * OutputStream that discards what is written to it, only noting whether a marker went through.
+   */
+  static class MarkerOutputStream extends OutputStream {
+
+    private final byte[] marker;
+    private int matched;
+    private volatile boolean found;
+
+    MarkerOutputStream(String marker) {
+      this.marker = marker.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public synchronized void write(int b) {
+      if (found) {
+        return;
+      }
+      if ((byte) b == marker[matched]) {
+        matched++;
+        if (matched == marker.length) {
+          found = true;
+        }
+      } else {
+        matched = (byte) b == marker[0] ? 1 : 0;
+      }
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+      Objects.checkFromIndexSize(off, len, b.length);
+      for (int i = off; i < off + len && !found; i++) {
+        write(b[i]);
+      }
+    }
+
+    boolean isFound() {
+      return found;
+    }
+  }
+
   /**
    * Process given stream and mask as specified by the bitfield. Uses space as a separator to
    * determine which fragments to hide.
+   * <p>
+   * Bulk writes scan for separators and pass unmasked runs through in a single write, so a command
+   * line costs a handful of writes downstream instead of one per byte.
    */
-  private static class MaskOutputStream extends FilterOutputStream {
+  static class MaskOutputStream extends FilterOutputStream {
 
     private static final String MASK_STRING = "********";
+    private static final byte[] MASK_BYTES = MASK_STRING.getBytes(StandardCharsets.US_ASCII);
     private static final char SEPARATOR = ' ';
     private final boolean[] masks;
     private int index;
@@ -965,15 +1899,54 @@ public class ArmadaExecDecorator extends LauncherDecorator implements Serializab
       } else if (masks[index]) {
         if (!wrote) {
           wrote = true;
-          for (char c : MASK_STRING.toCharArray()) {
-            out.write(c);
-          }
+          out.write(MASK_BYTES);
         }
       } else {
         out.write(b);
       }
     }
 
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      Objects.checkFromIndexSize(off, len, b.length);
+      int end = off + len;
+      // Start of the bytes to pass through unchanged
+      int pending = off;
+      int position = off;
+      while (masks != null && index < masks.length && position < end) {
+        int separator = indexOfSeparator(b, position, end);
+        if (masks[index]) {
+          if (position > pending) {
+            out.write(b, pending, position - pending);
+          }
+          if (separator > position && !wrote) {
+            wrote = true;
+            out.write(MASK_BYTES);
+          }
+          pending = separator;
+        }
+        if (separator == end) {
+          // The fragment continues in the next write
+          break;
+        }
+        index++;
+        wrote = false;
+        position = separator + 1;
+      }
+      if (end > pending) {
+        out.write(b, pending, end - pending);
+      }
+    }
+
+    private static int indexOfSeparator(byte[] b, int from, int to) {
+      for (int i = from; i < to; i++) {
+        if (b[i] == SEPARATOR) {
+          return i;
+        }
+      }
+      return to;
+    }
+
     private boolean isSeparator(int b) {
       return b == SEPARATOR;
     }
@@ -0,0 +1,144 @@
+package io.armadaproject.jenkins.plugin;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events of the plugin, so that a continuous recording can explain latency
+ * spikes of launches and execs without FINE logging. The events are disabled unless a recording
+ * enables them, in which case their fields are only filled in when {@link Event#shouldCommit()}
+ * says the event will be written.
+ */
+final class ArmadaJfrEvents {
+
+  static final String CATEGORY = "Armada";
+
+  private ArmadaJfrEvents() {
+    // Utility class - prevent instantiation
+  }
+
+  @Name("io.armadaproject.LaunchPhase")
+  @Label("Armada Launch Phase")
+  @Description("An agent reached the milestone of a launch phase")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  static final class LaunchPhaseEvent extends Event {
+
+    @Label("Node")
+    String nodeName;
+
+    @Label("Job ID")
+    String jobId;
+
+    @Label("Job Set ID")
+    String jobSetId;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Phase Duration")
+    @Timespan(Timespan.MILLISECONDS)
+    long phaseDuration;
+  }
+
+  @Name("io.armadaproject.EventPublish")
+  @Label("Armada Event Publish")
+  @Description("An Armada job event was dispatched to its subscribers")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  static final class EventPublishEvent extends Event {
+
+    @Label("Job Set ID")
+    String jobSetId;
+
+    @Label("Job ID")
+    String jobId;
+
+    @Label("Event Type")
+    String eventType;
+
+    @Label("Cluster ID")
+    String clusterId;
+
+    @Label("Pod")
+    String podName;
+
+    @Label("Subscribers")
+    int subscribers;
+  }
+
+  @Name("io.armadaproject.Provision")
+  @Label("Armada Provision")
+  @Description("Jenkins asked an Armada cloud for agents")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  static final class ProvisionEvent extends Event {
+
+    @Label("Cloud")
+    String cloud;
+
+    @Label("Label")
+    String label;
+
+    @Label("Excess Workload")
+    int excessWorkload;
+
+    @Label("Planned Nodes")
+    int plannedNodes;
+  }
+
+  @Name("io.armadaproject.ExecStage")
+  @Label("Armada Exec Stage")
+  @Description("A stage of starting a command in an agent's pod")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  static final class ExecStageEvent extends Event {
+
+    static final String CONNECT = "connect";
+    static final String ENVIRONMENT = "environment";
+    static final String COMMAND = "command";
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Node")
+    String nodeName;
+
+    @Label("Job ID")
+    String jobId;
+
+    @Label("Pod")
+    String podName;
+
+    @Label("Container")
+    String container;
+  }
+
+  @Name("io.armadaproject.ProcJoin")
+  @Label("Armada Process Join")
+  @Description("Waiting for a command in an agent's pod to exit")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  static final class ProcJoinEvent extends Event {
+
+    @Label("Node")
+    String nodeName;
+
+    @Label("Job ID")
+    String jobId;
+
+    @Label("Pod")
+    String podName;
+
+    @Label("Container")
+    String container;
+
+    @Label("Exit Code")
+    int exitCode;
+  }
+}
@@ -0,0 +1,133 @@
+package io.armadaproject.jenkins.plugin;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import javax.annotation.CheckForNull;
+
+/**
+ * Strategies for grouping Armada jobs into job sets. Every job set gets its own event stream, so
+ * the strategy decides how many unrelated events each watcher has to replay and filter. The job
+ * set ID is computed per launch and stored on the {@link ArmadaComputer}; it is never written
+ * back to the cloud.
+ */
+public enum ArmadaJobSetStrategy {
+
+  /**
+   * One job set per cloud per day. This was the only behaviour before strategies existed.
+   */
+  DAILY("One job set per day") {
+    @Override
+    String suffix(ArmadaJobTemplate template, int shards, Instant now) {
+      return format(ArmadaPluginConfig.JOB_SET_DATE_FORMAT, now);
+    }
+  },
+
+  /**
+   * One job set per cloud per hour.
+   */
+  HOURLY("One job set per hour") {
+    @Override
+    String suffix(ArmadaJobTemplate template, int shards, Instant now) {
+      return format(ArmadaPluginConfig.JOB_SET_HOUR_FORMAT, now);
+    }
+  },
+
+  /**
+   * One job set per build. Falls back to {@link #DAILY} when the template was not registered from
+   * a build.
+   */
+  PER_BUILD("One job set per build") {
+    @Override
+    String suffix(ArmadaJobTemplate template, int shards, Instant now) {
+      String runId = template.getRunId();
+      if (runId == null) {
+        return DAILY.suffix(template, shards, now);
+      }
+      return "-" + runId;
+    }
+  },
+
+  /**
+   * One job set per folder per day. Jobs outside of any folder share a single job set. Falls back
+   * to {@link #DAILY} when the template was not registered from a build.
+   */
+  PER_FOLDER("One job set per folder per day") {
+    @Override
+    String suffix(ArmadaJobTemplate template, int shards, Instant now) {
+      String runId = template.getRunId();
+      if (runId == null) {
+        return DAILY.suffix(template, shards, now);
+      }
+      String jobFullName = runId.substring(0, Math.max(runId.lastIndexOf('#'), 0));
+      int folderEnd = jobFullName.lastIndexOf('/');
+      String folder = folderEnd > 0 ? jobFullName.substring(0, folderEnd) : "root";
+      return "-" + folder + format(ArmadaPluginConfig.JOB_SET_DATE_FORMAT, now);
+    }
+  },
+
+  /**
+   * Jobs are hashed by label into a fixed number of job sets per day.
+   */
+  SHARDED("Hashed into a fixed number of job sets per day") {
+    @Override
+    String suffix(ArmadaJobTemplate template, int shards, Instant now) {
+      int shard = Math.floorMod(template.getLabel().hashCode(), Math.max(shards, 1));
+      return "-shard" + shard + format(ArmadaPluginConfig.JOB_SET_DATE_FORMAT, now);
+    }
+  };
+
+  private final String displayName;
+
+  ArmadaJobSetStrategy(String displayName) {
+    this.displayName = displayName;
+  }
+
+  /**
+   * Resolves a strategy by name, falling back to {@link #DAILY} for blank or unknown values so
+   * that configurations saved before strategies existed keep their behaviour.
+   *
+   * @param name the strategy name
+   * @return the matching strategy
+   */
+  public static ArmadaJobSetStrategy fromName(@CheckForNull String name) {
+    if (name != null) {
+      for (ArmadaJobSetStrategy strategy : values()) {
+        if (strategy.name().equals(name)) {
+          return strategy;
+        }
+      }
+    }
+    return DAILY;
+  }
+
+  private static String format(String pattern, Instant now) {
+    return DateTimeFormatter.ofPattern(pattern).withZone(ZoneId.systemDefault()).format(now);
+  }
+
+  /**
+   * Replaces characters that are awkward in job set IDs, URLs and thread names.
+   */
+  static String sanitize(String jobSetId) {
+    return jobSetId.replaceAll("[^A-Za-z0-9._-]", "-");
+  }
+
+  public String getDisplayName() {
+    return displayName;
+  }
+
+  /**
+   * Computes the job set ID for a launch.
+   *
+   * @param prefix   the job set prefix, usually the cloud name
+   * @param template the template of the agent being launched
+   * @param shards   the number of shards, only used by {@link #SHARDED}
+   * @param now      the launch time
+   * @return the job set ID
+   */
+  public String jobSetId(String prefix, ArmadaJobTemplate template, int shards, Instant now) {
+    return sanitize(prefix + suffix(template, shards, now));
+  }
+
+  abstract String suffix(ArmadaJobTemplate template, int shards, Instant now);
+}
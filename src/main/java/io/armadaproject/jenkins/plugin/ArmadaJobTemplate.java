@@ -23,6 +23,13 @@ public class ArmadaJobTemplate implements Serializable {
 
   private final String label;
   private final Pod podSpec;
+  /**
+   * Externalizable ID of the build that registered this template, or null if unknown.
+   */
+  private final String runId;
+  private long registrationStartedAt;
+  private long registeredAt;
+  private int maxConcurrentExecs;
 
   /**
    * The listener for streaming logs to the pipeline console. Marked transient because TaskListener
@@ -31,9 +38,14 @@ public class ArmadaJobTemplate implements Serializable {
   private final transient TaskListener listener;
 
   public ArmadaJobTemplate(String label, Pod pod, TaskListener listener) {
+    this(label, pod, listener, null);
+  }
+
+  public ArmadaJobTemplate(String label, Pod pod, TaskListener listener, String runId) {
     this.label = label;
     this.podSpec = pod;
     this.listener = listener;
+    this.runId = runId;
   }
 
   public String getLabel() {
@@ -44,6 +56,68 @@ public class ArmadaJobTemplate implements Serializable {
     return podSpec;
   }
 
+  /**
+   * Returns the externalizable ID of the build that registered this template, in the form
+   * {@code folder/job#number}.
+   *
+   * @return the run ID, or null if the template was not registered from a build
+   */
+  public String getRunId() {
+    return runId;
+  }
+
+  /**
+   * @return the time in milliseconds at which the template registration started, or 0 if unknown
+   */
+  public long getRegistrationStartedAt() {
+    return registrationStartedAt;
+  }
+
+  /**
+   * @return the time in milliseconds at which the template was registered, or 0 if unknown
+   */
+  public long getRegisteredAt() {
+    return registeredAt;
+  }
+
+  void setRegistrationTimes(long registrationStartedAt, long registeredAt) {
+    this.registrationStartedAt = registrationStartedAt;
+    this.registeredAt = registeredAt;
+  }
+
+  /**
+   * @return the exec sessions allowed at once against a pod of this template, or 0 for the default
+   * {@link ArmadaPluginConfig#EXEC_MAX_CONCURRENT_PER_POD}
+   */
+  public int getMaxConcurrentExecs() {
+    return maxConcurrentExecs;
+  }
+
+  void setMaxConcurrentExecs(int maxConcurrentExecs) {
+    this.maxConcurrentExecs = maxConcurrentExecs;
+  }
+
+  /**
+   * Returns a stable name for the template, used to tag metrics so that agents launched from the
+   * same pod template can be compared across builds. The name is the pod's metadata name if set,
+   * otherwise the full name of the job that registered the template, so that the number of
+   * distinct tags stays bounded by the number of jobs.
+   *
+   * @return the template name, or "none" if neither is known
+   */
+  public String getTemplateName() {
+    if (podSpec != null && podSpec.getMetadata() != null
+        && podSpec.getMetadata().getName() != null
+        && !podSpec.getMetadata().getName().isEmpty()) {
+      return podSpec.getMetadata().getName();
+    }
+    if (runId != null && !runId.isEmpty()) {
+      int buildNumber = runId.lastIndexOf('#');
+      return buildNumber > 0 ? runId.substring(0, buildNumber) : runId;
+    }
+    return "none";
+  }
+
   /**
    * Returns the task listener for console output. May be null if this object was deserialized.
    * Callers should handle null gracefully.
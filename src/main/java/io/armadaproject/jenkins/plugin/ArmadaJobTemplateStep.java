@@ -1,6 +1,7 @@
 package io.armadaproject.jenkins.plugin;
 
 import hudson.Extension;
+import hudson.model.Run;
 import hudson.model.TaskListener;
 import io.fabric8.kubernetes.api.model.Pod;
 import io.fabric8.kubernetes.client.utils.Serialization;
@@ -14,6 +15,7 @@ import org.jenkinsci.plugins.workflow.steps.StepContext;
 import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
 import org.jenkinsci.plugins.workflow.steps.StepExecution;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 public class ArmadaJobTemplateStep extends Step implements Serializable {
 
@@ -22,6 +24,7 @@ public class ArmadaJobTemplateStep extends Step implements Serializable {
 
   private final String yaml;
   private final String cloud;
+  private int maxConcurrentExecs;
   private transient String label;
 
   @DataBoundConstructor
@@ -34,19 +37,40 @@ public class ArmadaJobTemplateStep extends Step implements Serializable {
     return label;
   }
 
+  public int getMaxConcurrentExecs() {
+    return maxConcurrentExecs;
+  }
+
+  /**
+   * Sets the exec sessions allowed at once against a pod of this template, such as the branches of
+   * a {@code parallel} block running in its containers. 0 keeps the default.
+   */
+  @DataBoundSetter
+  public void setMaxConcurrentExecs(int maxConcurrentExecs) {
+    this.maxConcurrentExecs = Math.max(maxConcurrentExecs, 0);
+  }
+
   @Override
   public StepExecution start(StepContext context) throws Exception {
     return new ArmadaJobTemplateStepExecution(this, context);
   }
 
   public String registerTemplate(TaskListener listener) throws IOException {
+    return registerTemplate(listener, null);
+  }
+
+  public String registerTemplate(TaskListener listener, Run<?, ?> run) throws IOException {
+    long startedAt = System.currentTimeMillis();
     ArmadaCloud cloud = ArmadaCloud.resolveCloud(this.cloud);
     label = ArmadaSlave.generateLabel(cloud.name);
 
     Pod podSpec = createPodSpec(yaml);
     validatePodSpec(podSpec, listener);
 
-    ArmadaJobTemplate template = new ArmadaJobTemplate(label, podSpec, listener);
+    ArmadaJobTemplate template = new ArmadaJobTemplate(label, podSpec, listener,
+        run != null ? run.getExternalizableId() : null);
+    template.setRegistrationTimes(startedAt, System.currentTimeMillis());
+    template.setMaxConcurrentExecs(maxConcurrentExecs);
     cloud.addDynamicTemplate(template);
     listener.getLogger().println("Registered armada job template: " + label);
     return label;
@@ -1,6 +1,7 @@
 package io.armadaproject.jenkins.plugin;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.model.Run;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.logging.Logger;
@@ -25,7 +26,8 @@ public class ArmadaJobTemplateStepExecution extends AbstractStepExecutionImpl {
 
   @Override
   public boolean start() throws Exception {
-    String label = step.registerTemplate(getContext().get(hudson.model.TaskListener.class));
+    String label = step.registerTemplate(getContext().get(hudson.model.TaskListener.class),
+        getContext().get(Run.class));
 
     BodyInvoker invoker = getContext().newBodyInvoker()
         .withContext(EnvironmentExpander.merge(
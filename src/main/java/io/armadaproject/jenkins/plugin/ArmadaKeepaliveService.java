@@ -0,0 +1,150 @@
+package io.armadaproject.jenkins.plugin;
+
+import hudson.model.Computer;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the exec websockets of a cloud alive. Live processes are registered in a concurrent set
+ * and pinged together by a single periodic task, instead of each process scheduling its own timer
+ * task. The task only runs while processes are registered.
+ * <p>
+ * Each ping is written by its own task on the ping executor, so that a websocket whose write
+ * blocks does not hold back the pings of the other processes. A process whose previous ping has
+ * not finished is skipped.
+ */
+class ArmadaKeepaliveService {
+
+  private static final Logger LOGGER = Logger.getLogger(ArmadaKeepaliveService.class.getName());
+  private static final ConcurrentMap<String, ArmadaKeepaliveService> SERVICES =
+      new ConcurrentHashMap<>();
+
+  private final String cloudName;
+  private final Supplier<ScheduledExecutorService> executor;
+  private final Executor pingExecutor;
+  private final long intervalMillis;
+  private final Set<Pingable> pingables = ConcurrentHashMap.newKeySet();
+  private final Set<Pingable> pinging = ConcurrentHashMap.newKeySet();
+  private ScheduledFuture<?> task;
+
+  ArmadaKeepaliveService(String cloudName, Supplier<ScheduledExecutorService> executor,
+      Executor pingExecutor, long intervalMillis) {
+    this.cloudName = cloudName;
+    this.executor = executor;
+    this.pingExecutor = pingExecutor;
+    this.intervalMillis = intervalMillis;
+  }
+
+  /**
+   * @return the keepalive service of the given cloud, created on first use
+   */
+  static ArmadaKeepaliveService forCloud(String cloudName) {
+    return SERVICES.computeIfAbsent(cloudName, name -> new ArmadaKeepaliveService(name,
+        jenkins.util.Timer::get, Computer.threadPoolForRemoting,
+        TimeUnit.MINUTES.toMillis(ArmadaPluginConfig.TIMER_INTERVAL_MINUTES)));
+  }
+
+  /**
+   * Starts pinging the given process, until it is unregistered or found dead.
+   */
+  void register(Pingable pingable) {
+    pingables.add(pingable);
+    synchronized (this) {
+      if (task == null) {
+        task = executor.get().scheduleWithFixedDelay(this::pingAll, intervalMillis,
+            intervalMillis, TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+
+  /**
+   * Stops pinging the given process. The periodic task is cancelled once no process is left.
+   */
+  void unregister(Pingable pingable) {
+    pingables.remove(pingable);
+    stopIfIdle();
+  }
+
+  /**
+   * @return the number of processes currently kept alive
+   */
+  int size() {
+    return pingables.size();
+  }
+
+  synchronized boolean isScheduled() {
+    return task != null;
+  }
+
+  /**
+   * Pings every registered process, dropping the ones that are no longer alive or whose websocket
+   * cannot be written to.
+   */
+  void pingAll() {
+    int pinged = 0;
+    int skipped = 0;
+    for (Pingable pingable : pingables) {
+      if (!pingable.isAlive()) {
+        pingables.remove(pingable);
+        continue;
+      }
+      if (!pinging.add(pingable)) {
+        skipped++;
+        continue;
+      }
+      try {
+        pingExecutor.execute(() -> ping(pingable));
+        pinged++;
+      } catch (RejectedExecutionException e) {
+        pinging.remove(pingable);
+        LOGGER.log(Level.FINE, "socket keepalive rejected", e);
+      }
+    }
+    LOGGER.log(Level.FINE, "Sending keepalive to {0} processes of cloud {1}, {2} still pinging",
+        new Object[]{pinged, cloudName, skipped});
+    stopIfIdle();
+  }
+
+  private void ping(Pingable pingable) {
+    try {
+      pingable.ping();
+    } catch (IOException | RuntimeException e) {
+      LOGGER.log(Level.FINE, "socket keepalive failed", e);
+      pingables.remove(pingable);
+      stopIfIdle();
+    } finally {
+      pinging.remove(pingable);
+    }
+  }
+
+  private synchronized void stopIfIdle() {
+    // register() adds before taking this lock, so it reschedules if the task is cancelled here
+    if (pingables.isEmpty() && task != null) {
+      task.cancel(false);
+      task = null;
+    }
+  }
+
+  /**
+   * Process whose connection must be kept alive.
+   */
+  interface Pingable {
+
+    boolean isAlive();
+
+    /**
+     * Writes something harmless to the connection.
+     */
+    void ping() throws IOException;
+  }
+}
@@ -0,0 +1,263 @@
+package io.armadaproject.jenkins.plugin;
+
+import api.Job.JobStatusRequest;
+import api.Job.JobStatusResponse;
+import api.SubmitOuterClass.JobState;
+import io.armadaproject.ArmadaClient;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.CheckForNull;
+
+/**
+ * Polls the state of every job of a cloud whose agent is launching, so that concurrent launches
+ * share one status request per job set and one pod listing per cluster namespace on each round,
+ * instead of each launch querying Armada and Kubernetes for its own job.
+ * <p>
+ * Rounds are scheduled by the launch executor every
+ * {@link ArmadaPluginConfig#POLL_INTERVAL_SECONDS}, only while at least one job is watched, and run
+ * one at a time on a separate executor, since they block on Armada and Kubernetes. Pods are listed
+ * at most once per
+ * {@link ArmadaPluginConfig#POD_STATUS_CHECK_INTERVAL_MS}. Failures are best effort: the previous
+ * results are kept and launches still time out.
+ */
+class ArmadaLaunchPoller {
+
+  private static final Logger LOGGER = Logger.getLogger(ArmadaLaunchPoller.class.getName());
+
+  private final ArmadaCloud cloud;
+  private final ScheduledExecutorService executor;
+  private final Executor roundExecutor;
+  private final ConcurrentHashMap<String, Watch> watches = new ConcurrentHashMap<>();
+  /**
+   * Kubernetes clients by cluster ID, only used by the polling rounds while holding the lock of
+   * the map.
+   */
+  private final Map<String, KubernetesClient> clients = new HashMap<>();
+  private final AtomicBoolean polling = new AtomicBoolean();
+  private ScheduledFuture<?> rounds;
+  private volatile long lastPodCheck;
+
+  /**
+   * @param executor      schedules the rounds
+   * @param roundExecutor runs the rounds
+   */
+  ArmadaLaunchPoller(ArmadaCloud cloud, ScheduledExecutorService executor,
+      Executor roundExecutor) {
+    this.cloud = cloud;
+    this.executor = executor;
+    this.roundExecutor = roundExecutor;
+  }
+
+  /**
+   * Starts polling the state of a job until {@link #unwatch(String)} is called.
+   */
+  void watch(String jobId, String jobSetId) {
+    watches.put(jobId, new Watch(jobSetId));
+    synchronized (this) {
+      if (rounds == null) {
+        rounds = executor.scheduleWithFixedDelay(this::startRound, 0,
+            ArmadaPluginConfig.POLL_INTERVAL_SECONDS, TimeUnit.SECONDS);
+      }
+    }
+  }
+
+  void unwatch(String jobId) {
+    watches.remove(jobId);
+    synchronized (this) {
+      if (watches.isEmpty() && rounds != null) {
+        rounds.cancel(false);
+        rounds = null;
+      }
+    }
+  }
+
+  /**
+   * Records the pod a watched job was placed in, so that the pod's status gets inspected.
+   */
+  void setPlacement(String jobId, ArmadaEvent placement) {
+    Watch watch = watches.get(jobId);
+    if (watch != null) {
+      watch.placement = placement;
+    }
+  }
+
+  /**
+   * @return the last polled state of a watched job, or null if it was not polled yet
+   */
+  @CheckForNull
+  JobState getJobState(String jobId) {
+    Watch watch = watches.get(jobId);
+    return watch != null ? watch.state : null;
+  }
+
+  /**
+   * @return the condition found in the pod of a watched job that prevents it from ever running,
+   * or null if there is none
+   */
+  @CheckForNull
+  String getFatalPodCondition(String jobId) {
+    Watch watch = watches.get(jobId);
+    return watch != null ? watch.fatalPodCondition : null;
+  }
+
+  /**
+   * Hands a round over to the round executor, unless the previous one is still running, which
+   * may also be the last round of cancelled rounds.
+   */
+  private void startRound() {
+    if (!polling.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      roundExecutor.execute(this::poll);
+    } catch (RuntimeException e) {
+      polling.set(false);
+      LOGGER.log(Level.WARNING, "Failed to start polling launching jobs of cloud " + cloud.name,
+          e);
+    }
+  }
+
+  private void poll() {
+    try {
+      pollJobStates();
+      long now = System.currentTimeMillis();
+      if (now - lastPodCheck >= ArmadaPluginConfig.POD_STATUS_CHECK_INTERVAL_MS) {
+        lastPodCheck = now;
+        inspectPods();
+      }
+    } catch (RuntimeException e) {
+      // Keeps the rounds scheduled
+      LOGGER.log(Level.WARNING, "Failed to poll launching jobs of cloud " + cloud.name, e);
+    } finally {
+      closeClientsIfIdle();
+      polling.set(false);
+    }
+  }
+
+  private void pollJobStates() {
+    Map<String, List<String>> jobIdsByJobSet = new HashMap<>();
+    for (Map.Entry<String, Watch> entry : watches.entrySet()) {
+      jobIdsByJobSet.computeIfAbsent(entry.getValue().jobSetId, k -> new ArrayList<>())
+          .add(entry.getKey());
+    }
+    if (jobIdsByJobSet.isEmpty()) {
+      return;
+    }
+
+    try (ArmadaClient armadaClient = cloud.createArmadaClient()) {
+      for (List<String> jobIds : jobIdsByJobSet.values()) {
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+          JobStatusResponse status = armadaClient.getJobStatus(
+              JobStatusRequest.newBuilder().addAllJobIds(jobIds).build());
+          success = true;
+          for (Map.Entry<String, JobState> state : status.getJobStatesMap().entrySet()) {
+            Watch watch = watches.get(state.getKey());
+            if (watch != null) {
+              watch.state = state.getValue();
+            }
+          }
+        } catch (RuntimeException e) {
+          LOGGER.log(Level.FINE, "Failed to get status of jobs " + jobIds, e);
+        } finally {
+          ArmadaMetrics.get().recordRpc(cloud.name, ArmadaMetrics.RPC_STATUS, startNanos,
+              success);
+        }
+      }
+    } catch (Exception e) {
+      LOGGER.log(Level.FINE, "Failed to poll job status of cloud " + cloud.name, e);
+    }
+  }
+
+  /**
+   * Lists the pods of each cluster namespace launching jobs were placed in, once per namespace.
+   */
+  private void inspectPods() {
+    Map<String, List<Watch>> watchesByNamespace = new HashMap<>();
+    for (Watch watch : watches.values()) {
+      ArmadaEvent placement = watch.placement;
+      if (placement != null) {
+        watchesByNamespace.computeIfAbsent(
+            placement.getClusterId() + "/" + placement.getPodNamespace(),
+            k -> new ArrayList<>()).add(watch);
+      }
+    }
+
+    for (List<Watch> namespaceWatches : watchesByNamespace.values()) {
+      ArmadaEvent first = namespaceWatches.get(0).placement;
+      try {
+        KubernetesClient client;
+        synchronized (clients) {
+          client = clients.get(first.getClusterId());
+          if (client == null) {
+            client = cloud.connect(cloud.resolveClusterUrl(first.getClusterId()),
+                first.getPodNamespace());
+            clients.put(first.getClusterId(), client);
+          }
+        }
+        // Listed outside of the lock, which only guards the map
+        Map<String, Pod> pods = new HashMap<>();
+        for (Pod pod : client.pods().inNamespace(first.getPodNamespace()).list().getItems()) {
+          pods.put(pod.getMetadata().getName(), pod);
+        }
+        for (Watch watch : namespaceWatches) {
+          Pod pod = pods.get(watch.placement.getPodName());
+          watch.fatalPodCondition =
+              pod != null ? PodStatusInspector.findFatalCondition(pod) : null;
+        }
+      } catch (Exception e) {
+        // Pod inspection is best effort, the event stream and timeouts still apply
+        LOGGER.log(Level.FINE, "Failed to inspect pods of cluster " + first.getClusterId()
+            + " in namespace " + first.getPodNamespace(), e);
+      }
+    }
+  }
+
+  private void closeClientsIfIdle() {
+    synchronized (this) {
+      if (rounds != null) {
+        return;
+      }
+    }
+    List<KubernetesClient> idle;
+    synchronized (clients) {
+      idle = new ArrayList<>(clients.values());
+      clients.clear();
+    }
+    for (KubernetesClient client : idle) {
+      try {
+        client.close();
+      } catch (Exception e) {
+        LOGGER.fine("Failed to close KubernetesClient: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Polled state of a launching job.
+   */
+  private static class Watch {
+
+    final String jobSetId;
+    volatile JobState state;
+    volatile ArmadaEvent placement;
+    volatile String fatalPodCondition;
+
+    Watch(String jobSetId) {
+      this.jobSetId = jobSetId;
+    }
+  }
+}
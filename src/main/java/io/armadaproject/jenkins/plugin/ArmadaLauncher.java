@@ -5,24 +5,43 @@ import api.Job.JobStatusResponse;
 import api.SubmitOuterClass.JobState;
 import api.SubmitOuterClass.JobSubmitRequest;
 import api.SubmitOuterClass.JobSubmitResponse;
+import hudson.model.Computer;
 import hudson.model.TaskListener;
 import hudson.slaves.JNLPLauncher;
 import hudson.slaves.SlaveComputer;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 import io.armadaproject.ArmadaClient;
 import io.fabric8.kubernetes.api.model.Pod;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.awaitility.Awaitility;
 
 public class ArmadaLauncher extends JNLPLauncher {
 
   private static final Logger LOGGER = Logger.getLogger(ArmadaLauncher.class.getName());
 
+  /**
+   * Schedules the poll ticks of all agent launches. A tick only reads the state gathered by the
+   * cloud's {@link ArmadaLaunchPoller} and never blocks, so a small fixed number of threads serves
+   * any number of concurrent launches. Blocking calls, the submissions and the poller's rounds, run
+   * on {@link Computer#threadPoolForRemoting} instead.
+   */
+  static final ScheduledExecutorService LAUNCH_EXECUTOR =
+      Executors.newScheduledThreadPool(ArmadaPluginConfig.LAUNCH_THREADS,
+          new NamingThreadFactory(new DaemonThreadFactory(), "ArmadaLauncher"));
+
   private final AtomicBoolean launched = new AtomicBoolean(false);
 
   public ArmadaLauncher() {
@@ -54,53 +73,238 @@ public class ArmadaLauncher extends JNLPLauncher {
       return;
     }
 
+    // Use the listener from the template to ensure logs go to pipeline console
+    TaskListener effectiveListener = listener;
+    ArmadaJobTemplate template = node.getTemplate();
+    if (template != null) {
+      effectiveListener = template.getListener();
+      LOGGER.fine("Using listener from ArmadaJobTemplate for pipeline console output");
+    }
+
+    // The submission runs on the remoting pool and the polls on the launch executor. The computer
+    // thread still waits for the outcome, since the launch fails if it returns before the agent is
+    // connected, so every launching agent holds one computer thread.
+    ArmadaCloud cloud = ArmadaCloud.resolveCloud(node.getCloudName());
+    ArmadaSpan launchSpan = ArmadaTracer.get()
+        .startSpan("armada.launch", template != null ? template.getRunId() : null)
+        .setAttribute("jenkins.node", node.getNodeName())
+        .setAttribute("armada.cloud", cloud.name)
+        .setAttribute("armada.queue", cloud.getArmadaQueue());
+    AtomicBoolean abandoned = new AtomicBoolean();
+    CompletableFuture<Void> launch =
+        launchAgent(cloud, node, armadaComputer, effectiveListener, launchSpan, abandoned);
     try {
-      // Use the listener from the template to ensure logs go to pipeline console
-      TaskListener effectiveListener = listener;
-      ArmadaJobTemplate template = node.getTemplate();
-      if (template != null) {
-        effectiveListener = template.getListener();
-        LOGGER.fine("Using listener from ArmadaJobTemplate for pipeline console output");
-      }
+      launch.get();
+      endLaunchSpan(launchSpan, armadaComputer, null);
+      onLaunched(cloud, node, armadaComputer, effectiveListener);
+    } catch (InterruptedException e) {
+      // Stops the polls of the launch at their next attempt, and any resubmission
+      abandoned.set(true);
+      Thread.currentThread().interrupt();
+      endLaunchSpan(launchSpan, armadaComputer, e);
+      onLaunchFailed(armadaComputer, e, listener);
+    } catch (ExecutionException e) {
+      endLaunchSpan(launchSpan, armadaComputer, unwrap(e.getCause()));
+      onLaunchFailed(armadaComputer, unwrap(e.getCause()), listener);
+    }
+  }
+
+  private static void endLaunchSpan(ArmadaSpan launchSpan, ArmadaComputer computer,
+      Throwable error) {
+    if (error != null) {
+      launchSpan.recordError(error);
+    }
+    launchSpan.setAttribute("armada.resubmissions", computer.getResubmissions());
+    launchSpan.end();
+  }
 
-      submitToArmada(node, armadaComputer, effectiveListener);
+  /**
+   * Makes a forced relaunch submit a new Armada job, used when the job of a connected agent was
+   * preempted.
+   */
+  public void reset() {
+    launched.set(false);
+  }
 
-      waitForAgentConnection(node, armadaComputer, effectiveListener);
+  private void onLaunched(ArmadaCloud cloud, ArmadaSlave node, ArmadaComputer computer,
+      TaskListener listener) {
+    // Mark as accepting tasks and launched
+    computer.setAcceptingTasks(true);
+    launched.set(true);
+    computer.watchForPreemption(cloud);
+
+    node.markLaunchPhase(LaunchPhase.AGENT_CONNECTED);
+    if (node.getLaunchTimeline() != null) {
+      listener.getLogger().println("Launch phases: " + node.getLaunchTimeline().describe());
+    }
+    ArmadaBuildTimingAction.recordAgent(node, computer);
 
-      // Mark as accepting tasks and launched
-      computer.setAcceptingTasks(true);
-      launched.set(true);
+    try {
+      node.save();
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Could not save() agent: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Reports a failed launch and fails {@link #launch} with it.
+   */
+  private void onLaunchFailed(ArmadaComputer computer, Throwable e, TaskListener listener) {
+    computer.setLaunching(false);
+    LOGGER.severe("Failed to launch Armada agent: " + e.getMessage());
+    e.printStackTrace(listener.error("Failed to launch Armada agent: " + e.getMessage()));
+    throw new RuntimeException(e);
+  }
+
+  private static Throwable unwrap(Throwable e) {
+    return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+  }
+
+  /**
+   * Submits the agent's job, or reuses the existing one, and waits for the agent to connect.
+   * Replacement jobs are submitted as long as the job gets preempted and the retry budget lasts.
+   *
+   * @param abandoned set once nobody waits for the launch anymore
+   * @return a future completed once the agent is connected
+   */
+  private CompletableFuture<Void> launchAgent(ArmadaCloud cloud, ArmadaSlave node,
+      ArmadaComputer computer, TaskListener listener, ArmadaSpan launchSpan,
+      AtomicBoolean abandoned) {
+    return CompletableFuture
+        .runAsync(() -> {
+          try {
+            submitToArmada(node, computer, listener, launchSpan);
+          } catch (IOException e) {
+            throw new CompletionException(e);
+          }
+        }, Computer.threadPoolForRemoting)
+        .thenCompose(ignored -> awaitAgent(cloud, node, computer, listener, launchSpan,
+            abandoned))
+        .thenCompose(connected -> connected
+            ? CompletableFuture.<Void>completedFuture(null)
+            : launchAgent(cloud, node, computer, listener, launchSpan, abandoned));
+  }
+
+  /**
+   * Waits for the submitted job to run and its agent to connect.
+   *
+   * @return a future completed with true once the agent is connected, or false if the job was
+   * preempted and a replacement job should be submitted
+   */
+  private CompletableFuture<Boolean> awaitAgent(ArmadaCloud cloud, ArmadaSlave node,
+      ArmadaComputer computer, TaskListener listener, ArmadaSpan launchSpan,
+      AtomicBoolean abandoned) {
+    // Also covers a job found again after interrupted provisioning
+    cloud.getArmadaEventManager().trackJob(computer.getArmadaJobId());
+    Consumer<ArmadaEvent> phaseTracker = trackLaunchPhases(cloud, computer);
+    LaunchFailureDetector failureDetector = new LaunchFailureDetector(cloud,
+        computer.getArmadaJobId(), computer.getArmadaJobSetId()).start();
+    String jobSetId = computer.getArmadaJobSetId();
+    String jobId = computer.getArmadaJobId();
 
-      try {
-        node.save();
-      } catch (IOException e) {
-        LOGGER.log(Level.WARNING, "Could not save() agent: " + e.getMessage(), e);
+    return waitForJobRunning(computer, failureDetector, listener, launchSpan, abandoned)
+        .thenCompose(ignored -> waitForAgentConnection(node, computer, failureDetector, listener,
+            launchSpan, abandoned))
+        .handle((ignored, e) -> {
+          failureDetector.close();
+          cloud.getArmadaEventManager().unsubscribe(jobSetId, jobId, phaseTracker);
+          if (e == null) {
+            return true;
+          }
+          if (!abandoned.get()
+              && shouldResubmit(cloud, failureDetector.getTerminalEvent(), computer, listener)) {
+            return false;
+          }
+          throw new CompletionException(unwrap(e));
+        });
+  }
+
+  /**
+   * Records the queued, leased, pending and running milestones of the computer's job as its events
+   * arrive, including events received before the subscription. The cluster and pod the job runs in
+   * are taken from the same events.
+   *
+   * @return the subscriber, to be unsubscribed once the launch completes
+   */
+  private Consumer<ArmadaEvent> trackLaunchPhases(ArmadaCloud cloud, ArmadaComputer computer) {
+    String jobId = computer.getArmadaJobId();
+    Consumer<ArmadaEvent> tracker = event -> {
+      LaunchPhase phase = LaunchPhase.forEvent(event.getType());
+      if (phase == null || !jobId.equals(event.getJobId())) {
+        return;
+      }
+      if (event.getClusterId() != null && !event.getClusterId().isEmpty()) {
+        computer.setArmadaClusterId(event.getClusterId());
+      }
+      if (event.getPodName() != null && !event.getPodName().isEmpty()) {
+        computer.setArmadaPodName(event.getPodName());
+      }
+      if (phase == LaunchPhase.QUEUED || phase == LaunchPhase.LEASED) {
+        computer.setArmadaJobQueuedAt(System.currentTimeMillis());
+      }
+      computer.markLaunchPhase(phase);
+    };
+
+    Set<ArmadaEvent.Type> types = EnumSet.of(ArmadaEvent.Type.QUEUED, ArmadaEvent.Type.LEASED,
+        ArmadaEvent.Type.PENDING, ArmadaEvent.Type.RUNNING);
+    ArmadaEventManager eventManager = cloud.getArmadaEventManager();
+    eventManager.subscribe(computer.getArmadaJobSetId(), jobId, types, tracker);
+    for (ArmadaEvent.Type type : types) {
+      ArmadaEvent event = eventManager.getLatestEvent(jobId, type);
+      if (event != null) {
+        tracker.accept(event);
       }
-    } catch (Exception e) {
-      LOGGER.severe("Failed to launch Armada agent: " + e.getMessage());
-      listener.error("Failed to launch Armada agent: " + e.getMessage()).close();
-      e.printStackTrace(listener.getLogger());
-      throw new RuntimeException(e);
     }
+    return tracker;
   }
 
-  private void submitToArmada(ArmadaSlave node, ArmadaComputer computer, TaskListener listener)
-      throws IOException {
+  /**
+   * Decides whether a failed launch should be retried with a replacement job. Only preempted jobs
+   * are resubmitted, and only while the computer's retry budget lasts.
+   */
+  private boolean shouldResubmit(ArmadaCloud cloud, ArmadaEvent terminalEvent,
+      ArmadaComputer computer, TaskListener listener) {
+    if (terminalEvent == null || terminalEvent.getType() != ArmadaEvent.Type.PREEMPTED) {
+      return false;
+    }
+
+    String jobId = computer.getArmadaJobId();
+    long submittedAt = computer.getArmadaJobSubmittedAt();
+    long now = System.currentTimeMillis();
+    cloud.getArmadaEventManager().forgetJob(jobId);
+    if (!computer.recordPreemption(now)) {
+      listener.getLogger().printf(
+          "Job %s was preempted and the resubmission budget of %d is exhausted%n", jobId,
+          ArmadaPluginConfig.MAX_RESUBMISSIONS);
+      return false;
+    }
+
+    listener.getLogger().printf(
+        "Job %s was preempted after %d s, submitting replacement job (%d/%d)%n", jobId,
+        submittedAt > 0 ? TimeUnit.MILLISECONDS.toSeconds(now - submittedAt) : 0,
+        computer.getResubmissions(), ArmadaPluginConfig.MAX_RESUBMISSIONS);
+    LOGGER.info("Resubmitting preempted Armada job " + jobId);
+    return true;
+  }
+
+  private void submitToArmada(ArmadaSlave node, ArmadaComputer computer, TaskListener listener,
+      ArmadaSpan launchSpan) throws IOException {
     Pod podSpec = validateAndGetPodSpec(node);
 
     try {
       ArmadaCloud cloud = ArmadaCloud.resolveCloud(node.getCloudName());
       podSpec = enrichPodSpec(cloud, node, podSpec, listener);
+      node.markLaunchPhase(LaunchPhase.POD_ENRICHMENT);
       logArmadaConfiguration(cloud, listener);
 
       try (ArmadaClient armadaClient = cloud.createArmadaClient()) {
-        String jobSetId = generateAndSetJobSetId(cloud, listener);
+        String jobSetId = generateJobSetId(cloud, node.getTemplate(), listener);
 
         if (handleExistingJob(armadaClient, computer, listener)) {
           return;
         }
 
-        submitNewJob(armadaClient, cloud, computer, podSpec, jobSetId, listener);
+        submitNewJob(armadaClient, cloud, computer, podSpec, jobSetId, listener, launchSpan);
       }
     } catch (IOException e) {
       throw e;
@@ -143,20 +347,20 @@ public class ArmadaLauncher extends JNLPLauncher {
   }
 
   /**
-   * Generates a new job set ID with timestamp and sets it on the cloud.
+   * Generates the job set ID for this launch using the cloud's job set strategy.
    */
-  private String generateAndSetJobSetId(ArmadaCloud cloud, TaskListener listener) {
-    String jobSetId = cloud.getDisplayName()
-        + new SimpleDateFormat(ArmadaPluginConfig.JOB_SET_DATE_FORMAT).format(new Date());
-    cloud.setArmadaJobSetId(jobSetId);
-    listener.getLogger().println("  Job Set ID: " + jobSetId);
+  private String generateJobSetId(ArmadaCloud cloud, ArmadaJobTemplate template,
+      TaskListener listener) {
+    String jobSetId = cloud.generateJobSetId(template);
+    listener.getLogger().println("  Job Set ID: " + jobSetId
+        + " (" + cloud.resolveJobSetStrategy().getDisplayName() + ")");
     return jobSetId;
   }
 
   /**
    * Handles the case where a job already exists (interrupted provisioning recovery).
    *
-   * @return true if an existing job was found and handled, false otherwise
+   * @return true if an existing job was found, false otherwise
    */
   private boolean handleExistingJob(ArmadaClient armadaClient, ArmadaComputer computer,
       TaskListener listener) throws IOException {
@@ -164,19 +368,14 @@ public class ArmadaLauncher extends JNLPLauncher {
       return false;
     }
 
-    JobStatusResponse jobStatusResponse = armadaClient.getJobStatus(
-        JobStatusRequest.newBuilder()
-            .addJobIds(computer.getArmadaJobId())
-            .build());
-    JobState existingJobState = jobStatusResponse.getJobStatesMap()
-        .get(computer.getArmadaJobId());
+    JobState existingJobState = getJobState(armadaClient, cloudName(computer),
+        computer.getArmadaJobId());
 
     LOGGER.fine("Job with id: " + computer.getArmadaJobId() + " in state: " + existingJobState);
 
     if (existingJobState != JobState.UNKNOWN) {
       listener.getLogger().println("Job already exists: " + computer.getArmadaJobId());
       computer.setLaunching(true);
-      waitForJobRunning(armadaClient, computer, listener);
       return true;
     }
 
@@ -184,23 +383,41 @@ public class ArmadaLauncher extends JNLPLauncher {
   }
 
   /**
-   * Submits a new job to Armada and waits for it to be running.
+   * Submits a new job to Armada.
    */
   private void submitNewJob(ArmadaClient armadaClient, ArmadaCloud cloud, ArmadaComputer computer,
-      Pod podSpec, String jobSetId, TaskListener listener) throws IOException {
+      Pod podSpec, String jobSetId, TaskListener listener, ArmadaSpan launchSpan)
+      throws IOException {
     JobSubmitRequest request = createJobSubmitRequest(cloud, podSpec, jobSetId);
+    computer.markLaunchPhase(LaunchPhase.MAPPING);
     logContainerInfo(podSpec, listener);
 
     listener.getLogger().println("Submitting job request to Armada...");
-    JobSubmitResponse response = armadaClient.submitJob(request);
+    long startNanos = System.nanoTime();
+    boolean success = false;
+    JobSubmitResponse response;
+    ArmadaSpan span = ArmadaTracer.get().startSpan("armada.submit", launchSpan)
+        .setAttribute("armada.job_set_id", jobSetId);
+    try {
+      response = armadaClient.submitJob(request);
+      success = true;
+    } catch (RuntimeException e) {
+      span.recordError(e);
+      throw e;
+    } finally {
+      ArmadaMetrics.get().recordRpc(cloud.name, ArmadaMetrics.RPC_SUBMIT, startNanos, success);
+      span.end();
+    }
+    computer.markLaunchPhase(LaunchPhase.SUBMIT);
 
     String jobId = extractJobId(response);
+    cloud.getArmadaEventManager().trackJob(jobId);
     configureComputerWithJobInfo(computer, jobId, jobSetId);
+    span.setAttribute("armada.job_id", jobId);
+    launchSpan.setAttribute("armada.job_id", jobId);
 
     listener.getLogger().println("Job submitted successfully with id: " + jobId);
     logLookoutUrl(cloud, jobId, listener);
-
-    waitForJobRunning(armadaClient, computer, listener);
   }
 
   /**
@@ -247,6 +464,7 @@ public class ArmadaLauncher extends JNLPLauncher {
       String jobSetId) {
     computer.setArmadaJobId(jobId);
     computer.setArmadaJobSetId(jobSetId);
+    computer.setArmadaJobSubmittedAt(System.currentTimeMillis());
     computer.setLaunching(true);
   }
 
@@ -273,90 +491,121 @@ public class ArmadaLauncher extends JNLPLauncher {
   /**
    * Gets the current state of a job from Armada.
    */
-  private JobState getJobState(ArmadaClient client, String jobId) throws IOException {
+  private JobState getJobState(ArmadaClient client, String cloudName, String jobId)
+      throws IOException {
+    long startNanos = System.nanoTime();
+    boolean success = false;
     try {
       JobStatusResponse status = client.getJobStatus(
           JobStatusRequest.newBuilder().addJobIds(jobId).build());
+      success = true;
       return status.getJobStatesMap().get(jobId);
     } catch (Exception e) {
       throw new IOException("Failed to get job status for: " + jobId, e);
+    } finally {
+      ArmadaMetrics.get().recordRpc(cloudName, ArmadaMetrics.RPC_STATUS, startNanos, success);
     }
   }
 
+  private static String cloudName(ArmadaComputer computer) {
+    ArmadaSlave node = computer.getNode();
+    return node != null ? node.getCloudName() : null;
+  }
+
   /**
-   * Waits for the Armada job to reach RUNNING state using Armada's status API.
+   * Waits for the Armada job to reach RUNNING state, as polled from Armada's status API by the
+   * cloud's launch poller. Aborts as soon as the failure detector reports that the job cannot
+   * start.
    */
-  private void waitForJobRunning(ArmadaClient armadaClient, ArmadaComputer computer,
-      TaskListener listener) throws IOException {
+  private CompletableFuture<Void> waitForJobRunning(ArmadaComputer computer,
+      LaunchFailureDetector failureDetector, TaskListener listener, ArmadaSpan launchSpan,
+      AtomicBoolean abandoned) {
     String jobId = computer.getArmadaJobId();
     listener.getLogger().println("Waiting for job to be running...");
-
-    try {
-      Awaitility.await()
-          .atMost(ArmadaPluginConfig.DEFAULT_SLAVE_CONNECT_TIMEOUT, TimeUnit.SECONDS)
-          .pollInterval(ArmadaPluginConfig.POLL_INTERVAL_SECONDS, TimeUnit.SECONDS)
-          .until(() -> {
-            JobState currentState = getJobState(armadaClient, jobId);
-            LOGGER.fine("Job " + jobId + " state: " + currentState);
-
-            // Check for terminal failure states using validator
-            JobStateValidator.validate(currentState, jobId);
-
-            return JobStateValidator.isRunning(currentState);
-          });
-
-      listener.getLogger().println("Job is running: " + jobId);
-
-    } catch (Exception e) {
-      LOGGER.severe("Job failed to reach RUNNING state: " + e.getMessage());
-      listener.error("Job failed to reach RUNNING state: " + e.getMessage()).close();
-      throw new IOException("Job did not start successfully: " + jobId, e);
-    }
+    ArmadaSpan span = ArmadaTracer.get().startSpan("armada.wait_running", launchSpan)
+        .setAttribute("armada.job_id", jobId);
+
+    return AsyncPoller.poll(LAUNCH_EXECUTOR, () -> {
+              checkNotAbandoned(abandoned, jobId);
+              failureDetector.check();
+
+              JobState currentState = failureDetector.getJobState();
+              LOGGER.fine("Job " + jobId + " state: " + currentState);
+              if (currentState == null) {
+                // Not polled yet
+                return false;
+              }
+
+              // Check for terminal failure states using validator
+              JobStateValidator.validate(currentState, jobId);
+
+              return JobStateValidator.isRunning(currentState);
+            },
+            TimeUnit.SECONDS.toMillis(ArmadaPluginConfig.POLL_INTERVAL_SECONDS),
+            TimeUnit.SECONDS.toMillis(ArmadaPluginConfig.DEFAULT_SLAVE_CONNECT_TIMEOUT),
+            "Job did not reach RUNNING state after "
+                + ArmadaPluginConfig.DEFAULT_SLAVE_CONNECT_TIMEOUT + " seconds")
+        .handle((ignored, e) -> {
+          if (e != null) {
+            Throwable cause = unwrap(e);
+            span.recordError(cause);
+            span.end();
+            LOGGER.severe("Job failed to reach RUNNING state: " + cause.getMessage());
+            listener.error("Job failed to reach RUNNING state: " + cause.getMessage());
+            throw new CompletionException(
+                new IOException("Job did not start successfully: " + jobId, cause));
+          }
+          span.end();
+          listener.getLogger().println("Job is running: " + jobId);
+          return null;
+        });
   }
 
   /**
-   * Waits for the JNLP agent to connect back to Jenkins.
+   * Waits for the JNLP agent to connect back to Jenkins, with periodic status checks and
+   * reporting.
    */
-  private void waitForAgentConnection(ArmadaSlave node, ArmadaComputer computer,
-      TaskListener listener) throws IOException {
+  private CompletableFuture<Void> waitForAgentConnection(ArmadaSlave node,
+      ArmadaComputer computer, LaunchFailureDetector failureDetector, TaskListener listener,
+      ArmadaSpan launchSpan, AtomicBoolean abandoned) {
     listener.getLogger().println("Waiting for agent to connect...");
-
-    try {
-      ArmadaCloud cloud = ArmadaCloud.resolveCloud(node.getCloudName());
-      try (ArmadaClient armadaClient = cloud.createArmadaClient()) {
-        pollForAgentConnection(node, computer, armadaClient, listener);
-      }
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      throw new IOException("Interrupted while waiting for agent connection", e);
-    }
+    long startTimestamp = System.currentTimeMillis();
+    AtomicLong lastReportTimestamp = new AtomicLong(startTimestamp);
+    ArmadaSpan span = ArmadaTracer.get().startSpan("armada.wait_connect", launchSpan)
+        .setAttribute("jenkins.node", node.getNodeName());
+
+    return AsyncPoller.poll(LAUNCH_EXECUTOR, () -> {
+          checkNotAbandoned(abandoned, computer.getArmadaJobId());
+          int waitedSeconds = (int) TimeUnit.MILLISECONDS.toSeconds(
+              System.currentTimeMillis() - startTimestamp);
+          if (checkAgentConnected(node, waitedSeconds, listener)) {
+            return true;
+          }
+
+          failureDetector.check();
+          validateJobStillRunning(computer, failureDetector);
+
+          lastReportTimestamp.set(reportProgressIfNeeded(node, waitedSeconds,
+              lastReportTimestamp.get(), listener));
+          return false;
+        },
+        ArmadaPluginConfig.AGENT_CONNECTION_POLL_INTERVAL_MS,
+        TimeUnit.SECONDS.toMillis(ArmadaPluginConfig.DEFAULT_SLAVE_CONNECT_TIMEOUT),
+        "Agent did not connect after " + ArmadaPluginConfig.DEFAULT_SLAVE_CONNECT_TIMEOUT
+            + " seconds")
+        .whenComplete((ignored, e) -> {
+          if (e != null) {
+            span.recordError(unwrap(e));
+          }
+          span.end();
+        });
   }
 
-  /**
-   * Polls for agent connection with periodic status checks and reporting.
-   */
-  private void pollForAgentConnection(ArmadaSlave node, ArmadaComputer computer,
-      ArmadaClient armadaClient, TaskListener listener)
-      throws InterruptedException, IOException {
-    long lastReportTimestamp = System.currentTimeMillis();
-
-    for (int waitedSeconds = 0; waitedSeconds < ArmadaPluginConfig.DEFAULT_SLAVE_CONNECT_TIMEOUT;
-        waitedSeconds++) {
-      if (checkAgentConnected(node, waitedSeconds, listener)) {
-        return;
-      }
-
-      validateJobStillRunning(computer, armadaClient);
-
-      lastReportTimestamp = reportProgressIfNeeded(node, waitedSeconds, lastReportTimestamp,
-          listener);
-
-      Thread.sleep(ArmadaPluginConfig.AGENT_CONNECTION_POLL_INTERVAL_MS);
+  private static void checkNotAbandoned(AtomicBoolean abandoned, String jobId)
+      throws IOException {
+    if (abandoned.get()) {
+      throw new IOException("Launch of job " + jobId + " was abandoned");
     }
-
-    throw new IllegalStateException(
-        "Agent did not connect after " + ArmadaPluginConfig.DEFAULT_SLAVE_CONNECT_TIMEOUT
-            + " seconds");
   }
 
   /**
@@ -383,11 +632,11 @@ public class ArmadaLauncher extends JNLPLauncher {
   /**
    * Validates that the job hasn't failed during the wait period.
    */
-  private void validateJobStillRunning(ArmadaComputer computer, ArmadaClient armadaClient)
-      throws IOException {
+  private void validateJobStillRunning(ArmadaComputer computer,
+      LaunchFailureDetector failureDetector) throws IOException {
     String jobId = computer.getArmadaJobId();
-    if (jobId != null && !jobId.isEmpty()) {
-      JobState jobState = getJobState(armadaClient, jobId);
+    JobState jobState = failureDetector.getJobState();
+    if (jobId != null && !jobId.isEmpty() && jobState != null) {
       JobStateValidator.validate(jobState, jobId);
     }
   }
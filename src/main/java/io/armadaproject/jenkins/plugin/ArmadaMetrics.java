@@ -0,0 +1,247 @@
+package io.armadaproject.jenkins.plugin;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registry of the plugin's metrics. Metrics are identified by a name and a set of tags, such as the
+ * cloud, queue and template they were recorded for, and are exposed by {@link ArmadaMetricsAction}.
+ */
+public class ArmadaMetrics {
+
+  /**
+   * Duration of each agent launch phase, tagged with the phase
+   */
+  public static final String LAUNCH_PHASE_DURATION = "armada_launch_phase_duration";
+  /**
+   * Duration from template registration until the agent connected
+   */
+  public static final String LAUNCH_DURATION = "armada_launch_duration";
+  /**
+   * Number of Armada API calls, tagged with the call and its outcome
+   */
+  public static final String RPC_TOTAL = "armada_rpc_total";
+  /**
+   * Latency of Armada API calls, tagged with the call
+   */
+  public static final String RPC_DURATION = "armada_rpc_duration";
+  /**
+   * Time between Armada creating an event and the plugin receiving it
+   */
+  public static final String EVENT_STREAM_LAG = "armada_event_stream_lag";
+  /**
+   * Number of times an event stream was restarted for a job set that was already watched
+   */
+  public static final String EVENT_STREAM_RECONNECTS = "armada_event_stream_reconnects_total";
+  /**
+   * Time from the start of an exec until its websocket is connected
+   */
+  public static final String EXEC_SETUP_DURATION = "armada_exec_setup_duration";
+  /**
+   * Number of retried exec websocket connections
+   */
+  public static final String EXEC_WEBSOCKET_RETRIES = "armada_exec_websocket_retries_total";
+  /**
+   * Number of times the exec circuit breaker of a cluster opened
+   */
+  public static final String EXEC_CIRCUIT_OPENED = "armada_exec_circuit_opened_total";
+  /**
+   * Number of exec connections failed fast because the circuit of their cluster was open
+   */
+  public static final String EXEC_CIRCUIT_REJECTIONS = "armada_exec_circuit_rejections_total";
+  /**
+   * Time taken to kill the processes of an aborted step, tagged with how they were found
+   */
+  public static final String EXEC_KILL_DURATION = "armada_exec_kill_duration";
+  /**
+   * Time exec sessions waited for the concurrency limits of their pod and cluster
+   */
+  public static final String EXEC_ADMISSION_WAIT = "armada_exec_admission_wait";
+  /**
+   * Number of exec sessions that gave up waiting for the concurrency limits of their pod or cluster
+   */
+  public static final String EXEC_ADMISSION_TIMEOUTS = "armada_exec_admission_timeouts_total";
+  /**
+   * Compressed bytes copied between the workspace and containers, tagged with the direction
+   */
+  public static final String COPY_BYTES = "armada_copy_bytes_total";
+  /**
+   * Time taken to copy an archive between the workspace and a container, tagged with the direction
+   */
+  public static final String COPY_DURATION = "armada_copy_duration";
+
+  public static final String RPC_SUBMIT = "submit";
+  public static final String RPC_STATUS = "status";
+  public static final String RPC_CANCEL = "cancel";
+
+  public static final String TAG_CLOUD = "cloud";
+  public static final String TAG_QUEUE = "queue";
+  public static final String TAG_TEMPLATE = "template";
+  public static final String TAG_PHASE = "phase";
+  public static final String TAG_RPC = "rpc";
+  public static final String TAG_OUTCOME = "outcome";
+  public static final String TAG_CLUSTER = "cluster";
+  public static final String TAG_METHOD = "method";
+  public static final String TAG_DIRECTION = "direction";
+
+  private static final ArmadaMetrics INSTANCE = new ArmadaMetrics();
+
+  private final ConcurrentMap<MetricKey, Histogram> histograms = new ConcurrentHashMap<>();
+  private final ConcurrentMap<MetricKey, LongAdder> counters = new ConcurrentHashMap<>();
+
+  ArmadaMetrics() {
+  }
+
+  public static ArmadaMetrics get() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns the histogram with the given name and tags, creating it on first use.
+   */
+  public Histogram histogram(String name, Map<String, String> tags) {
+    return histograms.computeIfAbsent(new MetricKey(name, tags), key -> new Histogram());
+  }
+
+  /**
+   * Returns the counter with the given name and tags, creating it on first use.
+   */
+  public LongAdder counter(String name, Map<String, String> tags) {
+    return counters.computeIfAbsent(new MetricKey(name, tags), key -> new LongAdder());
+  }
+
+  /**
+   * Records the outcome and latency of an Armada API call.
+   *
+   * @param cloud      the name of the cloud the call was made for
+   * @param rpc        the call, one of the {@code RPC_*} constants
+   * @param startNanos the {@link System#nanoTime()} at which the call started
+   * @param success    whether the call returned normally
+   */
+  public void recordRpc(String cloud, String rpc, long startNanos, boolean success) {
+    Map<String, String> tags = cloudTags(cloud);
+    tags.put(TAG_RPC, rpc);
+    histogram(RPC_DURATION, tags).record(
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    tags.put(TAG_OUTCOME, success ? "success" : "error");
+    counter(RPC_TOTAL, tags).increment();
+  }
+
+  /**
+   * @return all counters, sorted by name and tags
+   */
+  public SortedMap<MetricKey, Long> getCounters() {
+    SortedMap<MetricKey, Long> result = new TreeMap<>();
+    counters.forEach((key, counter) -> result.put(key, counter.sum()));
+    return Collections.unmodifiableSortedMap(result);
+  }
+
+  /**
+   * @return all histograms, sorted by name and tags
+   */
+  public SortedMap<MetricKey, Histogram> getHistograms() {
+    return Collections.unmodifiableSortedMap(new TreeMap<>(histograms));
+  }
+
+  /**
+   * Returns a copy of this registry without some tags, the metrics that only differ by them being
+   * added up.
+   *
+   * @param tagNames the names of the tags to drop
+   */
+  ArmadaMetrics withoutTags(Set<String> tagNames) {
+    ArmadaMetrics result = new ArmadaMetrics();
+    counters.forEach((key, counter) ->
+        result.counter(key.getName(), without(key.getTags(), tagNames)).add(counter.sum()));
+    histograms.forEach((key, histogram) ->
+        result.histogram(key.getName(), without(key.getTags(), tagNames)).add(histogram));
+    return result;
+  }
+
+  private static Map<String, String> without(Map<String, String> tags, Set<String> tagNames) {
+    Map<String, String> result = new TreeMap<>(tags);
+    result.keySet().removeAll(tagNames);
+    return result;
+  }
+
+  void clear() {
+    histograms.clear();
+    counters.clear();
+  }
+
+  /**
+   * Tags of metrics recorded for a cloud as a whole.
+   */
+  public static Map<String, String> cloudTags(String cloud) {
+    Map<String, String> tags = new TreeMap<>();
+    tags.put(TAG_CLOUD, Objects.toString(cloud, ""));
+    return tags;
+  }
+
+  /**
+   * Tags shared by all metrics recorded for an agent.
+   */
+  public static Map<String, String> agentTags(String cloud, String queue, String template) {
+    Map<String, String> tags = cloudTags(cloud);
+    tags.put(TAG_QUEUE, Objects.toString(queue, ""));
+    tags.put(TAG_TEMPLATE, Objects.toString(template, ""));
+    return tags;
+  }
+
+  /**
+   * Identifies a metric by its name and tags.
+   */
+  public static final class MetricKey implements Comparable<MetricKey> {
+
+    private final String name;
+    private final SortedMap<String, String> tags;
+
+    public MetricKey(String name, Map<String, String> tags) {
+      this.name = name;
+      this.tags = Collections.unmodifiableSortedMap(new TreeMap<>(tags));
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public SortedMap<String, String> getTags() {
+      return tags;
+    }
+
+    @Override
+    public int compareTo(MetricKey other) {
+      int result = name.compareTo(other.name);
+      return result != 0 ? result : tags.toString().compareTo(other.tags.toString());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof MetricKey other)) {
+        return false;
+      }
+      return name.equals(other.name) && tags.equals(other.tags);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(name, tags);
+    }
+
+    @Override
+    public String toString() {
+      return name + tags;
+    }
+  }
+}
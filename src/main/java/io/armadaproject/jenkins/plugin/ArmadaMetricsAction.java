@@ -0,0 +1,117 @@
+package io.armadaproject.jenkins.plugin;
+
+import hudson.Extension;
+import hudson.model.Api;
+import hudson.model.RootAction;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Exposes the plugin's metrics through the Jenkins remote API at
+ * {@code /armada-metrics/api/json}. Reading them requires the system read permission.
+ */
+@Extension
+@ExportedBean
+public class ArmadaMetricsAction implements RootAction {
+
+  public static final String URL_NAME = "armada-metrics";
+
+  @Override
+  public String getIconFileName() {
+    // Not shown in the UI, only reachable through the API
+    return null;
+  }
+
+  @Override
+  public String getDisplayName() {
+    return "Armada Metrics";
+  }
+
+  @Override
+  public String getUrlName() {
+    return URL_NAME;
+  }
+
+  public Api getApi() {
+    Jenkins.get().checkPermission(Jenkins.SYSTEM_READ);
+    return new Api(this);
+  }
+
+  @Exported(inline = true)
+  public List<HistogramSnapshot> getHistograms() {
+    List<HistogramSnapshot> snapshots = new ArrayList<>();
+    for (Map.Entry<ArmadaMetrics.MetricKey, Histogram> entry
+        : ArmadaMetrics.get().getHistograms().entrySet()) {
+      snapshots.add(new HistogramSnapshot(entry.getKey(), entry.getValue()));
+    }
+    return snapshots;
+  }
+
+  @Exported
+  public Map<String, Long> getCounters() {
+    Map<String, Long> counters = new LinkedHashMap<>();
+    ArmadaMetrics.get().getCounters()
+        .forEach((key, value) -> counters.put(key.toString(), value));
+    return counters;
+  }
+
+  /**
+   * Point in time view of a histogram for the remote API.
+   */
+  @ExportedBean(defaultVisibility = 2)
+  public static class HistogramSnapshot {
+
+    private final ArmadaMetrics.MetricKey key;
+    private final Histogram histogram;
+
+    HistogramSnapshot(ArmadaMetrics.MetricKey key, Histogram histogram) {
+      this.key = key;
+      this.histogram = histogram;
+    }
+
+    @Exported
+    public String getName() {
+      return key.getName();
+    }
+
+    @Exported
+    public Map<String, String> getTags() {
+      return key.getTags();
+    }
+
+    @Exported
+    public long getCount() {
+      return histogram.getCount();
+    }
+
+    @Exported
+    public long getSumMillis() {
+      return histogram.getSum();
+    }
+
+    @Exported
+    public long getMaxMillis() {
+      return histogram.getMax();
+    }
+
+    @Exported
+    public long getP50Millis() {
+      return histogram.getPercentile(50);
+    }
+
+    @Exported
+    public long getP95Millis() {
+      return histogram.getPercentile(95);
+    }
+
+    @Exported
+    public long getP99Millis() {
+      return histogram.getPercentile(99);
+    }
+  }
+}
@@ -1,8 +1,8 @@
 package io.armadaproject.jenkins.plugin;
 
-import api.EventOuterClass.JobRunningEvent;
 import hudson.AbortException;
 import hudson.model.Node;
+import hudson.model.Run;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import java.io.IOException;
 import java.io.Serial;
@@ -13,7 +13,7 @@ import org.jenkinsci.plugins.workflow.steps.StepContext;
 /**
  * Helper class for steps running in an Armada node context. This class subscribes to Armada events
  * and waits for the job to reach running state, then extracts pod information from the
- * JobRunningEvent to connect to the Kubernetes cluster. Implements AutoCloseable to properly manage
+ * running event to connect to the Kubernetes cluster. Implements AutoCloseable to properly manage
  * KubernetesClient resources.
  */
 public class ArmadaNodeContext implements Serializable, AutoCloseable {
@@ -23,8 +23,12 @@ public class ArmadaNodeContext implements Serializable, AutoCloseable {
   private static final Logger LOGGER = Logger.getLogger(ArmadaNodeContext.class.getName());
   private final String cloudName;
   private final String nodeName;
+  private final String runId;
+  private final int maxConcurrentExecs;
   private transient StepContext context;
   private transient KubernetesClient client;
+  private String jobId;
+  private String clusterId;
   private String podName;
   private String namespace;
 
@@ -36,6 +40,69 @@ public class ArmadaNodeContext implements Serializable, AutoCloseable {
     this.namespace = null;
     this.cloudName = agent.getCloudName();
     this.nodeName = agent.getNodeName();
+    this.runId = agent.getTemplate() != null ? agent.getTemplate().getRunId() : null;
+    this.maxConcurrentExecs =
+        agent.getTemplate() != null ? agent.getTemplate().getMaxConcurrentExecs() : 0;
+  }
+
+  /**
+   * Creates a context connected to a known pod, without a step context. Used by tests.
+   */
+  ArmadaNodeContext(String cloudName, String nodeName, KubernetesClient client, String podName,
+      String namespace) {
+    this(cloudName, nodeName, client, podName, namespace, 0);
+  }
+
+  /**
+   * Creates a context connected to a known pod with its own exec limit, without a step context.
+   * Used by tests.
+   */
+  ArmadaNodeContext(String cloudName, String nodeName, KubernetesClient client, String podName,
+      String namespace, int maxConcurrentExecs) {
+    this.cloudName = cloudName;
+    this.nodeName = nodeName;
+    this.runId = null;
+    this.maxConcurrentExecs = maxConcurrentExecs;
+    this.client = client;
+    this.podName = podName;
+    this.namespace = namespace;
+  }
+
+  public String getCloudName() {
+    return cloudName;
+  }
+
+  /**
+   * @return the externalizable ID of the run the agent was launched for, or null if unknown
+   */
+  public String getRunId() {
+    return runId;
+  }
+
+  public String getNodeName() {
+    return nodeName;
+  }
+
+  /**
+   * @return the exec sessions allowed at once against the agent pod, 0 for no limit
+   */
+  public int getMaxConcurrentExecs() {
+    return maxConcurrentExecs > 0 ? maxConcurrentExecs
+        : ArmadaPluginConfig.EXEC_MAX_CONCURRENT_PER_POD;
+  }
+
+  /**
+   * @return the ID of the agent's Armada job, known once connected to its cluster
+   */
+  public String getJobId() {
+    return jobId;
+  }
+
+  /**
+   * @return the ID of the cluster running the pod, known once connected
+   */
+  public String getClusterId() {
+    return clusterId;
   }
 
   public String getPodName() {
@@ -51,29 +118,73 @@ public class ArmadaNodeContext implements Serializable, AutoCloseable {
       return client;
     }
 
+    ArmadaSpan span = ArmadaTracer.get().startSpan("armada.connect", runId)
+        .setAttribute("jenkins.node", nodeName)
+        .setAttribute("armada.cloud", cloudName);
     try {
       ArmadaSlave armadaSlave = resolveArmadaSlave();
       ArmadaCloud armadaCloud = ArmadaCloud.resolveCloud(cloudName);
       ArmadaComputer computer = getArmadaComputer(armadaSlave);
 
-      String jobId = validateAndGetJobId(computer);
+      jobId = validateAndGetJobId(computer);
       String jobSetId = validateAndGetJobSetId(computer);
 
       // Use ArmadaEventWaiter to wait for job running event
       ArmadaEventWaiter eventWaiter = new ArmadaEventWaiter(armadaCloud);
-      JobRunningEvent event = eventWaiter.waitForJobRunning(jobId, jobSetId);
+      ArmadaEvent event = eventWaiter.waitForJobRunning(jobId, jobSetId);
 
-      String serverUrl = resolveServerUrl(armadaCloud, event.getClusterId());
+      String serverUrl = armadaCloud.resolveClusterUrl(event.getClusterId());
 
+      clusterId = event.getClusterId();
       podName = event.getPodName();
       namespace = event.getPodNamespace();
+      span.setAttribute("armada.job_id", jobId)
+          .setAttribute("armada.cluster_id", event.getClusterId())
+          .setAttribute("k8s.pod.name", podName);
 
       client = armadaCloud.connect(serverUrl, namespace);
       return client;
 
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
+      span.recordError(e);
       throw new IOException("Interrupted while connecting to cloud", e);
+    } catch (IOException | RuntimeException e) {
+      span.recordError(e);
+      throw e;
+    } finally {
+      span.end();
+    }
+  }
+
+  /**
+   * Records the first exec into the agent's pod as the last phase of its launch.
+   */
+  public void markFirstExec() {
+    try {
+      resolveArmadaSlave().markLaunchPhase(LaunchPhase.FIRST_EXEC);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      LOGGER.fine("Failed to record first exec for " + nodeName + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Adds the setup time of an exec into the agent's pod to the build's Armada timings.
+   *
+   * @param millis the time spent connecting to the pod
+   */
+  public void recordExecOverhead(long millis) {
+    try {
+      Run<?, ?> run = context != null ? context.get(Run.class) : null;
+      if (run != null) {
+        ArmadaBuildTimingAction.forRun(run).addExecOverhead(nodeName, millis);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      LOGGER.fine("Failed to record exec overhead for " + nodeName + ": " + e.getMessage());
     }
   }
 
@@ -128,28 +239,6 @@ public class ArmadaNodeContext implements Serializable, AutoCloseable {
     return jobSetId;
   }
 
-  /**
-   * Resolves the Kubernetes server URL for the given cluster ID.
-   */
-  private String resolveServerUrl(ArmadaCloud armadaCloud, String clusterId) throws IOException {
-    try {
-      String serverUrl = ClusterConfigParser.parse(armadaCloud.getArmadaClusterConfigPath())
-          .get(clusterId);
-
-      if (serverUrl == null || serverUrl.isEmpty()) {
-        throw new IOException(String.format("Cluster configuration error at '%s': No server URL found for cluster: %s",
-            armadaCloud.getArmadaClusterConfigPath(), clusterId));
-      }
-
-      return serverUrl;
-    } catch (IOException e) {
-      throw e; // Re-throw IOException as-is
-    } catch (Exception ex) {
-      throw new IOException(String.format("Cluster configuration error at '%s': Failed to parse cluster config file",
-          armadaCloud.getArmadaClusterConfigPath()), ex);
-    }
-  }
-
   private ArmadaSlave getArmadaSlave() throws IOException, InterruptedException {
     Node node = context.get(Node.class);
     if (!(node instanceof ArmadaSlave)) {
@@ -0,0 +1,118 @@
+package io.armadaproject.jenkins.plugin;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+
+/**
+ * Pipeline step running a command in each of several containers of an Armada pod at once. Usage:
+ * {@code def codes = armadaParallelContainers(commands: [lint: 'make lint', test: 'make test'])}
+ * <p>
+ * The pod is looked up once and its connection shared by every container, instead of once per
+ * {@code armadaContainer} block of a {@code parallel} step. Output lines are prefixed with the name
+ * of their container. The step returns the exit code of each container, and fails if one is not 0
+ * unless {@code returnStatus: true} is given.
+ */
+public class ArmadaParallelContainersStep extends Step {
+
+  static final String COMMANDS = "commands";
+  static final String RETURN_STATUS = "returnStatus";
+
+  private final Map<String, String> commands;
+  private final boolean returnStatus;
+
+  public ArmadaParallelContainersStep(Map<String, String> commands, boolean returnStatus) {
+    this.commands = Collections.unmodifiableMap(new LinkedHashMap<>(commands));
+    this.returnStatus = returnStatus;
+  }
+
+  /**
+   * @return the command to run, by container name, in the order given
+   */
+  public Map<String, String> getCommands() {
+    return commands;
+  }
+
+  public boolean isReturnStatus() {
+    return returnStatus;
+  }
+
+  @Override
+  public StepExecution start(StepContext context) throws Exception {
+    return new ArmadaParallelContainersStepExecution(context, commands, returnStatus);
+  }
+
+  @Extension
+  public static class DescriptorImpl extends StepDescriptor {
+
+    @Override
+    public String getFunctionName() {
+      return "armadaParallelContainers";
+    }
+
+    @Override
+    @NonNull
+    public String getDisplayName() {
+      return "Run commands in several Armada containers in parallel";
+    }
+
+    @Override
+    public Set<? extends Class<?>> getRequiredContext() {
+      return Set.of(TaskListener.class, Node.class, Launcher.class, FilePath.class,
+          EnvVars.class);
+    }
+
+    /**
+     * Reads the map of commands, which data binding does not support.
+     */
+    @Override
+    public Step newInstance(Map<String, Object> arguments) throws Exception {
+      Object commands = arguments.get(COMMANDS);
+      if (!(commands instanceof Map<?, ?> map) || map.isEmpty()) {
+        throw new IllegalArgumentException(
+            "armadaParallelContainers expects a non-empty map of container name to command in '"
+                + COMMANDS + "'");
+      }
+      for (String name : arguments.keySet()) {
+        if (!COMMANDS.equals(name) && !RETURN_STATUS.equals(name)) {
+          throw new IllegalArgumentException(
+              String.format("Unknown parameter '%s' of armadaParallelContainers", name));
+        }
+      }
+      Map<String, String> containerCommands = new LinkedHashMap<>();
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        if (entry.getKey() == null || entry.getValue() == null) {
+          throw new IllegalArgumentException(String.format(
+              "Invalid command '%s' for container '%s'", entry.getValue(), entry.getKey()));
+        }
+        containerCommands.put(entry.getKey().toString(), entry.getValue().toString());
+      }
+      Object returnStatus = arguments.get(RETURN_STATUS);
+      return new ArmadaParallelContainersStep(containerCommands,
+          returnStatus instanceof Boolean && (Boolean) returnStatus);
+    }
+
+    @Override
+    public Map<String, Object> defineArguments(Step step) throws UnsupportedOperationException {
+      ArmadaParallelContainersStep parallelStep = (ArmadaParallelContainersStep) step;
+      Map<String, Object> arguments = new LinkedHashMap<>();
+      arguments.put(COMMANDS, new LinkedHashMap<>(parallelStep.getCommands()));
+      if (parallelStep.isReturnStatus()) {
+        arguments.put(RETURN_STATUS, true);
+      }
+      return arguments;
+    }
+  }
+}
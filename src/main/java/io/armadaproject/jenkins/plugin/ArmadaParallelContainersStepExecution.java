@@ -0,0 +1,291 @@
+package io.armadaproject.jenkins.plugin;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Proc;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.SynchronousNonBlockingStepExecution;
+
+/**
+ * Execution for ArmadaParallelContainersStep. Connects to the pod of the agent once, then runs the
+ * command of every container over its own exec, all at once, and waits for the slowest.
+ */
+public class ArmadaParallelContainersStepExecution
+    extends SynchronousNonBlockingStepExecution<Map<String, Integer>> {
+
+  private static final long serialVersionUID = 1L;
+  private static final Logger LOGGER =
+      Logger.getLogger(ArmadaParallelContainersStepExecution.class.getName());
+
+  private final Map<String, String> commands;
+  private final boolean returnStatus;
+
+  ArmadaParallelContainersStepExecution(StepContext context, Map<String, String> commands,
+      boolean returnStatus) {
+    super(context);
+    this.commands = new LinkedHashMap<>(commands);
+    this.returnStatus = returnStatus;
+  }
+
+  @Override
+  protected Map<String, Integer> run() throws Exception {
+    TaskListener listener = getContext().get(TaskListener.class);
+    Node node = getContext().get(Node.class);
+    if (!(node instanceof ArmadaSlave)) {
+      throw new AbortException(String.format("Not running on an Armada agent: %s",
+          node != null ? node.getNodeName() : null));
+    }
+    Launcher launcher = getContext().get(Launcher.class);
+    FilePath workspace = getContext().get(FilePath.class);
+    EnvVars envVars = new EnvVars(getContext().get(EnvVars.class));
+    // Lets the processes of every container be killed if the step is stopped
+    String cookie = UUID.randomUUID().toString();
+    envVars.put(ArmadaPluginConfig.COOKIE_VAR, cookie);
+    PrintStream logger = listener.getLogger();
+    logger.println("Started armadaParallelContainers(" + String.join(", ", commands.keySet())
+        + ")");
+
+    try (ArmadaNodeContext nodeContext = new ArmadaNodeContext(getContext())) {
+      // Looked up once, then shared by the execs of every container
+      nodeContext.connectToCloud();
+
+      List<ArmadaExecDecorator> decorators = new ArrayList<>();
+      Map<String, Launcher> launchers = new LinkedHashMap<>();
+      try {
+        for (String containerName : commands.keySet()) {
+          ArmadaExecDecorator decorator = new ArmadaExecDecorator(containerName);
+          decorator.setNodeContext(nodeContext);
+          decorators.add(decorator);
+          launchers.put(containerName, decorator.decorate(launcher, node));
+        }
+        return checkExitCodes(runAll(launchers, commands, workspace, envVars, cookie, logger),
+            returnStatus);
+      } finally {
+        for (ArmadaExecDecorator decorator : decorators) {
+          decorator.close();
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs the command of every container at once, each with the launcher of its container, and
+   * waits for all of them. Should one of them fail to run or the wait be interrupted, the others
+   * are cancelled and the processes of every container are killed.
+   *
+   * @param envVars the environment of the commands, holding the cookie
+   * @return the exit code of every container, in the order of the commands
+   */
+  static Map<String, Integer> runAll(Map<String, Launcher> launchers,
+      Map<String, String> commands, FilePath workspace, EnvVars envVars, String cookie,
+      PrintStream logger) throws Exception {
+    Map<String, Future<Integer>> results = new LinkedHashMap<>();
+    try {
+      for (Map.Entry<String, String> entry : commands.entrySet()) {
+        String containerName = entry.getKey();
+        Launcher containerLauncher = launchers.get(containerName);
+        results.put(containerName, Computer.threadPoolForRemoting.submit(
+            () -> runInContainer(containerLauncher, containerName, entry.getValue(), workspace,
+                envVars, logger)));
+      }
+
+      Map<String, Integer> exitCodes = new LinkedHashMap<>();
+      for (Map.Entry<String, Future<Integer>> result : results.entrySet()) {
+        exitCodes.put(result.getKey(), result.getValue().get());
+      }
+      return exitCodes;
+    } catch (InterruptedException | ExecutionException e) {
+      for (Future<Integer> result : results.values()) {
+        result.cancel(true);
+      }
+      killAll(launchers, cookie, logger);
+      if (e instanceof ExecutionException && e.getCause() instanceof Exception cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  private static int runInContainer(Launcher launcher, String containerName, String command,
+      FilePath workspace, EnvVars envVars, PrintStream logger)
+      throws IOException, InterruptedException {
+    long start = System.nanoTime();
+    String prefix = "[" + containerName + "] ";
+    int exitCode;
+    try (PrefixOutputStream output = new PrefixOutputStream(logger, prefix)) {
+      Proc proc = launcher.launch()
+          .cmds(ArmadaPluginConfig.DEFAULT_SHELL, "-c", command)
+          .envs(envVars)
+          .pwd(workspace)
+          .stdout(output)
+          .quiet(true)
+          .start();
+      exitCode = proc.join();
+    }
+    logger.println(prefix + "exited with code " + exitCode + " ["
+        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms]");
+    return exitCode;
+  }
+
+  static Map<String, Integer> checkExitCodes(Map<String, Integer> exitCodes,
+      boolean returnStatus) throws AbortException {
+    if (returnStatus) {
+      return exitCodes;
+    }
+    List<String> failures = new ArrayList<>();
+    for (Map.Entry<String, Integer> exitCode : exitCodes.entrySet()) {
+      if (exitCode.getValue() != 0) {
+        failures.add(exitCode.getKey() + " (exit code " + exitCode.getValue() + ")");
+      }
+    }
+    if (!failures.isEmpty()) {
+      throw new AbortException(
+          String.format("Commands failed in containers: %s", String.join(", ", failures)));
+    }
+    return exitCodes;
+  }
+
+  /**
+   * Kills the processes left running in every container, once one of them failed to run or the
+   * step was stopped.
+   */
+  private static void killAll(Map<String, Launcher> launchers, String cookie,
+      PrintStream logger) {
+    boolean interrupted = Thread.interrupted();
+    for (Map.Entry<String, Launcher> entry : launchers.entrySet()) {
+      try {
+        entry.getValue().kill(Collections.singletonMap(ArmadaPluginConfig.COOKIE_VAR, cookie));
+      } catch (IOException | InterruptedException e) {
+        LOGGER.log(Level.FINE, "Failed to kill processes of container " + entry.getKey(), e);
+        logger.println("[" + entry.getKey() + "] failed to kill processes: " + e.getMessage());
+        interrupted |= e instanceof InterruptedException;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * OutputStream writing each complete line to a shared stream at once, after a prefix naming its
+   * source, so that lines written concurrently by several containers are not mixed. A line longer
+   * than the buffer is written in parts, each on its own prefixed line, so that the memory held
+   * per container stays bounded.
+   */
+  static class PrefixOutputStream extends OutputStream {
+
+    private final PrintStream target;
+    private final byte[] prefix;
+    private final byte[] line;
+    private int length;
+
+    PrefixOutputStream(PrintStream target, String prefix) {
+      this(target, prefix, ArmadaPluginConfig.PARALLEL_OUTPUT_LINE_LIMIT);
+    }
+
+    PrefixOutputStream(PrintStream target, String prefix, int lineLimit) {
+      this.target = target;
+      this.prefix = prefix.getBytes(StandardCharsets.UTF_8);
+      this.line = new byte[Math.max(lineLimit, 4)];
+    }
+
+    @Override
+    public synchronized void write(int b) {
+      line[length++] = (byte) b;
+      if (b == '\n') {
+        writeLine(length);
+      } else if (length == line.length) {
+        writeLine(partialLength());
+      }
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+      Objects.checkFromIndexSize(off, len, b.length);
+      int end = off + len;
+      int start = off;
+      while (start < end) {
+        int count = Math.min(end - start, line.length - length);
+        int newline = -1;
+        for (int i = start; i < start + count; i++) {
+          if (b[i] == '\n') {
+            newline = i;
+            break;
+          }
+        }
+        if (newline >= 0) {
+          count = newline + 1 - start;
+        }
+        System.arraycopy(b, start, line, length, count);
+        length += count;
+        start += count;
+        if (newline >= 0) {
+          writeLine(length);
+        } else if (length == line.length) {
+          writeLine(partialLength());
+        }
+      }
+    }
+
+    /**
+     * Writes the last line if it is not terminated.
+     */
+    @Override
+    public synchronized void close() {
+      if (length > 0) {
+        writeLine(length);
+      }
+    }
+
+    /**
+     * @return the bytes of the full buffer to write as a partial line, leaving out a character
+     * whose encoding is not complete yet
+     */
+    private int partialLength() {
+      int lead = length - 1;
+      while (lead > 0 && (line[lead] & 0xC0) == 0x80) {
+        lead--;
+      }
+      int size = (line[lead] & 0xE0) == 0xC0 ? 2 : (line[lead] & 0xF0) == 0xE0 ? 3
+          : (line[lead] & 0xF8) == 0xF0 ? 4 : 1;
+      return lead > 0 && length - lead < size ? lead : length;
+    }
+
+    /**
+     * Writes the first bytes of the buffer as a line, terminating it if needed.
+     */
+    private void writeLine(int count) {
+      synchronized (target) {
+        target.write(prefix, 0, prefix.length);
+        target.write(line, 0, count);
+        if (line[count - 1] != '\n') {
+          target.write('\n');
+        }
+        target.flush();
+      }
+      System.arraycopy(line, count, line, 0, length - count);
+      length -= count;
+    }
+  }
+}
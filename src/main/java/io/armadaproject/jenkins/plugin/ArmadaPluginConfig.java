@@ -28,6 +28,17 @@ public class ArmadaPluginConfig {
    */
   public static final long REPORT_INTERVAL_MS = 30_000L;
 
+  /**
+   * Minimum interval in milliseconds between pod status checks while launching (5 seconds)
+   */
+  public static final long POD_STATUS_CHECK_INTERVAL_MS = 5_000L;
+
+  /**
+   * Minimum interval in milliseconds between saves of a build for its exec overhead timings (30
+   * seconds), the build is saved again once it completes
+   */
+  public static final long BUILD_TIMING_SAVE_INTERVAL_MS = 30_000L;
+
   // ===== Websocket Configuration =====
   /**
    * Time in milliseconds to wait for checking whether the process immediately returned
@@ -147,14 +158,50 @@ public class ArmadaPluginConfig {
    * No reconnect after timeout setting for JNLP agent
    */
   public static final String NO_RECONNECT_AFTER_TIMEOUT = "1d";
+  private static final String MAX_RESUBMISSIONS_SYSTEM_PROPERTY =
+      ArmadaPluginConfig.class.getPackageName() + ".maxResubmissions";
+  /**
+   * Maximum number of replacement jobs submitted for an agent whose job was preempted
+   */
+  public static final int MAX_RESUBMISSIONS =
+      Integer.getInteger(MAX_RESUBMISSIONS_SYSTEM_PROPERTY, 2);
+  private static final String LAUNCH_THREADS_SYSTEM_PROPERTY =
+      ArmadaPluginConfig.class.getPackageName() + ".launchThreads";
+  /**
+   * Number of threads scheduling the status polls of all agent launches, which never block them
+   */
+  public static final int LAUNCH_THREADS = Integer.getInteger(LAUNCH_THREADS_SYSTEM_PROPERTY, 4);
+  /**
+   * OTLP/HTTP traces endpoint spans are exported to, for example
+   * {@code http://collector:4318/v1/traces}, or null to not export them
+   */
+  public static final String TRACING_OTLP_ENDPOINT =
+      System.getProperty(ArmadaPluginConfig.class.getPackageName() + ".tracing.otlpEndpoint");
+  /**
+   * File spans are appended to as OTLP/JSON lines, or null to not write them
+   */
+  public static final String TRACING_FILE =
+      System.getProperty(ArmadaPluginConfig.class.getPackageName() + ".tracing.file");
+  /**
+   * Service name reported with exported spans
+   */
+  public static final String TRACING_SERVICE_NAME = "jenkins-armada";
   /**
    * Default retention timeout in minutes for agents
    */
   public static final int DEFAULT_RETENTION_TIMEOUT_MINUTES = 5;
   /**
-   * Timeout in seconds for waiting for Armada JobRunningEvent
+   * Timeout in seconds for waiting for the Armada job running event
    */
   public static final int EVENT_WAIT_TIMEOUT_SECONDS = 60;
+  private static final String EVENT_RETAINED_JOBS_SYSTEM_PROPERTY =
+      ArmadaPluginConfig.class.getPackageName() + ".eventRetainedJobs";
+  /**
+   * Number of jobs, among those no agent launch tracks, whose latest events are retained per cloud
+   * for subscribers attaching after the fact
+   */
+  public static final int EVENT_RETAINED_JOBS =
+      Integer.getInteger(EVENT_RETAINED_JOBS_SYSTEM_PROPERTY, 10_000);
   /**
    * Default Kubernetes namespace
    */
@@ -165,6 +212,14 @@ public class ArmadaPluginConfig {
    * Date format pattern for job set ID generation
    */
   public static final String JOB_SET_DATE_FORMAT = "-ddMMyyyy";
+  /**
+   * Date format pattern for hourly job set ID generation
+   */
+  public static final String JOB_SET_HOUR_FORMAT = "-ddMMyyyy-HH";
+  /**
+   * Default number of job sets used by the sharded job set strategy
+   */
+  public static final int DEFAULT_JOB_SET_SHARDS = 8;
   /**
    * Interval in minutes for periodic timer tasks
    */
@@ -185,6 +240,46 @@ public class ArmadaPluginConfig {
    */
   public static final int WEBSOCKET_CONNECTION_MAX_RETRY_BACKOFF =
       Integer.getInteger(WEBSOCKET_CONNECTION_MAX_RETRY_BACKOFF_SYSTEM_PROPERTY, 30);
+  private static final String EXEC_CIRCUIT_FAILURE_THRESHOLD_SYSTEM_PROPERTY =
+      ArmadaPluginConfig.class.getPackageName() + ".execCircuitFailureThreshold";
+  /**
+   * Consecutive failed exec connections to a cluster after which its circuit opens and further
+   * connections fail fast
+   */
+  public static final int EXEC_CIRCUIT_FAILURE_THRESHOLD =
+      Integer.getInteger(EXEC_CIRCUIT_FAILURE_THRESHOLD_SYSTEM_PROPERTY, 5);
+  private static final String EXEC_MAX_CONCURRENT_PER_POD_SYSTEM_PROPERTY =
+      ArmadaPluginConfig.class.getPackageName() + ".execMaxConcurrentPerPod";
+  /**
+   * Exec sessions allowed at once against a pod, unless its template sets its own limit. A
+   * session holds its permit for as long as its command runs. 0, the default, for no limit
+   */
+  public static final int EXEC_MAX_CONCURRENT_PER_POD =
+      Integer.getInteger(EXEC_MAX_CONCURRENT_PER_POD_SYSTEM_PROPERTY, 0);
+  private static final String EXEC_MAX_CONCURRENT_PER_CLUSTER_SYSTEM_PROPERTY =
+      ArmadaPluginConfig.class.getPackageName() + ".execMaxConcurrentPerCluster";
+  /**
+   * Exec sessions allowed at once against the API server of a cluster, shared by all the pods of
+   * the cluster whatever their template. A session holds its permit for as long as its command
+   * runs. 0, the default, for no limit
+   */
+  public static final int EXEC_MAX_CONCURRENT_PER_CLUSTER =
+      Integer.getInteger(EXEC_MAX_CONCURRENT_PER_CLUSTER_SYSTEM_PROPERTY, 0);
+  private static final String EXEC_ADMISSION_TIMEOUT_SYSTEM_PROPERTY =
+      ArmadaPluginConfig.class.getPackageName() + ".execAdmissionTimeout";
+  /**
+   * Seconds an exec session waits for the concurrency limits of its pod and cluster before failing
+   */
+  public static final int EXEC_ADMISSION_TIMEOUT =
+      Integer.getInteger(EXEC_ADMISSION_TIMEOUT_SYSTEM_PROPERTY, 600);
+  private static final String EXEC_KILL_REPLY_TIMEOUT_SYSTEM_PROPERTY =
+      ArmadaPluginConfig.class.getPackageName() + ".execKillReplyTimeout";
+  /**
+   * Seconds a kill sent over the control session of a container waits for its reply before being
+   * run in a new exec session instead
+   */
+  public static final int EXEC_KILL_REPLY_TIMEOUT =
+      Integer.getInteger(EXEC_KILL_REPLY_TIMEOUT_SYSTEM_PROPERTY, 30);
 
   // ===== Event Management =====
   private static final String WEBSOCKET_CONNECTION_TIMEOUT_SYSTEM_PROPERTY =
@@ -207,6 +302,64 @@ public class ArmadaPluginConfig {
    */
   public static final int STDIN_BUFFER_SIZE =
       Integer.getInteger(STDIN_BUFFER_SIZE_SYSTEM_PROPERTY, 16 * 1024);
+  private static final String EXEC_DIAGNOSTICS_BUFFER_SIZE_SYSTEM_PROPERTY =
+      ArmadaPluginConfig.class.getPackageName() + ".execDiagnosticsBufferSize";
+
+  /**
+   * Bytes of exec diagnostics (connection attempts, retries) retained per exec for failure
+   * reporting. Only the most recent output is kept (8KB)
+   */
+  public static final int EXEC_DIAGNOSTICS_BUFFER_SIZE =
+      Integer.getInteger(EXEC_DIAGNOSTICS_BUFFER_SIZE_SYSTEM_PROPERTY, 8 * 1024);
+  private static final String PARALLEL_OUTPUT_LINE_LIMIT_SYSTEM_PROPERTY =
+      ArmadaPluginConfig.class.getPackageName() + ".parallelOutputLineLimit";
+  /**
+   * Bytes of an unterminated output line buffered per container of armadaParallelContainers,
+   * beyond which the line is written in parts (8KB)
+   */
+  public static final int PARALLEL_OUTPUT_LINE_LIMIT =
+      Integer.getInteger(PARALLEL_OUTPUT_LINE_LIMIT_SYSTEM_PROPERTY, 8 * 1024);
+  private static final String COPY_CHUNK_SIZE_SYSTEM_PROPERTY =
+      ArmadaPluginConfig.class.getPackageName() + ".copyChunkSize";
+
+  /**
+   * Bytes of archive sent or received at once by armadaCopy (64KB)
+   */
+  public static final int COPY_CHUNK_SIZE =
+      Integer.getInteger(COPY_CHUNK_SIZE_SYSTEM_PROPERTY, 64 * 1024);
+  private static final String COPY_BUFFERED_CHUNKS_SYSTEM_PROPERTY =
+      ArmadaPluginConfig.class.getPackageName() + ".copyBufferedChunks";
+
+  /**
+   * Chunks of a downloaded archive held in memory before the websocket is made to wait for the
+   * workspace to catch up
+   */
+  public static final int COPY_BUFFERED_CHUNKS =
+      Integer.getInteger(COPY_BUFFERED_CHUNKS_SYSTEM_PROPERTY, 16);
+  /**
+   * Directory of the container in which the PIDs of the commands launched for a step are recorded,
+   * so that aborting the step does not have to scan every process of the container
+   */
+  public static final String EXEC_PID_DIRECTORY = "/tmp";
+  /**
+   * Directory of the workspace volume holding the control directories of durable execs
+   */
+  public static final String DURABLE_EXEC_DIRECTORY = ".armada-exec";
+  private static final String DURABLE_EXEC_POLL_INTERVAL_SYSTEM_PROPERTY =
+      ArmadaPluginConfig.class.getPackageName() + ".durableExecPollInterval";
+  /**
+   * Seconds between two reads of the log of a durable exec
+   */
+  public static final int DURABLE_EXEC_POLL_INTERVAL =
+      Integer.getInteger(DURABLE_EXEC_POLL_INTERVAL_SYSTEM_PROPERTY, 1);
+  private static final String DURABLE_EXEC_REATTACH_TIMEOUT_SYSTEM_PROPERTY =
+      ArmadaPluginConfig.class.getPackageName() + ".durableExecReattachTimeout";
+  /**
+   * Seconds during which the controller keeps trying to re-attach to a durable exec whose
+   * websocket dropped, before giving up on it
+   */
+  public static final int DURABLE_EXEC_REATTACH_TIMEOUT =
+      Integer.getInteger(DURABLE_EXEC_REATTACH_TIMEOUT_SYSTEM_PROPERTY, 600);
 
   // ===== Private Constructor =====
 
@@ -0,0 +1,151 @@
+package io.armadaproject.jenkins.plugin;
+
+import hudson.model.Computer;
+import hudson.model.TaskListener;
+import hudson.slaves.OfflineCause;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Resubmits the Armada job of an already connected agent when Armada preempts it. The replacement
+ * job is launched for the same node, so the JNLP agent reconnects under the same name and the
+ * build waiting on that node picks it up again. Preemptions that happen while the agent is still
+ * launching are handled by {@link ArmadaLauncher} itself.
+ * <p>
+ * Relaunching the agent does not bring back the processes of a build that ran on it: the steps
+ * running in the preempted pod fail, and with them the {@code node} block. The block is only run
+ * again when the pipeline wraps it in {@code retry(conditions: [armadaAgent()])}, see
+ * {@link ArmadaAgentErrorCondition}, which asks {@link #wasPreemptedSince(String, long)} about the
+ * agent of a failed block.
+ */
+public class ArmadaPreemptionHandler implements Consumer<ArmadaEvent> {
+
+  private static final Logger LOGGER = Logger.getLogger(ArmadaPreemptionHandler.class.getName());
+  private static final int PREEMPTED_NODES = 1024;
+  /**
+   * Time of the last preemption of the agents preempted last, by node name.
+   */
+  private static final Map<String, Long> PREEMPTED_AT = Collections.synchronizedMap(
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+          return size() > PREEMPTED_NODES;
+        }
+      });
+
+  private final ArmadaCloud cloud;
+  private final ArmadaComputer computer;
+  private final String jobId;
+  private final String jobSetId;
+
+  private ArmadaPreemptionHandler(ArmadaCloud cloud, ArmadaComputer computer) {
+    this.cloud = cloud;
+    this.computer = computer;
+    this.jobId = computer.getArmadaJobId();
+    this.jobSetId = computer.getArmadaJobSetId();
+  }
+
+  /**
+   * Starts watching the computer's current job for preemption.
+   *
+   * @param cloud    the cloud the computer belongs to
+   * @param computer the connected computer
+   * @return the handler, to be passed to {@link #unsubscribe()} when the computer goes away
+   */
+  public static ArmadaPreemptionHandler watch(ArmadaCloud cloud, ArmadaComputer computer) {
+    ArmadaPreemptionHandler handler = new ArmadaPreemptionHandler(cloud, computer);
+    cloud.getArmadaEventManager()
+        .subscribe(handler.jobSetId, handler.jobId, EnumSet.of(ArmadaEvent.Type.PREEMPTED),
+            handler);
+    cloud.ensureWatchingArmadaEvents(handler.jobSetId);
+    return handler;
+  }
+
+  public void unsubscribe() {
+    cloud.getArmadaEventManager().unsubscribe(jobSetId, jobId, this);
+  }
+
+  @Override
+  public void accept(ArmadaEvent event) {
+    if (!jobId.equals(event.getJobId())) {
+      return;
+    }
+    unsubscribe();
+    // Don't block the event watcher thread while the agent is relaunched
+    Computer.threadPoolForRemoting.submit(() -> resubmit(event));
+  }
+
+  /**
+   * Tells whether an agent was preempted at or after the given time, such as the start of a
+   * {@code node} block that ran on it.
+   *
+   * @param nodeName the name of the agent
+   * @param since    the time in milliseconds
+   */
+  static boolean wasPreemptedSince(String nodeName, long since) {
+    Long preemptedAt = PREEMPTED_AT.get(nodeName);
+    return preemptedAt != null && preemptedAt >= since;
+  }
+
+  /**
+   * Forgets the events of the preempted job, which is replaced by a new one, and records the
+   * preemption on the computer and for {@link ArmadaAgentErrorCondition}.
+   *
+   * @param now the time of the preemption in milliseconds
+   * @return true if a replacement job may be submitted, false if the budget is exhausted
+   */
+  boolean recordPreemption(long now) {
+    cloud.getArmadaEventManager().forgetJob(jobId);
+    PREEMPTED_AT.put(computer.getName(), now);
+    return computer.recordPreemption(now);
+  }
+
+  private void resubmit(ArmadaEvent event) {
+    ArmadaSlave node = computer.getNode();
+    if (node == null) {
+      LOGGER.fine("Node of preempted job " + jobId + " was already removed");
+      return;
+    }
+    TaskListener listener = node.getTemplate() != null
+        ? node.getTemplate().getListener() : TaskListener.NULL;
+
+    if (!recordPreemption(System.currentTimeMillis())) {
+      String message = String.format(
+          "Armada job %s was preempted and the resubmission budget of %d is exhausted",
+          jobId, ArmadaPluginConfig.MAX_RESUBMISSIONS);
+      LOGGER.warning(message);
+      listener.error(message);
+      return;
+    }
+
+    listener.getLogger().printf(
+        "Armada job %s of agent %s was preempted, submitting replacement job (%d/%d, %d s "
+            + "wasted so far)%n",
+        jobId, node.getNodeName(), computer.getResubmissions(),
+        ArmadaPluginConfig.MAX_RESUBMISSIONS,
+        TimeUnit.MILLISECONDS.toSeconds(computer.getWastedQueueMillis()));
+    LOGGER.info("Resubmitting preempted Armada job " + jobId + " for agent " + node.getNodeName()
+        + " " + event);
+
+    try {
+      if (node.getLauncher() instanceof ArmadaLauncher armadaLauncher) {
+        armadaLauncher.reset();
+      }
+      computer.disconnect(new OfflineCause.ChannelTermination(
+          new IOException("Armada job " + jobId + " was preempted"))).get();
+      computer.connect(true);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      LOGGER.log(Level.WARNING, "Failed to relaunch preempted agent " + node.getNodeName(), e);
+      listener.error("Failed to relaunch preempted agent: " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,182 @@
+package io.armadaproject.jenkins.plugin;
+
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Computer;
+import hudson.model.UnprotectedRootAction;
+import hudson.slaves.Cloud;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import javax.annotation.Nonnull;
+import jenkins.model.Jenkins;
+import jenkins.model.TransientActionFactory;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+
+/**
+ * Prometheus scrape endpoint of an Armada cloud at {@code /cloud/<name>/prometheus/}, which
+ * requires the system read permission. Clouds with
+ * {@link ArmadaCloud#isPrometheusUnauthenticated()} set are also served without authentication at
+ * {@code /armada-prometheus/<name>/}, without the {@link #IDENTIFYING_TAGS}.
+ */
+public class ArmadaPrometheusAction implements Action {
+
+  public static final String URL_NAME = "prometheus";
+  static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+  /**
+   * Tags left out of unauthenticated scrapes, the metrics they tell apart being added up. The
+   * template of an agent is named after its pod or the full name of the job that defined it.
+   */
+  static final Set<String> IDENTIFYING_TAGS = Set.of(ArmadaMetrics.TAG_TEMPLATE);
+
+  private final ArmadaCloud cloud;
+  private final boolean unauthenticated;
+
+  ArmadaPrometheusAction(ArmadaCloud cloud, boolean unauthenticated) {
+    this.cloud = cloud;
+    this.unauthenticated = unauthenticated;
+  }
+
+  @Override
+  public String getIconFileName() {
+    return null;
+  }
+
+  @Override
+  public String getDisplayName() {
+    return "Prometheus Metrics";
+  }
+
+  @Override
+  public String getUrlName() {
+    return URL_NAME;
+  }
+
+  public void doIndex(StaplerRequest2 req, StaplerResponse2 rsp) throws IOException {
+    if (!unauthenticated) {
+      Jenkins.get().checkPermission(Jenkins.SYSTEM_READ);
+    }
+    rsp.setContentType(CONTENT_TYPE);
+    PrintWriter writer = rsp.getWriter();
+    writer.write(scrape());
+    writer.flush();
+  }
+
+  /**
+   * @return the metrics of this cloud in the Prometheus text format
+   */
+  String scrape() {
+    return format(ArmadaMetrics.get(), computeGauges(), cloud.name, unauthenticated);
+  }
+
+  static String format(ArmadaMetrics metrics, SortedMap<ArmadaMetrics.MetricKey, Long> gauges,
+      String cloudName, boolean unauthenticated) {
+    ArmadaMetrics exported = unauthenticated ? metrics.withoutTags(IDENTIFYING_TAGS) : metrics;
+    return PrometheusFormatter.format(exported, gauges,
+        key -> cloudName.equals(key.getTags().get(ArmadaMetrics.TAG_CLOUD)));
+  }
+
+  private SortedMap<ArmadaMetrics.MetricKey, Long> computeGauges() {
+    long launching = 0;
+    long online = 0;
+    long offline = 0;
+    for (Computer computer : Jenkins.get().getComputers()) {
+      if (!(computer instanceof ArmadaComputer armadaComputer)) {
+        continue;
+      }
+      ArmadaSlave node = armadaComputer.getNode();
+      if (node == null || !cloud.name.equals(node.getCloudName())) {
+        continue;
+      }
+      if (armadaComputer.isOnline()) {
+        online++;
+      } else if (armadaComputer.isLaunching()) {
+        launching++;
+      } else {
+        offline++;
+      }
+    }
+
+    SortedMap<ArmadaMetrics.MetricKey, Long> gauges = new TreeMap<>();
+    gauges.put(agentsKey("launching"), launching);
+    gauges.put(agentsKey("online"), online);
+    gauges.put(agentsKey("offline"), offline);
+    gauges.put(new ArmadaMetrics.MetricKey("armada_template_cache_size",
+        ArmadaMetrics.cloudTags(cloud.name)), (long) cloud.getDynamicTemplateCount());
+    gauges.put(new ArmadaMetrics.MetricKey("armada_event_watchers",
+        ArmadaMetrics.cloudTags(cloud.name)), (long) cloud.getJobSetIdThreads().size());
+    gauges.put(new ArmadaMetrics.MetricKey("armada_exec_admission_queued",
+        ArmadaMetrics.cloudTags(cloud.name)),
+        (long) ArmadaExecAdmission.get().getQueueLength(cloud.name));
+    for (Map.Entry<String, ArmadaCircuitBreaker.State> entry
+        : ArmadaCircuitBreaker.getStates(cloud.name).entrySet()) {
+      Map<String, String> tags = ArmadaMetrics.cloudTags(cloud.name);
+      tags.put(ArmadaMetrics.TAG_CLUSTER, entry.getKey());
+      gauges.put(new ArmadaMetrics.MetricKey("armada_exec_circuit_state", tags),
+          entry.getValue().getGaugeValue());
+    }
+    return gauges;
+  }
+
+  private ArmadaMetrics.MetricKey agentsKey(String state) {
+    Map<String, String> tags = ArmadaMetrics.cloudTags(cloud.name);
+    tags.put("state", state);
+    return new ArmadaMetrics.MetricKey("armada_agents", tags);
+  }
+
+  /**
+   * Contributes the scrape endpoint to every Armada cloud.
+   */
+  @Extension
+  public static class Factory extends TransientActionFactory<ArmadaCloud> {
+
+    @Override
+    public Class<ArmadaCloud> type() {
+      return ArmadaCloud.class;
+    }
+
+    @Nonnull
+    @Override
+    public Collection<? extends Action> createFor(@Nonnull ArmadaCloud target) {
+      return Collections.singletonList(new ArmadaPrometheusAction(target, false));
+    }
+  }
+
+  /**
+   * Serves the scrape endpoint without authentication for clouds that opted in, so that
+   * Prometheus does not need Jenkins credentials.
+   */
+  @Extension
+  public static class UnauthenticatedEndpoint implements UnprotectedRootAction {
+
+    @Override
+    public String getIconFileName() {
+      return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+      return "Armada Prometheus Metrics";
+    }
+
+    @Override
+    public String getUrlName() {
+      return "armada-prometheus";
+    }
+
+    public ArmadaPrometheusAction getDynamic(String cloudName) {
+      Cloud cloud = Jenkins.get().getCloud(cloudName);
+      if (cloud instanceof ArmadaCloud armadaCloud && armadaCloud.isPrometheusUnauthenticated()) {
+        return new ArmadaPrometheusAction(armadaCloud, true);
+      }
+      // Not found, whether the cloud does not exist or did not opt in
+      return null;
+    }
+  }
+}
@@ -22,6 +22,7 @@ public class ArmadaSlave extends AbstractCloudSlave {
 
   private final String cloudName;
   private transient final ArmadaJobTemplate template;
+  private transient final LaunchTimeline launchTimeline;
 
   public ArmadaSlave(
       @Nonnull ArmadaCloud cloud,
@@ -41,10 +42,24 @@ public class ArmadaSlave extends AbstractCloudSlave {
 
     this.cloudName = cloud.name;
     this.template = template;
+    this.launchTimeline = createLaunchTimeline(cloud, template);
     template.getListener().getLogger()
         .println("Created slave for label: " + template.getLabel());
   }
 
+  private static LaunchTimeline createLaunchTimeline(ArmadaCloud cloud,
+      ArmadaJobTemplate template) {
+    long startedAt = template.getRegistrationStartedAt() > 0
+        ? template.getRegistrationStartedAt() : System.currentTimeMillis();
+    LaunchTimeline timeline = new LaunchTimeline(ArmadaMetrics.get(),
+        ArmadaMetrics.agentTags(cloud.name, cloud.getArmadaQueue(), template.getTemplateName()),
+        startedAt);
+    if (template.getRegisteredAt() > 0) {
+      timeline.mark(LaunchPhase.TEMPLATE_REGISTRATION, template.getRegisteredAt());
+    }
+    return timeline;
+  }
+
   public static String generateLabel(String prefix) {
     return prefix + "-" + UUID.randomUUID();
   }
@@ -57,6 +72,34 @@ public class ArmadaSlave extends AbstractCloudSlave {
     return template;
   }
 
+  /**
+   * @return the launch timeline of this agent, or null if the agent was restored after a restart
+   */
+  public LaunchTimeline getLaunchTimeline() {
+    return launchTimeline;
+  }
+
+  /**
+   * Records that the agent reached the milestone of a launch phase.
+   */
+  public void markLaunchPhase(LaunchPhase phase) {
+    if (launchTimeline == null || !launchTimeline.mark(phase)) {
+      return;
+    }
+
+    ArmadaJfrEvents.LaunchPhaseEvent event = new ArmadaJfrEvents.LaunchPhaseEvent();
+    if (event.shouldCommit()) {
+      event.nodeName = getNodeName();
+      if (toComputer() instanceof ArmadaComputer computer) {
+        event.jobId = computer.getArmadaJobId();
+        event.jobSetId = computer.getArmadaJobSetId();
+      }
+      event.phase = phase.name();
+      event.phaseDuration = launchTimeline.getDuration(phase);
+      event.commit();
+    }
+  }
+
   @Override
   public ArmadaComputer createComputer() {
     return new ArmadaComputer(this);
@@ -74,6 +117,23 @@ public class ArmadaSlave extends AbstractCloudSlave {
       LOGGER.severe(message);
       listener.error(message).close();
     }
+
+    releaseJobSet();
+  }
+
+  /**
+   * Lets the cloud stop watching this agent's job set if no other agent uses it.
+   */
+  private void releaseJobSet() {
+    try {
+      ArmadaComputer computer = (ArmadaComputer) getComputer();
+      if (computer != null) {
+        computer.stopWatchingForPreemption();
+        ArmadaCloud.resolveCloud(cloudName).releaseJobSet(computer.getArmadaJobSetId(), computer);
+      }
+    } catch (Exception e) {
+      LOGGER.fine("Failed to release job set: " + e.getMessage());
+    }
   }
 
   private void cancelArmadaJob(TaskListener listener) throws IOException {
@@ -99,7 +159,16 @@ public class ArmadaSlave extends AbstractCloudSlave {
         return;
       }
 
+      if (jobSetId == null || jobSetId.isEmpty()) {
+        String message = "No job set ID found for job " + jobId + ", skipping cancellation";
+        listener.getLogger().println(message);
+        LOGGER.warning(message);
+        return;
+      }
+
       listener.getLogger().println("Cancelling job with id: " + jobId);
+      // Also keeps the cancelled event published after the RPC from being retained again
+      cloud.getArmadaEventManager().forgetJob(jobId);
 
       // Cancel the job via Armada API
       try (ArmadaClient armadaClient = cloud.createArmadaClient()) {
@@ -108,11 +177,18 @@ public class ArmadaSlave extends AbstractCloudSlave {
             JobCancelRequest.newBuilder()
                 .setJobId(jobId)
                 .setQueue(cloud.getArmadaQueue())
-                .setJobSetId(
-                    jobSetId != null && !jobSetId.isEmpty() ? jobSetId : cloud.getArmadaJobSetId())
+                .setJobSetId(jobSetId)
                 .build();
 
-        CancellationResult result = armadaClient.cancelJob(cancelRequest);
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        CancellationResult result;
+        try {
+          result = armadaClient.cancelJob(cancelRequest);
+          success = true;
+        } finally {
+          ArmadaMetrics.get().recordRpc(cloud.name, ArmadaMetrics.RPC_CANCEL, startNanos, success);
+        }
 
         if (result != null && result.getCancelledIdsCount() > 0) {
           String message = "Job successfully cancelled";
@@ -0,0 +1,165 @@
+package io.armadaproject.jenkins.plugin;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A timed operation of the plugin, such as a job submission or an exec, exported by
+ * {@link ArmadaTracer} in the OpenTelemetry span model. Spans end exactly once, later calls to
+ * {@link #end()} are ignored.
+ * <p>
+ * A span may be backed by a {@link Delegate}, the span of another tracer that receives its
+ * attributes, errors and end and exports it instead of {@link ArmadaTracer}.
+ */
+public class ArmadaSpan implements AutoCloseable {
+
+  private final ArmadaTracer tracer;
+  private final String traceId;
+  private final String spanId;
+  private final String parentSpanId;
+  private final String name;
+  private final Delegate delegate;
+  private final long startEpochNanos;
+  private final Map<String, Object> attributes = new LinkedHashMap<>();
+  private final AtomicBoolean ended = new AtomicBoolean();
+  private volatile long endEpochNanos;
+  private volatile String errorMessage;
+
+  ArmadaSpan(ArmadaTracer tracer, String traceId, String spanId, String parentSpanId,
+      String name) {
+    this(tracer, traceId, spanId, parentSpanId, name, null);
+  }
+
+  ArmadaSpan(ArmadaTracer tracer, String parentSpanId, String name, Delegate delegate) {
+    this(tracer, delegate.getTraceId(), delegate.getSpanId(), parentSpanId, name, delegate);
+  }
+
+  private ArmadaSpan(ArmadaTracer tracer, String traceId, String spanId, String parentSpanId,
+      String name, Delegate delegate) {
+    this.tracer = tracer;
+    this.traceId = traceId;
+    this.spanId = spanId;
+    this.parentSpanId = parentSpanId;
+    this.name = name;
+    this.delegate = delegate;
+    this.startEpochNanos = epochNanos();
+  }
+
+  /**
+   * Sets an attribute of the span. Values other than strings, numbers and booleans are recorded
+   * as strings, null values are ignored.
+   *
+   * @return this span
+   */
+  public ArmadaSpan setAttribute(String key, Object value) {
+    if (value != null) {
+      synchronized (attributes) {
+        attributes.put(key, value);
+      }
+      if (delegate != null) {
+        delegate.setAttribute(key, value);
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Marks the span as failed.
+   */
+  public void recordError(Throwable t) {
+    errorMessage = t.getMessage() != null ? t.getMessage() : t.getClass().getName();
+    if (delegate != null) {
+      delegate.recordError(t, errorMessage);
+    }
+    setAttribute("exception.type", t.getClass().getName());
+  }
+
+  public void end() {
+    if (ended.compareAndSet(false, true)) {
+      endEpochNanos = epochNanos();
+      if (delegate != null) {
+        delegate.end();
+      } else {
+        tracer.onEnd(this);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    end();
+  }
+
+  public String getTraceId() {
+    return traceId;
+  }
+
+  public String getSpanId() {
+    return spanId;
+  }
+
+  public String getParentSpanId() {
+    return parentSpanId;
+  }
+
+  /**
+   * @return the span of another tracer backing this span, or null if it is exported by
+   * {@link ArmadaTracer}
+   */
+  Delegate getDelegate() {
+    return delegate;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public long getStartEpochNanos() {
+    return startEpochNanos;
+  }
+
+  public long getEndEpochNanos() {
+    return endEpochNanos;
+  }
+
+  /**
+   * @return the error message if the span failed, or null if it succeeded
+   */
+  public String getErrorMessage() {
+    return errorMessage;
+  }
+
+  public Map<String, Object> getAttributes() {
+    synchronized (attributes) {
+      return new LinkedHashMap<>(attributes);
+    }
+  }
+
+  private static long epochNanos() {
+    Instant now = Instant.now();
+    return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+  }
+
+  /**
+   * Span of another tracer backing an {@link ArmadaSpan}.
+   */
+  interface Delegate {
+
+    String getTraceId();
+
+    String getSpanId();
+
+    void setAttribute(String key, Object value);
+
+    void recordError(Throwable t, String message);
+
+    void end();
+
+    /**
+     * Starts a span of the same tracer as a child of this one.
+     */
+    Delegate startChild(String name);
+  }
+}
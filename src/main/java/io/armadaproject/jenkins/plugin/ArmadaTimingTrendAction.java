@@ -0,0 +1,163 @@
+package io.armadaproject.jenkins.plugin;
+
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Job;
+import hudson.model.Run;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.ToLongFunction;
+import javax.annotation.Nonnull;
+import jenkins.model.TransientActionFactory;
+
+/**
+ * Armada agent timings of the recent builds of a job, shown on the job page so that a growing
+ * queueing or image pull time can be spotted across builds.
+ */
+public class ArmadaTimingTrendAction implements Action {
+
+  static final int MAX_BUILDS = 20;
+
+  private final Job<?, ?> job;
+
+  ArmadaTimingTrendAction(Job<?, ?> job) {
+    this.job = job;
+  }
+
+  @Override
+  public String getIconFileName() {
+    // Rendered on the job page
+    return null;
+  }
+
+  @Override
+  public String getDisplayName() {
+    return "Armada Timing Trend";
+  }
+
+  @Override
+  public String getUrlName() {
+    return "armada-timing-trend";
+  }
+
+  public Job<?, ?> getJob() {
+    return job;
+  }
+
+  public String format(long millis) {
+    return ArmadaBuildTimingAction.format(millis);
+  }
+
+  /**
+   * @return the summaries of the most recent builds that used Armada agents, newest first
+   */
+  public List<BuildSummary> getBuilds() {
+    List<BuildSummary> builds = new ArrayList<>();
+    int scanned = 0;
+    for (Run<?, ?> run = job.getLastBuild(); run != null && scanned < MAX_BUILDS;
+        run = run.getPreviousBuild()) {
+      scanned++;
+      ArmadaBuildTimingAction action = run.getAction(ArmadaBuildTimingAction.class);
+      if (action != null && !action.getAgents().isEmpty()) {
+        builds.add(BuildSummary.of(run.getNumber(), action.getAgents()));
+      }
+    }
+    return builds;
+  }
+
+  /**
+   * Average timings of the agents of one build. Unknown durations are left out of the averages.
+   */
+  public static class BuildSummary {
+
+    private final int number;
+    private final int agents;
+    private final long queueingMillis;
+    private final long schedulingMillis;
+    private final long imagePullMillis;
+    private final long connectMillis;
+    private final long execOverheadMillis;
+
+    private BuildSummary(int number, int agents, long queueingMillis, long schedulingMillis,
+        long imagePullMillis, long connectMillis, long execOverheadMillis) {
+      this.number = number;
+      this.agents = agents;
+      this.queueingMillis = queueingMillis;
+      this.schedulingMillis = schedulingMillis;
+      this.imagePullMillis = imagePullMillis;
+      this.connectMillis = connectMillis;
+      this.execOverheadMillis = execOverheadMillis;
+    }
+
+    static BuildSummary of(int number, List<ArmadaBuildTimingAction.AgentTiming> timings) {
+      return new BuildSummary(number, timings.size(),
+          average(timings, ArmadaBuildTimingAction.AgentTiming::getQueueingMillis),
+          average(timings, ArmadaBuildTimingAction.AgentTiming::getSchedulingMillis),
+          average(timings, ArmadaBuildTimingAction.AgentTiming::getImagePullMillis),
+          average(timings, ArmadaBuildTimingAction.AgentTiming::getConnectMillis),
+          average(timings, ArmadaBuildTimingAction.AgentTiming::getExecOverheadMillis));
+    }
+
+    private static long average(List<ArmadaBuildTimingAction.AgentTiming> timings,
+        ToLongFunction<ArmadaBuildTimingAction.AgentTiming> duration) {
+      long total = 0;
+      int known = 0;
+      for (ArmadaBuildTimingAction.AgentTiming timing : timings) {
+        long value = duration.applyAsLong(timing);
+        if (value >= 0) {
+          total += value;
+          known++;
+        }
+      }
+      return known == 0 ? -1 : total / known;
+    }
+
+    public int getNumber() {
+      return number;
+    }
+
+    public int getAgents() {
+      return agents;
+    }
+
+    public long getQueueingMillis() {
+      return queueingMillis;
+    }
+
+    public long getSchedulingMillis() {
+      return schedulingMillis;
+    }
+
+    public long getImagePullMillis() {
+      return imagePullMillis;
+    }
+
+    public long getConnectMillis() {
+      return connectMillis;
+    }
+
+    public long getExecOverheadMillis() {
+      return execOverheadMillis;
+    }
+  }
+
+  /**
+   * Contributes the trend to every job.
+   */
+  @Extension
+  public static class Factory extends TransientActionFactory<Job> {
+
+    @Override
+    public Class<Job> type() {
+      return Job.class;
+    }
+
+    @Nonnull
+    @Override
+    public Collection<? extends Action> createFor(@Nonnull Job target) {
+      return Collections.singletonList(new ArmadaTimingTrendAction(target));
+    }
+  }
+}
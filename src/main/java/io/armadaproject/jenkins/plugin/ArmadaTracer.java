@@ -0,0 +1,266 @@
+package io.armadaproject.jenkins.plugin;
+
+import hudson.PluginWrapper;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.CheckForNull;
+import jenkins.model.Jenkins;
+
+/**
+ * Creates spans for launches, connections and execs. When the Jenkins OpenTelemetry plugin is
+ * installed, the spans are created with its tracer as children of the span of the pipeline run, and
+ * exported with the rest of the build's trace. Otherwise they are exported in batches by the
+ * exporters enabled with {@link ArmadaPluginConfig#TRACING_OTLP_ENDPOINT} and/or
+ * {@link ArmadaPluginConfig#TRACING_FILE}, or never exported if neither is set.
+ * <p>
+ * Without the plugin, all spans of a pipeline run share a random trace ID remembered for the
+ * run, so the agent launches and container execs of a build can be found together.
+ */
+public class ArmadaTracer {
+
+  private static final Logger LOGGER = Logger.getLogger(ArmadaTracer.class.getName());
+  private static final ArmadaTracer INSTANCE =
+      new ArmadaTracer(createExporters(), ArmadaTracer::findOpenTelemetryPlugin);
+
+  /**
+   * Number of spans exported at once
+   */
+  static final int MAX_BATCH_SIZE = 512;
+  /**
+   * Number of pending spans above which new spans are dropped, when the backend is too slow
+   */
+  static final int MAX_PENDING_SPANS = 4 * MAX_BATCH_SIZE;
+  static final long FLUSH_INTERVAL_SECONDS = 5;
+  /**
+   * Number of runs whose trace IDs are remembered
+   */
+  static final int MAX_RUN_TRACES = 1024;
+
+  private final List<SpanExporter> exporters;
+  private final Function<Jenkins, DelegateTracer> delegateLookup;
+  /**
+   * The tracer spans are delegated to, empty if there is none, null until Jenkins is up to look
+   * it up
+   */
+  private volatile Optional<DelegateTracer> delegateTracer;
+  private final Map<String, String> runTraceIds = Collections.synchronizedMap(
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+          return size() > MAX_RUN_TRACES;
+        }
+      });
+  private final ConcurrentLinkedQueue<ArmadaSpan> pending = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pendingCount = new AtomicInteger();
+  private final ScheduledExecutorService flusher;
+
+  ArmadaTracer(List<SpanExporter> exporters) {
+    this(exporters, jenkins -> null);
+  }
+
+  ArmadaTracer(List<SpanExporter> exporters, Function<Jenkins, DelegateTracer> delegateLookup) {
+    this.exporters = exporters;
+    this.delegateLookup = delegateLookup;
+    if (exporters.isEmpty()) {
+      this.flusher = null;
+    } else {
+      this.flusher = Executors.newSingleThreadScheduledExecutor(
+          new NamingThreadFactory(new DaemonThreadFactory(), "ArmadaTracer"));
+      flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_SECONDS,
+          FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+  }
+
+  public static ArmadaTracer get() {
+    return INSTANCE;
+  }
+
+  private static List<SpanExporter> createExporters() {
+    List<SpanExporter> exporters = new ArrayList<>();
+    if (ArmadaPluginConfig.TRACING_OTLP_ENDPOINT != null) {
+      exporters.add(new OtlpHttpSpanExporter(ArmadaPluginConfig.TRACING_OTLP_ENDPOINT,
+          ArmadaPluginConfig.TRACING_SERVICE_NAME));
+    }
+    if (ArmadaPluginConfig.TRACING_FILE != null) {
+      exporters.add(new FileSpanExporter(Paths.get(ArmadaPluginConfig.TRACING_FILE),
+          ArmadaPluginConfig.TRACING_SERVICE_NAME));
+    }
+    return exporters;
+  }
+
+  @CheckForNull
+  private static DelegateTracer findOpenTelemetryPlugin(Jenkins jenkins) {
+    PluginWrapper plugin = jenkins.getPluginManager()
+        .getPlugin(OpenTelemetryPluginTracer.PLUGIN_NAME);
+    if (plugin == null || !plugin.isActive()) {
+      return null;
+    }
+    try {
+      return new OpenTelemetryPluginTracer();
+    } catch (LinkageError e) {
+      LOGGER.log(Level.WARNING, "Failed to use the OpenTelemetry plugin for tracing", e);
+      return null;
+    }
+  }
+
+  @CheckForNull
+  private DelegateTracer getDelegateTracer() {
+    Optional<DelegateTracer> tracer = delegateTracer;
+    if (tracer == null) {
+      Jenkins jenkins = Jenkins.getInstanceOrNull();
+      if (jenkins == null) {
+        return null;
+      }
+      tracer = Optional.ofNullable(delegateLookup.apply(jenkins));
+      delegateTracer = tracer;
+    }
+    return tracer.orElse(null);
+  }
+
+  public boolean isEnabled() {
+    return !exporters.isEmpty() || getDelegateTracer() != null;
+  }
+
+  /**
+   * Starts a root span in the trace of a pipeline run.
+   *
+   * @param name  the span name
+   * @param runId the externalizable ID of the run, or null to start a new trace
+   * @return the started span
+   */
+  public ArmadaSpan startSpan(String name, String runId) {
+    DelegateTracer delegate = getDelegateTracer();
+    ArmadaSpan span;
+    if (delegate != null) {
+      span = new ArmadaSpan(this, null, name, delegate.startSpan(name, runId));
+    } else {
+      span = new ArmadaSpan(this, traceIdFor(runId), randomHex(8), null, name);
+    }
+    return span.setAttribute("ci.pipeline.run.id", runId);
+  }
+
+  /**
+   * Starts a span as a child of another span.
+   */
+  public ArmadaSpan startSpan(String name, ArmadaSpan parent) {
+    if (parent.getDelegate() != null) {
+      return new ArmadaSpan(this, parent.getSpanId(), name,
+          parent.getDelegate().startChild(name));
+    }
+    return new ArmadaSpan(this, parent.getTraceId(), randomHex(8), parent.getSpanId(), name);
+  }
+
+  void onEnd(ArmadaSpan span) {
+    if (exporters.isEmpty()) {
+      return;
+    }
+    if (pendingCount.incrementAndGet() > MAX_PENDING_SPANS) {
+      pendingCount.decrementAndGet();
+      LOGGER.log(Level.FINE, "Dropping span {0}, too many spans pending export", span.getName());
+      return;
+    }
+    pending.add(span);
+    if (pendingCount.get() >= MAX_BATCH_SIZE) {
+      flusher.execute(this::flush);
+    }
+  }
+
+  /**
+   * Exports all pending spans.
+   */
+  synchronized void flush() {
+    List<ArmadaSpan> batch = new ArrayList<>();
+    ArmadaSpan span;
+    while ((span = pending.poll()) != null) {
+      pendingCount.decrementAndGet();
+      batch.add(span);
+      if (batch.size() == MAX_BATCH_SIZE) {
+        export(batch);
+        batch = new ArrayList<>();
+      }
+    }
+    if (!batch.isEmpty()) {
+      export(batch);
+    }
+  }
+
+  private void export(List<ArmadaSpan> batch) {
+    for (SpanExporter exporter : exporters) {
+      try {
+        exporter.export(batch);
+      } catch (Exception e) {
+        LOGGER.log(Level.WARNING, "Failed to export " + batch.size() + " spans with "
+            + exporter.getClass().getSimpleName() + ": " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Returns the trace ID of a run, a random one the first time, so that all spans of a run end up
+   * in the same trace.
+   *
+   * @param runId the run's externalizable ID, or null for a new trace ID
+   * @return 32 hexadecimal characters
+   */
+  String traceIdFor(@CheckForNull String runId) {
+    if (runId == null) {
+      return randomHex(16);
+    }
+    return runTraceIds.computeIfAbsent(runId, id -> randomHex(16));
+  }
+
+  private static String randomHex(int bytes) {
+    byte[] random = new byte[bytes];
+    do {
+      ThreadLocalRandom.current().nextBytes(random);
+    } while (isZero(random));
+    return toHex(random, bytes);
+  }
+
+  private static boolean isZero(byte[] bytes) {
+    for (byte b : bytes) {
+      if (b != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String toHex(byte[] bytes, int length) {
+    StringBuilder sb = new StringBuilder(length * 2);
+    for (int i = 0; i < length; i++) {
+      sb.append(String.format("%02x", bytes[i]));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Tracer of another plugin that spans are created with instead of being exported by this one,
+   * see {@link OpenTelemetryPluginTracer}.
+   */
+  interface DelegateTracer {
+
+    /**
+     * Starts a root span of the plugin, in the trace of a pipeline run.
+     *
+     * @param runId the externalizable ID of the run, or null to start a new trace
+     */
+    ArmadaSpan.Delegate startSpan(String name, @CheckForNull String runId);
+  }
+}
@@ -0,0 +1,66 @@
+package io.armadaproject.jenkins.plugin;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls a condition on a scheduled executor without holding a thread between attempts. Each
+ * attempt runs as a short task and reschedules itself, so any number of pending polls share the
+ * executor's fixed set of threads.
+ */
+class AsyncPoller {
+
+  private AsyncPoller() {
+    // Utility class - prevent instantiation
+  }
+
+  /**
+   * Runs the condition right away and then every interval until it returns true, throws, or the
+   * timeout elapses.
+   *
+   * @param executor       the executor running the attempts
+   * @param condition      the condition to poll, an exception fails the returned future
+   * @param intervalMillis the delay between attempts in milliseconds
+   * @param timeoutMillis  the overall timeout in milliseconds
+   * @param timeoutMessage the message of the IOException the future fails with on timeout
+   * @return a future completed once the condition is true
+   */
+  static CompletableFuture<Void> poll(ScheduledExecutorService executor,
+      Callable<Boolean> condition, long intervalMillis, long timeoutMillis,
+      String timeoutMessage) {
+    CompletableFuture<Void> result = new CompletableFuture<>();
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+    Runnable attempt = new Runnable() {
+      @Override
+      public void run() {
+        if (result.isDone()) {
+          // Cancelled by the caller
+          return;
+        }
+        try {
+          if (condition.call()) {
+            result.complete(null);
+          } else if (System.nanoTime() - deadline >= 0) {
+            result.completeExceptionally(new IOException(timeoutMessage));
+          } else {
+            executor.schedule(this, intervalMillis, TimeUnit.MILLISECONDS);
+          }
+        } catch (Throwable t) {
+          result.completeExceptionally(t);
+        }
+      }
+    };
+
+    try {
+      executor.execute(attempt);
+    } catch (RejectedExecutionException e) {
+      result.completeExceptionally(e);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,30 @@
+package io.armadaproject.jenkins.plugin;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends spans to a local file for offline analysis, one OTLP/JSON export request per line. The
+ * file can be replayed into a collector or loaded into any tool that reads OTLP/JSON.
+ */
+public class FileSpanExporter implements SpanExporter {
+
+  private final Path file;
+  private final String serviceName;
+
+  public FileSpanExporter(Path file, String serviceName) {
+    this.file = file;
+    this.serviceName = serviceName;
+  }
+
+  @Override
+  public synchronized void export(List<ArmadaSpan> spans) throws IOException {
+    String line = OtlpJsonEncoder.encode(serviceName, spans) + "\n";
+    Files.write(file, line.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+        StandardOpenOption.APPEND);
+  }
+}
@@ -0,0 +1,124 @@
+package io.armadaproject.jenkins.plugin;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed bucket histogram of millisecond durations. Recording is lock free and never allocates, so
+ * it can be called from launch and exec hot paths.
+ */
+public class Histogram {
+
+  /**
+   * Upper bounds in milliseconds of the default buckets, spanning sub-second RPCs up to the agent
+   * connect timeout.
+   */
+  static final long[] DEFAULT_BUCKETS_MS = {
+      10, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 30_000, 60_000, 120_000, 300_000,
+      600_000};
+
+  private final long[] bounds;
+  private final LongAdder[] buckets;
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  public Histogram() {
+    this(DEFAULT_BUCKETS_MS);
+  }
+
+  Histogram(long[] bounds) {
+    this.bounds = bounds.clone();
+    // The last bucket counts values above the highest bound
+    this.buckets = new LongAdder[bounds.length + 1];
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  public void record(long millis) {
+    long value = Math.max(millis, 0);
+    int index = 0;
+    while (index < bounds.length && value > bounds[index]) {
+      index++;
+    }
+    buckets[index].increment();
+    count.increment();
+    sum.add(value);
+    max.accumulateAndGet(value, Math::max);
+  }
+
+  /**
+   * Adds the values recorded by another histogram with the same bounds to this one.
+   */
+  void add(Histogram other) {
+    long[] counts = other.getBucketCounts();
+    if (counts.length != buckets.length) {
+      throw new IllegalArgumentException("Histograms have different buckets");
+    }
+    for (int i = 0; i < counts.length; i++) {
+      buckets[i].add(counts[i]);
+    }
+    count.add(other.getCount());
+    sum.add(other.getSum());
+    max.accumulateAndGet(other.getMax(), Math::max);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getSum() {
+    return sum.sum();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * @return the bucket upper bounds in milliseconds, without the overflow bucket
+   */
+  public long[] getBounds() {
+    return bounds.clone();
+  }
+
+  /**
+   * @return the number of values in each bucket, the last element being the overflow bucket
+   */
+  public long[] getBucketCounts() {
+    long[] counts = new long[buckets.length];
+    for (int i = 0; i < buckets.length; i++) {
+      counts[i] = buckets[i].sum();
+    }
+    return counts;
+  }
+
+  /**
+   * Estimates a percentile as the upper bound of the bucket it falls in. Values in the overflow
+   * bucket are reported as the maximum recorded value.
+   *
+   * @param percentile the percentile between 0 and 100
+   * @return the estimate in milliseconds, or 0 if nothing was recorded
+   */
+  public long getPercentile(double percentile) {
+    long[] counts = getBucketCounts();
+    long total = 0;
+    for (long c : counts) {
+      total += c;
+    }
+    if (total == 0) {
+      return 0;
+    }
+
+    long rank = (long) Math.ceil(total * percentile / 100.0);
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= Math.max(rank, 1)) {
+        return i < bounds.length ? Math.min(bounds[i], getMax()) : getMax();
+      }
+    }
+    return getMax();
+  }
+}
@@ -0,0 +1,113 @@
+package io.armadaproject.jenkins.plugin;
+
+import api.SubmitOuterClass.JobState;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import javax.annotation.CheckForNull;
+
+/**
+ * Watches a single Armada job while its agent is being launched and reports conditions that mean
+ * the agent will never connect. Terminal job events (failed, preempted, cancelled, succeeded) are
+ * picked up from the job set event stream as they arrive. The job's state is polled by the
+ * cloud's {@link ArmadaLaunchPoller}, which also checks the pod's container statuses once the job
+ * has been placed on a cluster, for conditions Armada does not report as failures, such as image
+ * pull back-off or a crash looping agent container.
+ */
+public class LaunchFailureDetector implements AutoCloseable {
+
+  private static final Logger LOGGER = Logger.getLogger(LaunchFailureDetector.class.getName());
+
+  private final ArmadaCloud cloud;
+  private final String jobId;
+  private final String jobSetId;
+  private final AtomicReference<ArmadaEvent> terminalEvent = new AtomicReference<>();
+  private final Consumer<ArmadaEvent> subscriber = this::onEvent;
+
+  public LaunchFailureDetector(ArmadaCloud cloud, String jobId, String jobSetId) {
+    this.cloud = cloud;
+    this.jobId = jobId;
+    this.jobSetId = jobSetId;
+  }
+
+  /**
+   * Starts polling the job, subscribes to the job set events and picks up anything already seen
+   * for the job.
+   *
+   * @return this detector
+   */
+  public LaunchFailureDetector start() {
+    cloud.getLaunchPoller().watch(jobId, jobSetId);
+    ArmadaEventManager eventManager = cloud.getArmadaEventManager();
+    eventManager.subscribe(jobSetId, jobId, EnumSet.of(
+        ArmadaEvent.Type.PENDING,
+        ArmadaEvent.Type.RUNNING,
+        ArmadaEvent.Type.FAILED,
+        ArmadaEvent.Type.PREEMPTED,
+        ArmadaEvent.Type.CANCELLED,
+        ArmadaEvent.Type.SUCCEEDED), subscriber);
+
+    for (ArmadaEvent.Type type : ArmadaEvent.Type.values()) {
+      ArmadaEvent event = eventManager.getLatestEvent(jobId, type);
+      if (event != null) {
+        onEvent(event);
+      }
+    }
+
+    cloud.ensureWatchingArmadaEvents(jobSetId);
+    return this;
+  }
+
+  private void onEvent(ArmadaEvent event) {
+    if (!jobId.equals(event.getJobId())) {
+      return;
+    }
+    if (event.getType().isTerminal()) {
+      LOGGER.fine("Job " + jobId + " reached terminal event while launching: " + event);
+      terminalEvent.compareAndSet(null, event);
+    } else if (event.getPodName() != null && !event.getPodName().isEmpty()) {
+      cloud.getLaunchPoller().setPlacement(jobId, event);
+    }
+  }
+
+  /**
+   * @return the terminal event received for the job, or null if none arrived yet
+   */
+  public ArmadaEvent getTerminalEvent() {
+    return terminalEvent.get();
+  }
+
+  /**
+   * @return the last polled state of the job, or null if it was not polled yet
+   */
+  @CheckForNull
+  public JobState getJobState() {
+    return cloud.getLaunchPoller().getJobState(jobId);
+  }
+
+  /**
+   * Checks whether the launch can still succeed.
+   *
+   * @throws IOException describing the precise cause if the agent will never connect
+   */
+  public void check() throws IOException {
+    ArmadaEvent event = terminalEvent.get();
+    if (event != null) {
+      throw new IOException(String.format("Job %s %s: %s", jobId,
+          event.getType().name().toLowerCase(), event.getReason()));
+    }
+
+    String fatalCondition = cloud.getLaunchPoller().getFatalPodCondition(jobId);
+    if (fatalCondition != null) {
+      throw new IOException(String.format("Job %s cannot start: %s", jobId, fatalCondition));
+    }
+  }
+
+  @Override
+  public void close() {
+    cloud.getArmadaEventManager().unsubscribe(jobSetId, jobId, subscriber);
+    cloud.getLaunchPoller().unwatch(jobId);
+  }
+}
@@ -0,0 +1,48 @@
+package io.armadaproject.jenkins.plugin;
+
+/**
+ * Milestones of an agent's cold start, in the order they are expected to be reached. The duration
+ * of a phase is the time between the previous milestone and this one.
+ */
+public enum LaunchPhase {
+  TEMPLATE_REGISTRATION("template registration"),
+  PROVISION("provision"),
+  POD_ENRICHMENT("pod enrichment"),
+  MAPPING("mapping"),
+  SUBMIT("submit"),
+  QUEUED("queued"),
+  LEASED("leased"),
+  PENDING("pending"),
+  RUNNING("running"),
+  AGENT_CONNECTED("agent connected"),
+  FIRST_EXEC("first exec");
+
+  private final String displayName;
+
+  LaunchPhase(String displayName) {
+    this.displayName = displayName;
+  }
+
+  public String getDisplayName() {
+    return displayName;
+  }
+
+  /**
+   * @return the phase whose milestone is reached when the given Armada event is received, or
+   * null if the event does not end a launch phase
+   */
+  static LaunchPhase forEvent(ArmadaEvent.Type type) {
+    switch (type) {
+      case QUEUED:
+        return QUEUED;
+      case LEASED:
+        return LEASED;
+      case PENDING:
+        return PENDING;
+      case RUNNING:
+        return RUNNING;
+      default:
+        return null;
+    }
+  }
+}
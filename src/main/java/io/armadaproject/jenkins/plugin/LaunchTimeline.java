@@ -0,0 +1,95 @@
+package io.armadaproject.jenkins.plugin;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Timestamps of the launch phases of a single agent. Each phase is recorded once, when its
+ * milestone is first reached, and its duration is added to the
+ * {@link ArmadaMetrics#LAUNCH_PHASE_DURATION} histogram of the agent's tags. Phases reached again
+ * by a replacement job after preemption are not recorded a second time.
+ */
+public class LaunchTimeline {
+
+  private final ArmadaMetrics metrics;
+  private final Map<String, String> tags;
+  private final long startedAt;
+  private final EnumMap<LaunchPhase, Long> reachedAt = new EnumMap<>(LaunchPhase.class);
+  private final EnumMap<LaunchPhase, Long> durations = new EnumMap<>(LaunchPhase.class);
+
+  /**
+   * @param metrics   the registry receiving the phase durations
+   * @param tags      the tags of the agent, see {@link ArmadaMetrics#agentTags}
+   * @param startedAt the time in milliseconds at which the launch started
+   */
+  public LaunchTimeline(ArmadaMetrics metrics, Map<String, String> tags, long startedAt) {
+    this.metrics = metrics;
+    this.tags = tags;
+    this.startedAt = startedAt;
+  }
+
+  public boolean mark(LaunchPhase phase) {
+    return mark(phase, System.currentTimeMillis());
+  }
+
+  /**
+   * Records that the milestone of a phase was reached.
+   *
+   * @param phase the phase
+   * @param now   the time in milliseconds at which the milestone was reached
+   * @return true if the phase was recorded, false if it was already recorded before
+   */
+  public synchronized boolean mark(LaunchPhase phase, long now) {
+    if (reachedAt.containsKey(phase)) {
+      return false;
+    }
+
+    // Events may arrive out of order, so measure from the latest of the earlier milestones
+    long previous = startedAt;
+    for (Map.Entry<LaunchPhase, Long> entry : reachedAt.entrySet()) {
+      if (entry.getKey().ordinal() < phase.ordinal()) {
+        previous = Math.max(previous, entry.getValue());
+      }
+    }
+    long duration = Math.max(now - previous, 0);
+
+    reachedAt.put(phase, now);
+    durations.put(phase, duration);
+
+    Map<String, String> phaseTags = new TreeMap<>(tags);
+    phaseTags.put(ArmadaMetrics.TAG_PHASE, phase.name().toLowerCase(Locale.ROOT));
+    metrics.histogram(ArmadaMetrics.LAUNCH_PHASE_DURATION, phaseTags).record(duration);
+    if (phase == LaunchPhase.AGENT_CONNECTED) {
+      metrics.histogram(ArmadaMetrics.LAUNCH_DURATION, tags).record(Math.max(now - startedAt, 0));
+    }
+    return true;
+  }
+
+  /**
+   * @return the duration of the phase in milliseconds, or null if it was not reached yet
+   */
+  public synchronized Long getDuration(LaunchPhase phase) {
+    return durations.get(phase);
+  }
+
+  public Map<String, String> getTags() {
+    return tags;
+  }
+
+  /**
+   * @return a one line summary of the recorded phases, for the build console
+   */
+  public synchronized String describe() {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<LaunchPhase, Long> entry : durations.entrySet()) {
+      if (sb.length() > 0) {
+        sb.append(", ");
+      }
+      sb.append(entry.getKey().getDisplayName()).append(' ')
+          .append(String.format(Locale.ROOT, "%.1f s", entry.getValue() / 1000.0));
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,110 @@
+package io.armadaproject.jenkins.plugin;
+
+import hudson.ExtensionList;
+import hudson.model.Run;
+import io.jenkins.plugins.opentelemetry.JenkinsControllerOpenTelemetry;
+import io.jenkins.plugins.opentelemetry.job.OtelTraceService;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Context;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.CheckForNull;
+
+/**
+ * Creates the spans of {@link ArmadaTracer} with the tracer of the Jenkins OpenTelemetry plugin,
+ * as children of the span the plugin keeps for the pipeline run, so that they are exported with the
+ * rest of the build's trace and its configuration. Only loaded when the plugin is installed, which
+ * is an optional dependency.
+ */
+class OpenTelemetryPluginTracer implements ArmadaTracer.DelegateTracer {
+
+  private static final Logger LOGGER = Logger.getLogger(OpenTelemetryPluginTracer.class.getName());
+  static final String PLUGIN_NAME = "opentelemetry";
+
+  @Override
+  public ArmadaSpan.Delegate startSpan(String name, @CheckForNull String runId) {
+    return start(name, runContext(runId));
+  }
+
+  /**
+   * @return the context of the span of a run, or the root context if the run or its span cannot
+   * be found
+   */
+  private static Context runContext(@CheckForNull String runId) {
+    if (runId == null) {
+      return Context.root();
+    }
+    try {
+      Run<?, ?> run = Run.fromExternalizableId(runId);
+      if (run != null) {
+        Span span = ExtensionList.lookupSingleton(OtelTraceService.class).getSpan(run);
+        return Context.root().with(span);
+      }
+    } catch (RuntimeException e) {
+      LOGGER.log(Level.FINE, "No span found for run " + runId, e);
+    }
+    return Context.root();
+  }
+
+  private static ArmadaSpan.Delegate start(String name, Context parent) {
+    Span span = JenkinsControllerOpenTelemetry.get().getDefaultTracer()
+        .spanBuilder(name)
+        .setParent(parent)
+        .setSpanKind(SpanKind.INTERNAL)
+        .startSpan();
+    return new PluginSpan(span);
+  }
+
+  /**
+   * Span of the OpenTelemetry plugin's tracer.
+   */
+  private static class PluginSpan implements ArmadaSpan.Delegate {
+
+    private final Span span;
+
+    PluginSpan(Span span) {
+      this.span = span;
+    }
+
+    @Override
+    public String getTraceId() {
+      return span.getSpanContext().getTraceId();
+    }
+
+    @Override
+    public String getSpanId() {
+      return span.getSpanContext().getSpanId();
+    }
+
+    @Override
+    public void setAttribute(String key, Object value) {
+      if (value instanceof Boolean b) {
+        span.setAttribute(key, b);
+      } else if (value instanceof Double || value instanceof Float) {
+        span.setAttribute(key, ((Number) value).doubleValue());
+      } else if (value instanceof Number n) {
+        span.setAttribute(key, n.longValue());
+      } else {
+        span.setAttribute(key, value.toString());
+      }
+    }
+
+    @Override
+    public void recordError(Throwable t, String message) {
+      span.recordException(t);
+      span.setStatus(StatusCode.ERROR, message);
+    }
+
+    @Override
+    public void end() {
+      span.end();
+    }
+
+    @Override
+    public ArmadaSpan.Delegate startChild(String name) {
+      return start(name, Context.root().with(span));
+    }
+  }
+}
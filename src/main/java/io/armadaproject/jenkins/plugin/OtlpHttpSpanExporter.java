@@ -0,0 +1,51 @@
+package io.armadaproject.jenkins.plugin;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Exports spans to an OpenTelemetry collector over OTLP/HTTP with JSON encoding.
+ */
+public class OtlpHttpSpanExporter implements SpanExporter {
+
+  private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+  private final URI endpoint;
+  private final String serviceName;
+  private final HttpClient client;
+
+  /**
+   * @param endpoint    the traces endpoint, for example {@code http://collector:4318/v1/traces}
+   * @param serviceName the service name reported for the spans
+   */
+  public OtlpHttpSpanExporter(String endpoint, String serviceName) {
+    this.endpoint = URI.create(endpoint);
+    this.serviceName = serviceName;
+    this.client = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+  }
+
+  @Override
+  public void export(List<ArmadaSpan> spans) throws IOException {
+    HttpRequest request = HttpRequest.newBuilder(endpoint)
+        .timeout(TIMEOUT)
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString(OtlpJsonEncoder.encode(serviceName, spans)))
+        .build();
+
+    try {
+      HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+      if (response.statusCode() / 100 != 2) {
+        throw new IOException(String.format("OTLP export to %s failed with status %d: %s",
+            endpoint, response.statusCode(), response.body()));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while exporting spans to " + endpoint, e);
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package io.armadaproject.jenkins.plugin;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes spans as an OTLP/JSON {@code ExportTraceServiceRequest}, the payload accepted by the
+ * {@code /v1/traces} endpoint of OpenTelemetry collectors.
+ */
+class OtlpJsonEncoder {
+
+  static final String SCOPE_NAME = "io.armadaproject.jenkins.plugin";
+  private static final int SPAN_KIND_INTERNAL = 1;
+  private static final int STATUS_CODE_ERROR = 2;
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private OtlpJsonEncoder() {
+    // Utility class - prevent instantiation
+  }
+
+  static String encode(String serviceName, List<ArmadaSpan> spans) throws JsonProcessingException {
+    List<Object> encodedSpans = new ArrayList<>();
+    for (ArmadaSpan span : spans) {
+      encodedSpans.add(encodeSpan(span));
+    }
+
+    Map<String, Object> resource = Map.of("attributes",
+        List.of(attribute("service.name", serviceName)));
+    Map<String, Object> scopeSpans = Map.of(
+        "scope", Map.of("name", SCOPE_NAME),
+        "spans", encodedSpans);
+    Map<String, Object> resourceSpans = Map.of(
+        "resource", resource,
+        "scopeSpans", List.of(scopeSpans));
+    return MAPPER.writeValueAsString(Map.of("resourceSpans", List.of(resourceSpans)));
+  }
+
+  private static Map<String, Object> encodeSpan(ArmadaSpan span) {
+    Map<String, Object> encoded = new LinkedHashMap<>();
+    encoded.put("traceId", span.getTraceId());
+    encoded.put("spanId", span.getSpanId());
+    if (span.getParentSpanId() != null) {
+      encoded.put("parentSpanId", span.getParentSpanId());
+    }
+    encoded.put("name", span.getName());
+    encoded.put("kind", SPAN_KIND_INTERNAL);
+    encoded.put("startTimeUnixNano", Long.toString(span.getStartEpochNanos()));
+    encoded.put("endTimeUnixNano", Long.toString(span.getEndEpochNanos()));
+
+    List<Object> attributes = new ArrayList<>();
+    span.getAttributes().forEach((key, value) -> attributes.add(attribute(key, value)));
+    encoded.put("attributes", attributes);
+
+    if (span.getErrorMessage() != null) {
+      encoded.put("status", Map.of("code", STATUS_CODE_ERROR, "message", span.getErrorMessage()));
+    }
+    return encoded;
+  }
+
+  private static Map<String, Object> attribute(String key, Object value) {
+    Map<String, Object> encodedValue;
+    if (value instanceof Boolean) {
+      encodedValue = Map.of("boolValue", value);
+    } else if (value instanceof Integer || value instanceof Long) {
+      // OTLP/JSON encodes 64 bit integers as strings
+      encodedValue = Map.of("intValue", value.toString());
+    } else if (value instanceof Number) {
+      encodedValue = Map.of("doubleValue", value);
+    } else {
+      encodedValue = Map.of("stringValue", value.toString());
+    }
+    return Map.of("key", key, "value", encodedValue);
+  }
+}
@@ -0,0 +1,83 @@
+package io.armadaproject.jenkins.plugin;
+
+import io.fabric8.kubernetes.api.model.ContainerStateTerminated;
+import io.fabric8.kubernetes.api.model.ContainerStateWaiting;
+import io.fabric8.kubernetes.api.model.ContainerStatus;
+import io.fabric8.kubernetes.api.model.Pod;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+
+/**
+ * Inspects the Kubernetes status of an agent pod for conditions that will never let the agent
+ * connect, so that a launch can be aborted right away instead of waiting for the connect timeout.
+ */
+public class PodStatusInspector {
+
+  /**
+   * Waiting reasons that block the pod from ever running, whatever container they are on.
+   */
+  static final Set<String> FATAL_WAITING_REASONS = Set.of(
+      "ImagePullBackOff",
+      "InvalidImageName",
+      "ErrImageNeverPull",
+      "CreateContainerConfigError");
+
+  /**
+   * Waiting reasons that are fatal when they affect the JNLP agent container.
+   */
+  static final Set<String> FATAL_AGENT_WAITING_REASONS = Set.of("CrashLoopBackOff");
+
+  private PodStatusInspector() {
+    // Utility class - prevent instantiation
+  }
+
+  /**
+   * Looks for a container state that prevents the agent from connecting.
+   *
+   * @param pod the pod to inspect
+   * @return a description of the fatal condition, or null if the pod may still come up
+   */
+  @CheckForNull
+  public static String findFatalCondition(@CheckForNull Pod pod) {
+    if (pod == null || pod.getStatus() == null) {
+      return null;
+    }
+
+    List<ContainerStatus> statuses = new ArrayList<>();
+    if (pod.getStatus().getInitContainerStatuses() != null) {
+      statuses.addAll(pod.getStatus().getInitContainerStatuses());
+    }
+    if (pod.getStatus().getContainerStatuses() != null) {
+      statuses.addAll(pod.getStatus().getContainerStatuses());
+    }
+
+    for (ContainerStatus status : statuses) {
+      boolean agentContainer = ArmadaPluginConfig.JNLP_CONTAINER_NAME.equals(status.getName());
+      if (status.getState() == null) {
+        continue;
+      }
+
+      ContainerStateWaiting waiting = status.getState().getWaiting();
+      if (waiting != null && waiting.getReason() != null
+          && (FATAL_WAITING_REASONS.contains(waiting.getReason())
+          || (agentContainer && FATAL_AGENT_WAITING_REASONS.contains(waiting.getReason())))) {
+        return describe(status.getName(), waiting.getReason(), waiting.getMessage());
+      }
+
+      ContainerStateTerminated terminated = status.getState().getTerminated();
+      if (agentContainer && terminated != null) {
+        return describe(status.getName(),
+            terminated.getReason() != null ? terminated.getReason() : "Terminated",
+            "exit code " + terminated.getExitCode());
+      }
+    }
+    return null;
+  }
+
+  private static String describe(String container, String reason, String message) {
+    return "container " + container + ": " + reason
+        + (message != null && !message.isEmpty() ? " (" + message + ")" : "");
+  }
+}
@@ -0,0 +1,129 @@
+package io.armadaproject.jenkins.plugin;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.function.Predicate;
+
+/**
+ * Renders metrics in the Prometheus text exposition format. Durations are recorded in milliseconds
+ * and exposed in seconds, with a {@code _seconds} suffix as Prometheus conventions expect.
+ */
+class PrometheusFormatter {
+
+  private PrometheusFormatter() {
+    // Utility class - prevent instantiation
+  }
+
+  /**
+   * @param metrics the registry to render
+   * @param gauges  values computed at scrape time, sorted by name
+   * @param filter  selects the counters and histograms to render
+   * @return the exposition text
+   */
+  static String format(ArmadaMetrics metrics, SortedMap<ArmadaMetrics.MetricKey, Long> gauges,
+      Predicate<ArmadaMetrics.MetricKey> filter) {
+    StringBuilder sb = new StringBuilder();
+
+    String lastName = null;
+    for (Map.Entry<ArmadaMetrics.MetricKey, Long> entry : gauges.entrySet()) {
+      lastName = writeType(sb, entry.getKey().getName(), "gauge", lastName);
+      writeSample(sb, entry.getKey().getName(), entry.getKey().getTags(), null, null,
+          Long.toString(entry.getValue()));
+    }
+
+    lastName = null;
+    for (Map.Entry<ArmadaMetrics.MetricKey, Long> entry : metrics.getCounters().entrySet()) {
+      if (!filter.test(entry.getKey())) {
+        continue;
+      }
+      lastName = writeType(sb, entry.getKey().getName(), "counter", lastName);
+      writeSample(sb, entry.getKey().getName(), entry.getKey().getTags(), null, null,
+          Long.toString(entry.getValue()));
+    }
+
+    lastName = null;
+    for (Map.Entry<ArmadaMetrics.MetricKey, Histogram> entry
+        : metrics.getHistograms().entrySet()) {
+      if (!filter.test(entry.getKey())) {
+        continue;
+      }
+      String name = entry.getKey().getName() + "_seconds";
+      lastName = writeType(sb, name, "histogram", lastName);
+      writeHistogram(sb, name, entry.getKey().getTags(), entry.getValue());
+    }
+    return sb.toString();
+  }
+
+  private static String writeType(StringBuilder sb, String name, String type, String lastName) {
+    if (!name.equals(lastName)) {
+      sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+    return name;
+  }
+
+  private static void writeHistogram(StringBuilder sb, String name, Map<String, String> tags,
+      Histogram histogram) {
+    long[] bounds = histogram.getBounds();
+    long[] counts = histogram.getBucketCounts();
+    long cumulative = 0;
+    for (int i = 0; i < bounds.length; i++) {
+      cumulative += counts[i];
+      writeSample(sb, name + "_bucket", tags, "le", seconds(bounds[i]),
+          Long.toString(cumulative));
+    }
+    cumulative += counts[bounds.length];
+    writeSample(sb, name + "_bucket", tags, "le", "+Inf", Long.toString(cumulative));
+    writeSample(sb, name + "_sum", tags, null, null, seconds(histogram.getSum()));
+    writeSample(sb, name + "_count", tags, null, null, Long.toString(cumulative));
+  }
+
+  private static void writeSample(StringBuilder sb, String name, Map<String, String> tags,
+      String extraTag, String extraValue, String value) {
+    sb.append(name);
+    if (!tags.isEmpty() || extraTag != null) {
+      sb.append('{');
+      boolean first = true;
+      for (Map.Entry<String, String> tag : tags.entrySet()) {
+        if (!first) {
+          sb.append(',');
+        }
+        appendLabel(sb, tag.getKey(), tag.getValue());
+        first = false;
+      }
+      if (extraTag != null) {
+        if (!first) {
+          sb.append(',');
+        }
+        appendLabel(sb, extraTag, extraValue);
+      }
+      sb.append('}');
+    }
+    sb.append(' ').append(value).append('\n');
+  }
+
+  private static void appendLabel(StringBuilder sb, String name, String value) {
+    sb.append(name).append("=\"");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '"':
+          sb.append("\\\"");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        default:
+          sb.append(c);
+      }
+    }
+    sb.append('"');
+  }
+
+  private static String seconds(long millis) {
+    return String.format(Locale.ROOT, "%.3f", millis / 1000.0);
+  }
+}
@@ -0,0 +1,18 @@
+package io.armadaproject.jenkins.plugin;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Sends finished spans to a tracing backend.
+ */
+public interface SpanExporter {
+
+  /**
+   * Exports a batch of finished spans.
+   *
+   * @param spans the spans, never empty
+   * @throws IOException if the batch could not be exported, it is then dropped
+   */
+  void export(List<ArmadaSpan> spans) throws IOException;
+}
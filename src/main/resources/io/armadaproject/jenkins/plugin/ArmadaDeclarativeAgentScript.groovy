@@ -17,7 +17,8 @@ class ArmadaDeclarativeAgentScript extends DeclarativeAgentScript2<ArmadaDeclara
             script.error("No YAML configuration provided for Armada agent")
         }
 
-        script.armadaJobTemplate(yaml: describable.getYaml(), cloud: describable.getCloud()) {
+        script.armadaJobTemplate(yaml: describable.getYaml(), cloud: describable.getCloud(),
+                maxConcurrentExecs: describable.getMaxConcurrentExecs()) {
             // Access the label from the environment variable set by the step
             def label = script.env.ARMADA_TEMPLATE_LABEL
 
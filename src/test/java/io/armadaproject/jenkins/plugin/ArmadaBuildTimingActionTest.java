@@ -0,0 +1,78 @@
+package io.armadaproject.jenkins.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ArmadaBuildTimingActionTest {
+
+  private static ArmadaBuildTimingAction.AgentTiming timing(String node, long queueing,
+      long imagePull) {
+    return new ArmadaBuildTimingAction.AgentTiming(node, "job-" + node, "cluster-a",
+        "pod-" + node, queueing, 1_000, imagePull, 500);
+  }
+
+  @Test
+  void testSumIgnoresUnknownDurations() {
+    assertEquals(-1, ArmadaBuildTimingAction.sum());
+    assertEquals(-1, ArmadaBuildTimingAction.sum(null, null));
+    assertEquals(300, ArmadaBuildTimingAction.sum(100L, null, 200L));
+    assertEquals(0, ArmadaBuildTimingAction.sum(0L));
+  }
+
+  @Test
+  void testFormat() {
+    assertEquals("-", ArmadaBuildTimingAction.format(-1));
+    assertEquals("2.5 s", ArmadaBuildTimingAction.format(2_500));
+  }
+
+  @Test
+  void testAgentReplacedOnRelaunchAndExecsAccumulated() {
+    ArmadaBuildTimingAction action = new ArmadaBuildTimingAction();
+    action.addAgent(timing("agent-1", 10_000, 3_000));
+    action.addAgent(timing("agent-1", 20_000, 3_000));
+    action.addExecOverhead("agent-1", 150);
+    action.addExecOverhead("agent-1", 50);
+    action.addExecOverhead("unknown", 1_000);
+
+    assertEquals(1, action.getAgents().size());
+    ArmadaBuildTimingAction.AgentTiming agent = action.getAgents().get(0);
+    assertEquals(20_000, agent.getQueueingMillis());
+    assertEquals(2, agent.getExecCount());
+    assertEquals(200, agent.getExecOverheadMillis());
+    assertEquals(24_500, agent.getTotalMillis());
+  }
+
+  @Test
+  void testSavesThrottledUnlessForced() {
+    ArmadaBuildTimingAction action = new ArmadaBuildTimingAction();
+    long interval = ArmadaPluginConfig.BUILD_TIMING_SAVE_INTERVAL_MS;
+
+    assertTrue(action.claimSave(false, 1_000));
+    assertFalse(action.claimSave(false, 1_000 + interval - 1));
+    assertTrue(action.claimSave(true, 1_000 + interval - 1));
+    assertFalse(action.claimSave(false, 1_000 + 2 * interval - 2));
+    assertTrue(action.claimSave(false, 1_000 + 2 * interval - 1));
+  }
+
+  @Test
+  void testBuildSummaryAveragesKnownDurations() {
+    List<ArmadaBuildTimingAction.AgentTiming> timings = Arrays.asList(
+        timing("agent-1", 10_000, -1),
+        timing("agent-2", 30_000, 4_000));
+
+    ArmadaTimingTrendAction.BuildSummary summary =
+        ArmadaTimingTrendAction.BuildSummary.of(7, timings);
+
+    assertEquals(7, summary.getNumber());
+    assertEquals(2, summary.getAgents());
+    assertEquals(20_000, summary.getQueueingMillis());
+    assertEquals(4_000, summary.getImagePullMillis());
+    assertEquals(500, summary.getConnectMillis());
+    assertEquals(0, summary.getExecOverheadMillis());
+  }
+}
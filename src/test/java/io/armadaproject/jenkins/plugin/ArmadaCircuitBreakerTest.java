@@ -0,0 +1,122 @@
+package io.armadaproject.jenkins.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class ArmadaCircuitBreakerTest {
+
+  private final AtomicLong now = new AtomicLong();
+  private final ArmadaCircuitBreaker breaker =
+      new ArmadaCircuitBreaker("cloud", "cluster", 3, 8_000, now::get);
+
+  private void fail(int times) {
+    for (int i = 0; i < times; i++) {
+      acquire().record(false);
+    }
+  }
+
+  private ArmadaCircuitBreaker.Attempt acquire() {
+    ArmadaCircuitBreaker.Attempt attempt = breaker.tryAcquire();
+    assertNotNull(attempt);
+    return attempt;
+  }
+
+  @Test
+  void testOpensAfterConsecutiveFailures() {
+    fail(2);
+    acquire().record(true);
+    fail(2);
+    assertEquals(ArmadaCircuitBreaker.State.CLOSED, breaker.getState());
+
+    fail(1);
+
+    assertEquals(ArmadaCircuitBreaker.State.OPEN, breaker.getState());
+    assertNull(breaker.tryAcquire());
+    long remaining = breaker.getRemainingOpenMillis();
+    assertTrue(remaining >= 500 && remaining <= 1_000, "remaining " + remaining);
+  }
+
+  @Test
+  void testHalfOpenLetsOneTrialThrough() {
+    fail(3);
+    now.addAndGet(breaker.getRemainingOpenMillis());
+
+    ArmadaCircuitBreaker.Attempt trial = acquire();
+    assertTrue(trial.isTrial());
+    assertEquals(ArmadaCircuitBreaker.State.HALF_OPEN, breaker.getState());
+    assertNull(breaker.tryAcquire());
+    trial.record(true);
+
+    assertEquals(ArmadaCircuitBreaker.State.CLOSED, breaker.getState());
+    assertFalse(acquire().isTrial());
+  }
+
+  @Test
+  void testFailedTrialReopensWithLongerBackoff() {
+    fail(3);
+    now.addAndGet(breaker.getRemainingOpenMillis());
+    ArmadaCircuitBreaker.Attempt trial = acquire();
+
+    trial.record(false);
+
+    assertEquals(ArmadaCircuitBreaker.State.OPEN, breaker.getState());
+    long remaining = breaker.getRemainingOpenMillis();
+    assertTrue(remaining >= 1_000 && remaining <= 2_000, "remaining " + remaining);
+  }
+
+  @Test
+  void testReleasedTrialCanBeRetried() {
+    fail(3);
+    now.addAndGet(breaker.getRemainingOpenMillis());
+    ArmadaCircuitBreaker.Attempt trial = acquire();
+
+    trial.release();
+
+    assertTrue(acquire().isTrial());
+  }
+
+  @Test
+  void testLateOutcomesOfAttemptsStartedBeforeOpeningAreIgnored() {
+    ArmadaCircuitBreaker.Attempt late = acquire();
+    ArmadaCircuitBreaker.Attempt lateSuccess = acquire();
+    fail(3);
+    long remaining = breaker.getRemainingOpenMillis();
+
+    late.record(false);
+    lateSuccess.record(true);
+
+    assertEquals(ArmadaCircuitBreaker.State.OPEN, breaker.getState());
+    assertEquals(remaining, breaker.getRemainingOpenMillis());
+  }
+
+  @Test
+  void testOnlyTheTrialSettlesAHalfOpenCircuit() {
+    ArmadaCircuitBreaker.Attempt late = acquire();
+    fail(3);
+    now.addAndGet(breaker.getRemainingOpenMillis());
+    ArmadaCircuitBreaker.Attempt trial = acquire();
+
+    late.release();
+    late.record(true);
+
+    assertEquals(ArmadaCircuitBreaker.State.HALF_OPEN, breaker.getState());
+    assertNull(breaker.tryAcquire());
+    trial.record(true);
+    assertEquals(ArmadaCircuitBreaker.State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  void testJitteredBackoffIsCapped() {
+    for (int attempt = 1; attempt < 40; attempt++) {
+      long backoff = ArmadaCircuitBreaker.jitteredBackoffMillis(attempt, 30_000);
+      long ceiling = Math.min(1_000L << Math.min(attempt - 1, 20), 30_000);
+      assertTrue(backoff >= ceiling / 2 && backoff <= ceiling, "backoff " + backoff);
+    }
+  }
+}
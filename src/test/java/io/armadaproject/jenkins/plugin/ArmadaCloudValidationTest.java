@@ -1,9 +1,11 @@
 package io.armadaproject.jenkins.plugin;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
 import hudson.util.FormValidation;
+import jenkins.model.Jenkins;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.jvnet.hudson.test.JenkinsRule;
@@ -386,4 +388,18 @@ public class ArmadaCloudValidationTest {
     assertEquals("Armada", descriptor.getDisplayName());
   }
 
+  // Test configuration migration
+  @Test
+  public void testReadResolve_DropsJobSetId() {
+    ArmadaCloud cloud = (ArmadaCloud) Jenkins.XSTREAM2.fromXML(
+        "<io.armadaproject.jenkins.plugin.ArmadaCloud>"
+            + "<name>armada</name>"
+            + "<armadaJobSetPrefix>jenkins</armadaJobSetPrefix>"
+            + "<armadaJobSetId>armada-19102026</armadaJobSetId>"
+            + "</io.armadaproject.jenkins.plugin.ArmadaCloud>");
+
+    assertEquals("jenkins", cloud.getArmadaJobSetPrefix());
+    assertFalse(Jenkins.XSTREAM2.toXML(cloud).contains("armadaJobSetId"));
+  }
+
 }
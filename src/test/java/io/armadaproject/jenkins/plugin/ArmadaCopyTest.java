@@ -0,0 +1,261 @@
+package io.armadaproject.jenkins.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.Proc;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisabledOnOs(OS.WINDOWS)
+class ArmadaCopyTest {
+
+  private static final ExecutorService PUMPS = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "ArmadaCopyTest pump");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  @TempDir
+  Path workspace;
+
+  @TempDir
+  Path container;
+
+  /**
+   * Runs commands as local processes, the way an exec runs them in a container.
+   */
+  static Proc start(String[] command, OutputStream stdout, OutputStream stderr)
+      throws IOException {
+    return start(new ProcessBuilder(command), stdout, stderr);
+  }
+
+  /**
+   * @return the path of busybox, or null if it is not installed
+   */
+  private static Path findBusybox() {
+    for (String directory : System.getenv("PATH").split(File.pathSeparator)) {
+      Path busybox = Path.of(directory, "busybox");
+      if (Files.isExecutable(busybox)) {
+        return busybox;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Runs commands with the shell and utilities of busybox only, like in an Alpine container.
+   */
+  private ArmadaCopy.Exec busybox(Path busybox) throws IOException {
+    Path bin = Files.createDirectories(container.resolve(".bin"));
+    for (String applet : new String[]{"cat", "cut", "dd", "gzip", "head", "mkdir", "mkfifo", "rm",
+        "sh", "sha256sum", "tar", "tee"}) {
+      Files.createSymbolicLink(bin.resolve(applet), busybox);
+    }
+    return (command, stdout, stderr) -> {
+      ProcessBuilder builder = new ProcessBuilder(command);
+      builder.environment().put("PATH", bin.toString());
+      builder.command().set(0, bin.resolve(command[0]).toString());
+      return start(builder, stdout, stderr);
+    };
+  }
+
+  private static Proc start(ProcessBuilder builder, OutputStream stdout, OutputStream stderr)
+      throws IOException {
+    Process process = builder.start();
+    CompletableFuture<Void> pumps = CompletableFuture.allOf(
+        CompletableFuture.runAsync(() -> pump(process.getInputStream(), stdout), PUMPS),
+        CompletableFuture.runAsync(() -> pump(process.getErrorStream(), stderr), PUMPS));
+    return new Proc() {
+      @Override
+      public boolean isAlive() {
+        return process.isAlive();
+      }
+
+      @Override
+      public void kill() {
+        process.destroyForcibly();
+      }
+
+      @Override
+      public int join() throws InterruptedException {
+        int exitCode = process.waitFor();
+        pumps.join();
+        return exitCode;
+      }
+
+      @Override
+      public InputStream getStdout() {
+        return null;
+      }
+
+      @Override
+      public InputStream getStderr() {
+        return null;
+      }
+
+      @Override
+      public OutputStream getStdin() {
+        return process.getOutputStream();
+      }
+    };
+  }
+
+  private static void pump(InputStream in, OutputStream out) {
+    try {
+      in.transferTo(out);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static byte[] random(int size) {
+    byte[] bytes = new byte[size];
+    new Random(size).nextBytes(bytes);
+    return bytes;
+  }
+
+  @Test
+  void testUploadExtractsIntoContainerDirectory() throws Exception {
+    byte[] data = random(3 * ArmadaPluginConfig.COPY_CHUNK_SIZE + 17);
+    Files.createDirectories(workspace.resolve("cache/sub"));
+    Files.write(workspace.resolve("cache/data.bin"), data);
+    Files.writeString(workspace.resolve("cache/sub/notes.txt"), "notes\n");
+
+    ArmadaCopy.Result result = ArmadaCopy.upload(ArmadaCopyTest::start,
+        new FilePath(workspace.resolve("cache").toFile()), container.toString(), "restored");
+
+    assertArrayEquals(data, Files.readAllBytes(container.resolve("restored/cache/data.bin")));
+    assertEquals("notes\n", Files.readString(container.resolve("restored/cache/sub/notes.txt")));
+    assertTrue(result.bytes > data.length);
+    assertEquals(64, result.sha256.length());
+  }
+
+  @Test
+  void testUploadWithBusybox() throws Exception {
+    Path busybox = findBusybox();
+    assumeTrue(busybox != null, "busybox is not installed");
+    byte[] data = random(3 * ArmadaPluginConfig.COPY_CHUNK_SIZE + 17);
+    Files.createDirectories(workspace.resolve("cache"));
+    Files.write(workspace.resolve("cache/data.bin"), data);
+
+    ArmadaCopy.upload(busybox(busybox), new FilePath(workspace.resolve("cache").toFile()),
+        container.toString(), "restored");
+
+    assertArrayEquals(data, Files.readAllBytes(container.resolve("restored/cache/data.bin")));
+  }
+
+  @Test
+  void testDownloadExtractsIntoWorkspaceDirectory() throws Exception {
+    byte[] data = random(5 * ArmadaPluginConfig.COPY_CHUNK_SIZE);
+    Files.createDirectories(container.resolve("target/reports"));
+    Files.write(container.resolve("target/reports/report.bin"), data);
+
+    ArmadaCopy.Result result = ArmadaCopy.download(ArmadaCopyTest::start, "target/reports/",
+        container.toString(), new FilePath(workspace.resolve("out").toFile()));
+
+    assertArrayEquals(data, Files.readAllBytes(workspace.resolve("out/reports/report.bin")));
+    assertTrue(result.bytes > 0);
+  }
+
+  @Test
+  void testDownloadOfMissingPathFails() {
+    IOException e = assertThrows(IOException.class, () -> ArmadaCopy.download(
+        ArmadaCopyTest::start, "missing", container.toString(),
+        new FilePath(workspace.toFile())));
+
+    assertTrue(e.getMessage().contains("missing"), e.getMessage());
+    assertFalse(Files.exists(workspace.resolve("missing")));
+  }
+
+  @Test
+  void testChildRejectsPathsOutsideWorkspace() throws Exception {
+    FilePath root = new FilePath(workspace.toFile());
+
+    assertEquals(root.child("a/b/../c").getRemote(),
+        ArmadaCopy.child(root, "a/b/../c").getRemote());
+    assertEquals(root.child("./a/..").getRemote(), ArmadaCopy.child(root, "./a/..").getRemote());
+    assertThrows(AbortException.class, () -> ArmadaCopy.child(root, ".."));
+    assertThrows(AbortException.class, () -> ArmadaCopy.child(root, "a/../../b"));
+    assertThrows(AbortException.class, () -> ArmadaCopy.child(root, "/etc"));
+  }
+
+  @Test
+  void testParseChecksumTakesLastMarker() {
+    String checksum = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+
+    assertEquals(checksum, ArmadaCopy.parseChecksum(
+        "tar: warning\n" + ArmadaCopy.CHECKSUM_MARKER + checksum + "\n"));
+    assertNull(ArmadaCopy.parseChecksum(ArmadaCopy.CHECKSUM_MARKER + "\n"));
+  }
+
+  @Test
+  void testChunkedOutputStreamFramesChunks() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    try (ArmadaCopy.ChunkedOutputStream chunked = new ArmadaCopy.ChunkedOutputStream(out, 4)) {
+      chunked.write("abcdefghij".getBytes(StandardCharsets.UTF_8));
+      chunked.write('k');
+    }
+
+    assertEquals("4\nabcd4\nefgh3\nijk0\n", out.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void testChunkPipeBlocksWriterWhenFull() throws Exception {
+    ArmadaCopy.ChunkPipe pipe = new ArmadaCopy.ChunkPipe(3, 2);
+    byte[] data = random(10_000);
+    CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+      try {
+        pipe.output.write(data);
+        pipe.output.close();
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    Thread.sleep(100);
+    assertFalse(writer.isDone());
+
+    assertArrayEquals(data, pipe.input.readAllBytes());
+    writer.get(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  void testDiscardedChunkPipeReleasesWriter() throws Exception {
+    ArmadaCopy.ChunkPipe pipe = new ArmadaCopy.ChunkPipe(3, 1);
+    CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+      try {
+        pipe.output.write(random(10_000));
+        pipe.output.close();
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+
+    pipe.discard();
+
+    writer.get(10, TimeUnit.SECONDS);
+  }
+}
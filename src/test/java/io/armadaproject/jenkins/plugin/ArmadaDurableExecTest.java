@@ -0,0 +1,147 @@
+package io.armadaproject.jenkins.plugin;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisabledOnOs(OS.WINDOWS)
+class ArmadaDurableExecTest {
+
+  @TempDir
+  Path workspace;
+
+  /**
+   * Runs a script the way an exec shell does, reading it from stdin.
+   */
+  private static Result run(String script) throws IOException, InterruptedException {
+    Process process = new ProcessBuilder("sh").start();
+    process.getOutputStream().write(script.getBytes(StandardCharsets.UTF_8));
+    process.getOutputStream().close();
+    assertTrue(process.waitFor(30, TimeUnit.SECONDS));
+    return new Result(process.exitValue(),
+        new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8),
+        new String(process.getErrorStream().readAllBytes(), StandardCharsets.UTF_8));
+  }
+
+  private ArmadaDurableExec launch(String commandLine) throws Exception {
+    ArmadaDurableExec durableExec = new ArmadaDurableExec();
+    durableExec.setWorkspaceRoot(workspace.toString());
+    Result launched = run(durableExec.launchScript(commandLine) + "exit\n");
+    assertEquals(0, launched.exitCode);
+    return durableExec;
+  }
+
+  @Test
+  void testFollowStreamsLogAndExitCode() throws Exception {
+    ArmadaDurableExec durableExec = launch(
+        "\"sh\" \"-c\" \"echo first; sleep 1; echo second; exit 3\"");
+
+    Result followed = run(durableExec.followScript(0));
+
+    assertEquals(3, followed.exitCode);
+    assertEquals("first\nsecond\n", followed.stdout);
+    assertTrue(Files.isRegularFile(Path.of(durableExec.getDirectory(), "pid")));
+  }
+
+  @Test
+  void testFollowResumesFromOffset() throws Exception {
+    ArmadaDurableExec durableExec = launch("\"sh\" \"-c\" \"echo first; echo second\"");
+    await().atMost(Duration.ofSeconds(10))
+        .until(() -> Files.exists(Path.of(durableExec.getDirectory(), "exit")));
+
+    Result followed = run(durableExec.followScript("first\n".length()));
+
+    assertEquals(0, followed.exitCode);
+    assertEquals("second\n", followed.stdout);
+  }
+
+  @Test
+  void testKilledProcessReportsSignal() throws Exception {
+    ArmadaDurableExec durableExec = launch("\"sleep\" \"60\"");
+    await().atMost(Duration.ofSeconds(10))
+        .until(() -> Files.exists(Path.of(durableExec.getDirectory(), "pid")));
+
+    assertEquals(0, run(durableExec.killScript()).exitCode);
+
+    assertEquals(128 + 15, run(durableExec.followScript(0)).exitCode);
+  }
+
+  @Test
+  void testKillStopsProcessesStartedByTheCommand() throws Exception {
+    Path childPid = workspace.resolve("child");
+    ArmadaDurableExec durableExec = launch(
+        "\"sh\" \"-c\" \"sleep 60 & echo \\$! > " + childPid + "; wait\"");
+    await().atMost(Duration.ofSeconds(10)).until(() -> Files.exists(childPid)
+        && !Files.readString(childPid).isBlank());
+    Path child = Path.of("/proc", Files.readString(childPid).trim(), "stat");
+    assertTrue(isRunning(child));
+
+    run(durableExec.killScript());
+
+    await().atMost(Duration.ofSeconds(10)).until(() -> !isRunning(child));
+  }
+
+  /**
+   * @return true if the process exists and is not a zombie waiting to be reaped
+   */
+  private static boolean isRunning(Path stat) {
+    try {
+      String content = Files.readString(stat);
+      return !content.substring(content.lastIndexOf(')') + 2).startsWith("Z");
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  @Test
+  void testLostProcessIsReported() throws Exception {
+    ArmadaDurableExec durableExec = new ArmadaDurableExec();
+    durableExec.setWorkspaceRoot(workspace.toString());
+    Path directory = Files.createDirectories(Path.of(durableExec.getDirectory()));
+    Files.writeString(directory.resolve("log"), "partial\n");
+    Process finished = new ProcessBuilder("true").start();
+    finished.waitFor();
+    Files.writeString(directory.resolve("pid"), Long.toString(finished.pid()));
+
+    Result followed = run(durableExec.followScript(0));
+
+    assertEquals("partial\n", followed.stdout);
+    assertTrue(followed.stderr.contains(ArmadaDurableExec.PROCESS_LOST_MARKER));
+  }
+
+  @Test
+  void testCleanupRemovesControlDirectory() throws Exception {
+    ArmadaDurableExec durableExec = launch("\"true\"");
+    await().atMost(Duration.ofSeconds(10))
+        .until(() -> Files.exists(Path.of(durableExec.getDirectory(), "exit")));
+
+    assertEquals(0, run(durableExec.cleanupScript()).exitCode);
+
+    assertFalse(Files.exists(Path.of(durableExec.getDirectory())));
+  }
+
+  private static final class Result {
+
+    final int exitCode;
+    final String stdout;
+    final String stderr;
+
+    Result(int exitCode, String stdout, String stderr) {
+      this.exitCode = exitCode;
+      this.stdout = stdout;
+      this.stderr = stderr;
+    }
+  }
+}
@@ -0,0 +1,198 @@
+package io.armadaproject.jenkins.plugin;
+
+import api.EventOuterClass.EventMessage;
+import api.EventOuterClass.JobLeasedEvent;
+import api.EventOuterClass.JobPendingEvent;
+import api.EventOuterClass.JobQueuedEvent;
+import api.EventOuterClass.JobRunningEvent;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of {@link ArmadaEventManager} under contention, meant for comparing alternative
+ * implementations before one replaces the current one. Run with {@code mvn test -Pbenchmark}, JMH
+ * options such as {@code -p subscribers=100} or {@code -t 32} can be passed with
+ * {@code -Djmh.args}.
+ * <p>
+ * Every agent of a cloud shares the job set and subscribes to the launch phase events only. With
+ * {@code scope=job} subscribers are registered the way {@link ArmadaLauncher} does it, to the
+ * events of their own job. With {@code scope=jobSet} they subscribe to the whole job set and ignore
+ * the events of other jobs, the way every subscriber did before job subscriptions. Events are
+ * published for a fixed pool of tracked jobs so that the retained latest events stay bounded.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ArmadaEventManagerBenchmark {
+
+  private static final String JOB_SET_ID = "job-set";
+  private static final int JOBS = 1024;
+  private static final Set<ArmadaEvent.Type> LAUNCH_TYPES = EnumSet.of(ArmadaEvent.Type.QUEUED,
+      ArmadaEvent.Type.LEASED, ArmadaEvent.Type.PENDING, ArmadaEvent.Type.RUNNING);
+
+  @Param({"1", "10", "100", "1000", "10000"})
+  public int subscribers;
+
+  @Param({"jobSet", "job"})
+  public String scope;
+
+  private ArmadaEventManager eventManager;
+  private ArmadaEvent[] events;
+  private final LongAdder matched = new LongAdder();
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    eventManager = new ArmadaEventManager();
+    for (int i = 0; i < subscribers; i++) {
+      String jobId = "job-" + (i % JOBS);
+      subscribe(jobId, subscriber(jobId));
+    }
+    events = new ArmadaEvent[JOBS];
+    for (int i = 0; i < JOBS; i++) {
+      eventManager.trackJob("job-" + i);
+      events[i] = event("job-" + i, i);
+    }
+  }
+
+  private void subscribe(String jobId, Consumer<ArmadaEvent> subscriber) {
+    if (scope.equals("job")) {
+      eventManager.subscribe(JOB_SET_ID, jobId, LAUNCH_TYPES, subscriber);
+    } else {
+      eventManager.subscribe(JOB_SET_ID, LAUNCH_TYPES, subscriber);
+    }
+  }
+
+  private void unsubscribe(String jobId, Consumer<ArmadaEvent> subscriber) {
+    if (scope.equals("job")) {
+      eventManager.unsubscribe(JOB_SET_ID, jobId, subscriber);
+    } else {
+      eventManager.unsubscribe(JOB_SET_ID, subscriber);
+    }
+  }
+
+  private Consumer<ArmadaEvent> subscriber(String jobId) {
+    return event -> {
+      if (jobId.equals(event.getJobId())) {
+        matched.increment();
+      }
+    };
+  }
+
+  private static ArmadaEvent event(String jobId, int index) {
+    EventMessage.Builder message = EventMessage.newBuilder();
+    switch (index % 4) {
+      case 0:
+        message.setQueued(JobQueuedEvent.newBuilder().setJobId(jobId).setJobSetId(JOB_SET_ID));
+        break;
+      case 1:
+        message.setLeased(JobLeasedEvent.newBuilder().setJobId(jobId).setJobSetId(JOB_SET_ID)
+            .setClusterId("cluster"));
+        break;
+      case 2:
+        message.setPending(JobPendingEvent.newBuilder().setJobId(jobId).setJobSetId(JOB_SET_ID)
+            .setClusterId("cluster"));
+        break;
+      default:
+        message.setRunning(JobRunningEvent.newBuilder().setJobId(jobId).setJobSetId(JOB_SET_ID)
+            .setClusterId("cluster").setPodName(jobId + "-pod").setPodNamespace("namespace"));
+    }
+    return ArmadaEvent.from(message.build());
+  }
+
+  /**
+   * Position of a publishing thread in the event pool.
+   */
+  @State(Scope.Thread)
+  public static class Publisher {
+
+    int next;
+
+    ArmadaEvent nextEvent(ArmadaEvent[] events) {
+      return events[next++ & (JOBS - 1)];
+    }
+  }
+
+  /**
+   * Subscriber owned by a churning thread, as an agent that comes and goes.
+   */
+  @State(Scope.Thread)
+  public static class Churner {
+
+    final String jobId = "job-" + ThreadLocalRandom.current().nextInt(JOBS);
+    final Consumer<ArmadaEvent> subscriber = event -> { };
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  @Threads(8)
+  public void publish(Publisher publisher) {
+    eventManager.publish(JOB_SET_ID, publisher.nextEvent(events));
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  @Threads(8)
+  public void publishLatency(Publisher publisher) {
+    eventManager.publish(JOB_SET_ID, publisher.nextEvent(events));
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  @Group("churn")
+  @GroupThreads(6)
+  public void churnPublish(Publisher publisher) {
+    eventManager.publish(JOB_SET_ID, publisher.nextEvent(events));
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  @Group("churn")
+  @GroupThreads(2)
+  public void churnSubscribe(Churner churner) {
+    subscribe(churner.jobId, churner.subscriber);
+    unsubscribe(churner.jobId, churner.subscriber);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  @Group("churnLatency")
+  @GroupThreads(6)
+  public void churnPublishLatency(Publisher publisher) {
+    eventManager.publish(JOB_SET_ID, publisher.nextEvent(events));
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  @Group("churnLatency")
+  @GroupThreads(2)
+  public void churnSubscribeLatency(Churner churner) {
+    subscribe(churner.jobId, churner.subscriber);
+    unsubscribe(churner.jobId, churner.subscriber);
+  }
+}
@@ -0,0 +1,293 @@
+package io.armadaproject.jenkins.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import api.EventOuterClass.ContainerStatus;
+import api.EventOuterClass.EventMessage;
+import api.EventOuterClass.JobCancelledEvent;
+import api.EventOuterClass.JobFailedEvent;
+import api.EventOuterClass.JobQueuedEvent;
+import api.EventOuterClass.JobRunningEvent;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ArmadaEventManagerTest {
+
+  private static final String JOB_SET_ID = "job-set";
+
+  private ArmadaEventManager eventManager;
+
+  @BeforeEach
+  void setUp() {
+    eventManager = new ArmadaEventManager();
+  }
+
+  private static ArmadaEvent running(String jobId) {
+    return ArmadaEvent.from(EventMessage.newBuilder()
+        .setRunning(JobRunningEvent.newBuilder()
+            .setJobId(jobId)
+            .setJobSetId(JOB_SET_ID)
+            .setClusterId("cluster")
+            .setPodName("pod")
+            .setPodNamespace("namespace"))
+        .build());
+  }
+
+  private static ArmadaEvent queued(String jobId) {
+    return ArmadaEvent.from(EventMessage.newBuilder()
+        .setQueued(JobQueuedEvent.newBuilder()
+            .setJobId(jobId)
+            .setJobSetId(JOB_SET_ID))
+        .build());
+  }
+
+  private static ArmadaEvent cancelled(String jobId) {
+    return ArmadaEvent.from(EventMessage.newBuilder()
+        .setCancelled(JobCancelledEvent.newBuilder()
+            .setJobId(jobId)
+            .setJobSetId(JOB_SET_ID))
+        .build());
+  }
+
+  @Test
+  void testFrom_RunningEvent() {
+    ArmadaEvent event = running("job-1");
+
+    assertEquals(ArmadaEvent.Type.RUNNING, event.getType());
+    assertEquals("job-1", event.getJobId());
+    assertEquals("cluster", event.getClusterId());
+    assertEquals("pod", event.getPodName());
+    assertEquals("namespace", event.getPodNamespace());
+    assertNull(event.getCreated());
+  }
+
+  @Test
+  void testFrom_FailedEventDescribesContainerStatuses() {
+    ArmadaEvent event = ArmadaEvent.from(EventMessage.newBuilder()
+        .setFailed(JobFailedEvent.newBuilder()
+            .setJobId("job-1")
+            .setReason("pod failed")
+            .addContainerStatuses(ContainerStatus.newBuilder()
+                .setName("jnlp")
+                .setReason("ImagePullBackOff")))
+        .build());
+
+    assertEquals(ArmadaEvent.Type.FAILED, event.getType());
+    assertTrue(event.getType().isTerminal());
+    assertEquals("pod failed; container jnlp: ImagePullBackOff", event.getReason());
+  }
+
+  @Test
+  void testFrom_IgnoredEvent() {
+    assertNull(ArmadaEvent.from(EventMessage.getDefaultInstance()));
+  }
+
+  @Test
+  void testPublish_FiltersByType() {
+    List<ArmadaEvent> all = new ArrayList<>();
+    List<ArmadaEvent> runningOnly = new ArrayList<>();
+    eventManager.subscribe(JOB_SET_ID, all::add);
+    eventManager.subscribe(JOB_SET_ID, EnumSet.of(ArmadaEvent.Type.RUNNING), runningOnly::add);
+
+    eventManager.publish(JOB_SET_ID, queued("job-1"));
+    eventManager.publish(JOB_SET_ID, running("job-1"));
+
+    assertEquals(2, all.size());
+    assertEquals(1, runningOnly.size());
+    assertEquals(ArmadaEvent.Type.RUNNING, runningOnly.get(0).getType());
+  }
+
+  @Test
+  void testPublish_OtherJobSetNotNotified() {
+    List<ArmadaEvent> received = new ArrayList<>();
+    eventManager.subscribe("other-job-set", received::add);
+
+    eventManager.publish(JOB_SET_ID, running("job-1"));
+
+    assertTrue(received.isEmpty());
+  }
+
+  @Test
+  void testUnsubscribe() {
+    List<ArmadaEvent> received = new ArrayList<>();
+    Consumer<ArmadaEvent> subscriber = received::add;
+    eventManager.subscribe(JOB_SET_ID, subscriber);
+    eventManager.unsubscribe(JOB_SET_ID, subscriber);
+
+    eventManager.publish(JOB_SET_ID, running("job-1"));
+
+    assertTrue(received.isEmpty());
+  }
+
+  @Test
+  void testJobSubscriberOnlyReceivesEventsOfItsJob() {
+    List<ArmadaEvent> received = new ArrayList<>();
+    List<ArmadaEvent> jobSet = new ArrayList<>();
+    Consumer<ArmadaEvent> subscriber = received::add;
+    eventManager.subscribe(JOB_SET_ID, "job-1", EnumSet.of(ArmadaEvent.Type.RUNNING), subscriber);
+    eventManager.subscribe(JOB_SET_ID, jobSet::add);
+
+    eventManager.publish(JOB_SET_ID, running("job-2"));
+    eventManager.publish(JOB_SET_ID, queued("job-1"));
+    eventManager.publish(JOB_SET_ID, running("job-1"));
+    eventManager.unsubscribe(JOB_SET_ID, "job-1", subscriber);
+    eventManager.publish(JOB_SET_ID, running("job-1"));
+
+    assertEquals(1, received.size());
+    assertEquals("job-1", received.get(0).getJobId());
+    assertEquals(4, jobSet.size());
+  }
+
+  @Test
+  void testLatestEventRetainedUntilForgotten() {
+    eventManager.trackJob("job-1");
+    ArmadaEvent event = running("job-1");
+    eventManager.publish(JOB_SET_ID, event);
+
+    assertSame(event, eventManager.getLatestEvent("job-1", ArmadaEvent.Type.RUNNING));
+    assertNull(eventManager.getLatestEvent("job-1", ArmadaEvent.Type.FAILED));
+
+    eventManager.forgetJob("job-1");
+
+    assertNull(eventManager.getLatestEvent("job-1", ArmadaEvent.Type.RUNNING));
+  }
+
+  @Test
+  void testSubscriberAfterEventFindsEventOfUntrackedJob() {
+    // The stream of the job set went past the event before anything asked about the job
+    ArmadaEvent event = running("job-2");
+    eventManager.publish(JOB_SET_ID, event);
+
+    List<ArmadaEvent> received = new ArrayList<>();
+    eventManager.trackJob("job-2");
+    eventManager.subscribe(JOB_SET_ID, EnumSet.of(ArmadaEvent.Type.RUNNING), received::add);
+
+    assertTrue(received.isEmpty());
+    assertSame(event, eventManager.getLatestEvent("job-2", ArmadaEvent.Type.RUNNING));
+  }
+
+  @Test
+  void testEventsOfUntrackedJobsAreRetainedForBoundedNumberOfJobs() {
+    eventManager = new ArmadaEventManager(2);
+    eventManager.publish(JOB_SET_ID, running("job-1"));
+    eventManager.publish(JOB_SET_ID, running("job-2"));
+    eventManager.publish(JOB_SET_ID, running("job-3"));
+
+    assertNull(eventManager.getLatestEvent("job-1", ArmadaEvent.Type.RUNNING));
+    assertEquals("job-2", eventManager.getLatestEvent("job-2", ArmadaEvent.Type.RUNNING)
+        .getJobId());
+    assertEquals("job-3", eventManager.getLatestEvent("job-3", ArmadaEvent.Type.RUNNING)
+        .getJobId());
+  }
+
+  @Test
+  void testTerminalEventDropsRetainedEvents() {
+    List<ArmadaEvent> received = new ArrayList<>();
+    eventManager.subscribe(JOB_SET_ID, received::add);
+    eventManager.trackJob("job-1");
+    eventManager.publish(JOB_SET_ID, running("job-1"));
+
+    ArmadaEvent cancelled = cancelled("job-1");
+    eventManager.publish(JOB_SET_ID, cancelled);
+
+    assertSame(cancelled, received.get(1));
+    assertNull(eventManager.getLatestEvent("job-1", ArmadaEvent.Type.RUNNING));
+    assertNull(eventManager.getLatestEvent("job-1", ArmadaEvent.Type.CANCELLED));
+  }
+
+  @Test
+  void testEventsAfterForgetJobAreNotRetained() {
+    eventManager.trackJob("job-1");
+    eventManager.forgetJob("job-1");
+
+    eventManager.publish(JOB_SET_ID, queued("job-1"));
+
+    assertNull(eventManager.getLatestEvent("job-1", ArmadaEvent.Type.QUEUED));
+  }
+
+  @Test
+  void testPublishEmitsFlightRecorderEvent(@TempDir Path tempDir) throws Exception {
+    eventManager.subscribe(JOB_SET_ID, EnumSet.of(ArmadaEvent.Type.RUNNING), event -> {
+    });
+    eventManager.subscribe(JOB_SET_ID, EnumSet.of(ArmadaEvent.Type.QUEUED), event -> {
+    });
+
+    Path dump = tempDir.resolve("publish.jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable("io.armadaproject.EventPublish");
+      recording.start();
+      eventManager.publish(JOB_SET_ID, running("job-1"));
+      recording.stop();
+      recording.dump(dump);
+    }
+
+    assertTrue(Files.exists(dump));
+    List<RecordedEvent> events = new ArrayList<>();
+    for (RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+      if (event.getEventType().getName().equals("io.armadaproject.EventPublish")) {
+        events.add(event);
+      }
+    }
+    assertEquals(1, events.size());
+    RecordedEvent event = events.get(0);
+    assertEquals("job-1", event.getString("jobId"));
+    assertEquals("RUNNING", event.getString("eventType"));
+    assertEquals("cluster", event.getString("clusterId"));
+    assertEquals("pod", event.getString("podName"));
+    assertEquals(1, event.getInt("subscribers"));
+  }
+
+  @Test
+  void testConcurrentSubscriptionChurnDoesNotLoseSubscribers() throws Exception {
+    int threads = 8;
+    int iterations = 2_000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<Integer>> results = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      String jobId = "job-" + t;
+      results.add(executor.submit(() -> {
+        int missed = 0;
+        for (int i = 0; i < iterations; i++) {
+          AtomicInteger received = new AtomicInteger();
+          Consumer<ArmadaEvent> subscriber = event -> {
+            if (jobId.equals(event.getJobId())) {
+              received.incrementAndGet();
+            }
+          };
+          eventManager.subscribe(JOB_SET_ID, subscriber);
+          eventManager.publish(JOB_SET_ID, queued(jobId));
+          eventManager.unsubscribe(JOB_SET_ID, subscriber);
+          if (received.get() == 0) {
+            missed++;
+          }
+        }
+        return missed;
+      }));
+    }
+    try {
+      for (Future<Integer> result : results) {
+        assertEquals(0, result.get(1, TimeUnit.MINUTES));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
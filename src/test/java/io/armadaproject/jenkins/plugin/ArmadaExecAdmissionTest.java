@@ -0,0 +1,138 @@
+package io.armadaproject.jenkins.plugin;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ArmadaExecAdmissionTest {
+
+  private static final long WAIT = TimeUnit.SECONDS.toNanos(30);
+
+  private final ArmadaExecAdmission admission = new ArmadaExecAdmission();
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private ArmadaExecAdmission.Permit acquire(String pod, int podLimit, int clusterLimit,
+      long timeoutNanos) throws IOException {
+    return admission.acquire("cloud", "cluster", pod, podLimit, clusterLimit, timeoutNanos);
+  }
+
+  private CompletableFuture<ArmadaExecAdmission.Permit> acquireAsync(String pod, int podLimit,
+      int clusterLimit) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return acquire(pod, podLimit, clusterLimit, WAIT);
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }, executor);
+  }
+
+  @Test
+  void testPodLimitQueuesSessions() throws Exception {
+    ArmadaExecAdmission.Permit first = acquire("ns/pod", 2, 10, WAIT);
+    ArmadaExecAdmission.Permit second = acquire("ns/pod", 2, 10, WAIT);
+    CompletableFuture<ArmadaExecAdmission.Permit> third = acquireAsync("ns/pod", 2, 10);
+    await().atMost(Duration.ofSeconds(10)).until(() -> admission.getQueueLength("cloud") == 1);
+
+    // Other pods are not held back by the sessions of this one
+    acquire("ns/other", 2, 10, 0).close();
+    assertEquals(1, admission.getQueueLength("cloud"));
+
+    first.close();
+    third.get(10, TimeUnit.SECONDS).close();
+    second.close();
+  }
+
+  @Test
+  void testClusterLimitIsSharedByPods() throws Exception {
+    ArmadaExecAdmission.Permit first = acquire("ns/a", 10, 1, WAIT);
+    CompletableFuture<ArmadaExecAdmission.Permit> second = acquireAsync("ns/b", 10, 1);
+    await().atMost(Duration.ofSeconds(10)).until(() -> admission.getQueueLength("cloud") == 1);
+
+    first.close();
+
+    second.get(10, TimeUnit.SECONDS).close();
+  }
+
+  @Test
+  void testSessionsAreAdmittedInOrder() throws Exception {
+    ArmadaExecAdmission.Permit holder = acquire("ns/pod", 1, 10, WAIT);
+    List<Integer> admitted = new ArrayList<>();
+    List<CompletableFuture<Void>> waiting = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      int index = i;
+      CompletableFuture<ArmadaExecAdmission.Permit> permit = acquireAsync("ns/pod", 1, 10);
+      waiting.add(permit.thenAccept(p -> {
+        synchronized (admitted) {
+          admitted.add(index);
+        }
+        p.close();
+      }));
+      await().atMost(Duration.ofSeconds(10))
+          .until(() -> admission.getQueueLength("cloud") == index + 1);
+    }
+
+    holder.close();
+
+    CompletableFuture.allOf(waiting.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+    assertEquals(List.of(0, 1, 2, 3, 4), admitted);
+  }
+
+  @Test
+  void testTimeoutFailsAndReleasesPod() throws Exception {
+    ArmadaExecAdmission.Permit holder = acquire("ns/pod", 1, 1, WAIT);
+
+    IOException e = assertThrows(IOException.class,
+        () -> acquire("ns/other", 1, 1, TimeUnit.MILLISECONDS.toNanos(50)));
+    assertTrue(e.getMessage().contains("cluster cluster"), e.getMessage());
+
+    // The pod permit taken before timing out on the cluster was given back
+    holder.close();
+    acquire("ns/other", 1, 1, 0).close();
+  }
+
+  @Test
+  void testLimitsAreOptIn() throws Exception {
+    List<ArmadaExecAdmission.Permit> permits = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      permits.add(acquire("ns/pod", 0, 0, 0));
+    }
+
+    assertEquals(0, admission.size());
+    permits.forEach(ArmadaExecAdmission.Permit::close);
+    // Only the configured limit applies
+    ArmadaExecAdmission.Permit held = acquire("ns/pod", 0, 1, WAIT);
+    assertThrows(IOException.class, () -> acquire("ns/other", 0, 1, 0));
+    held.close();
+  }
+
+  @Test
+  void testClosedPermitsRemoveTheirEntries() throws Exception {
+    ArmadaExecAdmission.Permit permit = acquire("ns/pod", 1, 1, WAIT);
+    assertEquals(2, admission.size());
+
+    permit.close();
+    permit.close();
+
+    assertEquals(0, admission.size());
+    ArmadaExecAdmission.Permit again = acquire("ns/pod", 1, 1, 0);
+    again.close();
+  }
+}
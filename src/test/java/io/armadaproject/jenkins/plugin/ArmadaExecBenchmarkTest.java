@@ -0,0 +1,193 @@
+package io.armadaproject.jenkins.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.TaskListener;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Measures the exec path of {@link ArmadaExecDecorator} against {@link ExecMockServer} and fails
+ * when the numbers regress past generous gates. The gates can be tightened or relaxed with system
+ * properties, and the measured numbers are printed for tracking.
+ */
+class ArmadaExecBenchmarkTest {
+
+  private static final long SETUP_P95_GATE_MS = Long.getLong("armada.bench.setupP95Ms", 2_000);
+  private static final double THROUGHPUT_GATE = Double.parseDouble(
+      System.getProperty("armada.bench.minCommandsPerSecond", "2"));
+  private static final long RETAINED_HEAP_GATE_MB =
+      Long.getLong("armada.bench.maxRetainedHeapMb", 32);
+  // Reading chunks one byte at a time with dd managed about 1 MiB/s
+  private static final double COPY_THROUGHPUT_GATE_MB = Double.parseDouble(
+      System.getProperty("armada.bench.minCopyMbPerSecond", "8"));
+
+  private static final int SETUP_SAMPLES = 20;
+  private static final int THROUGHPUT_COMMANDS = 48;
+  private static final int THROUGHPUT_THREADS = 4;
+  private static final long LARGE_OUTPUT_BYTES = 64L * 1024 * 1024;
+  private static final int COPY_BYTES = 32 * 1024 * 1024;
+
+  private ExecMockServer server;
+  private KubernetesClient client;
+  private ArmadaExecDecorator decorator;
+  private Launcher launcher;
+
+  @TempDir
+  Path workspace;
+
+  @TempDir
+  Path container;
+
+  @BeforeEach
+  void setUp() {
+    server = new ExecMockServer();
+    client = server.createClient();
+    decorator = new ArmadaExecDecorator(ExecMockServer.CONTAINER);
+    decorator.setNodeContext(server.createNodeContext(client));
+    launcher = decorator.decorate(new Launcher.LocalLauncher(TaskListener.NULL), null);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    decorator.close();
+    client.close();
+    server.close();
+  }
+
+  private int echo(int index) throws Exception {
+    return launcher.launch().cmds("echo", Integer.toString(index))
+        .stdout(OutputStream.nullOutputStream()).quiet(true).join();
+  }
+
+  @Test
+  void testStepSetupLatency() throws Exception {
+    // Warm up the client and the websocket path
+    echo(-1);
+
+    Histogram latencies = new Histogram();
+    for (int i = 0; i < SETUP_SAMPLES; i++) {
+      long start = System.nanoTime();
+      assertEquals(0, echo(i));
+      latencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    System.out.println(String.format(Locale.ROOT,
+        "[exec] setup latency p50=%d ms p95=%d ms max=%d ms over %d execs",
+        latencies.getPercentile(50), latencies.getPercentile(95), latencies.getMax(),
+        latencies.getCount()));
+    assertTrue(latencies.getPercentile(95) <= SETUP_P95_GATE_MS,
+        "p95 setup latency " + latencies.getPercentile(95) + " ms exceeds "
+            + SETUP_P95_GATE_MS + " ms");
+  }
+
+  @Test
+  void testSmallCommandThroughput() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(THROUGHPUT_THREADS);
+    try {
+      long start = System.nanoTime();
+      List<Future<Integer>> results = new ArrayList<>();
+      for (int i = 0; i < THROUGHPUT_COMMANDS; i++) {
+        int index = i;
+        results.add(executor.submit(() -> echo(index)));
+      }
+      for (Future<Integer> result : results) {
+        assertEquals(0, result.get(5, TimeUnit.MINUTES));
+      }
+      double seconds = (System.nanoTime() - start) / 1e9;
+      double perSecond = THROUGHPUT_COMMANDS / seconds;
+
+      System.out.println(String.format(Locale.ROOT,
+          "[exec] %d commands on %d threads in %.1f s (%.1f commands/s)",
+          THROUGHPUT_COMMANDS, THROUGHPUT_THREADS, seconds, perSecond));
+      assertTrue(perSecond >= THROUGHPUT_GATE,
+          "throughput " + perSecond + " commands/s is below " + THROUGHPUT_GATE);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void testLargeOutputIsNotRetained() throws Exception {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    echo(-1);
+    System.gc();
+    long baseline = memory.getHeapMemoryUsage().getUsed();
+
+    AtomicLong received = new AtomicLong();
+    OutputStream counting = new OutputStream() {
+      @Override
+      public void write(int b) {
+        received.incrementAndGet();
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+        received.addAndGet(len);
+      }
+    };
+    long start = System.nanoTime();
+    int exitCode = launcher.launch().cmds("emit", Long.toString(LARGE_OUTPUT_BYTES))
+        .stdout(counting).quiet(true).join();
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    // The decorator is still open, so anything it buffered is still reachable
+    System.gc();
+    long retainedMb = Math.max(memory.getHeapMemoryUsage().getUsed() - baseline, 0)
+        / (1024 * 1024);
+
+    System.out.println(String.format(Locale.ROOT,
+        "[exec] %d MiB of output in %.1f s (%.1f MiB/s), %d MiB retained",
+        LARGE_OUTPUT_BYTES / (1024 * 1024), seconds,
+        LARGE_OUTPUT_BYTES / (1024 * 1024) / seconds, retainedMb));
+    assertEquals(0, exitCode);
+    assertEquals(LARGE_OUTPUT_BYTES, received.get());
+    assertTrue(retainedMb <= RETAINED_HEAP_GATE_MB,
+        retainedMb + " MiB retained after the exec exceeds " + RETAINED_HEAP_GATE_MB + " MiB");
+  }
+
+  /**
+   * The mocked shell does not interpret the copy scripts, which run as local processes instead.
+   */
+  @Test
+  @DisabledOnOs(OS.WINDOWS)
+  void testUploadThroughput() throws Exception {
+    byte[] data = new byte[COPY_BYTES];
+    new Random(COPY_BYTES).nextBytes(data);
+    Files.createDirectories(workspace.resolve("cache"));
+    Files.write(workspace.resolve("cache/data.bin"), data);
+
+    ArmadaCopy.Result result = ArmadaCopy.upload(ArmadaCopyTest::start,
+        new FilePath(workspace.resolve("cache").toFile()), container.toString(), "restored");
+    double mbPerSecond = result.getBytesPerSecond() / (1024.0 * 1024);
+
+    System.out.println(String.format(Locale.ROOT,
+        "[copy] %d MiB uploaded in %d ms (%.1f MiB/s)", result.bytes / (1024 * 1024),
+        result.millis, mbPerSecond));
+    assertEquals(COPY_BYTES, Files.size(container.resolve("restored/cache/data.bin")));
+    assertTrue(mbPerSecond >= COPY_THROUGHPUT_GATE_MB,
+        "upload throughput " + mbPerSecond + " MiB/s is below " + COPY_THROUGHPUT_GATE_MB);
+  }
+}
@@ -0,0 +1,326 @@
+package io.armadaproject.jenkins.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import hudson.EnvVars;
+import hudson.Launcher;
+import hudson.model.TaskListener;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+class ArmadaExecDecoratorTest {
+
+  private ExecMockServer server;
+  private KubernetesClient client;
+  private ArmadaExecDecorator decorator;
+  private Launcher launcher;
+
+  @BeforeEach
+  void setUp() {
+    server = new ExecMockServer();
+    client = server.createClient();
+    decorator = new ArmadaExecDecorator(ExecMockServer.CONTAINER);
+    decorator.setNodeContext(server.createNodeContext(client));
+    launcher = decorator.decorate(new Launcher.LocalLauncher(TaskListener.NULL), null);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    decorator.close();
+    client.close();
+    server.close();
+  }
+
+  @Test
+  void testOutputIsForwardedToCaller() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    int exitCode = launcher.launch().cmds("echo", "hello", "world").stdout(out).quiet(true)
+        .join();
+
+    assertEquals(0, exitCode);
+    assertEquals("hello world\n", out.toString(StandardCharsets.UTF_8));
+    assertEquals(1, server.getPodRequests());
+    assertEquals(1, server.getExecSessions());
+  }
+
+  @Test
+  void testExitCodeIsPropagated() throws Exception {
+    assertEquals(1, launcher.launch().cmds("false").quiet(true).join());
+    assertEquals(127, launcher.launch().cmds("missing-command").quiet(true).join());
+  }
+
+  @Test
+  void testWorkingDirectoryAndEnvironmentAreSetUp() throws Exception {
+    launcher.launch().cmds("echo", "env").envs("FOO=bar baz").pwd("/workspace").quiet(true)
+        .join();
+
+    assertTrue(server.getStdinLines().contains("cd \"/workspace\""),
+        server.getStdinLines()::toString);
+    assertTrue(server.getStdinLines().contains("export FOO='bar baz'"),
+        server.getStdinLines()::toString);
+    assertTrue(server.getStdinLines().contains(ArmadaPluginConfig.EXIT));
+  }
+
+  @Test
+  void testScriptIsSentAsSinglePayload() throws Exception {
+    launcher.launch().cmds("echo", "env").envs("FOO=bar", "BAR=baz").pwd("/workspace").quiet(true)
+        .join();
+
+    assertEquals(1, server.getStdinFrames());
+  }
+
+  @Test
+  void testScriptLargerThanStdinBufferIsChunked() throws Exception {
+    String large = "x".repeat(ArmadaPluginConfig.STDIN_BUFFER_SIZE * 3);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    int exitCode = launcher.launch().cmds("echo", large).stdout(out).quiet(true).join();
+
+    assertEquals(0, exitCode);
+    assertEquals(large + "\n", out.toString(StandardCharsets.UTF_8));
+    assertTrue(server.getStdinFrames() > 1);
+  }
+
+  private long countStdinLines(String line) {
+    return server.getStdinLines().stream().filter(line::equals).count();
+  }
+
+  @Test
+  void testEnvironmentIsExportedInFullOnEveryExec() throws Exception {
+    for (int i = 0; i < 2; i++) {
+      assertEquals(0, launcher.launch().cmds("echo", "env").envs("FOO=bar baz", "API_TOKEN=secret")
+          .quiet(true).join());
+    }
+
+    assertEquals(2, countStdinLines("export FOO='bar baz'"));
+    assertEquals(2, countStdinLines("export API_TOKEN='secret'"));
+    assertTrue(server.getStdinLines().stream().noneMatch(line -> line.contains("<<")),
+        server.getStdinLines()::toString);
+  }
+
+  @Test
+  void testTailOutputStreamKeepsOnlyTheLastBytes() throws Exception {
+    ArmadaExecDecorator.TailOutputStream tail = new ArmadaExecDecorator.TailOutputStream(8);
+
+    tail.write("abc".getBytes(StandardCharsets.UTF_8));
+    assertEquals("abc", tail.toString());
+    tail.write("defgh".getBytes(StandardCharsets.UTF_8));
+    tail.write('i');
+    assertEquals("bcdefghi", tail.toString());
+    tail.write("0123456789".getBytes(StandardCharsets.UTF_8), 1, 9);
+    assertEquals("23456789", tail.toString());
+    tail.write("xyz".getBytes(StandardCharsets.UTF_8));
+    assertEquals("56789xyz", tail.toString());
+    assertEquals(21, tail.getCount());
+  }
+
+  private static String mask(boolean[] masks, boolean bulk, String... writes) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ArmadaExecDecorator.MaskOutputStream masked = new ArmadaExecDecorator.MaskOutputStream(out,
+        masks);
+    for (String write : writes) {
+      byte[] bytes = write.getBytes(StandardCharsets.UTF_8);
+      if (bulk) {
+        masked.write(bytes, 0, bytes.length);
+      } else {
+        for (byte b : bytes) {
+          masked.write(b);
+        }
+      }
+    }
+    return out.toString(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void testMaskOutputStreamMasksFragments() throws Exception {
+    boolean[] masks = {false, true, false, true};
+    String expected = "\"echo\" ******** \"x\"  rest";
+
+    assertEquals(expected, mask(masks, false, "\"echo\" \"secret\" \"x\"  rest"));
+    assertEquals(expected, mask(masks, true, "\"echo\" \"secret\" \"x\"  rest"));
+    // A masked fragment split across writes is masked once
+    assertEquals(expected, mask(masks, true, "\"echo\" \"sec", "ret\" \"x", "\"  rest"));
+    assertEquals("a b", mask(null, true, "a b"));
+  }
+
+  @Test
+  void testMaskOutputStreamBulkWritesMatchSingleByteWrites() throws Exception {
+    Random random = new Random(42);
+    for (int i = 0; i < 1_000; i++) {
+      StringBuilder line = new StringBuilder();
+      int length = random.nextInt(64);
+      for (int j = 0; j < length; j++) {
+        line.append(random.nextInt(4) == 0 ? ' ' : (char) ('a' + random.nextInt(26)));
+      }
+      boolean[] masks = new boolean[random.nextInt(12)];
+      for (int j = 0; j < masks.length; j++) {
+        masks[j] = random.nextBoolean();
+      }
+      int split = random.nextInt(line.length() + 1);
+
+      assertEquals(mask(masks, false, line.toString()),
+          mask(masks, true, line.substring(0, split), line.substring(split)), line::toString);
+    }
+  }
+
+  @Test
+  void testChangedEnvVarsKeepsOnlyDifferences() {
+    EnvVars environment = new EnvVars("PATH", "/bin", "HOME", "/home/jenkins", "EMPTY", "");
+
+    String[] changed = ArmadaExecDecorator.changedEnvVars(new String[]{
+        "PATH=/bin", "HOME=/root", "EMPTY=", "NEW=a=b", "PATH2=/bin", "MALFORMED"}, environment);
+
+    assertEquals(Arrays.asList("HOME=/root", "NEW=a=b", "PATH2=/bin", "MALFORMED"),
+        Arrays.asList(changed));
+  }
+
+  @Test
+  void testGetCookieIgnoresUnsafeValues() {
+    assertEquals("abc-123", ArmadaExecDecorator.getCookie(
+        new String[]{"PATH=/bin", ArmadaPluginConfig.COOKIE_VAR + "=abc-123"}));
+    assertNull(ArmadaExecDecorator.getCookie(
+        new String[]{ArmadaPluginConfig.COOKIE_VAR + "=a'b"}));
+    assertNull(ArmadaExecDecorator.getCookie(new String[]{"PATH=/bin"}));
+    assertNull(ArmadaExecDecorator.getCookie(null));
+  }
+
+  @Test
+  void testDurableTasksAreNotLaunchedInDurableMode() {
+    String[] durableTask = {"PATH=/bin", ArmadaPluginConfig.COOKIE_VAR + "=abc-123"};
+    String[] plain = {"PATH=/bin"};
+
+    assertTrue(ArmadaExecDecorator.isDurableLaunch(true, true, plain));
+    assertFalse(ArmadaExecDecorator.isDurableLaunch(true, true, durableTask));
+    assertFalse(ArmadaExecDecorator.isDurableLaunch(true, false, plain));
+    assertFalse(ArmadaExecDecorator.isDurableLaunch(false, true, plain));
+  }
+
+  @Test
+  @EnabledOnOs(OS.LINUX)
+  void testKillScriptKillsRecordedProcessTree() throws Exception {
+    String cookie = UUID.randomUUID().toString();
+    ProcessBuilder builder = new ProcessBuilder("sh");
+    builder.environment().put(ArmadaPluginConfig.COOKIE_VAR, cookie);
+    Process step = builder.start();
+    step.getOutputStream().write(ArmadaExecDecorator.recordPidScript(
+            "\"sh\" \"-c\" \"sleep 60 & sleep 61\" ", cookie)
+        .getBytes(StandardCharsets.UTF_8));
+    step.getOutputStream().close();
+    Path pidFile = Path.of(ArmadaPluginConfig.EXEC_PID_DIRECTORY,
+        ".armada-pid-" + cookie + "-" + step.pid());
+    for (int i = 0; i < 100 && !Files.exists(pidFile); i++) {
+      Thread.sleep(50);
+    }
+
+    Process kill = new ProcessBuilder("sh").start();
+    kill.getOutputStream().write(
+        ArmadaExecDecorator.killScript(cookie).getBytes(StandardCharsets.UTF_8));
+    kill.getOutputStream().close();
+
+    assertTrue(kill.waitFor(10, TimeUnit.SECONDS));
+    assertTrue(new String(kill.getErrorStream().readAllBytes(), StandardCharsets.UTF_8)
+        .contains(ArmadaExecDecorator.KILLED_BY_PID_MARKER));
+    assertTrue(step.waitFor(10, TimeUnit.SECONDS));
+    assertEquals(128 + 15, step.exitValue());
+    assertTrue(Files.notExists(pidFile));
+  }
+
+  @Test
+  @EnabledOnOs(OS.LINUX)
+  void testKillScriptKillsProcessesDetachedByTheCommand() throws Exception {
+    String cookie = UUID.randomUUID().toString();
+    Path childPidFile = Files.createTempFile("armada-child", ".pid");
+    ProcessBuilder builder = new ProcessBuilder("sh");
+    builder.environment().put(ArmadaPluginConfig.COOKIE_VAR, cookie);
+    Process step = builder.start();
+    // Returns at once, leaving its work in the background like the wrapper of a durable task
+    step.getOutputStream().write(ArmadaExecDecorator.recordPidScript(
+            "\"sh\" \"-c\" \"sleep 60 > /dev/null 2>&1 & echo \\$! > " + childPidFile + "\" ",
+            cookie)
+        .getBytes(StandardCharsets.UTF_8));
+    step.getOutputStream().close();
+    assertTrue(step.waitFor(10, TimeUnit.SECONDS));
+    assertEquals(0, step.exitValue());
+    long child = Long.parseLong(Files.readString(childPidFile).trim());
+    assertTrue(isRunning(child));
+
+    Process kill = new ProcessBuilder("sh").start();
+    kill.getOutputStream().write(
+        ArmadaExecDecorator.killScript(cookie).getBytes(StandardCharsets.UTF_8));
+    kill.getOutputStream().close();
+
+    assertTrue(kill.waitFor(10, TimeUnit.SECONDS));
+    assertTrue(new String(kill.getErrorStream().readAllBytes(), StandardCharsets.UTF_8)
+        .contains(ArmadaExecDecorator.KILLED_BY_PID_MARKER));
+    for (int i = 0; i < 100 && isRunning(child); i++) {
+      Thread.sleep(50);
+    }
+    assertFalse(isRunning(child));
+    Files.delete(childPidFile);
+  }
+
+  /**
+   * @return whether a process exists and is not a zombie
+   */
+  private static boolean isRunning(long pid) throws Exception {
+    Path stat = Path.of("/proc", Long.toString(pid), "stat");
+    try {
+      String content = Files.readString(stat);
+      return content.charAt(content.lastIndexOf(')') + 2) != 'Z';
+    } catch (NoSuchFileException e) {
+      return false;
+    }
+  }
+
+  @Test
+  void testKillIsSentOverTheControlSession() throws Exception {
+    String cookie = UUID.randomUUID().toString();
+    EnvVars envVars = new EnvVars(ArmadaPluginConfig.COOKIE_VAR, cookie);
+    assertEquals(0, launcher.launch().cmds("echo", "hi").envs(envVars).quiet(true).join());
+    int sessions = server.getExecSessions();
+
+    launcher.kill(envVars);
+
+    assertEquals(sessions, server.getExecSessions());
+    assertTrue(server.isKilled());
+  }
+
+  @Test
+  @EnabledOnOs(OS.LINUX)
+  void testRecordedCommandReadingStdinDoesNotConsumeTheWrapper() throws Exception {
+    String cookie = UUID.randomUUID().toString();
+    Process step = new ProcessBuilder("sh").start();
+    step.getOutputStream().write((ArmadaExecDecorator.recordPidScript(
+            "\"sh\" \"-c\" \"cat > /dev/null; exit 3\" ", cookie) + "exit 0\n")
+        .getBytes(StandardCharsets.UTF_8));
+    step.getOutputStream().close();
+
+    assertTrue(step.waitFor(10, TimeUnit.SECONDS));
+    assertEquals(3, step.exitValue());
+    assertTrue(Files.notExists(Path.of(ArmadaPluginConfig.EXEC_PID_DIRECTORY,
+        ".armada-pid-" + cookie + "-" + step.pid())));
+  }
+
+  @Test
+  void testUnquote() {
+    assertEquals(Arrays.asList("echo", "a b", "c"),
+        ExecMockServer.unquote("\"echo\" \"a b\" \"c\" "));
+  }
+}
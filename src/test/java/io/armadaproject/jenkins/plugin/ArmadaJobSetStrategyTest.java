@@ -0,0 +1,82 @@
+package io.armadaproject.jenkins.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import org.junit.jupiter.api.Test;
+
+class ArmadaJobSetStrategyTest {
+
+  private static final Instant NOW = Instant.parse("2025-03-07T14:30:00Z");
+  private static final String DAY = DateTimeFormatter.ofPattern("ddMMyyyy")
+      .withZone(ZoneId.systemDefault()).format(NOW);
+  private static final String HOUR = DateTimeFormatter.ofPattern("HH")
+      .withZone(ZoneId.systemDefault()).format(NOW);
+
+  private static ArmadaJobTemplate template(String label, String runId) {
+    return new ArmadaJobTemplate(label, null, null, runId);
+  }
+
+  @Test
+  void testDaily() {
+    assertEquals("armada-" + DAY,
+        ArmadaJobSetStrategy.DAILY.jobSetId("armada", template("label", null), 8, NOW));
+  }
+
+  @Test
+  void testHourly() {
+    assertEquals("armada-" + DAY + "-" + HOUR,
+        ArmadaJobSetStrategy.HOURLY.jobSetId("armada", template("label", null), 8, NOW));
+  }
+
+  @Test
+  void testPerBuild() {
+    assertEquals("armada-folder-job-42",
+        ArmadaJobSetStrategy.PER_BUILD.jobSetId("armada", template("label", "folder/job#42"), 8,
+            NOW));
+  }
+
+  @Test
+  void testPerBuild_FallsBackToDailyWithoutRun() {
+    assertEquals("armada-" + DAY,
+        ArmadaJobSetStrategy.PER_BUILD.jobSetId("armada", template("label", null), 8, NOW));
+  }
+
+  @Test
+  void testPerFolder() {
+    assertEquals("armada-team-a-sub-" + DAY,
+        ArmadaJobSetStrategy.PER_FOLDER.jobSetId("armada", template("label", "team-a/sub/job#1"),
+            8, NOW));
+  }
+
+  @Test
+  void testPerFolder_TopLevelJob() {
+    assertEquals("armada-root-" + DAY,
+        ArmadaJobSetStrategy.PER_FOLDER.jobSetId("armada", template("label", "job#1"), 8, NOW));
+  }
+
+  @Test
+  void testSharded_StableAndBounded() {
+    String first = ArmadaJobSetStrategy.SHARDED.jobSetId("armada", template("label-a", null), 4,
+        NOW);
+    String second = ArmadaJobSetStrategy.SHARDED.jobSetId("armada", template("label-a", null), 4,
+        NOW);
+
+    assertEquals(first, second);
+    for (int i = 0; i < 100; i++) {
+      String jobSetId = ArmadaJobSetStrategy.SHARDED.jobSetId("armada",
+          template("label-" + i, null), 4, NOW);
+      assertTrue(jobSetId.matches("armada-shard[0-3]-" + DAY), jobSetId);
+    }
+  }
+
+  @Test
+  void testFromName() {
+    assertEquals(ArmadaJobSetStrategy.HOURLY, ArmadaJobSetStrategy.fromName("HOURLY"));
+    assertEquals(ArmadaJobSetStrategy.DAILY, ArmadaJobSetStrategy.fromName(null));
+    assertEquals(ArmadaJobSetStrategy.DAILY, ArmadaJobSetStrategy.fromName("unknown"));
+  }
+}
@@ -0,0 +1,45 @@
+package io.armadaproject.jenkins.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import hudson.model.TaskListener;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import org.junit.jupiter.api.Test;
+
+class ArmadaJobTemplateTest {
+
+  private static Pod pod(String name) {
+    return new PodBuilder()
+        .withNewMetadata().withName(name).endMetadata()
+        .withNewSpec()
+        .addNewContainer().withName("jnlp").withImage("jenkins/inbound-agent").endContainer()
+        .endSpec()
+        .build();
+  }
+
+  @Test
+  void testTemplateNameIsPodName() {
+    ArmadaJobTemplate template = new ArmadaJobTemplate("armada-1", pod("maven"),
+        TaskListener.NULL, "folder/job#12");
+
+    assertEquals("maven", template.getTemplateName());
+  }
+
+  @Test
+  void testTemplateNameIsJobNameWithoutBuildNumber() {
+    ArmadaJobTemplate first = new ArmadaJobTemplate("armada-1", pod(null), TaskListener.NULL,
+        "folder/job#12");
+    ArmadaJobTemplate second = new ArmadaJobTemplate("armada-2", pod(null), TaskListener.NULL,
+        "folder/job#13");
+
+    assertEquals("folder/job", first.getTemplateName());
+    assertEquals(first.getTemplateName(), second.getTemplateName());
+  }
+
+  @Test
+  void testTemplateNameWithoutPodNameOrRun() {
+    assertEquals("none",
+        new ArmadaJobTemplate("armada-1", pod(null), TaskListener.NULL).getTemplateName());
+  }
+}
@@ -0,0 +1,148 @@
+package io.armadaproject.jenkins.plugin;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ArmadaKeepaliveServiceTest {
+
+  private ScheduledExecutorService executor;
+
+  @BeforeEach
+  void setUp() {
+    executor = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private static class FakeProc implements ArmadaKeepaliveService.Pingable {
+
+    final AtomicInteger pings = new AtomicInteger();
+    volatile boolean alive = true;
+    volatile boolean broken;
+
+    @Override
+    public boolean isAlive() {
+      return alive;
+    }
+
+    @Override
+    public void ping() throws IOException {
+      if (broken) {
+        throw new IOException("closed");
+      }
+      pings.incrementAndGet();
+    }
+  }
+
+  @Test
+  void testPingAllDropsDeadAndBrokenProcesses() {
+    ArmadaKeepaliveService service =
+        new ArmadaKeepaliveService("cloud", () -> executor, Runnable::run, 60_000);
+    FakeProc live = new FakeProc();
+    FakeProc dead = new FakeProc();
+    FakeProc broken = new FakeProc();
+    service.register(live);
+    service.register(dead);
+    service.register(broken);
+    dead.alive = false;
+    broken.broken = true;
+
+    service.pingAll();
+
+    assertEquals(1, live.pings.get());
+    assertEquals(0, dead.pings.get());
+    assertEquals(1, service.size());
+    assertTrue(service.isScheduled());
+  }
+
+  @Test
+  void testStalledPingDoesNotHoldBackOtherProcesses() throws Exception {
+    ExecutorService pingExecutor = Executors.newCachedThreadPool();
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger stalledPings = new AtomicInteger();
+    ArmadaKeepaliveService.Pingable stalled = new ArmadaKeepaliveService.Pingable() {
+      @Override
+      public boolean isAlive() {
+        return true;
+      }
+
+      @Override
+      public void ping() throws IOException {
+        stalledPings.incrementAndGet();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException();
+        }
+      }
+    };
+    try {
+      ArmadaKeepaliveService service =
+          new ArmadaKeepaliveService("cloud", () -> executor, pingExecutor, 60_000);
+      FakeProc live = new FakeProc();
+      service.register(stalled);
+      service.register(live);
+
+      service.pingAll();
+      await().atMost(Duration.ofSeconds(10)).until(() -> live.pings.get() == 1);
+      await().atMost(Duration.ofSeconds(10)).until(() -> stalledPings.get() == 1);
+      service.pingAll();
+      await().atMost(Duration.ofSeconds(10)).until(() -> live.pings.get() == 2);
+
+      // The ping still blocked is not written again
+      assertEquals(1, stalledPings.get());
+    } finally {
+      release.countDown();
+      pingExecutor.shutdownNow();
+    }
+  }
+
+  @Test
+  void testTaskOnlyRunsWhileProcessesAreRegistered() {
+    ArmadaKeepaliveService service =
+        new ArmadaKeepaliveService("cloud", () -> executor, executor, 60_000);
+    FakeProc first = new FakeProc();
+    FakeProc second = new FakeProc();
+    assertFalse(service.isScheduled());
+
+    service.register(first);
+    service.register(second);
+    assertTrue(service.isScheduled());
+    service.unregister(first);
+    assertTrue(service.isScheduled());
+    service.unregister(second);
+
+    assertFalse(service.isScheduled());
+    assertEquals(0, service.size());
+  }
+
+  @Test
+  void testProcessesArePingedPeriodically() {
+    ArmadaKeepaliveService service =
+        new ArmadaKeepaliveService("cloud", () -> executor, executor, 10);
+    FakeProc proc = new FakeProc();
+
+    service.register(proc);
+
+    await().atMost(Duration.ofSeconds(10)).until(() -> proc.pings.get() >= 3);
+    proc.alive = false;
+    await().atMost(Duration.ofSeconds(10)).until(() -> !service.isScheduled());
+  }
+}
@@ -0,0 +1,107 @@
+package io.armadaproject.jenkins.plugin;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import api.SubmitOuterClass.JobState;
+import api.SubmitOuterClass.JobSubmitRequest;
+import api.SubmitOuterClass.JobSubmitRequestItem;
+import io.armadaproject.ArmadaClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ArmadaLaunchPollerTest {
+
+  private static final String JOB_SET_ID = "job-set";
+
+  private FakeArmadaServer server;
+  private ArmadaClient client;
+  private ScheduledExecutorService executor;
+  private ArmadaLaunchPoller poller;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    server = new FakeArmadaServer().withStateDelays(10, 10, 10);
+    client = new ArmadaClient("localhost", server.getPort());
+    ArmadaCloud cloud = new ArmadaCloud("armada");
+    cloud.setArmadaUrl("localhost");
+    cloud.setArmadaPort(Integer.toString(server.getPort()));
+    executor = Executors.newSingleThreadScheduledExecutor();
+    poller = new ArmadaLaunchPoller(cloud, executor, executor);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    executor.shutdownNow();
+    client.close();
+    server.close();
+  }
+
+  private String submit() {
+    return client.submitJob(JobSubmitRequest.newBuilder()
+            .setQueue("queue")
+            .setJobSetId(JOB_SET_ID)
+            .addJobRequestItems(JobSubmitRequestItem.getDefaultInstance())
+            .build())
+        .getJobResponseItems(0)
+        .getJobId();
+  }
+
+  @Test
+  void testJobsOfAJobSetArePolledTogether() {
+    List<String> jobIds = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      jobIds.add(submit());
+    }
+
+    jobIds.forEach(jobId -> poller.watch(jobId, JOB_SET_ID));
+
+    await().atMost(Duration.ofSeconds(10)).until(() -> jobIds.stream()
+        .allMatch(jobId -> poller.getJobState(jobId) == JobState.RUNNING));
+    // The first round may start before every job is watched
+    List<Integer> sizes = server.getStatusRequestSizes();
+    assertEquals(5, (int) sizes.get(sizes.size() - 1));
+    jobIds.forEach(poller::unwatch);
+  }
+
+  @Test
+  void testRoundsDoNotOverlap() throws Exception {
+    List<Runnable> started = new CopyOnWriteArrayList<>();
+    ArmadaCloud cloud = new ArmadaCloud("armada");
+    cloud.setArmadaUrl("localhost");
+    cloud.setArmadaPort(Integer.toString(server.getPort()));
+    ArmadaLaunchPoller stalled = new ArmadaLaunchPoller(cloud, executor, started::add);
+    stalled.watch(submit(), JOB_SET_ID);
+
+    // Several ticks go by while the first round has not run yet
+    Thread.sleep(ArmadaPluginConfig.POLL_INTERVAL_SECONDS * 2500L);
+    assertEquals(1, started.size());
+
+    started.get(0).run();
+    await().atMost(Duration.ofSeconds(10)).until(() -> started.size() == 2);
+  }
+
+  @Test
+  void testPollingStopsOnceNoJobIsWatched() throws Exception {
+    String jobId = submit();
+    poller.watch(jobId, JOB_SET_ID);
+    await().atMost(Duration.ofSeconds(10)).until(() -> poller.getJobState(jobId) != null);
+
+    poller.unwatch(jobId);
+    // Lets a round already running finish
+    Thread.sleep(200);
+    int requests = server.getStatusRequestSizes().size();
+    Thread.sleep(ArmadaPluginConfig.POLL_INTERVAL_SECONDS * 1500L);
+
+    assertNull(poller.getJobState(jobId));
+    assertEquals(requests, server.getStatusRequestSizes().size());
+  }
+}
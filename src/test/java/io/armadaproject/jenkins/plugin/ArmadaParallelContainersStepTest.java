@@ -0,0 +1,223 @@
+package io.armadaproject.jenkins.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.TaskListener;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class ArmadaParallelContainersStepTest {
+
+  private static final FilePath WORKSPACE = new FilePath(new File("/workspace"));
+
+  private ArmadaParallelContainersStep.DescriptorImpl descriptor;
+  private ExecMockServer server;
+  private KubernetesClient client;
+  private final List<ArmadaExecDecorator> decorators = new ArrayList<>();
+  private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+  private final PrintStream logger = new PrintStream(log, true, StandardCharsets.UTF_8);
+  private final String cookie = UUID.randomUUID().toString();
+
+  @BeforeEach
+  void setUp(JenkinsRule jenkins) {
+    descriptor = jenkins.jenkins.getDescriptorByType(
+        ArmadaParallelContainersStep.DescriptorImpl.class);
+    server = new ExecMockServer();
+    client = server.createClient();
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    for (ArmadaExecDecorator decorator : decorators) {
+      decorator.close();
+    }
+    client.close();
+    server.close();
+  }
+
+  /**
+   * Runs the commands over the exec mock, with a launcher per container the way the step does.
+   */
+  private Map<String, Integer> runAll(Map<String, String> commands) throws Exception {
+    Map<String, Launcher> launchers = new LinkedHashMap<>();
+    for (String containerName : commands.keySet()) {
+      ArmadaExecDecorator decorator = new ArmadaExecDecorator(containerName);
+      decorator.setNodeContext(server.createNodeContext(client));
+      decorators.add(decorator);
+      launchers.put(containerName,
+          decorator.decorate(new Launcher.LocalLauncher(TaskListener.NULL), null));
+    }
+    EnvVars envVars = new EnvVars(ArmadaPluginConfig.COOKIE_VAR, cookie);
+    return ArmadaParallelContainersStepExecution.runAll(launchers, commands, WORKSPACE, envVars,
+        cookie, logger);
+  }
+
+  private static Map<String, String> commands(String... containersAndCommands) {
+    Map<String, String> commands = new LinkedHashMap<>();
+    for (int i = 0; i < containersAndCommands.length; i += 2) {
+      commands.put(containersAndCommands[i], containersAndCommands[i + 1]);
+    }
+    return commands;
+  }
+
+  @Test
+  void testNewInstanceKeepsContainerOrder() throws Exception {
+    Map<String, Object> commands = new LinkedHashMap<>();
+    commands.put("test", "make test");
+    commands.put("lint", "make lint");
+
+    ArmadaParallelContainersStep step = (ArmadaParallelContainersStep) descriptor.newInstance(
+        Map.of(ArmadaParallelContainersStep.COMMANDS, commands));
+
+    assertEquals(List.of("test", "lint"), List.copyOf(step.getCommands().keySet()));
+    assertFalse(step.isReturnStatus());
+    assertEquals(Map.of(ArmadaParallelContainersStep.COMMANDS, commands),
+        descriptor.defineArguments(step));
+  }
+
+  @Test
+  void testNewInstanceRejectsInvalidArguments() {
+    assertThrows(IllegalArgumentException.class, () -> descriptor.newInstance(Map.of()));
+    assertThrows(IllegalArgumentException.class, () -> descriptor.newInstance(
+        Map.of(ArmadaParallelContainersStep.COMMANDS, Map.of())));
+    assertThrows(IllegalArgumentException.class, () -> descriptor.newInstance(
+        Map.of(ArmadaParallelContainersStep.COMMANDS, Map.of("lint", "make lint"),
+            "failFast", true)));
+  }
+
+  @Test
+  void testCommandsRunConcurrently() throws Exception {
+    // Each barrier command only exits once both are running
+    Map<String, Integer> exitCodes = runAll(commands("lint", "barrier 2", "test", "barrier 2"));
+
+    assertEquals(Map.of("lint", 0, "test", 0), exitCodes);
+  }
+
+  @Test
+  void testExitCodesAreReturnedPerContainer() throws Exception {
+    Map<String, Integer> exitCodes = runAll(commands("lint", "echo linted", "test", "false"));
+
+    assertEquals(List.of("lint", "test"), List.copyOf(exitCodes.keySet()));
+    assertEquals(Map.of("lint", 0, "test", 1), exitCodes);
+    assertEquals(exitCodes, ArmadaParallelContainersStepExecution.checkExitCodes(exitCodes, true));
+    String output = log.toString(StandardCharsets.UTF_8);
+    assertTrue(output.contains("[lint] linted\n"), output);
+    assertTrue(output.contains("[test] exited with code 1"), output);
+  }
+
+  @Test
+  void testFailedCommandFailsStep() throws Exception {
+    Map<String, Integer> exitCodes = runAll(commands("lint", "echo linted", "test", "false"));
+
+    AbortException e = assertThrows(AbortException.class,
+        () -> ArmadaParallelContainersStepExecution.checkExitCodes(exitCodes, false));
+    assertEquals("Commands failed in containers: test (exit code 1)", e.getMessage());
+  }
+
+  @Test
+  void testInterruptionKillsEveryContainer() throws Exception {
+    CompletableFuture<Thread> runner = new CompletableFuture<>();
+    CompletableFuture<Map<String, Integer>> result = CompletableFuture.supplyAsync(() -> {
+      runner.complete(Thread.currentThread());
+      try {
+        return runAll(commands("lint", "sleep 60", "test", "sleep 60"));
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    // Lets both commands start before stopping the step
+    Thread.sleep(1_000);
+
+    runner.get().interrupt();
+
+    ExecutionException e = assertThrows(ExecutionException.class,
+        () -> result.get(30, TimeUnit.SECONDS));
+    assertTrue(e.getCause().getCause() instanceof InterruptedException, e.toString());
+    assertTrue(server.isKilled());
+  }
+
+  @Test
+  void testPrefixOutputStreamPrefixesWholeLines() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    PrintStream target = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+
+    try (ArmadaParallelContainersStepExecution.PrefixOutputStream output =
+        new ArmadaParallelContainersStepExecution.PrefixOutputStream(target, "[lint] ")) {
+      output.write("one\ntw".getBytes(StandardCharsets.UTF_8));
+      output.write('o');
+      output.write("\nthree".getBytes(StandardCharsets.UTF_8));
+    }
+
+    assertEquals("[lint] one\n[lint] two\n[lint] three\n", bytes.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void testPrefixOutputStreamWritesLongLinesInParts() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    PrintStream target = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+
+    try (ArmadaParallelContainersStepExecution.PrefixOutputStream output =
+        new ArmadaParallelContainersStepExecution.PrefixOutputStream(target, "[lint] ", 8)) {
+      output.write("abcdefghijkl\n".getBytes(StandardCharsets.UTF_8));
+      // A character is not split across parts
+      output.write("1234567\u00e9x\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    assertEquals("[lint] abcdefgh\n[lint] ijkl\n[lint] 1234567\n[lint] \u00e9x\n",
+        bytes.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void testPrefixOutputStreamDoesNotMixConcurrentLines() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    PrintStream target = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+    String[] names = {"lint", "test", "build"};
+    CompletableFuture<?>[] writers = new CompletableFuture<?>[names.length];
+    for (int i = 0; i < names.length; i++) {
+      String name = names[i];
+      writers[i] = CompletableFuture.runAsync(() -> {
+        ArmadaParallelContainersStepExecution.PrefixOutputStream output =
+            new ArmadaParallelContainersStepExecution.PrefixOutputStream(target,
+                "[" + name + "] ");
+        for (int line = 0; line < 500; line++) {
+          // Split writes so that a line is only complete across several of them
+          output.write((name + " ").getBytes(StandardCharsets.UTF_8), 0, name.length() + 1);
+          output.write(("line " + line + "\n").getBytes(StandardCharsets.UTF_8), 0,
+              ("line " + line + "\n").length());
+        }
+      });
+    }
+    CompletableFuture.allOf(writers).get();
+
+    String[] lines = bytes.toString(StandardCharsets.UTF_8).split("\n");
+    assertEquals(1_500, lines.length);
+    for (String line : lines) {
+      String name = line.substring(1, line.indexOf(']'));
+      assertTrue(line.startsWith("[" + name + "] " + name + " line "), line);
+    }
+  }
+}
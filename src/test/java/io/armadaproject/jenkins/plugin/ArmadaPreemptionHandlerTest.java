@@ -0,0 +1,139 @@
+package io.armadaproject.jenkins.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import api.EventOuterClass.EventMessage;
+import api.EventOuterClass.JobPreemptedEvent;
+import api.EventOuterClass.JobRunningEvent;
+import hudson.model.TaskListener;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class ArmadaPreemptionHandlerTest {
+
+  private static final String JOB_SET_ID = "job-set";
+
+  private FakeArmadaServer server;
+  private ArmadaCloud cloud;
+  private ArmadaComputer computer;
+  private ArmadaPreemptionHandler handler;
+
+  @BeforeEach
+  void setUp(JenkinsRule jenkins) throws Exception {
+    server = new FakeArmadaServer();
+    cloud = new ArmadaCloud("armada");
+    cloud.setArmadaUrl("localhost");
+    cloud.setArmadaPort(Integer.toString(server.getPort()));
+    cloud.setArmadaQueue("queue");
+    jenkins.jenkins.clouds.add(cloud);
+
+    Pod pod = new PodBuilder()
+        .withNewMetadata().endMetadata()
+        .withNewSpec()
+        .addNewContainer().withName("jnlp").withImage("jenkins/inbound-agent").endContainer()
+        .endSpec()
+        .build();
+    // Not added to Jenkins, so that nothing launches it
+    ArmadaSlave node = new ArmadaSlave(cloud, new ArmadaJobTemplate("armada", pod,
+        TaskListener.NULL));
+    computer = node.createComputer();
+    computer.setArmadaJobId("job-1");
+    computer.setArmadaJobSetId(JOB_SET_ID);
+    handler = ArmadaPreemptionHandler.watch(cloud, computer);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    handler.unsubscribe();
+    cloud.releaseJobSet(JOB_SET_ID, computer);
+    server.close();
+  }
+
+  private static ArmadaEvent preempted(String jobId) {
+    return ArmadaEvent.from(EventMessage.newBuilder()
+        .setPreempted(JobPreemptedEvent.newBuilder()
+            .setJobId(jobId)
+            .setJobSetId(JOB_SET_ID))
+        .build());
+  }
+
+  private static ArmadaEvent running(String jobId) {
+    return ArmadaEvent.from(EventMessage.newBuilder()
+        .setRunning(JobRunningEvent.newBuilder()
+            .setJobId(jobId)
+            .setJobSetId(JOB_SET_ID))
+        .build());
+  }
+
+  @Test
+  void testIgnoresPreemptionOfOtherJobs() {
+    cloud.getArmadaEventManager().publish(JOB_SET_ID, preempted("job-2"));
+
+    assertEquals("job-1", computer.getArmadaJobId());
+    assertEquals(0, computer.getResubmissions());
+  }
+
+  @Test
+  void testRecordPreemptionForgetsPreemptedJob() {
+    ArmadaEventManager eventManager = cloud.getArmadaEventManager();
+    eventManager.trackJob("job-1");
+    eventManager.publish(JOB_SET_ID, running("job-1"));
+
+    assertTrue(handler.recordPreemption(System.currentTimeMillis()));
+
+    assertNull(eventManager.getLatestEvent("job-1", ArmadaEvent.Type.RUNNING));
+    eventManager.publish(JOB_SET_ID, running("job-1"));
+    assertNull(eventManager.getLatestEvent("job-1", ArmadaEvent.Type.RUNNING));
+    assertEquals("", computer.getArmadaJobId());
+    assertEquals(1, computer.getResubmissions());
+  }
+
+  @Test
+  void testRecordPreemptionMarksAgentAsPreempted() {
+    assertTrue(handler.recordPreemption(8_000));
+
+    // Only node blocks started before the preemption were hit by it
+    assertTrue(ArmadaPreemptionHandler.wasPreemptedSince(computer.getName(), 7_000));
+    assertFalse(ArmadaPreemptionHandler.wasPreemptedSince(computer.getName(), 9_000));
+  }
+
+  @Test
+  void testWastedQueueTimeMeasuredFromLastQueuedOrLeasedEvent() {
+    computer.setArmadaJobSubmittedAt(1_000);
+    computer.setArmadaJobQueuedAt(5_000);
+
+    assertTrue(handler.recordPreemption(8_000));
+
+    assertEquals(3_000, computer.getWastedQueueMillis());
+    assertEquals(0, computer.getArmadaJobQueuedAt());
+  }
+
+  @Test
+  void testWastedQueueTimeMeasuredFromSubmissionWithoutQueuedEvent() {
+    computer.setArmadaJobSubmittedAt(1_000);
+
+    assertTrue(handler.recordPreemption(4_000));
+
+    assertEquals(3_000, computer.getWastedQueueMillis());
+  }
+
+  @Test
+  void testRecordPreemptionStopsOnceBudgetIsExhausted() {
+    for (int i = 0; i < ArmadaPluginConfig.MAX_RESUBMISSIONS; i++) {
+      computer.setArmadaJobId("job-" + i);
+      assertTrue(handler.recordPreemption(System.currentTimeMillis()));
+    }
+
+    assertFalse(handler.recordPreemption(System.currentTimeMillis()));
+    assertEquals(ArmadaPluginConfig.MAX_RESUBMISSIONS, computer.getResubmissions());
+  }
+}
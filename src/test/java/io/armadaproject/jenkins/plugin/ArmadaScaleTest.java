@@ -0,0 +1,195 @@
+package io.armadaproject.jenkins.plugin;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import api.SubmitOuterClass.JobState;
+import hudson.model.Computer;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
+import hudson.slaves.NodeProvisioner.PlannedNode;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+/**
+ * Drives {@link ArmadaCloud#provision} and {@link ArmadaLauncher} end to end against a
+ * {@link FakeArmadaServer} and reports launch throughput and latency. The fake has no pods for
+ * agents to connect from, so a launch is measured until its job runs.
+ * <p>
+ * Excluded from the default build, run with {@code mvn test -Pscale}. The number of agents is set
+ * with {@code -Darmada.scale.agents}.
+ */
+@Tag("scale")
+@WithJenkins
+class ArmadaScaleTest {
+
+  private static final int AGENTS = Integer.getInteger("armada.scale.agents", 50);
+  private static final long TIMEOUT_SECONDS = Long.getLong("armada.scale.timeoutSeconds", 300);
+  private static final String LABEL = "armada-scale";
+
+  private JenkinsRule jenkins;
+  private FakeArmadaServer server;
+  private ArmadaCloud cloud;
+  private final List<ArmadaSlave> nodes = new ArrayList<>();
+
+  @BeforeEach
+  void setUp(JenkinsRule jenkins) throws Exception {
+    this.jenkins = jenkins;
+    server = new FakeArmadaServer()
+        .withSubmitDelay(20)
+        .withStateDelays(200, 100, 300);
+
+    cloud = new ArmadaCloud("armada-scale");
+    cloud.setArmadaUrl("localhost");
+    cloud.setArmadaPort(Integer.toString(server.getPort()));
+    cloud.setArmadaQueue("queue");
+    cloud.setArmadaNamespace(FakeArmadaServer.POD_NAMESPACE);
+    // No cluster is reachable, pod inspection by the launch failure detector is best effort
+    cloud.setArmadaClusterConfigPath(jenkins.jenkins.getRootDir() + "/clusters.xml");
+    cloud.setJenkinsUrl(jenkins.getURL().toString());
+    jenkins.jenkins.clouds.add(cloud);
+
+    Pod pod = new PodBuilder()
+        .withNewMetadata().endMetadata()
+        .withNewSpec()
+        .addNewContainer().withName("jnlp").withImage("jenkins/inbound-agent").endContainer()
+        .endSpec()
+        .build();
+    cloud.addDynamicTemplate(new ArmadaJobTemplate(LABEL, pod, TaskListener.NULL));
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    for (ArmadaSlave node : nodes) {
+      jenkins.jenkins.removeNode(node);
+    }
+    server.close();
+  }
+
+  private void provision(int count) throws Exception {
+    Collection<PlannedNode> planned = cloud.provision(
+        new Cloud.CloudState(Label.get(LABEL), 0), count);
+    for (PlannedNode plannedNode : planned) {
+      Node node = plannedNode.future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      nodes.add((ArmadaSlave) node);
+      Computer computer = node.toComputer();
+      if (computer != null) {
+        computer.connect(false);
+      }
+    }
+  }
+
+  private static boolean isRunning(ArmadaSlave node) {
+    LaunchTimeline timeline = node.getLaunchTimeline();
+    return timeline != null && timeline.getDuration(LaunchPhase.RUNNING) != null;
+  }
+
+  /**
+   * Waits until the expected number of agents run, recording how long each took.
+   */
+  private Histogram awaitRunning(int expected, long startNanos) {
+    Histogram latencies = new Histogram();
+    Set<ArmadaSlave> seen = new HashSet<>();
+    await().atMost(Duration.ofSeconds(TIMEOUT_SECONDS))
+        .pollInterval(Duration.ofMillis(20))
+        .until(() -> {
+          for (ArmadaSlave node : nodes) {
+            if (!seen.contains(node) && isRunning(node)) {
+              seen.add(node);
+              latencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            }
+          }
+          return seen.size() >= expected;
+        });
+    return latencies;
+  }
+
+  private void report(String scenario, Histogram latencies, long startNanos) {
+    double seconds = (System.nanoTime() - startNanos) / 1e9;
+    System.out.println(String.format(Locale.ROOT,
+        "[%s] %d agents running in %.1f s (%.1f launches/s), latency p50=%d ms p95=%d ms"
+            + " p99=%d ms max=%d ms",
+        scenario, latencies.getCount(), seconds, latencies.getCount() / seconds,
+        latencies.getPercentile(50), latencies.getPercentile(95), latencies.getPercentile(99),
+        latencies.getMax()));
+    for (Map.Entry<ArmadaMetrics.MetricKey, Histogram> entry
+        : ArmadaMetrics.get().getHistograms().entrySet()) {
+      if (entry.getKey().getName().equals(ArmadaMetrics.LAUNCH_PHASE_DURATION)
+          && cloud.name.equals(entry.getKey().getTags().get(ArmadaMetrics.TAG_CLOUD))) {
+        System.out.println(String.format(Locale.ROOT, "[%s]   %s p50=%d ms p95=%d ms",
+            scenario, entry.getKey().getTags().get(ArmadaMetrics.TAG_PHASE),
+            entry.getValue().getPercentile(50), entry.getValue().getPercentile(95)));
+      }
+    }
+  }
+
+  @Test
+  void testLaunchThroughput() throws Exception {
+    long start = System.nanoTime();
+    provision(AGENTS);
+
+    Histogram latencies = awaitRunning(AGENTS, start);
+
+    report("throughput", latencies, start);
+    assertEquals(AGENTS, server.getSubmittedCount());
+  }
+
+  @Test
+  void testLaunchesSurvivePreemption() throws Exception {
+    int preempted = Math.max(AGENTS / 10, 1);
+    server.preemptNextJobs(preempted);
+    long start = System.nanoTime();
+    provision(AGENTS);
+
+    Histogram latencies = awaitRunning(AGENTS, start);
+
+    report("preemption", latencies, start);
+    assertEquals(AGENTS + preempted, server.getSubmittedCount());
+    int resubmissions = 0;
+    for (ArmadaSlave node : nodes) {
+      ArmadaComputer computer = (ArmadaComputer) node.toComputer();
+      resubmissions += computer != null ? computer.getResubmissions() : 0;
+    }
+    assertEquals(preempted, resubmissions);
+  }
+
+  @Test
+  void testFailedJobsDoNotBlockOtherLaunches() throws Exception {
+    int failed = Math.max(AGENTS / 10, 1);
+    server.failNextJobs(failed);
+    long start = System.nanoTime();
+    provision(AGENTS);
+
+    Histogram latencies = awaitRunning(AGENTS - failed, start);
+
+    report("failures", latencies, start);
+    await().atMost(Duration.ofSeconds(TIMEOUT_SECONDS)).until(() -> {
+      int stopped = 0;
+      for (ArmadaSlave node : nodes) {
+        ArmadaComputer computer = (ArmadaComputer) node.toComputer();
+        if (computer != null && !computer.isLaunching()
+            && server.getJobState(computer.getArmadaJobId()) == JobState.FAILED) {
+          stopped++;
+        }
+      }
+      return stopped == failed;
+    });
+  }
+}
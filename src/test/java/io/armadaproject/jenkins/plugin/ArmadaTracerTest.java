@@ -0,0 +1,85 @@
+package io.armadaproject.jenkins.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ArmadaTracerTest {
+
+  private final List<ArmadaSpan> exported = new ArrayList<>();
+  private final ArmadaTracer tracer = new ArmadaTracer(List.of(exported::addAll));
+
+  @Test
+  void testSpansOfRunShareTrace() {
+    ArmadaSpan launch = tracer.startSpan("armada.launch", "folder/job#1");
+    ArmadaSpan exec = tracer.startSpan("armada.exec", "folder/job#1");
+    ArmadaSpan other = tracer.startSpan("armada.exec", "folder/job#2");
+
+    assertEquals(launch.getTraceId(), exec.getTraceId());
+    assertNotEquals(launch.getTraceId(), other.getTraceId());
+    assertEquals(32, launch.getTraceId().length());
+    assertEquals(16, launch.getSpanId().length());
+    assertNull(launch.getParentSpanId());
+  }
+
+  @Test
+  void testTraceIdNotDerivedFromRunId() {
+    ArmadaTracer otherController = new ArmadaTracer(List.of(exported::addAll));
+
+    assertNotEquals(tracer.startSpan("armada.launch", "folder/job#1").getTraceId(),
+        otherController.startSpan("armada.launch", "folder/job#1").getTraceId());
+  }
+
+  @Test
+  void testChildSpan() {
+    ArmadaSpan launch = tracer.startSpan("armada.launch", (String) null);
+    ArmadaSpan submit = tracer.startSpan("armada.submit", launch);
+
+    assertEquals(launch.getTraceId(), submit.getTraceId());
+    assertEquals(launch.getSpanId(), submit.getParentSpanId());
+  }
+
+  @Test
+  void testEndedSpansExportedOnFlush() {
+    ArmadaSpan span = tracer.startSpan("armada.submit", "job#1");
+    span.setAttribute("armada.job_id", "01abc");
+    span.recordError(new IllegalStateException("queue does not exist"));
+    span.end();
+    span.end();
+
+    assertTrue(exported.isEmpty());
+    tracer.flush();
+
+    assertEquals(1, exported.size());
+    assertEquals("queue does not exist", exported.get(0).getErrorMessage());
+    assertTrue(exported.get(0).getEndEpochNanos() >= exported.get(0).getStartEpochNanos());
+  }
+
+  @Test
+  void testDisabledTracerDoesNotExport() {
+    ArmadaTracer disabled = new ArmadaTracer(List.of());
+    disabled.startSpan("armada.exec", "job#1").end();
+
+    assertFalse(disabled.isEnabled());
+  }
+
+  @Test
+  void testOtlpJsonEncoding() throws Exception {
+    ArmadaSpan span = tracer.startSpan("armada.exec", "job#1");
+    span.setAttribute("process.exit_code", 1);
+    span.end();
+
+    String json = OtlpJsonEncoder.encode("jenkins-armada", List.of(span));
+
+    assertTrue(json.contains("\"traceId\":\"" + span.getTraceId() + "\""), json);
+    assertTrue(json.contains("\"stringValue\":\"jenkins-armada\""), json);
+    assertTrue(json.contains("\"intValue\":\"1\""), json);
+    assertTrue(json.contains("\"name\":\"armada.exec\""), json);
+  }
+}
@@ -0,0 +1,80 @@
+package io.armadaproject.jenkins.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AsyncPollerTest {
+
+  private ScheduledExecutorService executor;
+
+  @BeforeEach
+  void setUp() {
+    executor = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void testCompletesOnceConditionIsTrue() throws Exception {
+    AtomicInteger attempts = new AtomicInteger();
+
+    CompletableFuture<Void> future = AsyncPoller.poll(executor,
+        () -> attempts.incrementAndGet() == 3, 10, 5_000, "timeout");
+
+    assertNull(future.get(5, TimeUnit.SECONDS));
+    assertEquals(3, attempts.get());
+  }
+
+  @Test
+  void testFailsWhenConditionThrows() {
+    CompletableFuture<Void> future = AsyncPoller.poll(executor, () -> {
+      throw new IOException("job failed");
+    }, 10, 5_000, "timeout");
+
+    ExecutionException e = assertThrows(ExecutionException.class,
+        () -> future.get(5, TimeUnit.SECONDS));
+    assertInstanceOf(IOException.class, e.getCause());
+    assertEquals("job failed", e.getCause().getMessage());
+  }
+
+  @Test
+  void testFailsOnTimeout() {
+    CompletableFuture<Void> future = AsyncPoller.poll(executor, () -> false, 10, 50,
+        "Agent did not connect");
+
+    ExecutionException e = assertThrows(ExecutionException.class,
+        () -> future.get(5, TimeUnit.SECONDS));
+    assertInstanceOf(IOException.class, e.getCause());
+    assertEquals("Agent did not connect", e.getCause().getMessage());
+  }
+
+  @Test
+  void testManyPollsShareOneThread() throws Exception {
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
+    for (int i = 0; i < 1_000; i++) {
+      AtomicInteger attempts = new AtomicInteger();
+      futures.add(AsyncPoller.poll(executor, () -> attempts.incrementAndGet() == 2, 10, 5_000,
+          "timeout"));
+    }
+
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+  }
+}
@@ -0,0 +1,337 @@
+package io.armadaproject.jenkins.plugin;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.server.mock.KubernetesMockServer;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import io.fabric8.mockwebserver.Context;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.ByteString;
+
+/**
+ * Kubernetes API mock for exec tests, built on the fabric8 mock server. Serves GET requests for a
+ * single pod and answers exec requests with a websocket that emulates the shell started by
+ * {@link ArmadaExecDecorator}: stdin lines are interpreted, output is written to the stdout channel
+ * and the exit code of the last command is reported on the status channel once {@code exit} is
+ * received.
+ * <p>
+ * The emulated shell ignores {@code cd} and {@code export} lines, runs the command of a line
+ * recording its PID, writes {@code echo 'TEXT' >&2} lines to stderr and understands these
+ * commands:
+ * <ul>
+ *   <li>{@code echo ARGS...} writes its arguments</li>
+ *   <li>{@code sh -c COMMAND} runs the command, whose words are separated by single spaces</li>
+ *   <li>{@code sleep SECONDS} waits, and exits with code 143 once any line calls {@code kill}</li>
+ *   <li>{@code barrier COUNT} waits for as many sessions to reach a barrier of that count, and
+ *   exits with code 1 if they do not within 10 seconds</li>
+ *   <li>{@code emit BYTES} writes the given number of bytes, in 32 KiB frames</li>
+ *   <li>{@code false} exits with code 1</li>
+ * </ul>
+ * Any other command exits with code 127.
+ */
+class ExecMockServer implements AutoCloseable {
+
+  static final String POD_NAME = "armada-job-0";
+  static final String NAMESPACE = "default";
+  static final String CONTAINER = "build";
+
+  private static final byte STDOUT = 1;
+  private static final byte STDERR = 2;
+  private static final byte STATUS = 3;
+  private static final int FRAME_SIZE = 32 * 1024;
+  private static final Pattern RECORD_PID = Pattern.compile(
+      "\\$\\(command -v setsid\\) sh -c 'echo \\$\\$ > \"\\$0\"; exec \"\\$@\"' \\S+ (.*);"
+          + " s=\\$\\?; kill -0 -\"\\$\\(cat \\S+\\)\" 2>/dev/null \\|\\| rm -f \\S+; exit \\$s");
+  private static final Pattern ECHO_STDERR = Pattern.compile("echo '([^']*)' >&2");
+
+  private final AtomicInteger podRequests = new AtomicInteger();
+  private final AtomicInteger execSessions = new AtomicInteger();
+  private final AtomicInteger stdinFrames = new AtomicInteger();
+  private final List<String> stdinLines = new ArrayList<>();
+  private final Map<Integer, CountDownLatch> barriers = new ConcurrentHashMap<>();
+  private final CountDownLatch killed = new CountDownLatch(1);
+  private final KubernetesMockServer server;
+
+  ExecMockServer() {
+    server = new KubernetesMockServer(new Context(), new MockWebServer(), new HashMap<>(),
+        new ExecDispatcher(), false);
+    server.init();
+  }
+
+  KubernetesClient createClient() {
+    return server.createClient();
+  }
+
+  /**
+   * @return a node context connected to the mocked pod
+   */
+  ArmadaNodeContext createNodeContext(KubernetesClient client) {
+    return createNodeContext(client, 0);
+  }
+
+  /**
+   * @return a node context connected to the mocked pod, allowing the given exec sessions at once
+   */
+  ArmadaNodeContext createNodeContext(KubernetesClient client, int maxConcurrentExecs) {
+    return new ArmadaNodeContext("armada", "armada-agent", client, POD_NAME, NAMESPACE,
+        maxConcurrentExecs);
+  }
+
+  int getPodRequests() {
+    return podRequests.get();
+  }
+
+  int getExecSessions() {
+    return execSessions.get();
+  }
+
+  /**
+   * @return the number of websocket messages received on stdin so far
+   */
+  int getStdinFrames() {
+    return stdinFrames.get();
+  }
+
+  /**
+   * @return every line received on stdin so far, in order
+   */
+  List<String> getStdinLines() {
+    synchronized (stdinLines) {
+      return new ArrayList<>(stdinLines);
+    }
+  }
+
+  /**
+   * @return true once a line called {@code kill}
+   */
+  boolean isKilled() {
+    return killed.getCount() == 0;
+  }
+
+  @Override
+  public void close() {
+    server.destroy();
+  }
+
+  private static Pod pod() {
+    return new PodBuilder()
+        .withNewMetadata().withName(POD_NAME).withNamespace(NAMESPACE).endMetadata()
+        .withNewSpec()
+        .addNewContainer().withName(CONTAINER).withImage("busybox").endContainer()
+        .endSpec()
+        .withNewStatus().withPhase("Running").endStatus()
+        .build();
+  }
+
+  private class ExecDispatcher extends Dispatcher {
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) {
+      String path = request.getPath() != null ? request.getPath() : "";
+      String podPath = "/api/v1/namespaces/" + NAMESPACE + "/pods/" + POD_NAME;
+      if (path.startsWith(podPath + "/exec")) {
+        execSessions.incrementAndGet();
+        return new MockResponse()
+            .addHeader("Sec-WebSocket-Protocol", "v4.channel.k8s.io")
+            .withWebSocketUpgrade(new ShellEmulator());
+      }
+      if ("GET".equals(request.getMethod()) && path.equals(podPath)) {
+        podRequests.incrementAndGet();
+        return new MockResponse()
+            .setResponseCode(200)
+            .addHeader("Content-Type", "application/json")
+            .setBody(Serialization.asJson(pod()));
+      }
+      return new MockResponse().setResponseCode(404);
+    }
+  }
+
+  /**
+   * Server side of one exec session.
+   */
+  private class ShellEmulator extends WebSocketListener {
+
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+    private int exitCode;
+
+    @Override
+    public void onOpen(WebSocket webSocket, Response response) {
+      // The shell starts silently, like sh without a prompt
+    }
+
+    @Override
+    public void onMessage(WebSocket webSocket, ByteString bytes) {
+      if (bytes.size() == 0 || bytes.getByte(0) != 0) {
+        // Only stdin is interpreted, resize messages are ignored
+        return;
+      }
+      stdinFrames.incrementAndGet();
+      for (int i = 1; i < bytes.size(); i++) {
+        byte b = bytes.getByte(i);
+        if (b == '\n') {
+          String command = line.toString(StandardCharsets.UTF_8);
+          line.reset();
+          if (!interpret(webSocket, command)) {
+            return;
+          }
+        } else {
+          line.write(b);
+        }
+      }
+    }
+
+    /**
+     * @return false once the shell exited
+     */
+    private boolean interpret(WebSocket webSocket, String command) {
+      synchronized (stdinLines) {
+        stdinLines.add(command);
+      }
+      String trimmed = command.trim();
+      if (trimmed.isEmpty() || trimmed.startsWith("cd ") || trimmed.startsWith("export ")) {
+        return true;
+      }
+      Matcher matcher = RECORD_PID.matcher(trimmed);
+      if (matcher.matches()) {
+        run(webSocket, unquote(matcher.group(1)));
+        sendStatus(webSocket);
+        webSocket.close(1000, "exit");
+        return false;
+      }
+      matcher = ECHO_STDERR.matcher(trimmed);
+      if (matcher.matches()) {
+        send(webSocket, STDERR, (matcher.group(1) + "\n").getBytes(StandardCharsets.UTF_8));
+        exitCode = 0;
+        return true;
+      }
+      if (trimmed.startsWith("kill ") || trimmed.contains(" kill ")) {
+        killed.countDown();
+        exitCode = 0;
+        return true;
+      }
+      if (trimmed.equals(ArmadaPluginConfig.EXIT)) {
+        sendStatus(webSocket);
+        webSocket.close(1000, "exit");
+        return false;
+      }
+      run(webSocket, unquote(trimmed));
+      return true;
+    }
+
+    private void run(WebSocket webSocket, List<String> words) {
+      switch (words.get(0)) {
+        case "echo":
+          send(webSocket, STDOUT,
+              (String.join(" ", words.subList(1, words.size())) + "\n")
+                  .getBytes(StandardCharsets.UTF_8));
+          exitCode = 0;
+          break;
+        case "emit":
+          emit(webSocket, Long.parseLong(words.get(1)));
+          exitCode = 0;
+          break;
+        case "false":
+          exitCode = 1;
+          break;
+        case "sh":
+          run(webSocket, Arrays.asList(words.get(2).split(" ")));
+          break;
+        case "sleep":
+          exitCode = await(killed, Long.parseLong(words.get(1))) ? 143 : 0;
+          break;
+        case "barrier":
+          int count = Integer.parseInt(words.get(1));
+          CountDownLatch barrier = barriers.computeIfAbsent(count, CountDownLatch::new);
+          barrier.countDown();
+          exitCode = await(barrier, 10) ? 0 : 1;
+          break;
+        default:
+          send(webSocket, STDERR, (words.get(0) + ": not found\n")
+              .getBytes(StandardCharsets.UTF_8));
+          exitCode = 127;
+      }
+    }
+
+    private boolean await(CountDownLatch latch, long seconds) {
+      try {
+        return latch.await(seconds, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+
+    private void emit(WebSocket webSocket, long count) {
+      byte[] frame = new byte[FRAME_SIZE];
+      Arrays.fill(frame, (byte) 'x');
+      long remaining = count;
+      while (remaining > 0) {
+        int size = (int) Math.min(remaining, FRAME_SIZE);
+        send(webSocket, STDOUT, size == FRAME_SIZE ? frame : Arrays.copyOf(frame, size));
+        remaining -= size;
+      }
+    }
+
+    private void send(WebSocket webSocket, byte channel, byte[] data) {
+      byte[] message = new byte[data.length + 1];
+      message[0] = channel;
+      System.arraycopy(data, 0, message, 1, data.length);
+      webSocket.send(ByteString.of(message));
+    }
+
+    private void sendStatus(WebSocket webSocket) {
+      String status = exitCode == 0
+          ? "{\"metadata\":{},\"status\":\"Success\"}"
+          : "{\"metadata\":{},\"status\":\"Failure\",\"reason\":\"NonZeroExitCode\","
+              + "\"details\":{\"causes\":[{\"reason\":\"ExitCode\",\"message\":\"" + exitCode
+              + "\"}]}}";
+      send(webSocket, STATUS, status.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Splits a command line written by the decorator, where every word is double quoted.
+   */
+  static List<String> unquote(String commandLine) {
+    List<String> words = new ArrayList<>();
+    StringBuilder word = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < commandLine.length(); i++) {
+      char c = commandLine.charAt(i);
+      if (c == '"') {
+        quoted = !quoted;
+      } else if (c == ' ' && !quoted) {
+        if (word.length() > 0) {
+          words.add(word.toString());
+          word.setLength(0);
+        }
+      } else {
+        word.append(c);
+      }
+    }
+    if (word.length() > 0) {
+      words.add(word.toString());
+    }
+    return words;
+  }
+}
@@ -0,0 +1,441 @@
+package io.armadaproject.jenkins.plugin;
+
+import api.EventGrpc;
+import api.EventOuterClass.EventMessage;
+import api.EventOuterClass.EventStreamMessage;
+import api.EventOuterClass.JobCancelledEvent;
+import api.EventOuterClass.JobFailedEvent;
+import api.EventOuterClass.JobLeasedEvent;
+import api.EventOuterClass.JobPendingEvent;
+import api.EventOuterClass.JobPreemptedEvent;
+import api.EventOuterClass.JobQueuedEvent;
+import api.EventOuterClass.JobRunningEvent;
+import api.EventOuterClass.JobSetRequest;
+import api.Health.HealthCheckResponse;
+import api.Health.HealthCheckResponse.ServingStatus;
+import api.Job.JobStatusRequest;
+import api.Job.JobStatusResponse;
+import api.JobsGrpc;
+import api.SubmitGrpc;
+import api.SubmitOuterClass.CancellationResult;
+import api.SubmitOuterClass.JobCancelRequest;
+import api.SubmitOuterClass.JobState;
+import api.SubmitOuterClass.JobSubmitRequest;
+import api.SubmitOuterClass.JobSubmitResponse;
+import api.SubmitOuterClass.JobSubmitResponseItem;
+import com.google.protobuf.Empty;
+import com.google.protobuf.Timestamp;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process Armada server for tests. Serves the submit, cancel, job status, health and event
+ * stream RPCs on a local port, and moves every submitted job through the queued, leased, pending
+ * and running states after configurable delays. Failures can be injected into submissions and
+ * jobs can be made to fail or be preempted instead of running.
+ */
+class FakeArmadaServer implements AutoCloseable {
+
+  static final String CLUSTER_ID = "fake-cluster";
+  static final String POD_NAMESPACE = "default";
+
+  private final Map<String, JobState> jobStates = new ConcurrentHashMap<>();
+  private final Map<String, String> jobSets = new ConcurrentHashMap<>();
+  private final Map<String, JobSet> events = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4);
+  private final AtomicInteger submitted = new AtomicInteger();
+  private final AtomicInteger cancelled = new AtomicInteger();
+  private final AtomicInteger failNextSubmissions = new AtomicInteger();
+  private final AtomicInteger failNextJobs = new AtomicInteger();
+  private final AtomicInteger preemptNextJobs = new AtomicInteger();
+  private final List<Integer> statusRequestSizes = new CopyOnWriteArrayList<>();
+  private final Server server;
+
+  private volatile long submitDelayMillis;
+  private volatile long leaseDelayMillis = 50;
+  private volatile long pendingDelayMillis = 50;
+  private volatile long runningDelayMillis = 50;
+
+  FakeArmadaServer() throws IOException {
+    server = ServerBuilder.forPort(0)
+        .addService(new SubmitService())
+        .addService(new JobsService())
+        .addService(new EventService())
+        .build()
+        .start();
+  }
+
+  int getPort() {
+    return server.getPort();
+  }
+
+  /**
+   * Sets how long the submit RPC takes before answering.
+   */
+  FakeArmadaServer withSubmitDelay(long millis) {
+    this.submitDelayMillis = millis;
+    return this;
+  }
+
+  /**
+   * Sets the time a job spends in each state before moving to the next one.
+   *
+   * @param queuedMillis  from submission until the job is leased
+   * @param leasedMillis  from lease until the pod is pending
+   * @param pendingMillis from pending until the pod runs
+   */
+  FakeArmadaServer withStateDelays(long queuedMillis, long leasedMillis, long pendingMillis) {
+    this.leaseDelayMillis = queuedMillis;
+    this.pendingDelayMillis = leasedMillis;
+    this.runningDelayMillis = pendingMillis;
+    return this;
+  }
+
+  /**
+   * Makes the next submissions fail with an UNAVAILABLE status.
+   */
+  void failNextSubmissions(int count) {
+    failNextSubmissions.set(count);
+  }
+
+  /**
+   * Makes the next submitted jobs fail once pending instead of running.
+   */
+  void failNextJobs(int count) {
+    failNextJobs.set(count);
+  }
+
+  /**
+   * Makes the next submitted jobs be preempted while queued instead of being leased.
+   */
+  void preemptNextJobs(int count) {
+    preemptNextJobs.set(count);
+  }
+
+  /**
+   * Preempts a job in any state.
+   */
+  void preempt(String jobId) {
+    String jobSetId = jobSets.get(jobId);
+    if (jobSetId != null) {
+      transition(jobSetId, jobId, JobState.PREEMPTED, EventMessage.newBuilder()
+          .setPreempted(JobPreemptedEvent.newBuilder()
+              .setJobId(jobId)
+              .setJobSetId(jobSetId)
+              .setClusterId(CLUSTER_ID)
+              .setCreated(now()))
+          .build());
+    }
+  }
+
+  int getSubmittedCount() {
+    return submitted.get();
+  }
+
+  /**
+   * @return the number of job IDs of each status request received so far, in order
+   */
+  List<Integer> getStatusRequestSizes() {
+    return List.copyOf(statusRequestSizes);
+  }
+
+  int getCancelledCount() {
+    return cancelled.get();
+  }
+
+  JobState getJobState(String jobId) {
+    return jobStates.getOrDefault(jobId, JobState.UNKNOWN);
+  }
+
+  /**
+   * @return the IDs of all jobs submitted so far
+   */
+  List<String> getJobIds() {
+    return Collections.unmodifiableList(new ArrayList<>(jobStates.keySet()));
+  }
+
+  static String podName(String jobId) {
+    return "armada-" + jobId + "-0";
+  }
+
+  private void submitJob(String queue, String jobSetId, String jobId) {
+    jobStates.put(jobId, JobState.QUEUED);
+    jobSets.put(jobId, jobSetId);
+    publish(jobSetId, EventMessage.newBuilder()
+        .setQueued(JobQueuedEvent.newBuilder()
+            .setJobId(jobId)
+            .setJobSetId(jobSetId)
+            .setQueue(queue)
+            .setCreated(now()))
+        .build());
+
+    boolean preempt = takeOne(preemptNextJobs);
+    boolean fail = !preempt && takeOne(failNextJobs);
+    scheduler.schedule(() -> {
+      if (preempt) {
+        preempt(jobId);
+        return;
+      }
+      transition(jobSetId, jobId, JobState.LEASED, EventMessage.newBuilder()
+          .setLeased(JobLeasedEvent.newBuilder()
+              .setJobId(jobId)
+              .setJobSetId(jobSetId)
+              .setClusterId(CLUSTER_ID)
+              .setCreated(now()))
+          .build());
+      scheduler.schedule(() -> pending(jobSetId, jobId, fail), pendingDelayMillis,
+          TimeUnit.MILLISECONDS);
+    }, leaseDelayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private void pending(String jobSetId, String jobId, boolean fail) {
+    transition(jobSetId, jobId, JobState.PENDING, EventMessage.newBuilder()
+        .setPending(JobPendingEvent.newBuilder()
+            .setJobId(jobId)
+            .setJobSetId(jobSetId)
+            .setClusterId(CLUSTER_ID)
+            .setPodName(podName(jobId))
+            .setPodNamespace(POD_NAMESPACE)
+            .setCreated(now()))
+        .build());
+    scheduler.schedule(() -> {
+      if (fail) {
+        transition(jobSetId, jobId, JobState.FAILED, EventMessage.newBuilder()
+            .setFailed(JobFailedEvent.newBuilder()
+                .setJobId(jobId)
+                .setJobSetId(jobSetId)
+                .setClusterId(CLUSTER_ID)
+                .setPodName(podName(jobId))
+                .setPodNamespace(POD_NAMESPACE)
+                .setReason("Injected failure")
+                .setCreated(now()))
+            .build());
+        return;
+      }
+      transition(jobSetId, jobId, JobState.RUNNING, EventMessage.newBuilder()
+          .setRunning(JobRunningEvent.newBuilder()
+              .setJobId(jobId)
+              .setJobSetId(jobSetId)
+              .setClusterId(CLUSTER_ID)
+              .setPodName(podName(jobId))
+              .setPodNamespace(POD_NAMESPACE)
+              .setCreated(now()))
+          .build());
+    }, runningDelayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Moves a job to a new state unless it already reached a terminal one.
+   */
+  private void transition(String jobSetId, String jobId, JobState state, EventMessage message) {
+    JobState previous = jobStates.get(jobId);
+    if (previous == null || isTerminal(previous)) {
+      return;
+    }
+    if (jobStates.replace(jobId, previous, state)) {
+      publish(jobSetId, message);
+    }
+  }
+
+  private static boolean isTerminal(JobState state) {
+    return state == JobState.SUCCEEDED || state == JobState.FAILED
+        || state == JobState.CANCELLED || state == JobState.PREEMPTED;
+  }
+
+  private void publish(String jobSetId, EventMessage message) {
+    events.computeIfAbsent(jobSetId, k -> new JobSet()).publish(message);
+  }
+
+  private static boolean takeOne(AtomicInteger counter) {
+    return counter.getAndUpdate(value -> Math.max(value - 1, 0)) > 0;
+  }
+
+  private static Timestamp now() {
+    Instant now = Instant.now();
+    return Timestamp.newBuilder()
+        .setSeconds(now.getEpochSecond())
+        .setNanos(now.getNano())
+        .build();
+  }
+
+  private static HealthCheckResponse serving() {
+    return HealthCheckResponse.newBuilder().setStatus(ServingStatus.SERVING).build();
+  }
+
+  @Override
+  public void close() throws InterruptedException {
+    for (JobSet jobSet : events.values()) {
+      jobSet.complete();
+    }
+    scheduler.shutdownNow();
+    server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Events of a job set, replayed to new watchers before they receive new events.
+   */
+  private static class JobSet {
+
+    private final List<EventStreamMessage> history = new ArrayList<>();
+    private final List<StreamObserver<EventStreamMessage>> watchers =
+        new CopyOnWriteArrayList<>();
+
+    synchronized void publish(EventMessage message) {
+      EventStreamMessage streamMessage = EventStreamMessage.newBuilder()
+          .setId(Integer.toString(history.size()))
+          .setMessage(message)
+          .build();
+      history.add(streamMessage);
+      for (StreamObserver<EventStreamMessage> watcher : watchers) {
+        try {
+          watcher.onNext(streamMessage);
+        } catch (RuntimeException e) {
+          // The watcher went away
+          watchers.remove(watcher);
+        }
+      }
+    }
+
+    synchronized void watch(StreamObserver<EventStreamMessage> observer, boolean follow) {
+      for (EventStreamMessage message : history) {
+        observer.onNext(message);
+      }
+      if (follow) {
+        watchers.add(observer);
+      } else {
+        observer.onCompleted();
+      }
+    }
+
+    synchronized void complete() {
+      for (StreamObserver<EventStreamMessage> watcher : watchers) {
+        try {
+          watcher.onCompleted();
+        } catch (RuntimeException e) {
+          // Already cancelled
+        }
+      }
+      watchers.clear();
+    }
+
+    void unwatch(StreamObserver<EventStreamMessage> observer) {
+      watchers.remove(observer);
+    }
+  }
+
+  private class SubmitService extends SubmitGrpc.SubmitImplBase {
+
+    @Override
+    public void submitJobs(JobSubmitRequest request,
+        StreamObserver<JobSubmitResponse> responseObserver) {
+      if (submitDelayMillis > 0) {
+        try {
+          Thread.sleep(submitDelayMillis);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          responseObserver.onError(Status.CANCELLED.asRuntimeException());
+          return;
+        }
+      }
+      if (takeOne(failNextSubmissions)) {
+        responseObserver.onError(Status.UNAVAILABLE
+            .withDescription("Injected submission failure")
+            .asRuntimeException());
+        return;
+      }
+
+      JobSubmitResponse.Builder response = JobSubmitResponse.newBuilder();
+      for (int i = 0; i < request.getJobRequestItemsCount(); i++) {
+        String jobId = UUID.randomUUID().toString();
+        submitted.incrementAndGet();
+        submitJob(request.getQueue(), request.getJobSetId(), jobId);
+        response.addJobResponseItems(JobSubmitResponseItem.newBuilder().setJobId(jobId));
+      }
+      responseObserver.onNext(response.build());
+      responseObserver.onCompleted();
+    }
+
+    @Override
+    public void cancelJobs(JobCancelRequest request,
+        StreamObserver<CancellationResult> responseObserver) {
+      List<String> jobIds = new ArrayList<>(request.getJobIdsList());
+      if (!request.getJobId().isEmpty()) {
+        jobIds.add(request.getJobId());
+      }
+
+      CancellationResult.Builder result = CancellationResult.newBuilder();
+      for (String jobId : jobIds) {
+        String jobSetId = jobSets.getOrDefault(jobId, request.getJobSetId());
+        JobState previous = jobStates.get(jobId);
+        transition(jobSetId, jobId, JobState.CANCELLED, EventMessage.newBuilder()
+            .setCancelled(JobCancelledEvent.newBuilder()
+                .setJobId(jobId)
+                .setJobSetId(jobSetId)
+                .setCreated(now()))
+            .build());
+        if (previous != null && !isTerminal(previous)) {
+          cancelled.incrementAndGet();
+          result.addCancelledIds(jobId);
+        }
+      }
+      responseObserver.onNext(result.build());
+      responseObserver.onCompleted();
+    }
+
+    @Override
+    public void health(Empty request, StreamObserver<HealthCheckResponse> responseObserver) {
+      responseObserver.onNext(serving());
+      responseObserver.onCompleted();
+    }
+  }
+
+  private class JobsService extends JobsGrpc.JobsImplBase {
+
+    @Override
+    public void getJobStatus(JobStatusRequest request,
+        StreamObserver<JobStatusResponse> responseObserver) {
+      statusRequestSizes.add(request.getJobIdsCount());
+      JobStatusResponse.Builder response = JobStatusResponse.newBuilder();
+      for (String jobId : request.getJobIdsList()) {
+        response.putJobStates(jobId, getJobState(jobId));
+      }
+      responseObserver.onNext(response.build());
+      responseObserver.onCompleted();
+    }
+  }
+
+  private class EventService extends EventGrpc.EventImplBase {
+
+    @Override
+    public void getJobSetEvents(JobSetRequest request,
+        StreamObserver<EventStreamMessage> responseObserver) {
+      JobSet jobSet = events.computeIfAbsent(request.getId(), k -> new JobSet());
+      if (responseObserver instanceof ServerCallStreamObserver<EventStreamMessage> call) {
+        call.setOnCancelHandler(() -> jobSet.unwatch(responseObserver));
+      }
+      jobSet.watch(responseObserver, request.getWatch());
+    }
+
+    @Override
+    public void health(Empty request, StreamObserver<HealthCheckResponse> responseObserver) {
+      responseObserver.onNext(serving());
+      responseObserver.onCompleted();
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package io.armadaproject.jenkins.plugin;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import api.EventOuterClass.EventStreamMessage;
+import api.EventOuterClass.JobSetRequest;
+import api.Health.HealthCheckResponse.ServingStatus;
+import api.Job.JobStatusRequest;
+import api.SubmitOuterClass.CancellationResult;
+import api.SubmitOuterClass.JobCancelRequest;
+import api.SubmitOuterClass.JobState;
+import api.SubmitOuterClass.JobSubmitRequest;
+import api.SubmitOuterClass.JobSubmitRequestItem;
+import io.armadaproject.ArmadaClient;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class FakeArmadaServerTest {
+
+  private static final String JOB_SET_ID = "job-set";
+
+  private FakeArmadaServer server;
+  private ArmadaClient client;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    server = new FakeArmadaServer().withStateDelays(10, 10, 10);
+    client = new ArmadaClient("localhost", server.getPort());
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    client.close();
+    server.close();
+  }
+
+  private String submit() {
+    return client.submitJob(JobSubmitRequest.newBuilder()
+            .setQueue("queue")
+            .setJobSetId(JOB_SET_ID)
+            .addJobRequestItems(JobSubmitRequestItem.getDefaultInstance())
+            .build())
+        .getJobResponseItems(0)
+        .getJobId();
+  }
+
+  private JobState status(String jobId) {
+    return client.getJobStatus(JobStatusRequest.newBuilder().addJobIds(jobId).build())
+        .getJobStatesMap()
+        .get(jobId);
+  }
+
+  @Test
+  void testHealth() {
+    assertEquals(ServingStatus.SERVING, client.checkHealth());
+  }
+
+  @Test
+  void testJobReachesRunningAndEventsAreReplayed() {
+    String jobId = submit();
+
+    await().atMost(Duration.ofSeconds(10)).until(() -> status(jobId) == JobState.RUNNING);
+
+    List<ArmadaEvent.Type> types = new CopyOnWriteArrayList<>();
+    client.streamEvents(JobSetRequest.newBuilder().setId(JOB_SET_ID).setQueue("queue").build(),
+        new StreamObserver<EventStreamMessage>() {
+          @Override
+          public void onNext(EventStreamMessage value) {
+            types.add(ArmadaEvent.from(value.getMessage()).getType());
+          }
+
+          @Override
+          public void onError(Throwable t) {
+          }
+
+          @Override
+          public void onCompleted() {
+          }
+        });
+    await().atMost(Duration.ofSeconds(10)).until(() -> types.size() == 4);
+    assertEquals(Arrays.asList(ArmadaEvent.Type.QUEUED, ArmadaEvent.Type.LEASED,
+        ArmadaEvent.Type.PENDING, ArmadaEvent.Type.RUNNING), types);
+  }
+
+  @Test
+  void testInjectedSubmissionFailure() {
+    server.failNextSubmissions(1);
+
+    assertThrows(StatusRuntimeException.class, this::submit);
+    submit();
+    assertEquals(1, server.getSubmittedCount());
+  }
+
+  @Test
+  void testInjectedJobFailureAndPreemption() {
+    server.failNextJobs(1);
+    String failed = submit();
+    server.preemptNextJobs(1);
+    String preempted = submit();
+
+    await().atMost(Duration.ofSeconds(10)).until(() -> status(failed) == JobState.FAILED);
+    await().atMost(Duration.ofSeconds(10)).until(() -> status(preempted) == JobState.PREEMPTED);
+  }
+
+  @Test
+  void testCancel() {
+    server.withStateDelays(60_000, 10, 10);
+    String jobId = submit();
+
+    CancellationResult result = client.cancelJob(JobCancelRequest.newBuilder()
+        .setJobSetId(JOB_SET_ID)
+        .setQueue("queue")
+        .setJobId(jobId)
+        .build());
+
+    assertEquals(List.of(jobId), result.getCancelledIdsList());
+    assertEquals(JobState.CANCELLED, status(jobId));
+    assertEquals(1, server.getCancelledCount());
+  }
+}
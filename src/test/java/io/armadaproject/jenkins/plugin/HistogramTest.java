@@ -0,0 +1,57 @@
+package io.armadaproject.jenkins.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class HistogramTest {
+
+  @Test
+  void testEmpty() {
+    Histogram histogram = new Histogram();
+
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getPercentile(99));
+  }
+
+  @Test
+  void testBuckets() {
+    Histogram histogram = new Histogram(new long[]{100, 1_000});
+    histogram.record(50);
+    histogram.record(100);
+    histogram.record(500);
+    histogram.record(5_000);
+    histogram.record(-1);
+
+    assertArrayEquals(new long[]{3, 1, 1}, histogram.getBucketCounts());
+    assertEquals(5, histogram.getCount());
+    assertEquals(5_650, histogram.getSum());
+    assertEquals(5_000, histogram.getMax());
+  }
+
+  @Test
+  void testPercentiles() {
+    Histogram histogram = new Histogram(new long[]{100, 1_000, 10_000});
+    for (int i = 0; i < 90; i++) {
+      histogram.record(80);
+    }
+    for (int i = 0; i < 9; i++) {
+      histogram.record(700);
+    }
+    histogram.record(42_000);
+
+    assertEquals(100, histogram.getPercentile(50));
+    assertEquals(1_000, histogram.getPercentile(95));
+    assertEquals(1_000, histogram.getPercentile(99));
+    assertEquals(42_000, histogram.getPercentile(100));
+  }
+
+  @Test
+  void testPercentileCappedByMax() {
+    Histogram histogram = new Histogram(new long[]{100, 1_000});
+    histogram.record(120);
+
+    assertEquals(120, histogram.getPercentile(50));
+  }
+}
@@ -0,0 +1,74 @@
+package io.armadaproject.jenkins.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+
+class LaunchTimelineTest {
+
+  private final ArmadaMetrics metrics = new ArmadaMetrics();
+  private final Map<String, String> tags = ArmadaMetrics.agentTags("armada", "queue", "abc");
+
+  private Histogram phaseHistogram(LaunchPhase phase) {
+    Map<String, String> phaseTags = new TreeMap<>(tags);
+    phaseTags.put(ArmadaMetrics.TAG_PHASE, phase.name().toLowerCase());
+    return metrics.histogram(ArmadaMetrics.LAUNCH_PHASE_DURATION, phaseTags);
+  }
+
+  @Test
+  void testPhaseDurationsMeasuredFromPreviousMilestone() {
+    LaunchTimeline timeline = new LaunchTimeline(metrics, tags, 1_000);
+
+    timeline.mark(LaunchPhase.TEMPLATE_REGISTRATION, 1_200);
+    timeline.mark(LaunchPhase.PROVISION, 4_200);
+    timeline.mark(LaunchPhase.SUBMIT, 4_500);
+
+    assertEquals(200L, timeline.getDuration(LaunchPhase.TEMPLATE_REGISTRATION));
+    assertEquals(3_000L, timeline.getDuration(LaunchPhase.PROVISION));
+    assertEquals(300L, timeline.getDuration(LaunchPhase.SUBMIT));
+    assertNull(timeline.getDuration(LaunchPhase.RUNNING));
+    assertEquals(1, phaseHistogram(LaunchPhase.PROVISION).getCount());
+    assertEquals(3_000, phaseHistogram(LaunchPhase.PROVISION).getSum());
+  }
+
+  @Test
+  void testOutOfOrderMilestones() {
+    LaunchTimeline timeline = new LaunchTimeline(metrics, tags, 0);
+
+    timeline.mark(LaunchPhase.SUBMIT, 100);
+    timeline.mark(LaunchPhase.RUNNING, 900);
+    timeline.mark(LaunchPhase.LEASED, 950);
+
+    assertEquals(800L, timeline.getDuration(LaunchPhase.RUNNING));
+    assertEquals(850L, timeline.getDuration(LaunchPhase.LEASED));
+  }
+
+  @Test
+  void testPhaseRecordedOnce() {
+    LaunchTimeline timeline = new LaunchTimeline(metrics, tags, 0);
+
+    assertTrue(timeline.mark(LaunchPhase.QUEUED, 100));
+    assertFalse(timeline.mark(LaunchPhase.QUEUED, 5_000));
+
+    assertEquals(100L, timeline.getDuration(LaunchPhase.QUEUED));
+    assertEquals(1, phaseHistogram(LaunchPhase.QUEUED).getCount());
+  }
+
+  @Test
+  void testTotalLaunchDurationRecordedOnConnect() {
+    LaunchTimeline timeline = new LaunchTimeline(metrics, tags, 1_000);
+
+    timeline.mark(LaunchPhase.RUNNING, 20_000);
+    timeline.mark(LaunchPhase.AGENT_CONNECTED, 25_000);
+
+    Histogram total = metrics.histogram(ArmadaMetrics.LAUNCH_DURATION, tags);
+    assertEquals(1, total.getCount());
+    assertEquals(24_000, total.getSum());
+    assertEquals("running 19.0 s, agent connected 5.0 s", timeline.describe());
+  }
+}
@@ -0,0 +1,76 @@
+package io.armadaproject.jenkins.plugin;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of masking an echoed command line with {@link ArmadaExecDecorator.MaskOutputStream},
+ * comparing bulk writes with the single byte writes the stream used to be driven with. Run with
+ * {@code mvn test -Pbenchmark -Djmh.include=MaskOutputStreamBenchmark}.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MaskOutputStreamBenchmark {
+
+  @Param({"16", "256", "4096"})
+  public int fragments;
+
+  /**
+   * One in this many fragments is a secret.
+   */
+  @Param({"2", "8"})
+  public int secretEvery;
+
+  private byte[] commandLine;
+  private boolean[] masks;
+  private final OutputStream sink = OutputStream.nullOutputStream();
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    StringBuilder line = new StringBuilder();
+    masks = new boolean[fragments];
+    for (int i = 0; i < fragments; i++) {
+      masks[i] = i % secretEvery == 0;
+      line.append('"');
+      int length = 8 + random.nextInt(56);
+      for (int j = 0; j < length; j++) {
+        line.append((char) ('a' + random.nextInt(26)));
+      }
+      line.append("\" ");
+    }
+    commandLine = line.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public void bulkWrite() throws IOException {
+    new ArmadaExecDecorator.MaskOutputStream(sink, masks).write(commandLine);
+  }
+
+  @Benchmark
+  public void singleByteWrites() throws IOException {
+    ArmadaExecDecorator.MaskOutputStream masked =
+        new ArmadaExecDecorator.MaskOutputStream(sink, masks);
+    for (byte b : commandLine) {
+      masked.write(b);
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package io.armadaproject.jenkins.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import io.fabric8.kubernetes.api.model.ContainerStatus;
+import io.fabric8.kubernetes.api.model.ContainerStatusBuilder;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import org.junit.jupiter.api.Test;
+
+class PodStatusInspectorTest {
+
+  private static ContainerStatus waiting(String name, String reason, String message) {
+    return new ContainerStatusBuilder()
+        .withName(name)
+        .withNewState()
+        .withNewWaiting()
+        .withReason(reason)
+        .withMessage(message)
+        .endWaiting()
+        .endState()
+        .build();
+  }
+
+  private static Pod pod(ContainerStatus... statuses) {
+    return new PodBuilder()
+        .withNewStatus()
+        .withContainerStatuses(statuses)
+        .endStatus()
+        .build();
+  }
+
+  @Test
+  void testNoStatus() {
+    assertNull(PodStatusInspector.findFatalCondition(null));
+    assertNull(PodStatusInspector.findFatalCondition(new Pod()));
+  }
+
+  @Test
+  void testContainerCreating() {
+    assertNull(PodStatusInspector.findFatalCondition(
+        pod(waiting("jnlp", "ContainerCreating", null))));
+  }
+
+  @Test
+  void testImagePullBackOffOnAnyContainer() {
+    assertEquals("container maven: ImagePullBackOff (Back-off pulling image \"mavn\")",
+        PodStatusInspector.findFatalCondition(pod(
+            waiting("jnlp", "ContainerCreating", null),
+            waiting("maven", "ImagePullBackOff", "Back-off pulling image \"mavn\""))));
+  }
+
+  @Test
+  void testCrashLoopBackOffOnlyFatalForAgent() {
+    assertNull(PodStatusInspector.findFatalCondition(
+        pod(waiting("maven", "CrashLoopBackOff", null))));
+    assertEquals("container jnlp: CrashLoopBackOff",
+        PodStatusInspector.findFatalCondition(pod(waiting("jnlp", "CrashLoopBackOff", ""))));
+  }
+
+  @Test
+  void testAgentContainerTerminated() {
+    Pod pod = pod(new ContainerStatusBuilder()
+        .withName("jnlp")
+        .withNewState()
+        .withNewTerminated()
+        .withReason("Error")
+        .withExitCode(255)
+        .endTerminated()
+        .endState()
+        .build());
+
+    assertEquals("container jnlp: Error (exit code 255)",
+        PodStatusInspector.findFatalCondition(pod));
+  }
+}
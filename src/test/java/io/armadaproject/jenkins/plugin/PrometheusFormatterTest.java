@@ -0,0 +1,93 @@
+package io.armadaproject.jenkins.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+
+class PrometheusFormatterTest {
+
+  private final ArmadaMetrics metrics = new ArmadaMetrics();
+
+  @Test
+  void testCountersAndGauges() {
+    Map<String, String> tags = ArmadaMetrics.cloudTags("armada");
+    tags.put(ArmadaMetrics.TAG_RPC, "submit");
+    metrics.counter(ArmadaMetrics.RPC_TOTAL, tags).add(3);
+    metrics.counter(ArmadaMetrics.RPC_TOTAL, ArmadaMetrics.cloudTags("other")).increment();
+
+    SortedMap<ArmadaMetrics.MetricKey, Long> gauges = new TreeMap<>();
+    gauges.put(new ArmadaMetrics.MetricKey("armada_event_watchers",
+        ArmadaMetrics.cloudTags("armada")), 2L);
+
+    String text = PrometheusFormatter.format(metrics, gauges,
+        key -> "armada".equals(key.getTags().get(ArmadaMetrics.TAG_CLOUD)));
+
+    assertEquals("# TYPE armada_event_watchers gauge\n"
+        + "armada_event_watchers{cloud=\"armada\"} 2\n"
+        + "# TYPE armada_rpc_total counter\n"
+        + "armada_rpc_total{cloud=\"armada\",rpc=\"submit\"} 3\n", text);
+  }
+
+  @Test
+  void testHistogramInSeconds() {
+    Histogram histogram = new Histogram(new long[]{100, 1_000});
+    histogram.record(50);
+    histogram.record(700);
+    histogram.record(2_500);
+    ArmadaMetrics registry = new ArmadaMetrics() {
+      @Override
+      public SortedMap<MetricKey, Histogram> getHistograms() {
+        SortedMap<MetricKey, Histogram> histograms = new TreeMap<>();
+        histograms.put(new MetricKey("armada_exec_setup_duration", cloudTags("armada")),
+            histogram);
+        return histograms;
+      }
+    };
+
+    String text = PrometheusFormatter.format(registry, new TreeMap<>(), key -> true);
+
+    assertEquals("# TYPE armada_exec_setup_duration_seconds histogram\n"
+        + "armada_exec_setup_duration_seconds_bucket{cloud=\"armada\",le=\"0.100\"} 1\n"
+        + "armada_exec_setup_duration_seconds_bucket{cloud=\"armada\",le=\"1.000\"} 2\n"
+        + "armada_exec_setup_duration_seconds_bucket{cloud=\"armada\",le=\"+Inf\"} 3\n"
+        + "armada_exec_setup_duration_seconds_sum{cloud=\"armada\"} 3.250\n"
+        + "armada_exec_setup_duration_seconds_count{cloud=\"armada\"} 3\n", text);
+  }
+
+  @Test
+  void testLabelEscaping() {
+    metrics.counter("armada_test_total", ArmadaMetrics.cloudTags("a\"b\\c\nd")).increment();
+
+    String text = PrometheusFormatter.format(metrics, new TreeMap<>(), key -> true);
+
+    assertEquals("# TYPE armada_test_total counter\n"
+        + "armada_test_total{cloud=\"a\\\"b\\\\c\\nd\"} 1\n", text);
+  }
+
+  @Test
+  void testUnauthenticatedScrapeAddsUpIdentifyingTags() {
+    Map<String, String> first = ArmadaMetrics.agentTags("armada", "queue", "folder/job-a");
+    Map<String, String> second = ArmadaMetrics.agentTags("armada", "queue", "pod-b");
+    metrics.counter("armada_test_total", first).add(2);
+    metrics.counter("armada_test_total", second).increment();
+    metrics.histogram(ArmadaMetrics.LAUNCH_DURATION, first).record(20);
+    metrics.histogram(ArmadaMetrics.LAUNCH_DURATION, second).record(20);
+
+    String authenticated = ArmadaPrometheusAction.format(metrics, new TreeMap<>(), "armada",
+        false);
+    String unauthenticated = ArmadaPrometheusAction.format(metrics, new TreeMap<>(), "armada",
+        true);
+
+    assertTrue(authenticated.contains("template=\"folder/job-a\""));
+    assertFalse(unauthenticated.contains("template="));
+    assertTrue(unauthenticated.contains(
+        "armada_test_total{cloud=\"armada\",queue=\"queue\"} 3\n"));
+    assertTrue(unauthenticated.contains(
+        "armada_launch_duration_seconds_count{cloud=\"armada\",queue=\"queue\"} 2\n"));
+  }
+}